@@ -2,102 +2,189 @@ package com.fuzz;
 
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import sqlancer.AFLMonitor;
 import sqlancer.BaseConfigurationGenerator;
+import sqlancer.Campaign;
+import sqlancer.ComboWeightStore;
+import sqlancer.LatencyRegistry;
 import sqlancer.Main;
+import sqlancer.MetricsRegistry;
+import sqlancer.TelemetrySnapshot;
 
-import static sqlancer.BaseConfigurationGenerator.proParameterCombos;
-
+/**
+ * 管理同一进程中的多个测试活动（campaign）。每个 campaign 有自己的 ID、线程数（--num-threads）、计数、权重、日志目录和覆盖率来源，
+ * 可以同时测试不同的 DBMS；不指定 ID 的方法操作默认 campaign。
+ */
 @Service
 public class SqlancerRunner {
-    private ExecutorService executorService = null;
-    private Future<?> sqlancerTaskFuture = null;
-    private long timeMillis = System.currentTimeMillis();
-    private long lastNrQueries;
+    // 每个运行中的 campaign 占用一个线程，campaign 的工作线程由引擎按 --num-threads 创建
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final Map<String, Future<?>> campaignFutures = new ConcurrentHashMap<>();
+
     /**
-     * 启动 SQLancer 模糊测试
+     * 启动默认 campaign 的模糊测试
      * @param option 要测试的数据库名称，例如 "mysql"
      */
     public void startFuzzing(String... option) {
-        if (sqlancerTaskFuture != null && !sqlancerTaskFuture.isDone()) {
-            System.out.println("SQLancer is already running.");
-            return;
-        }
-
-        // 使用单线程的 ExecutorService 来运行后台任务
-        executorService = Executors.newSingleThreadExecutor();
+        startCampaign(Campaign.DEFAULT_ID, option);
+    }
 
-        sqlancerTaskFuture = executorService.submit(() -> {
+    /**
+     * 启动 campaign 的模糊测试
+     * @param campaignId campaign 的 ID，只能包含字母、数字、下划线和连字符
+     * @param option 引擎参数，例如 "mysql"；--campaign 由本方法添加
+     * @return 已经在运行时返回 false
+     */
+    public synchronized boolean startCampaign(String campaignId, String... option) {
+        Campaign.getOrCreate(campaignId);
+        Future<?> running = campaignFutures.get(campaignId);
+        if (running != null && !running.isDone()) {
+            System.out.println("SQLancer campaign " + campaignId + " is already running.");
+            return false;
+        }
+        // 全局选项必须位于数据库命令之前
+        List<String> args = new ArrayList<>(List.of("--campaign", campaignId));
+        args.addAll(List.of(option));
+        campaignFutures.put(campaignId, executorService.submit(() -> {
             try {
-                Main.executeMainOnWeb(option);
+                Main.executeMainOnWeb(args.toArray(new String[0]));
             }catch (Exception e) {
                 System.err.println("An error occurred during SQLancer initialization or training.");
                 e.printStackTrace();
             }
 
-        });
-
+        }));
+        return true;
     }
 
     /**
-     * 停止 SQLancer 模糊测试
+     * 停止默认 campaign 的模糊测试
      */
     public void stopFuzzing() {
-        if (executorService != null && !executorService.isShutdown()) {
-            System.out.println("Attempting to stop SQLancer...");
-            // 中断正在执行的任务
-            executorService.shutdownNow();
-            sqlancerTaskFuture = null;
-            executorService = null;
+        stopCampaign(Campaign.DEFAULT_ID);
+    }
+
+    /**
+     * 停止 campaign 的模糊测试，其他 campaign 不受影响
+     * @return campaign 不在运行时返回 false
+     */
+    public synchronized boolean stopCampaign(String campaignId) {
+        Future<?> running = campaignFutures.remove(campaignId);
+        if (running != null && !running.isDone()) {
+            System.out.println("Attempting to stop SQLancer campaign " + campaignId + "...");
+            // 中断正在执行的任务，引擎随之中断该 campaign 的所有工作线程
+            running.cancel(true);
+            return true;
         } else {
-            System.out.println("SQLancer is not running.");
+            System.out.println("SQLancer campaign " + campaignId + " is not running.");
+            return false;
         }
     }
 
+    public boolean isRunning(String campaignId) {
+        Future<?> running = campaignFutures.get(campaignId);
+        return running != null && !running.isDone();
+    }
+
     /**
-     * 获取 SQLancer 的内部执行状态
+     * 获取默认 campaign 的内部执行状态
      * @return 包含状态信息的 Map
      */
     public java.util.Map<String, Object> getTestStatus() {
+        return getTestStatus(Campaign.DEFAULT_ID);
+    }
+
+    /**
+     * 获取 campaign 的内部执行状态，计数只包含该 campaign
+     * @return 包含状态信息的 Map；campaign 不存在时为 null
+     */
+    public java.util.Map<String, Object> getTestStatus(String campaignId) {
+        Campaign campaign = Campaign.get(campaignId);
+        if (campaign == null) {
+            return null;
+        }
         java.util.Map<String, Object> status = new java.util.HashMap<>();
-        status.put("task_status", sqlancerTaskFuture != null && !sqlancerTaskFuture.isDone());
-        status.put("coverage", AFLMonitor.getInstance().getCoverageRate());
-
-        long elapsedTimeMillis = System.currentTimeMillis() - timeMillis;
-        long currentNrQueries = Main.nrQueries.get();
-        long nrCurrentQueries = currentNrQueries - lastNrQueries;
-        status.put("execution_count", currentNrQueries);
-        status.put("current_param_combo",  BaseConfigurationGenerator.currentGeneratedActions);
-        status.put("throughput",  (nrCurrentQueries / (elapsedTimeMillis / 1000d)));
-        status.put("bug_count",  Main.bugs.get());
-        lastNrQueries = currentNrQueries;
-        timeMillis = System.currentTimeMillis();
+        status.put("campaign", campaignId);
+        status.put("dbms", campaign.getDbmsName());
+        status.put("threads", campaign.getNrWorkers());
+        status.put("task_status", isRunning(campaignId));
+        // 覆盖率和各工作线程的状态取自引擎最近发布的遥测快照，查询状态不读取覆盖率位图（也不会因此启动 DBMS）
+        TelemetrySnapshot telemetry = campaign.getTelemetry().getLatest();
+        status.put("coverage", telemetry == null ? 0.0 : telemetry.getCoverageRate());
+        if (telemetry != null) {
+            status.put("workers", telemetry.getWorkers());
+        }
+
+        // 读取不修改计数，多个客户端轮询时互不影响；吞吐量为进度监视器最近一个周期内的速率
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        MetricsRegistry.Snapshot metrics = registry.snapshot();
+        // 计数只包含本次运行，与运行时长对应
+        status.put("execution_count", campaign.getRunCount(metrics, MetricsRegistry.Counter.QUERIES, tags -> true));
+        status.put("current_param_combo",  campaign.getCurrentGeneratedActions());
+        status.put("throughput",  registry.getRecentRate(MetricsRegistry.Counter.QUERIES, campaign::owns));
+        status.put("bug_count",  campaign.getRunCount(metrics, MetricsRegistry.Counter.BUGS, tags -> true));
+        // 由记录的行数直接得到结果、未执行 SELECT COUNT(*) 的次数，以及仍需执行的次数
+        status.put("row_count_hits",
+                campaign.getRunCount(metrics, MetricsRegistry.Counter.ROW_COUNT_HITS, tags -> true));
+        status.put("row_count_queries",
+                campaign.getRunCount(metrics, MetricsRegistry.Counter.ROW_COUNT_QUERIES, tags -> true));
         return status;
     }
 
+    /**
+     * 获取所有 campaign 的状态
+     */
+    public List<Map<String, Object>> getCampaigns() {
+        return Campaign.getAll().stream().map(campaign -> getTestStatus(campaign.getId()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 获取各生成动作、oracle 阶段和参数组合的延迟分位数（微秒），每个维度按总耗时取前 limit 个；limit 为负时返回空列表
+     */
+    public Map<LatencyRegistry.Dimension, List<LatencyRegistry.Summary>> getLatencies(int limit) {
+        Map<LatencyRegistry.Dimension, List<LatencyRegistry.Summary>> latencies = new LinkedHashMap<>();
+        for (LatencyRegistry.Dimension dimension : LatencyRegistry.Dimension.values()) {
+            List<LatencyRegistry.Summary> summaries = LatencyRegistry.getInstance().summarize(dimension);
+            latencies.put(dimension, summaries.subList(0, Math.max(0, Math.min(limit, summaries.size()))));
+        }
+        return latencies;
+    }
+
     public Map<String[], Double> getParamWeight(){
-        return proParameterCombos.entrySet().stream()
-                // 按权重 (Map.Entry.getValue()) 降序排序
-                .sorted(Map.Entry.<Set<BaseConfigurationGenerator.ConfigurationAction>, Double>comparingByValue().reversed())
-                // 只取前 20 个
-                .limit(20)
+        return getParamWeight(Campaign.DEFAULT_ID);
+    }
+
+    /**
+     * 获取 campaign 中权重最大的 20 个参数组合；campaign 不存在时为空
+     */
+    public Map<String[], Double> getParamWeight(String campaignId){
+        Campaign campaign = Campaign.get(campaignId);
+        if (campaign == null) {
+            return new LinkedHashMap<>();
+        }
+        // 读取最近发布的 Top-K 视图，不需要与测试线程同步；视图已按权重降序排列
+        ComboWeightStore.TopK topK = campaign.getComboWeights().getTopK();
+        return IntStream.range(0, Math.min(20, topK.size())).boxed()
                 // 收集到新的 Map 中
                 .collect(Collectors.toMap(
                         // 将 Set<ConfigurationAction> 转换为 String[] 作为键
-                        entry -> entry.getKey().stream()
+                        rank -> topK.comboAt(rank).stream()
                                 .map(BaseConfigurationGenerator.ConfigurationAction::getName)
                                 .toArray(String[]::new),
-                        // 保留原始的权重作为值
-                        Map.Entry::getValue,
+                        // 保留发布时的权重作为值
+                        topK::weightAt,
                         // 合并函数（理论上不会出现键冲突）
                         (v1, v2) -> v1,
                         // 使用 LinkedHashMap 来保持排序后的顺序
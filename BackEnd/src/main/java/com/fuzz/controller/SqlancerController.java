@@ -1,9 +1,14 @@
 package com.fuzz.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import com.fuzz.SqlancerRunner;
+import sqlancer.Campaign;
+import sqlancer.LatencyRegistry;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -21,17 +26,112 @@ public class SqlancerController {
     /**
      * 启动模糊测试
      * @param dbName 要测试的数据库，例如 "mysql"
+     * @param resume 是否从最新的检查点恢复训练状态（参数组合权重、参数特性概率、覆盖率）
      * @return 响应消息
      */
     @PostMapping("/start/{dbName}")
-    public ResponseEntity<String> startFuzzing(@PathVariable String dbName) {
+    public ResponseEntity<String> startFuzzing(@PathVariable String dbName,
+                                               @RequestParam(defaultValue = "false") boolean resume) {
+        sqlancerRunner.startFuzzing(buildArgs(dbName, resume, null, null, null));
+        return ResponseEntity.ok("SQLancer fuzzing started for " + dbName + (resume ? " (resumed from checkpoint)" : ""));
+    }
+
+    /**
+     * 启动一个 campaign 的模糊测试，不同 campaign 可以同时测试不同的数据库
+     * @param campaignId campaign 的 ID，只能包含字母、数字、下划线和连字符
+     * @param dbName 要测试的数据库，例如 "mysql"
+     * @param resume 是否从该 campaign 最新的检查点恢复训练状态
+     * @param threads 该 campaign 的工作线程数（至少为 1），不指定时使用引擎的默认值
+     * @param port MySQL campaign 的插桩 mysqld 监听并连接的端口，与其他 MySQL campaign 同时运行时必须不同
+     * @param datadir MySQL campaign 的插桩 mysqld 的数据目录，与其他 MySQL campaign 同时运行时必须不同
+     * @return 响应消息；参数无效时返回 400，campaign 已在运行时返回 409
+     */
+    @PostMapping("/campaigns/{campaignId}/start/{dbName}")
+    public ResponseEntity<String> startCampaign(@PathVariable String campaignId, @PathVariable String dbName,
+                                                @RequestParam(defaultValue = "false") boolean resume,
+                                                @RequestParam(required = false) Integer threads,
+                                                @RequestParam(required = false) Integer port,
+                                                @RequestParam(required = false) String datadir) {
+        if (!Campaign.isValidId(campaignId)) {
+            return ResponseEntity.badRequest().body("Invalid campaign id: " + campaignId);
+        }
+        if (threads != null && threads < 1) {
+            return ResponseEntity.badRequest().body("threads must be at least 1: " + threads);
+        }
+        if (!sqlancerRunner.startCampaign(campaignId, buildArgs(dbName, resume, threads, port, datadir))) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Campaign " + campaignId + " is already running.");
+        }
+        return ResponseEntity.ok("SQLancer campaign " + campaignId + " started for " + dbName
+                + (resume ? " (resumed from checkpoint)" : ""));
+    }
+
+    /**
+     * 停止一个 campaign，其他 campaign 继续运行
+     * @return 响应消息；campaign 不在运行时返回 404
+     */
+    @PostMapping("/campaigns/{campaignId}/stop")
+    public ResponseEntity<String> stopCampaign(@PathVariable String campaignId) {
+        if (!sqlancerRunner.stopCampaign(campaignId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Campaign " + campaignId + " is not running.");
+        }
+        return ResponseEntity.ok("SQLancer campaign " + campaignId + " stopped.");
+    }
+
+    /**
+     * 获取一个 campaign 的状态，计数只包含该 campaign
+     * @return 状态；campaign 不存在时返回 404
+     */
+    @GetMapping("/campaigns/{campaignId}/status")
+    public ResponseEntity<Map<String, Object>> getCampaignStatus(@PathVariable String campaignId) {
+        Map<String, Object> status = sqlancerRunner.getTestStatus(campaignId);
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * 获取所有 campaign 的状态
+     */
+    @GetMapping("/campaigns")
+    public ResponseEntity<List<Map<String, Object>>> getCampaigns() {
+        return ResponseEntity.ok(sqlancerRunner.getCampaigns());
+    }
+
+    /**
+     * 获取一个 campaign 的参数权重信息
+     */
+    @GetMapping("/campaigns/{campaignId}/param-weights")
+    public ResponseEntity<Map<String[], Double>> getCampaignParamWeights(@PathVariable String campaignId) {
+        return ResponseEntity.ok(sqlancerRunner.getParamWeight(campaignId));
+    }
+
+    private static String[] buildArgs(String dbName, boolean resume, Integer threads, Integer port, String datadir) {
+        List<String> args = new ArrayList<>();
+        // 全局选项必须位于数据库命令之前
+        if (resume) {
+            args.add("--resume-from-checkpoint");
+            args.add("true");
+        }
+        if (threads != null) {
+            args.add("--num-threads");
+            args.add(String.valueOf(threads));
+        }
+        if (port != null) {
+            args.add("--port");
+            args.add(String.valueOf(port));
+        }
+        if (datadir != null) {
+            args.add("--coverage-datadir");
+            args.add(datadir);
+        }
         // 为MySQL添加默认的oracle参数，与TestMySQLFuzzing保持一致
         if ("mysql".equalsIgnoreCase(dbName)) {
-            sqlancerRunner.startFuzzing("mysql", "--oracle", "TLP_WHERE");
+            args.addAll(List.of("mysql", "--oracle", "TLP_WHERE"));
         } else {
-            sqlancerRunner.startFuzzing(dbName);
+            args.add(dbName);
         }
-        return ResponseEntity.ok("SQLancer fuzzing started for " + dbName);
+        return args.toArray(new String[0]);
     }
 
     /**
@@ -54,6 +154,20 @@ public class SqlancerController {
         return ResponseEntity.ok(status);
     }
 
+    /**
+     * 获取延迟直方图的统计：各生成动作、oracle 阶段和参数组合的 p50/p99/p999（微秒）
+     * @param limit 每个维度按总耗时返回的条数，不能为负
+     * @return 维度到统计列表的 Map；limit 为负时返回 400
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<Map<LatencyRegistry.Dimension, List<LatencyRegistry.Summary>>> getLatencies(
+            @RequestParam(defaultValue = "50") int limit) {
+        if (limit < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(sqlancerRunner.getLatencies(limit));
+    }
+
     /**
      * 获取参数权重信息
      * @return 包含参数权重信息的 Map
@@ -4,6 +4,7 @@ import com.fuzz.entity.ParamComboWeight;
 import com.fuzz.entity.TestStatus;
 import com.fuzz.repository.ParamComboWeightRepository;
 import com.fuzz.repository.TestStatusRepository;
+import com.fuzz.service.TelemetryBroadcaster;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -25,11 +26,17 @@ public class StatusMonitorController {
     @Autowired
     private ParamComboWeightRepository paramWeightRepo;
 
-    // 获取最新测试状态（用你Repository里有的方法）
+    @Autowired
+    private TelemetryBroadcaster telemetryBroadcaster;
+
+    // 获取最新测试状态：优先使用引擎最近发布的遥测快照，本进程尚未运行测试时才读取 test_status 中的汇总
     @GetMapping("/test-status")
     public ResponseEntity<TestStatus> getLatestTestStatus() {
-        // 用findTopByOrderByCreatedAtDesc()，你的Repository里有这个方法
-        TestStatus latestStatus = testStatusRepo.findTopByOrderByCreatedAtDesc();
+        TestStatus latestStatus = telemetryBroadcaster.getLatestTestStatus();
+        if (latestStatus == null) {
+            // 用findTopByOrderByCreatedAtDesc()，你的Repository里有这个方法
+            latestStatus = testStatusRepo.findTopByOrderByCreatedAtDesc();
+        }
         return ResponseEntity.ok(latestStatus);
     }
 
@@ -0,0 +1,175 @@
+package com.fuzz.service;
+
+import com.fuzz.entity.TestStatus;
+import com.fuzz.repository.TestStatusRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import sqlancer.Campaign;
+import sqlancer.TelemetryChannel;
+import sqlancer.TelemetrySnapshot;
+
+/**
+ * 将测试引擎发布到各 campaign 的 {@link TelemetryChannel} 的快照推送给 STOMP 订阅者，并定期汇总写入 test_status。
+ *
+ * 每个 campaign 的快照推送到 /topic/telemetry/{campaignId}；/topic/telemetry 与 /topic/testStatus 接收所有 campaign 的快照，
+ * 用快照中的 campaign 区分。推送和查询只读取内存中的快照，不访问数据库，也不扫描覆盖率位图；推送来不及时，通道只保留最新的快照。
+ */
+@Service
+public class TelemetryBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(TelemetryBroadcaster.class);
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    private TestStatusRepository testStatusRepo;
+
+    @Value("${fuzz.telemetry.push-interval-ms:1000}")
+    private long pushIntervalMillis;
+    @Value("${fuzz.telemetry.rollup-interval-ms:60000}")
+    private long rollupIntervalMillis;
+
+    private ScheduledExecutorService scheduler;
+    // 每个 campaign 最近一次写入 test_status 的快照时间
+    private final Map<String, Long> lastPersistedMillis = new HashMap<>();
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "telemetry-broadcaster");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::push, pushIntervalMillis, pushIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::rollup, rollupIntervalMillis, rollupIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        rollup();
+    }
+
+    /**
+     * @return 所有 campaign 中最近一个快照的仪表盘状态（字段与 test_status 相同），引擎尚未发布快照时为 null
+     */
+    public Map<String, Object> getLatestStatus() {
+        TelemetrySnapshot snapshot = getLatestSnapshot();
+        return snapshot == null ? null : toStatusMap(snapshot);
+    }
+
+    /**
+     * @return 由所有 campaign 中最近一个快照构造的、未保存的测试状态，引擎尚未发布快照时为 null
+     */
+    public TestStatus getLatestTestStatus() {
+        TelemetrySnapshot snapshot = getLatestSnapshot();
+        return snapshot == null ? null : toTestStatus(snapshot);
+    }
+
+    private static TelemetrySnapshot getLatestSnapshot() {
+        TelemetrySnapshot latest = null;
+        for (Campaign campaign : Campaign.getAll()) {
+            TelemetrySnapshot snapshot = campaign.getTelemetry().getLatest();
+            if (snapshot != null && (latest == null || snapshot.getTimestampMillis() > latest.getTimestampMillis())) {
+                latest = snapshot;
+            }
+        }
+        return latest;
+    }
+
+    private void push() {
+        for (Campaign campaign : Campaign.getAll()) {
+            TelemetrySnapshot snapshot = campaign.getTelemetry().poll();
+            if (snapshot == null) {
+                continue;
+            }
+            try {
+                messagingTemplate.convertAndSend("/topic/telemetry/" + campaign.getId(), snapshot);
+                messagingTemplate.convertAndSend("/topic/telemetry", snapshot);
+                messagingTemplate.convertAndSend("/topic/testStatus", toStatusMap(snapshot));
+            } catch (Exception e) {
+                // 异常会取消定时任务，只记录
+                logger.warn("推送遥测快照失败", e);
+            }
+        }
+    }
+
+    private synchronized void rollup() {
+        for (Campaign campaign : Campaign.getAll()) {
+            TelemetrySnapshot snapshot = campaign.getTelemetry().getLatest();
+            if (snapshot == null
+                    || lastPersistedMillis.getOrDefault(campaign.getId(), 0L) == snapshot.getTimestampMillis()) {
+                continue;
+            }
+            try {
+                testStatusRepo.save(toTestStatus(snapshot));
+                lastPersistedMillis.put(campaign.getId(), snapshot.getTimestampMillis());
+            } catch (Exception e) {
+                logger.warn("写入测试状态汇总失败", e);
+            }
+        }
+    }
+
+    private static Map<String, Object> toStatusMap(TelemetrySnapshot snapshot) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("campaign", snapshot.getCampaign());
+        status.put("task_status", taskStatus(snapshot));
+        status.put("test_oracle", snapshot.getOracle());
+        status.put("run_time", snapshot.getRunTimeSeconds());
+        status.put("coverage_rate", coveragePercent(snapshot));
+        status.put("bug_count", snapshot.getBugs());
+        status.put("execution_count", snapshot.getQueries());
+        status.put("current_param_combo", currentCombo(snapshot));
+        status.put("throughput", BigDecimal.valueOf(snapshot.getThroughput()).setScale(2, RoundingMode.HALF_UP));
+        return status;
+    }
+
+    private static TestStatus toTestStatus(TelemetrySnapshot snapshot) {
+        TestStatus status = new TestStatus();
+        status.setTaskStatus(taskStatus(snapshot));
+        String oracle = snapshot.getOracle().isEmpty() ? "无" : snapshot.getOracle();
+        status.setTestOracle(oracle.length() > 50 ? oracle.substring(0, 50) : oracle);
+        status.setRunTime(toInt(snapshot.getRunTimeSeconds()));
+        status.setCoverageRate(coveragePercent(snapshot));
+        status.setBugCount(toInt(snapshot.getBugs()));
+        status.setExecutionCount(toInt(snapshot.getQueries()));
+        String combo = currentCombo(snapshot);
+        status.setCurrentParamCombo(combo.length() > 500 ? combo.substring(0, 500) : combo);
+        status.setThroughput(BigDecimal.valueOf(Math.min(snapshot.getThroughput(), 999999.99))
+                .setScale(2, RoundingMode.HALF_UP));
+        return status;
+    }
+
+    private static String taskStatus(TelemetrySnapshot snapshot) {
+        return snapshot.isRunning() ? "测试中" : "已结束";
+    }
+
+    private static BigDecimal coveragePercent(TelemetrySnapshot snapshot) {
+        return BigDecimal.valueOf(snapshot.getCoverageRate() * 100).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static String currentCombo(TelemetrySnapshot snapshot) {
+        return snapshot.getCurrentCombo().isEmpty() ? "无" : String.join(", ", snapshot.getCurrentCombo());
+    }
+
+    private static int toInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+}
@@ -7,8 +7,6 @@ import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @Service
 public class TestStatusService {
@@ -16,9 +14,10 @@ public class TestStatusService {
     private JdbcTemplate jdbcTemplate;
     @Autowired
     private SimpMessagingTemplate messagingTemplate; // 新增：注入WebSocket推送工具
+    @Autowired
+    private TelemetryBroadcaster telemetryBroadcaster;
 
     private boolean isTesting = false;
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
     private int runTime = 0;
 
     /**
@@ -47,24 +46,7 @@ public class TestStatusService {
                     "测试中", "TLP", 0, 0.00, 0, 0, "无", 0.00
             );
 
-            // 异步更新测试数据（你的原有逻辑 + 新增推送）
-            executor.submit(() -> {
-                while (isTesting) {
-                    try {
-                        Thread.sleep(1000);
-
-
-
-                        // 新增：每次更新后，通过WebSocket推送最新状态到前端
-                        Map<String, Object> latestStatus = getLatestStatus();
-                        messagingTemplate.convertAndSend("/topic/testStatus", latestStatus);
-
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        isTesting = false;
-                    }
-                }
-            });
+            // 运行中的状态由 TelemetryBroadcaster 从引擎发布的快照推送，不再每秒查询 test_status
 
             result.put("code", "200");
             result.put("message", "测试启动成功！");
@@ -99,6 +81,7 @@ public class TestStatusService {
 
             // 新增：推送结束后的状态到前端
             Map<String, Object> latestStatus = getLatestStatus();
+            latestStatus.put("task_status", "已结束");
             messagingTemplate.convertAndSend("/topic/testStatus", latestStatus);
 
             result.put("code", "200");
@@ -113,23 +96,21 @@ public class TestStatusService {
     }
 
     /**
-     * 获取最新状态（你的原有逻辑，无改动）
+     * 获取最新状态：读取引擎最近发布的遥测快照，不查询数据库；尚无快照时返回默认状态
      */
     public Map<String, Object> getLatestStatus() {
-        try {
-            return jdbcTemplate.queryForMap(
-                   "SELECT task_status, run_time, current_param_combo, coverage_rate, bug_count, execution_count FROM test_status ORDER BY created_at DESC LIMIT 1"
-            );
-        } catch (Exception e) {
-            Map<String, Object> defaultStatus = new HashMap<>();
-            defaultStatus.put("run_time", 0);
-            defaultStatus.put("coverage_rate", 0.00);
-            defaultStatus.put("bug_count", 0);
-            defaultStatus.put("execution_count", 0);
-            defaultStatus.put("current_param_combo", "无");
-            defaultStatus.put("task_status", "未开始");
-            return defaultStatus;
+        Map<String, Object> latestStatus = telemetryBroadcaster.getLatestStatus();
+        if (latestStatus != null) {
+            return latestStatus;
         }
+        Map<String, Object> defaultStatus = new HashMap<>();
+        defaultStatus.put("run_time", 0);
+        defaultStatus.put("coverage_rate", 0.00);
+        defaultStatus.put("bug_count", 0);
+        defaultStatus.put("execution_count", 0);
+        defaultStatus.put("current_param_combo", "无");
+        defaultStatus.put("task_status", "未开始");
+        return defaultStatus;
     }
 
     /**
@@ -4,18 +4,18 @@ import com.sun.jna.*;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.Thread.sleep;
-import static sqlancer.BaseConfigurationGenerator.allParameterCombos;
 
 public class AFLMonitor implements AutoCloseable {
     // 常量
     public static final int AFL_MAP_SIZE = 1533718;
     private static final String AFL_SHM_ENV_VAR = "__AFL_SHM_ID";
-    private static final String   DBMS_PATH= "/usr/local/mysql/bin/mysqld";  // 请根据实际路径修改
+    public static final String DEFAULT_DBMS_PATH = "/usr/local/mysql/bin/mysqld";
     // SysV IPC 常量
     private static final int IPC_PRIVATE = 0;
     private static final int IPC_CREAT = 01000;
@@ -36,13 +36,20 @@ public class AFLMonitor implements AutoCloseable {
 
     private int shmId = -1;
     private Pointer shmPtr = null;
-    public final static byte[] coverageBuf = new byte[AFL_MAP_SIZE];
-    private static volatile AFLMonitor INSTANCE;
+    private CoverageMap coverage;
+    // 所属 campaign 的参数组合权重，由覆盖率的增长更新
+    private final ComboWeightStore comboWeights;
+    // 启动插桩 mysqld 的命令，见 getDBMSCommand
+    private final List<String> dbmsCommand;
     private Process dbmsProcess = null;
     private final AtomicBoolean closed = new AtomicBoolean(false);
-    public static int testcaseNum=0;
 
-    private AFLMonitor() {
+    /**
+     * 每个使用覆盖率的 {@link Campaign} 一个实例，见 {@link Campaign#getCoverage()}。
+     */
+    AFLMonitor(ComboWeightStore comboWeights, List<String> dbmsCommand) {
+        this.comboWeights = comboWeights;
+        this.dbmsCommand = new ArrayList<>(dbmsCommand);
         if (!createSharedMemory()) {
             throw new IllegalStateException("共享内存初始化失败");
         }
@@ -56,6 +63,32 @@ public class AFLMonitor implements AutoCloseable {
 
     }
 
+    /**
+     * 覆盖率只来自插桩的 mysqld，因此只有 MySQL campaign 使用覆盖率。同时运行多个 campaign 时，各自以 --coverage-dbms-path、
+     * --port 和 --coverage-datadir 指定独立的 mysqld；共享内存以 IPC_PRIVATE 创建，每个实例一段。
+     *
+     * @return 启动插桩 mysqld 的命令；campaign 不使用覆盖率时返回 null
+     */
+    static List<String> getDBMSCommand(String dbmsName, MainOptions options) {
+        if (!"mysql".equals(dbmsName) || !options.useCoverage()) {
+            return null;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(options.getCoverageDBMSPath());
+        if (options.getPort() != MainOptions.NO_SET_PORT) {
+            // 端口、socket 与 X 协议端口都不能与其他 mysqld 相同
+            command.add("--port=" + options.getPort());
+            command.add("--socket=/tmp/mysqld-" + options.getPort() + ".sock");
+            command.add("--mysqlx=OFF");
+        }
+        String dataDirectory = options.getCoverageDataDirectory();
+        if (!dataDirectory.isEmpty()) {
+            command.add("--datadir=" + dataDirectory);
+            command.add("--pid-file=" + Paths.get(dataDirectory, "mysqld.pid"));
+        }
+        return command;
+    }
+
     private void silentClose() {
         try {
             close();
@@ -71,6 +104,19 @@ public class AFLMonitor implements AutoCloseable {
         return dbmsProcess != null && dbmsProcess.isAlive();
     }
 
+    /**
+     * 多个工作线程可能同时发现 DBMS 崩溃，只由第一个线程负责重启。
+     *
+     * @return 是否执行了重启
+     */
+    public synchronized boolean restartDBMSIfDead() throws InterruptedException {
+        if (isDBMSAlive()) {
+            return false;
+        }
+        restartDBMS();
+        return true;
+    }
+
     /**
      * 重新启动DBMS进程。如果现有进程正在运行，则先停止它。
      */
@@ -109,17 +155,6 @@ public class AFLMonitor implements AutoCloseable {
         }
         cleanup();
     }
-    public static AFLMonitor getInstance() {
-        if (INSTANCE == null) {
-            synchronized (AFLMonitor.class) {
-                if (INSTANCE == null) {
-                    INSTANCE = new AFLMonitor();
-                }
-            }
-        }
-        return INSTANCE;
-    }
-
     public boolean createSharedMemory() {
         shmId = CLib.INSTANCE.shmget(IPC_PRIVATE, AFL_MAP_SIZE, IPC_CREAT | 0777);
         if (shmId < 0) {
@@ -133,7 +168,8 @@ public class AFLMonitor implements AutoCloseable {
         }
         // 初始化置零
         clearCoverage();
-        CLib.INSTANCE.setenv(AFL_SHM_ENV_VAR, String.valueOf(shmId), 1);
+        coverage = new CoverageMap(shmPtr.getByteBuffer(0, AFL_MAP_SIZE), AFL_MAP_SIZE);
+        // 只传给本实例启动的 mysqld（见 startDBMS），不设置到进程环境中，以免覆盖其他 campaign 的共享内存
 
         System.out.println("=== MySQL AFL Coverage Monitor ===");
         System.out.println("Shared Memory ID: " + shmId);
@@ -150,13 +186,7 @@ public class AFLMonitor implements AutoCloseable {
 
      */
     public Process startDBMS() throws IOException {
-        java.util.List<String> cmd = new java.util.ArrayList<>();
-        cmd.add(DBMS_PATH);
-//        if (args != null && args.length > 0) {
-//            cmd.addAll(java.util.Arrays.asList(args));
-//        }
-
-        ProcessBuilder pb = new ProcessBuilder(cmd);
+        ProcessBuilder pb = new ProcessBuilder(dbmsCommand);
         java.util.Map<String,String> env = pb.environment();
         env.put(AFL_SHM_ENV_VAR, String.valueOf(shmId));
         env.put("AFL_MAP_SIZE", String.valueOf(AFL_MAP_SIZE));
@@ -171,46 +201,37 @@ public class AFLMonitor implements AutoCloseable {
 
     public void refreshBuffer() {
         if (shmPtr == null) return;
-        shmPtr.read(0, coverageBuf, 0, AFL_MAP_SIZE);
+        coverage.refresh();
+    }
+
+    public CoverageMap getCoverage() {
+        return coverage;
     }
 
+    /**
+     * 累计命中边占比，直接读取增量维护的计数，不扫描共享内存。
+     */
     public  double getCoverageRate(){
-        refreshBuffer();
-        int hitEdges = 0;
-        for (int i = 0; i < AFL_MAP_SIZE; i++) {
-            int v = coverageBuf[i] & 0xFF;
-            if (v > 0) {
-                hitEdges++;
-            }
-        }
-        return (double) hitEdges/AFL_MAP_SIZE;
+        return coverage.getCoverageRate();
     }
 
-    public void updateComWeight(List<BaseConfigurationGenerator.ConfigurationAction> actions){
-        byte[] oldCoverageBuf = coverageBuf.clone();
+    /**
+     * @param testcaseNum 该参数组合本轮执行的测试用例数
+     */
+    public void updateComWeight(List<BaseConfigurationGenerator.ConfigurationAction> actions, int testcaseNum){
         refreshBuffer();
-        int newEdges=0;
-        for (int i = 0; i < AFLMonitor.AFL_MAP_SIZE; i++) {
-            // 如果一个位置在执行前是0，而执行后非0，说明这是一条新发现的边
-            if (oldCoverageBuf[i] == 0 && coverageBuf[i] != 0) {
-                newEdges++;
-            }
-        }
-
-        // 1. 正确地从 List 创建 Set 作为键
-        Set<BaseConfigurationGenerator.ConfigurationAction> key = new HashSet<>(actions);
+        // 自上次更新权重以来首次被命中的边（virgin 位图）；多个工作线程共享同一张位图，新边记在先更新的组合上
+        int newEdges = coverage.drainNewEdges();
 
-        // 2. 使用这个键来获取 weight
-        Double weight = allParameterCombos.get(key);
+        // 1. 按参数序号查找组合的 id，不需要先构造 Set
+        int id = comboWeights.idOf(actions);
 
-        // 3. 检查 weight 是否为 null，避免 NullPointerException
-        if (weight != null) {
-            weight *= (1.0 + alpha * newEdges / (testcaseNum + 1.0));
-            // 4. 使用相同的键来更新 Map
-            allParameterCombos.replace(key, weight);
+        // 2. 检查组合是否存在，再按 id 更新权重（权重表内部加锁，可被多个线程同时更新）
+        if (id != -1) {
+            comboWeights.multiplyWeight(id, 1.0 + alpha * newEdges / (testcaseNum + 1.0));
         } else {
             // (可选) 处理键不存在的情况，例如打印日志
-            System.err.println("警告: 在 allParameterCombos 中未找到键: " + key);
+            System.err.println("警告: 在参数组合权重表中未找到键: " + actions);
         }
 
     }
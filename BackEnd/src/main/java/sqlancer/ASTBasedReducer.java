@@ -30,6 +30,10 @@ public class ASTBasedReducer<G extends GlobalState<O, ?, C>, O extends DBMSSpeci
     private List<Query<C>> reducedStatements;
     // statement after reduction.
 
+    private ReplayEngine<G, O, C> replayEngine;
+    // 正在变换的语句下标，之前的语句在各次尝试之间不变
+    private int currentIndex;
+
     public ASTBasedReducer(DatabaseProvider<G, O, C> provider) {
         this.provider = provider;
     }
@@ -78,67 +82,78 @@ public class ASTBasedReducer<G extends GlobalState<O, ?, C>, O extends DBMSSpeci
             reducedStatements.add((Query<C>) query);
         }
 
-        Instant startTime = Instant.now();
-        reduceProcess: do {
-            observeChange = false;
-            for (Transformation t : transformations) {
-                for (int i = 0; i < reducedStatements.size(); i++) {
-
-                    Instant currentTime = Instant.now();
-                    if (maxReduceTime != MainOptions.NO_REDUCE_LIMIT
-                            && Duration.between(startTime, currentTime).getSeconds() >= maxReduceTime) {
-                        break reduceProcess;
+        replayEngine = new ReplayEngine<>(provider, state.getOptions().getReducerSnapshots());
+        try {
+            Instant startTime = Instant.now();
+            reduceProcess: do {
+                observeChange = false;
+                for (Transformation t : transformations) {
+                    for (int i = 0; i < reducedStatements.size(); i++) {
+
+                        Instant currentTime = Instant.now();
+                        if (maxReduceTime != MainOptions.NO_REDUCE_LIMIT
+                                && Duration.between(startTime, currentTime).getSeconds() >= maxReduceTime) {
+                            break reduceProcess;
+                        }
+
+                        if (maxReduceSteps != MainOptions.NO_REDUCE_LIMIT
+                                && Transformation.getReduceSteps() >= maxReduceSteps) {
+                            break reduceProcess;
+                        }
+
+                        currentIndex = i;
+                        Query<?> query = reducedStatements.get(i);
+                        boolean initFlag = t.init(query.getQueryString());
+                        int index = i;
+                        t.setStatementChangedCallBack((statementString) -> {
+                            updateStatements(statementString, index);
+                        });
+
+                        if (!initFlag) {
+                            newGlobalState.getLogger()
+                                    .logReducer("warning: failed parsing the statement at transformer : " + t);
+                            continue;
+                        }
+                        t.apply();
+                        observeChange |= t.changed();
                     }
-
-                    if (maxReduceSteps != MainOptions.NO_REDUCE_LIMIT
-                            && Transformation.getReduceSteps() >= maxReduceSteps) {
-                        break reduceProcess;
-                    }
-
-                    Query<?> query = reducedStatements.get(i);
-                    boolean initFlag = t.init(query.getQueryString());
-                    int index = i;
-                    t.setStatementChangedCallBack((statementString) -> {
-                        updateStatements(statementString, index);
-                    });
-
-                    if (!initFlag) {
-                        newGlobalState.getLogger()
-                                .logReducer("warning: failed parsing the statement at transformer : " + t);
-                        continue;
-                    }
-                    t.apply();
-                    observeChange |= t.changed();
                 }
-            }
-        } while (observeChange);
+            } while (observeChange);
+        } finally {
+            // 变换或重放抛出异常时同样释放快照
+            replayEngine.close();
+        }
 
         newGlobalState.getState().setStatements(new ArrayList<>(reducedStatements));
         newGlobalState.getLogger().logReduced(newGlobalState.getState());
     }
 
+    /**
+     * 在快照上重现时再在空数据库上确认，写入日志的语句序列都能从空数据库重现 bug。
+     */
     public boolean bugStillTriggers() throws Exception {
-        try (C con2 = provider.createDatabase(newGlobalState)) {
-            newGlobalState.setConnection(con2);
-            List<Query<C>> candidateStatements = new ArrayList<>(reducedStatements);
-            newGlobalState.getState().setStatements(new ArrayList<>(candidateStatements));
-
-            for (Query<C> s : candidateStatements) {
-                try {
-                    s.execute(newGlobalState);
-                } catch (Throwable ignoredException) {
-                    // ignore
-                }
+        List<Query<C>> candidateStatements = new ArrayList<>(reducedStatements);
+        boolean bugStillTriggers;
+        try (C con2 = replayEngine.replay(newGlobalState, candidateStatements, currentIndex)) {
+            bugStillTriggers = reproduces(candidateStatements);
+        }
+        if (bugStillTriggers && replayEngine.restoredLastReplay()) {
+            try (C con3 = replayEngine.replayFromScratch(newGlobalState, candidateStatements)) {
+                bugStillTriggers = reproduces(candidateStatements);
             }
-            try {
-                if (reproducer.bugStillTriggers(newGlobalState)) {
-                    newGlobalState.getLogger().logReduced(newGlobalState.getState());
-                    return true;
-                }
-            } catch (Throwable ignoredException) {
+        }
+        if (bugStillTriggers) {
+            newGlobalState.getLogger().logReduced(newGlobalState.getState());
+        }
+        return bugStillTriggers;
+    }
 
-            }
+    private boolean reproduces(List<Query<C>> candidateStatements) {
+        newGlobalState.getState().setStatements(new ArrayList<>(candidateStatements));
+        try {
+            return reproducer.bugStillTriggers(newGlobalState);
+        } catch (Throwable ignoredException) {
+            return false;
         }
-        return false;
     }
 }
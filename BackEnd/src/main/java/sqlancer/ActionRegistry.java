@@ -0,0 +1,113 @@
+package sqlancer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sqlancer.BaseConfigurationGenerator.ConfigurationAction;
+
+/**
+ * 为配置参数分配稠密的序号（0, 1, 2, ...），并按名称建立哈希索引。
+ *
+ * 参数按名称驻留：名称相同的参数共用一个序号，先登记的对象作为该序号的代表。查找不加锁，登记新参数时加锁。
+ */
+public final class ActionRegistry {
+
+    private final Map<ConfigurationAction, Integer> byAction = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byName = new ConcurrentHashMap<>();
+    // 下标为序号，只在持有 this 时替换
+    private volatile ConfigurationAction[] actions = new ConfigurationAction[0];
+
+    public ActionRegistry() {
+    }
+
+    public ActionRegistry(ConfigurationAction... actions) {
+        for (ConfigurationAction action : actions) {
+            intern(action);
+        }
+    }
+
+    /**
+     * @return 参数的序号，必要时分配新序号
+     */
+    public int intern(ConfigurationAction action) {
+        int ordinal = ordinalOf(action);
+        if (ordinal != -1) {
+            return ordinal;
+        }
+        synchronized (this) {
+            Integer existing = byName.get(action.getName());
+            if (existing == null) {
+                existing = actions.length;
+                ConfigurationAction[] grown = Arrays.copyOf(actions, existing + 1);
+                grown[existing] = action;
+                byName.put(action.getName(), existing);
+                actions = grown;
+            }
+            byAction.put(action, existing);
+            return existing;
+        }
+    }
+
+    /**
+     * @return 参数的序号；未登记时返回 -1
+     */
+    public int ordinalOf(ConfigurationAction action) {
+        Integer ordinal = byAction.get(action);
+        if (ordinal == null) {
+            // 名称相同但不是同一个对象（例如 GenericAction 与委托给它的枚举）
+            ordinal = byName.get(action.getName());
+        }
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * @return 名称对应的序号；未登记时返回 -1
+     */
+    public int ordinalOf(String name) {
+        Integer ordinal = byName.get(name);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public ConfigurationAction get(int ordinal) {
+        return actions[ordinal];
+    }
+
+    /**
+     * @return 名称对应的参数；未登记时返回 null
+     */
+    public ConfigurationAction getByName(String name) {
+        Integer ordinal = byName.get(name);
+        return ordinal == null ? null : actions[ordinal];
+    }
+
+    public int size() {
+        return actions.length;
+    }
+
+    /**
+     * 将一组参数转换为按序号升序排列、去重后的数组。
+     *
+     * @param intern 为 false 时遇到未登记的参数返回 null
+     */
+    public int[] sortedOrdinals(Collection<? extends ConfigurationAction> combo, boolean intern) {
+        int[] ordinals = new int[combo.size()];
+        int n = 0;
+        for (ConfigurationAction action : combo) {
+            int ordinal = intern ? intern(action) : ordinalOf(action);
+            if (ordinal == -1) {
+                return null;
+            }
+            ordinals[n++] = ordinal;
+        }
+        Arrays.sort(ordinals);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || ordinals[i] != ordinals[distinct - 1]) {
+                ordinals[distinct++] = ordinals[i];
+            }
+        }
+        return distinct == n ? ordinals : Arrays.copyOf(ordinals, distinct);
+    }
+}
@@ -3,9 +3,11 @@ package sqlancer;
 import sqlancer.common.query.SQLQueryAdapter;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 public abstract class BaseConfigurationGenerator  {
     protected final Randomly r;
@@ -13,195 +15,247 @@ public abstract class BaseConfigurationGenerator  {
     protected boolean isSingleThreaded;
 
 
-    // 训练相关的静态变量
-    public static Map<ConfigurationAction, double[]> parameterFeatureProbabilities = new HashMap<>(1000);
-    public static Map<Set<ConfigurationAction>, Double> allParameterCombos= new HashMap<>(1000000);
-    public static Map<Set<ConfigurationAction>, Double> proParameterCombos= new HashMap<>(1000);
-    public static boolean isTrainingPhase = false;
+    // 按权重选择时只考虑权重最大的 TOP_K_COMBOS 个组合
+    public static final int TOP_K_COMBOS = 1000;
     public static final int TRAINING_SAMPLES = 4;
-    private double weightSum = 0.0;
-    public static List<ConfigurationAction> currentGeneratedActions = new ArrayList<>();
+    // 只允许 SESSION 作用域时，从加权 Top-K 中重新抽取组合的最大次数
+    private static final int MAX_SESSION_COMBO_TRIES = 100;
+    // 训练和配置测试的状态属于 --campaign 指定的 campaign，不同 campaign 互不共享
+    protected final Campaign campaign;
+    // 参数特性概率
+    protected final Map<ConfigurationAction, double[]> parameterFeatureProbabilities;
+    // 全部参数组合的权重，以及随权重更新实时维护的 Top-K（原 allParameterCombos / proParameterCombos）
+    protected final ComboWeightStore comboWeights;
+    private static final String FEATURE_WEIGHTS_SUFFIX = "_feature_weights";
+    private static final String CONFIG_WEIGHTS_SUFFIX = "_config_weights";
+    // 保存权重时是否同时导出文本格式
+    protected final boolean exportWeightsAsText;
+
+    // getAllActions() 的序号与名称索引，第一次使用时创建
+    private volatile ActionRegistry actionRegistry;
 
     public abstract ConfigurationAction[] getAllActions();
+
+    /**
+     * getAllActions() 中的参数按下标分配序号，名称到参数的查找为 O(1)。
+     */
+    public ActionRegistry getActionRegistry() {
+        ActionRegistry registry = actionRegistry;
+        if (registry == null) {
+            // getAllActions() 由子类实现，不能在构造函数中调用
+            registry = new ActionRegistry(getAllActions());
+            actionRegistry = registry;
+        }
+        return registry;
+    }
+
     public  ConfigurationAction getActionByName(String name) {
-            for (ConfigurationAction action : getAllActions()) {
-                    if (action.getName().equals(name)) {
-                        return action;
-                    }
-            }
-        return null;
+        return getActionRegistry().getByName(name);
     }
 
     /**
-     * 将 parameterFeatureProbabilities 的内容保存到文件。
-     * 文件格式为: actionName:prob1,prob2,prob3...
+     * 将 parameterFeatureProbabilities 的内容保存到二进制权重文件 {@code <filePath>_feature_weights.bin}，
+     * 开启 --export-weights-as-text 时同时导出文本格式（actionName:prob1,prob2,prob3...）。
      *
-     * @param filePath 要保存到的文件路径
+     * @param filePath 文件名前缀
      * @throws IOException 如果文件写入失败
      */
     public void saveParameterFeatureProbabilitiesToFile(String filePath) throws IOException {
-        filePath =filePath+ "_feature_weights.txt";
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            for (Map.Entry<ConfigurationAction, double[]> entry : parameterFeatureProbabilities.entrySet()) {
-                ConfigurationAction action = entry.getKey();
-                double[] probabilities = entry.getValue();
-
-                // 将 double 数组转换为逗号分隔的字符串
-                String probabilitiesString = Arrays.stream(probabilities)
-                        .mapToObj(String::valueOf)
-                        .collect(Collectors.joining(","));
-
-                // 写入文件
-                writer.write(action.getName() + ":" + probabilitiesString);
-                writer.newLine();
+        Path binary = Paths.get(filePath + FEATURE_WEIGHTS_SUFFIX + ".bin");
+        int nrSaved = writeParameterFeatureProbabilities(binary, parameterFeatureProbabilities);
+        System.out.println("成功将 " + nrSaved + " 个参数特性概率保存到 '" + binary + "'。");
+        if (exportWeightsAsText) {
+            Path text = Paths.get(filePath + FEATURE_WEIGHTS_SUFFIX + ".txt");
+            WeightFile.exportText(binary, text);
+            // 导出的文本与 .bin 内容相同，加载时不必重新转换
+            Files.setLastModifiedTime(binary, Files.getLastModifiedTime(text));
+        }
+    }
+
+    /**
+     * 将参数特性概率写入二进制权重文件。
+     *
+     * @return 写出的参数个数
+     */
+    static int writeParameterFeatureProbabilities(Path binary, Map<ConfigurationAction, double[]> probabilities)
+            throws IOException {
+        List<String> names = new ArrayList<>(probabilities.size());
+        List<int[]> keys = new ArrayList<>(probabilities.size());
+        List<double[]> values = new ArrayList<>(probabilities.size());
+        for (Map.Entry<ConfigurationAction, double[]> entry : probabilities.entrySet()) {
+            keys.add(new int[] { names.size() });
+            names.add(entry.getKey().getName());
+            values.add(entry.getValue());
+        }
+        WeightFile.write(binary, WeightFile.KIND_FEATURE_PROBABILITIES, names.toArray(new String[0]), keys, values);
+        return keys.size();
+    }
+
+    /**
+     * 将全部参数组合的权重写入二进制权重文件。各组合的权重逐个读取，写出期间其他线程可以继续更新权重。
+     *
+     * @return 写出的组合个数
+     */
+    static int writeComboWeights(Path binary, ComboWeightStore comboWeights) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int nrCombos = comboWeights.size();
+        List<int[]> keys = new ArrayList<>(nrCombos);
+        List<double[]> values = new ArrayList<>(nrCombos);
+        for (int id = 0; id < nrCombos; id++) {
+            Set<ConfigurationAction> combo = comboWeights.comboAt(id);
+            int[] key = new int[combo.size()];
+            int i = 0;
+            for (ConfigurationAction action : combo) {
+                key[i++] = dictionary.computeIfAbsent(action.getName(), name -> dictionary.size());
             }
+            keys.add(key);
+            values.add(new double[] { comboWeights.getWeight(id) });
         }
-        System.out.println("成功将 " + parameterFeatureProbabilities.size() + " 个参数特性概率保存到 '" + filePath + "'。");
+        WeightFile.write(binary, WeightFile.KIND_COMBO_WEIGHTS, dictionary.keySet().toArray(new String[0]), keys,
+                values);
+        return nrCombos;
     }
 
     /**
-     * 从文件中加载参数特性概率。
-     * 文件格式应为: actionName:prob1,prob2,prob3...
+     * 找到可加载的二进制权重文件：优先使用 .bin；只有 .txt，或 .txt 比 .bin 新（在外部重新生成过）时，先将 .txt 转换为 .bin。
      *
-     * @param filePath 权重文件的路径
+     * @return 二进制文件路径；两种文件都不存在时返回 null
+     */
+    static Path resolveWeightFile(String filePath, String suffix, short kind) throws IOException {
+        Path binary = Paths.get(filePath + suffix + ".bin");
+        Path text = Paths.get(filePath + suffix + ".txt");
+        boolean hasText = Files.exists(text);
+        if (Files.exists(binary)
+                && (!hasText || Files.getLastModifiedTime(text).compareTo(Files.getLastModifiedTime(binary)) <= 0)) {
+            return binary;
+        }
+        if (!hasText) {
+            return null;
+        }
+        int nrRecords = WeightFile.convertText(text, binary, kind);
+        System.out.println("已将文本权重文件 '" + text + "' 的 " + nrRecords + " 条记录转换为 '" + binary + "'。");
+        return binary;
+    }
+
+    /**
+     * 将权重文件的名称字典映射为当前的 Action，每个名称只查找一次；未找到的名称对应 null。
+     */
+    private ConfigurationAction[] resolveActions(WeightFile file) {
+        String[] names = file.getNames();
+        ConfigurationAction[] actions = new ConfigurationAction[names.length];
+        for (int i = 0; i < names.length; i++) {
+            actions[i] = getActionByName(names[i]);
+            if (actions[i] == null) {
+                System.err.println("警告: 未找到名为 '" + names[i] + "' 的 Action，相关记录将被忽略。");
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * 从权重文件中加载参数特性概率，优先读取 {@code <filePath>_feature_weights.bin}，
+     * 只有文本文件（actionName:prob1,prob2,prob3...）时先将其转换为二进制文件。
+     *
+     * @param filePath 文件名前缀
      * @throws IOException 如果文件读取失败
      */
     public boolean loadParameterFeatureProbabilitiesFromFile(String filePath) throws IOException {
         // 加载前清空当前的 Map
         parameterFeatureProbabilities.clear();
-        filePath =filePath+ "_feature_weights.txt";
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) { // 忽略空行和注释
-                    continue;
-                }
-
-                String[] parts = line.split(":");
-                if (parts.length != 2) {
-                    System.err.println("警告: 格式错误的行将被忽略: " + line);
-                    continue;
-                }
-
-                String actionName = parts[0].trim();
-                String probabilitiesPart = parts[1];
-
-                try {
-                    // 1. 根据名称查找 ConfigurationAction 对象
-                    ConfigurationAction action = getActionByName(actionName);
-                    if (action == null) {
-                        System.err.println("警告: 未找到名为 '" + actionName + "' 的 Action，该行将被忽略。");
-                        continue;
-                    }
-
-                    // 2. 解析概率字符串为 double 数组
-                    double[] probabilities = Arrays.stream(probabilitiesPart.split(","))
-                            .map(String::trim)
-                            .mapToDouble(Double::parseDouble)
-                            .toArray();
-
-                    // 3. 存入 parameterFeatureProbabilities
-                    parameterFeatureProbabilities.put(action, probabilities);
-
-                } catch (NumberFormatException e) {
-                    System.err.println("警告: 概率值格式错误，该行将被忽略: " + line);
-                } catch (Exception e) {
-                    System.err.println("警告: 处理行时发生未知错误，将被忽略: " + line + " - " + e.getMessage());
-                }
-            }
-        }catch(FileNotFoundException e){
-            System.err.println("警告: 未找到文件 '" + filePath + "'，无法加载参数特性概率。");
+        Path path = resolveWeightFile(filePath, FEATURE_WEIGHTS_SUFFIX, WeightFile.KIND_FEATURE_PROBABILITIES);
+        if (path == null) {
+            System.err.println("警告: 未找到文件 '" + filePath + FEATURE_WEIGHTS_SUFFIX + "'，无法加载参数特性概率。");
             return false;
         }
-        if(parameterFeatureProbabilities.isEmpty()) {
+        if (!readParameterFeatureProbabilities(path)) {
             return false;
         }
-
-        if(parameterFeatureProbabilities.values().iterator().next().length != getAllActions().length) {
-
+        if(parameterFeatureProbabilities.isEmpty()) {
+            return false;
         }
         if (parameterFeatureProbabilities.size() != getAllActions().length) {
             System.err.println("错误: 加载的参数数量与当前数量不匹配。");
             parameterFeatureProbabilities.clear();
             return false;
         }
-        System.out.println("成功从 '" + filePath + "' 加载了 " + parameterFeatureProbabilities.size() + " 个参数特性概率。");
+        System.out.println("成功从 '" + path + "' 加载了 " + parameterFeatureProbabilities.size() + " 个参数特性概率。");
         return true;
     }
 
     /**
-     * 从文件中加载参数组合的权重。
-     * 文件格式应为: action1,action2:weight
+     * 从权重文件中加载参数组合的权重，优先读取 {@code <filePath>_config_weights.bin}，
+     * 只有文本文件（action1,action2:weight）时先将其转换为二进制文件。
      *
-     * @param filePath 权重文件的路径
+     * @param filePath 文件名前缀
      * @throws IOException 如果文件读取失败
      */
-
     public  void loadWeightsFromFile(String filePath) throws IOException {
-        // 在加载新权重前，清空当前的 Map
-        allParameterCombos.clear();
-        filePath =filePath+ "_config_weights.txt";
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) { // 忽略空行和注释
-                    continue;
-                }
-
-                String[] parts = line.split(":");
-                if (parts.length != 2) {
-                    System.err.println("警告: 格式错误的行将被忽略: " + line);
-                    continue;
-                }
+        // 在加载新权重前，清空当前的权重表
+        comboWeights.clear();
+        Path path = resolveWeightFile(filePath, CONFIG_WEIGHTS_SUFFIX, WeightFile.KIND_COMBO_WEIGHTS);
+        if (path == null) {
+            System.err.println("警告: 未找到文件 '" + filePath + CONFIG_WEIGHTS_SUFFIX + "'，无法加载参数组合权重。");
+            return;
+        }
+        if (!readComboWeights(path)) {
+            return;
+        }
+        System.out.println("成功从 '" + path + "' 加载了 " + comboWeights.size() + " 个参数组合权重。");
+    }
+    /**
+     * 将二进制文件中的参数特性概率加入 parameterFeatureProbabilities，不检查参数是否齐全。
+     *
+     * @return 文件类型正确时为 true
+     */
+    boolean readParameterFeatureProbabilities(Path path) throws IOException {
+        WeightFile file = WeightFile.open(path);
+        if (file.getKind() != WeightFile.KIND_FEATURE_PROBABILITIES) {
+            System.err.println("错误: '" + path + "' 不是参数特性概率文件。");
+            return false;
+        }
+        ConfigurationAction[] actions = resolveActions(file);
+        int[] key = new int[Math.max(1, file.getArity())];
+        for (int record = 0; record < file.getNrRecords(); record++) {
+            if (file.getNameIndices(record, key) != 1 || actions[key[0]] == null) {
+                continue;
+            }
+            double[] probabilities = new double[file.getValueCount()];
+            for (int i = 0; i < probabilities.length; i++) {
+                probabilities[i] = file.getValue(record, i);
+            }
+            parameterFeatureProbabilities.put(actions[key[0]], probabilities);
+        }
+        return true;
+    }
 
-                String actionsPart = parts[0];
-                String weightPart = parts[1];
-
-                try {
-                    // 1. 解析权重
-                    double weight = Double.parseDouble(weightPart);
-
-                    // 2. 解析 Action 名称并转换为 Set<ConfigurationAction>
-                    // 使用提供的函数将名称映射到对象
-                    // 过滤掉未找到的 action
-                    Set<ConfigurationAction> actionSet = new HashSet<>();
-                    for (String s : actionsPart.split(",")) {
-                        String trim = s.trim();
-                        ConfigurationAction actionByName = getActionByName(trim);
-                        if (actionByName != null) {
-                            actionSet.add(actionByName);
-                        }
-                    }
-
-                    if (actionSet.isEmpty()) {
-                        System.err.println("警告: 未能从 '" + actionsPart + "' 中解析出任何有效的 Action，该行将被忽略。");
-                        continue;
-                    }
-
-                    // 3. 存入 allParameterCombos
-                    allParameterCombos.put(actionSet, weight);
-
-                } catch (NumberFormatException e) {
-                    System.err.println("警告: 权重值格式错误，该行将被忽略: " + line);
-                } catch (Exception e) {
-                    System.err.println("警告: 处理行时发生未知错误，将被忽略: " + line + " - " + e.getMessage());
+    /**
+     * 将二进制文件中的参数组合权重加入权重表。
+     *
+     * @return 文件类型正确时为 true
+     */
+    boolean readComboWeights(Path path) throws IOException {
+        WeightFile file = WeightFile.open(path);
+        if (file.getKind() != WeightFile.KIND_COMBO_WEIGHTS) {
+            System.err.println("错误: '" + path + "' 不是参数组合权重文件。");
+            return false;
+        }
+        ConfigurationAction[] actions = resolveActions(file);
+        int[] key = new int[Math.max(1, file.getArity())];
+        for (int record = 0; record < file.getNrRecords(); record++) {
+            int n = file.getNameIndices(record, key);
+            // 过滤掉未找到的 action；权重表按序号去重，这里不需要构造 Set
+            List<ConfigurationAction> combo = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                if (actions[key[i]] != null) {
+                    combo.add(actions[key[i]]);
                 }
             }
-        }catch(FileNotFoundException e){
-            System.err.println("警告: 未找到文件 '" + filePath + "'，无法加载参数特性概率。");
+            if (combo.isEmpty()) {
+                continue;
+            }
+            comboWeights.put(combo, file.getValue(record, 0));
         }
-        System.out.println("成功从 '" + filePath + "' 加载了 " + allParameterCombos.size() + " 个参数组合权重。");
-    }
-    /** 判断 a 是否比 b 更应该留在 Top-K（更大权重更好）。 */
-    private boolean isBetter(Map.Entry<?,Double> a, Map.Entry<?,Double> b) {
-        int cmp = Double.compare(a.getValue(), b.getValue());
-        if (cmp != 0) {
-            return cmp > 0;
-        }
-        // 权重相同：tieBreaker 更大者当作更好（只为稳定）
-        return proParameterCombos.containsKey(b.getKey()) ;
+        return true;
     }
 
     public enum Scope {
@@ -223,6 +277,7 @@ public abstract class BaseConfigurationGenerator  {
         private final String name;
         private final Function<Randomly, Object> producer;
         private final Scope[] scopes;
+        private final int hash;
 
         public GenericAction(String name, Function<Randomly, Object> producer, Scope... scopes) {
             if (scopes.length == 0) {
@@ -231,6 +286,7 @@ public abstract class BaseConfigurationGenerator  {
             this.name = name;
             this.producer = producer;
             this.scopes = scopes.clone();
+            this.hash = name.hashCode();
         }
         @Override
         public String getName() {
@@ -260,23 +316,25 @@ public abstract class BaseConfigurationGenerator  {
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
-            //if (o == null || getClass() != o.getClass()) return false;
-            ConfigurationAction that = (ConfigurationAction) o;
-            // 比较所有关键字段
-            if (!Objects.equals(name, that.getName())) return false;
-            return true;
+            // 参数以名称区分，可以与同名的其他 ConfigurationAction 实现相等
+            if (!(o instanceof ConfigurationAction)) return false;
+            return name.equals(((ConfigurationAction) o).getName());
         }
 
         @Override
         public int hashCode() {
-            // 使用相同的关键字段生成哈希码
-            return Objects.hash(name);
+            // 名称的哈希值在构造时计算一次
+            return hash;
         }
     }
 
     public BaseConfigurationGenerator(Randomly r, MainOptions options) {
         this.r = r;
         this.isSingleThreaded = options.getNumberConcurrentThreads() == 1;
+        this.exportWeightsAsText = options.exportWeightsAsText();
+        this.campaign = Campaign.of(options);
+        this.parameterFeatureProbabilities = campaign.getParameterFeatureProbabilities();
+        this.comboWeights = campaign.getComboWeights();
     }
 
 
@@ -284,8 +342,48 @@ public abstract class BaseConfigurationGenerator  {
     // 抽象方法，子类必须实现
     protected abstract String getDatabaseType();
     protected abstract String getActionName(Object action);
-    public abstract SQLQueryAdapter generateConfigForParameter( ConfigurationAction action);
-    public abstract SQLQueryAdapter generateDefaultConfigForParameter( ConfigurationAction action);
+    public abstract SQLQueryAdapter generateConfigForParameter(ConfigurationAction action, Scope scope, Randomly r);
+    public abstract SQLQueryAdapter generateDefaultConfigForParameter(ConfigurationAction action, Scope scope);
+
+    public SQLQueryAdapter generateConfigForParameter(ConfigurationAction action) {
+        return generateConfigForParameter(action, chooseScope(action, true), r);
+    }
+
+    public SQLQueryAdapter generateDefaultConfigForParameter(ConfigurationAction action) {
+        return generateDefaultConfigForParameter(action, getDefaultScope(action, true));
+    }
+
+    /**
+     * 为参数随机选择一个作用域；不允许 GLOBAL 时固定为 SESSION。
+     */
+    public Scope chooseScope(ConfigurationAction action, boolean globalAllowed) {
+        if (globalAllowed) {
+            return Randomly.fromOptions(action.getScopes());
+        }
+        if (!action.canBeUsedInScope(Scope.SESSION)) {
+            throw new AssertionError("Action cannot be used in SESSION scope: " + action.getName());
+        }
+        return Scope.SESSION;
+    }
+
+    /**
+     * 恢复默认值时使用的作用域：支持 GLOBAL 的参数默认恢复 GLOBAL 值，不允许 GLOBAL 时恢复 SESSION 值。
+     */
+    public Scope getDefaultScope(ConfigurationAction action, boolean globalAllowed) {
+        if (globalAllowed && action.canBeUsedInScope(Scope.GLOBAL)) {
+            return Scope.GLOBAL;
+        }
+        return chooseScope(action, false);
+    }
+
+    public static boolean canBeUsedInSession(Collection<ConfigurationAction> actions) {
+        for (ConfigurationAction action : actions) {
+            if (!action.canBeUsedInScope(Scope.SESSION)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
 //
 //    public void calculateParameterWeights() {
@@ -340,67 +438,73 @@ public abstract class BaseConfigurationGenerator  {
 //    }
 
     private List<ConfigurationAction> selectActionsByWeight() {
-
-        double random = Randomly.getPercentage() * weightSum;
-        double cumulativeProbability = 0.0;
-
-        for (Set<ConfigurationAction> actions : proParameterCombos.keySet()) {
-
-            double probability = proParameterCombos
-                    .getOrDefault(actions, 1.0 / proParameterCombos.size());
-            cumulativeProbability += probability;
-
-            if (random <= cumulativeProbability) {
-                return new ArrayList<>(actions);
+        // 在 Top-K 上按实时权重抽样，O(log n)
+        int id = comboWeights.sampleTopK(Randomly.getPercentage());
+        if (id == -1) {
+            ComboWeightStore.TopK topK = comboWeights.getTopK();
+            if (topK.isEmpty()) {
+                throw new AssertionError("no parameter combination weights are available");
             }
+            // 权重全为 0 时等概率选择
+            id = topK.idAt((int) Randomly.getNotCachedInteger(0, topK.size()));
         }
-        Set randomActionSet = Randomly.fromOptions(proParameterCombos.keySet().toArray(new Set[0]));
-        return new ArrayList<>(randomActionSet);
+        return new ArrayList<>(comboWeights.comboAt(id));
     }
 
-    public void generateActions() {
-        if(Randomly.getBooleanWithSmallProbability()) {
-            Set randomActionSet = Randomly.fromOptions(allParameterCombos.keySet().toArray(new Set[0]));
-            while (proParameterCombos.containsKey(randomActionSet)) {
-                randomActionSet = Randomly.fromOptions(allParameterCombos.keySet().toArray(new Set[0]));
-            }
-            currentGeneratedActions= new ArrayList<>(randomActionSet);
+    public List<ConfigurationAction> generateActions() {
+        return generateActions(true);
+    }
+
+    /**
+     * 选择下一个要测试的参数组合。权重表由各工作线程共享，本方法不需要额外加锁。
+     *
+     * @param globalAllowed 为 false 时只返回所有参数都支持 SESSION 作用域的组合
+     */
+    public List<ConfigurationAction> generateActions(boolean globalAllowed) {
+        List<ConfigurationAction> actions;
+        if (Randomly.getBooleanWithSmallProbability()) {
+            actions = selectRandomActions(globalAllowed);
         } else {
-            currentGeneratedActions= selectActionsByWeight();
+            actions = selectActionsByWeight(globalAllowed);
         }
+        campaign.setCurrentGeneratedActions(actions);
+        return actions;
     }
-    public void topKSnapshot(int k) {
-        // 最小堆：堆顶是当前 Top-K 里最小的那个
-        weightSum=0.0;
-        PriorityQueue<Map.Entry<Set<ConfigurationAction>,Double>> minHeap = new PriorityQueue<>(
-                Comparator.comparingDouble(Map.Entry::getValue)
-        );
-
-        // tieBreaker 用 System.identityHashCode 防止大量相同 weight 时比较器不稳定导致异常
-        for (Map.Entry<Set<ConfigurationAction>, Double> e : allParameterCombos.entrySet()) {
-            Set<ConfigurationAction> id = e.getKey();
-            double w = e.getValue() == null ? 0.0 : e.getValue();
 
-
-
-            if (minHeap.size() < k) {
-                minHeap.offer(e);
-            } else if (isBetter(e, minHeap.peek())) {
-                minHeap.poll();
-                minHeap.offer(e);
+    /**
+     * 随机选择一个不在 Top-K 中的组合；找不到时退回按权重选择。
+     */
+    private List<ConfigurationAction> selectRandomActions(boolean globalAllowed) {
+        ComboWeightStore.TopK topK = comboWeights.getTopK();
+        int nrCombos = comboWeights.size();
+        if (nrCombos > topK.size()) {
+            for (int i = 0; i < MAX_SESSION_COMBO_TRIES; i++) {
+                int id = (int) Randomly.getNotCachedInteger(0, nrCombos);
+                Set<ConfigurationAction> combo = comboWeights.comboAt(id);
+                if (!topK.contains(id) && (globalAllowed || canBeUsedInSession(combo))) {
+                    return new ArrayList<>(combo);
+                }
             }
         }
+        return selectActionsByWeight(globalAllowed);
+    }
 
-
-        Map<Set<ConfigurationAction>, Double> top = new HashMap<>(minHeap.size());
-        for (Map.Entry<Set<ConfigurationAction>, Double> e : minHeap) {
-            weightSum += e.getValue();
-            top.put(e.getKey(), e.getValue());
+    private List<ConfigurationAction> selectActionsByWeight(boolean globalAllowed) {
+        for (int i = 0; i < MAX_SESSION_COMBO_TRIES; i++) {
+            List<ConfigurationAction> actions = selectActionsByWeight();
+            if (globalAllowed || canBeUsedInSession(actions)) {
+                return actions;
+            }
         }
-
-        proParameterCombos.clear();
-        proParameterCombos.putAll(top);
-
+        List<Set<ConfigurationAction>> candidates = new ArrayList<>();
+        for (int id = 0; id < comboWeights.size(); id++) {
+            if (canBeUsedInSession(comboWeights.comboAt(id))) {
+                candidates.add(comboWeights.comboAt(id));
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new AssertionError("no parameter combination can be used in SESSION scope");
+        }
+        return new ArrayList<>(Randomly.fromList(candidates));
     }
 }
-
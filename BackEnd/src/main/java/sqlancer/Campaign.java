@@ -0,0 +1,320 @@
+package sqlancer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 一个测试活动（campaign）的状态：参数组合权重、参数特性概率、配置生成器、检查点、日志目录、覆盖率来源和遥测通道。
+ *
+ * 不同 campaign 的状态互不共享，同一进程中可以同时测试多个 DBMS。campaign 以 --campaign 的名称区分，执行计数见
+ * {@link MetricsRegistry} 中的 campaign 标签；同名的 campaign 再次启动时沿用内存中的权重。
+ */
+public final class Campaign {
+
+    public static final String DEFAULT_ID = "default";
+    // 名称用作日志与检查点的子目录名
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final Map<String, Campaign> CAMPAIGNS = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final ComboWeightStore comboWeights = new ComboWeightStore(BaseConfigurationGenerator.TOP_K_COMBOS);
+    // 检查点线程会在训练线程写入的同时读取，因此使用 ConcurrentHashMap
+    private final Map<BaseConfigurationGenerator.ConfigurationAction, double[]> parameterFeatureProbabilities = new ConcurrentHashMap<>(
+            1000);
+    private final TelemetryChannel telemetry = new TelemetryChannel();
+    private final AtomicLong threadsShutdown = new AtomicLong();
+    // 最近一次生成的参数组合，供状态接口展示；各工作线程使用 generateActions() 的返回值
+    private volatile List<BaseConfigurationGenerator.ConfigurationAction> currentGeneratedActions = Collections
+            .emptyList();
+    private volatile boolean trainingPhase;
+    private volatile String dbmsName = "";
+    private volatile int nrWorkers;
+    private volatile long startMillis = System.currentTimeMillis();
+    // begin() 时的计数快照；同一 campaign 再次启动时，本次运行的计数从这里算起
+    private volatile MetricsRegistry.Snapshot runBaseline;
+    // 所有配置测试线程共享同一个配置生成器，第一次使用时创建
+    private BaseConfigurationGenerator configGenerator;
+    // 当前运行的检查点，未启用时为 null
+    private volatile Checkpointer checkpointer;
+    private volatile AFLMonitor coverage;
+    // 启动插桩 DBMS 的命令，为 null 时本 campaign 不使用覆盖率
+    private volatile List<String> coverageCommand;
+    private ScheduledFuture<?> telemetryPublisher;
+
+    private Campaign(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return 名称为 options.getCampaign() 的 campaign，不存在时创建
+     * @throws IllegalArgumentException
+     *             名称不是 1 到 64 个字母、数字、下划线或连字符
+     */
+    public static Campaign of(MainOptions options) {
+        return getOrCreate(options.getCampaign());
+    }
+
+    public static Campaign getOrCreate(String id) {
+        if (!isValidId(id)) {
+            throw new IllegalArgumentException("invalid campaign name: " + id);
+        }
+        return CAMPAIGNS.computeIfAbsent(id, Campaign::new);
+    }
+
+    public static Campaign getDefault() {
+        return getOrCreate(DEFAULT_ID);
+    }
+
+    /**
+     * @return 已创建的 campaign，不存在时为 null
+     */
+    public static Campaign get(String id) {
+        return CAMPAIGNS.get(id);
+    }
+
+    public static List<Campaign> getAll() {
+        return new ArrayList<>(CAMPAIGNS.values());
+    }
+
+    public static boolean isValidId(String id) {
+        return id != null && VALID_ID.matcher(id).matches();
+    }
+
+    /**
+     * 开始一次运行：记录 DBMS 与工作线程数，重新计算运行时长、已结束的线程数和本次运行的计数（见 {@link #getRunTotal}）。
+     */
+    void begin(String dbmsName, int nrWorkers) {
+        this.dbmsName = dbmsName;
+        this.nrWorkers = nrWorkers;
+        threadsShutdown.set(0);
+        runBaseline = MetricsRegistry.getInstance().snapshot();
+        startMillis = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDbmsName() {
+        return dbmsName;
+    }
+
+    public int getNrWorkers() {
+        return nrWorkers;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public boolean isRunning() {
+        return threadsShutdown.get() < nrWorkers;
+    }
+
+    public AtomicLong getThreadsShutdown() {
+        return threadsShutdown;
+    }
+
+    public ComboWeightStore getComboWeights() {
+        return comboWeights;
+    }
+
+    public Map<BaseConfigurationGenerator.ConfigurationAction, double[]> getParameterFeatureProbabilities() {
+        return parameterFeatureProbabilities;
+    }
+
+    public List<BaseConfigurationGenerator.ConfigurationAction> getCurrentGeneratedActions() {
+        return currentGeneratedActions;
+    }
+
+    void setCurrentGeneratedActions(List<BaseConfigurationGenerator.ConfigurationAction> actions) {
+        currentGeneratedActions = Collections.unmodifiableList(actions);
+    }
+
+    public boolean isTrainingPhase() {
+        return trainingPhase;
+    }
+
+    void setTrainingPhase(boolean trainingPhase) {
+        this.trainingPhase = trainingPhase;
+    }
+
+    public TelemetryChannel getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * @return 日志目录，默认 campaign 为 logs，其他 campaign 为 logs/<名称>
+     */
+    public File getLogDirectory() {
+        return DEFAULT_ID.equals(id) ? Main.LOG_DIRECTORY : new File(Main.LOG_DIRECTORY, id);
+    }
+
+    /**
+     * @return 检查点目录，默认 campaign 为 --checkpoint-dir/<DBMS>，其他 campaign 为 --checkpoint-dir/<名称>/<DBMS>
+     */
+    public Path getCheckpointDirectory(MainOptions options, String dbmsName) {
+        return DEFAULT_ID.equals(id) ? Paths.get(options.getCheckpointDirectory(), dbmsName)
+                : Paths.get(options.getCheckpointDirectory(), id, dbmsName);
+    }
+
+    /**
+     * 设置本 campaign 的覆盖率来源，见 {@link AFLMonitor#getDBMSCommand}。命令与之前不同时关闭已创建的来源。
+     */
+    synchronized void configureCoverage(List<String> command) {
+        if (Objects.equals(command, coverageCommand)) {
+            return;
+        }
+        try {
+            closeCoverage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        coverageCommand = command;
+    }
+
+    /**
+     * @return 本 campaign 的覆盖率来源，第一次调用时创建（会启动插桩的 DBMS）；不使用覆盖率时为 null
+     */
+    public AFLMonitor getCoverage() {
+        AFLMonitor monitor = coverage;
+        if (monitor == null) {
+            synchronized (this) {
+                monitor = coverage;
+                if (monitor == null && coverageCommand != null) {
+                    monitor = new AFLMonitor(comboWeights, coverageCommand);
+                    coverage = monitor;
+                }
+            }
+        }
+        return monitor;
+    }
+
+    /**
+     * @return 已创建的覆盖率来源；尚未创建时返回 null，不会因此启动 DBMS
+     */
+    public AFLMonitor getCoverageIfCreated() {
+        return coverage;
+    }
+
+    public double getCoverageRate() {
+        AFLMonitor monitor = coverage;
+        return monitor == null ? 0 : monitor.getCoverageRate();
+    }
+
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * 停止定时写出并写出最后一个检查点。
+     */
+    void closeCheckpointer() {
+        Checkpointer cp = checkpointer;
+        if (cp != null) {
+            cp.close();
+            checkpointer = null;
+        }
+    }
+
+    /**
+     * 第一次使用时创建配置生成器；指定 --resume-from-checkpoint 时从检查点恢复，否则加载权重文件。
+     */
+    synchronized BaseConfigurationGenerator getConfigurationGenerator(GlobalState<?, ?, ?> state) throws IOException {
+        if (configGenerator == null) {
+            BaseConfigurationGenerator generator = GeneralConfigurationGenerator
+                    .createGenerator(state.getDbmsSpecificOptions().getClass(), state);
+            Checkpointer cp = checkpointer;
+            if (cp == null || !cp.restoreComboWeights(generator)) {
+                generator.loadWeightsFromFile(generator.getDatabaseType());
+            }
+            // 配置测试需要所有参数的特性概率，检查点中的不齐全时改为加载权重文件
+            if (cp == null || cp.restoreFeatureProbabilities(generator) != generator.getAllActions().length) {
+                generator.loadParameterFeatureProbabilitiesFromFile(generator.getDatabaseType());
+            }
+            if (cp != null) {
+                cp.restoreCoverage();
+            }
+            configGenerator = generator;
+        }
+        return configGenerator;
+    }
+
+    /**
+     * 丢弃内存中的配置生成器，下次使用时重新加载权重。
+     */
+    synchronized void resetConfigurationGenerator() {
+        configGenerator = null;
+    }
+
+    /**
+     * 替换本 campaign 的遥测发布任务，取消上一次运行的任务。
+     */
+    synchronized void setTelemetryPublisher(ScheduledFuture<?> publisher) {
+        if (telemetryPublisher != null) {
+            telemetryPublisher.cancel(false);
+        }
+        telemetryPublisher = publisher;
+    }
+
+    /**
+     * @return 标签属于本 campaign 时为 true
+     */
+    public boolean owns(MetricsRegistry.Tags tags) {
+        return id.equals(tags.getCampaign());
+    }
+
+    /**
+     * @return 本 campaign 所有工作线程上 counter 的当前总和
+     */
+    public long getTotal(MetricsRegistry.Counter counter) {
+        return MetricsRegistry.getInstance().getTotal(counter, this::owns);
+    }
+
+    /**
+     * @return 本次运行（最近一次 {@link #begin} 之后）本 campaign 所有工作线程上 counter 的总和
+     */
+    public long getRunTotal(MetricsRegistry.Counter counter) {
+        MetricsRegistry.Snapshot baseline = runBaseline;
+        long total = getTotal(counter);
+        return baseline == null ? total : total - baseline.get(counter, this::owns);
+    }
+
+    /**
+     * @return 快照 current 中，本 campaign 满足 filter 的标签在本次运行中的 counter 总和
+     */
+    public long getRunCount(MetricsRegistry.Snapshot current, MetricsRegistry.Counter counter,
+            Predicate<MetricsRegistry.Tags> filter) {
+        Predicate<MetricsRegistry.Tags> ofCampaign = filter.and(this::owns);
+        MetricsRegistry.Snapshot baseline = runBaseline;
+        long count = current.get(counter, ofCampaign);
+        return baseline == null ? count : count - baseline.get(counter, ofCampaign);
+    }
+
+    /**
+     * 关闭覆盖率来源（停止插桩的 DBMS），下次 {@link #getCoverage()} 时重新创建。
+     */
+    synchronized void closeCoverage() throws InterruptedException {
+        AFLMonitor monitor = coverage;
+        if (monitor != null) {
+            coverage = null;
+            monitor.close();
+        }
+    }
+}
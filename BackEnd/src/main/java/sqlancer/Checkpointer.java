@@ -0,0 +1,382 @@
+package sqlancer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 训练状态的检查点：参数组合权重、已训练完成的参数特性概率、正在训练的参数的 {@link ParameteraAwareGenerator} 计数，
+ * 以及累计的覆盖率（virgin）位图。
+ *
+ * 检查点由后台线程按固定间隔写出，工作线程不暂停：组合权重逐个读取，训练计数由训练线程在每轮样本结束时发布一份副本。
+ * 每个检查点先写入临时目录，写完后原子重命名为 {@code checkpoint-<时间戳>}，因此崩溃时最多丢失一个间隔内的进度。
+ */
+public final class Checkpointer implements AutoCloseable {
+
+    private static final String PREFIX = "checkpoint-";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String COMBO_WEIGHTS = "config_weights.bin";
+    private static final String FEATURE_WEIGHTS = "feature_weights.bin";
+    private static final String COVERAGE = "coverage.bin";
+    private static final String TRAINING = "training.bin";
+    // "SQCV"
+    private static final int COVERAGE_MAGIC = 0x53514356;
+    // 保留的检查点个数
+    private static final int NR_KEPT = 2;
+
+    private final Campaign campaign;
+    private final Path directory;
+    private final long intervalSeconds;
+    // 要恢复的检查点；未要求恢复或没有检查点时为 null
+    private final Path resumeFrom;
+    private ScheduledExecutorService scheduler;
+    private volatile TrainingProgress training;
+    private long lastTimestamp;
+    private boolean coverageRestored;
+    private boolean trainingRestored;
+
+    /**
+     * @param campaign 保存和恢复其权重与覆盖率的 campaign
+     * @param directory 检查点目录，每个 campaign 的每个 DBMS 一个
+     * @param intervalSeconds 两次检查点之间的秒数，0 表示只在 {@link #close()} 时写出
+     * @param resume 是否从 directory 中最新的检查点恢复
+     */
+    public Checkpointer(Campaign campaign, Path directory, long intervalSeconds, boolean resume) throws IOException {
+        this.campaign = campaign;
+        this.directory = directory;
+        this.intervalSeconds = intervalSeconds;
+        this.resumeFrom = resume ? findLatest(directory) : null;
+        if (resume) {
+            if (resumeFrom == null) {
+                System.err.println("警告: '" + directory + "' 中没有检查点，将从头开始。");
+            } else {
+                System.out.println("将从检查点 '" + resumeFrom + "' 恢复。");
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (intervalSeconds <= 0 || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 正在训练的参数的进度。计数是训练线程发布时的副本，之后不再修改。
+     */
+    public static final class TrainingProgress {
+
+        private final String actionName;
+        private final int completedSamples;
+        private final ParameteraAwareGenerator counts;
+
+        TrainingProgress(String actionName, int completedSamples, ParameteraAwareGenerator counts) {
+            this.actionName = actionName;
+            this.completedSamples = completedSamples;
+            this.counts = counts;
+        }
+
+        public String getActionName() {
+            return actionName;
+        }
+
+        public int getCompletedSamples() {
+            return completedSamples;
+        }
+
+        public ParameteraAwareGenerator getCounts() {
+            return counts;
+        }
+    }
+
+    /**
+     * 训练线程在开始训练一个参数以及每完成一轮样本时调用。
+     *
+     * @param counts 计数的副本，见 {@link ParameteraAwareGenerator#copy()}
+     */
+    public void publishTraining(String actionName, int completedSamples, ParameteraAwareGenerator counts) {
+        training = new TrainingProgress(actionName, completedSamples, counts);
+    }
+
+    /**
+     * 参数训练正常结束，它的特性概率从下一个检查点起作为已完成的结果写出。
+     */
+    public void finishTraining(String actionName) {
+        TrainingProgress progress = training;
+        if (progress != null && progress.actionName.equals(actionName)) {
+            training = null;
+        }
+    }
+
+    /**
+     * 立即写出一个检查点。
+     *
+     * @return 检查点目录；没有可保存的状态时返回 null
+     */
+    public synchronized Path checkpoint() throws IOException {
+        TrainingProgress progress = training;
+        Map<BaseConfigurationGenerator.ConfigurationAction, double[]> features = new HashMap<>(
+                campaign.getParameterFeatureProbabilities());
+        if (progress != null) {
+            // 正在训练的参数只保存计数，概率等训练结束后再保存
+            features.keySet().removeIf(action -> action.getName().equals(progress.actionName));
+        }
+        AFLMonitor monitor = campaign.getCoverageIfCreated();
+        CoverageMap coverage = monitor == null ? null : monitor.getCoverage();
+        ComboWeightStore comboWeights = campaign.getComboWeights();
+        if (comboWeights.isEmpty() && features.isEmpty() && progress == null && coverage == null) {
+            return null;
+        }
+        Files.createDirectories(directory);
+        lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+        String name = PREFIX + lastTimestamp;
+        Path tmp = directory.resolve(name + TMP_SUFFIX);
+        Files.createDirectories(tmp);
+        if (!comboWeights.isEmpty()) {
+            BaseConfigurationGenerator.writeComboWeights(tmp.resolve(COMBO_WEIGHTS), comboWeights);
+        }
+        if (!features.isEmpty()) {
+            BaseConfigurationGenerator.writeParameterFeatureProbabilities(tmp.resolve(FEATURE_WEIGHTS), features);
+        }
+        if (coverage != null) {
+            writeCoverage(tmp.resolve(COVERAGE), coverage);
+        }
+        if (progress != null) {
+            writeTraining(tmp.resolve(TRAINING), progress);
+        }
+        Path target = directory.resolve(name);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        deleteOldCheckpoints();
+        return target;
+    }
+
+    private void checkpointQuietly() {
+        try {
+            Path path = checkpoint();
+            if (path != null) {
+                System.out.println("已写出检查点 '" + path + "'。");
+            }
+        } catch (IOException | RuntimeException e) {
+            // 不让异常终止定时任务，下一个间隔再试
+            System.err.println("写出检查点失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 从检查点恢复参数组合权重。
+     *
+     * @return 恢复了至少一个组合时为 true；否则权重表不变，调用方应从权重文件加载
+     */
+    public boolean restoreComboWeights(BaseConfigurationGenerator generator) throws IOException {
+        Path path = resumeFrom == null ? null : resumeFrom.resolve(COMBO_WEIGHTS);
+        if (path == null || !Files.exists(path)) {
+            return false;
+        }
+        ComboWeightStore comboWeights = campaign.getComboWeights();
+        comboWeights.clear();
+        generator.readComboWeights(path);
+        System.out.println("成功从检查点恢复了 " + comboWeights.size() + " 个参数组合权重。");
+        return !comboWeights.isEmpty();
+    }
+
+    /**
+     * 从检查点恢复已训练完成的参数特性概率，参数可能不齐全。
+     *
+     * @return 恢复的参数个数
+     */
+    public int restoreFeatureProbabilities(BaseConfigurationGenerator generator) throws IOException {
+        Path path = resumeFrom == null ? null : resumeFrom.resolve(FEATURE_WEIGHTS);
+        if (path == null || !Files.exists(path)) {
+            return 0;
+        }
+        Map<BaseConfigurationGenerator.ConfigurationAction, double[]> parameterFeatureProbabilities = campaign
+                .getParameterFeatureProbabilities();
+        parameterFeatureProbabilities.clear();
+        generator.readParameterFeatureProbabilities(path);
+        System.out.println("成功从检查点恢复了 " + parameterFeatureProbabilities.size() + " 个参数特性概率。");
+        return parameterFeatureProbabilities.size();
+    }
+
+    /**
+     * 从检查点恢复累计覆盖率，只执行一次。会在需要时创建 {@link AFLMonitor}；campaign 不使用覆盖率时忽略。
+     */
+    public synchronized void restoreCoverage() throws IOException {
+        Path path = resumeFrom == null ? null : resumeFrom.resolve(COVERAGE);
+        if (coverageRestored || path == null || !Files.exists(path)) {
+            return;
+        }
+        coverageRestored = true;
+        AFLMonitor monitor = campaign.getCoverage();
+        if (monitor == null) {
+            return;
+        }
+        CoverageMap coverage = monitor.getCoverage();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != COVERAGE_MAGIC) {
+                throw new IOException("not a coverage checkpoint: " + path);
+            }
+            int mapSize = in.readInt();
+            if (mapSize != coverage.getMapSize()) {
+                System.err.println("警告: 检查点的覆盖率位图大小 " + mapSize + " 与当前 " + coverage.getMapSize() + " 不一致，已忽略。");
+                return;
+            }
+            long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            coverage.restoreVirginBits(bits);
+        }
+        System.out.println("成功从检查点恢复了 " + coverage.getHitEdges() + " 条已覆盖的边。");
+    }
+
+    /**
+     * 取出检查点中该参数未完成的训练进度，只能取出一次。
+     *
+     * @return 训练进度；检查点中正在训练的不是该参数时返回 null
+     */
+    public synchronized TrainingProgress takeTrainingProgress(String actionName,
+            Class<? extends ExpressionAction> actionClass) throws IOException {
+        Path path = resumeFrom == null ? null : resumeFrom.resolve(TRAINING);
+        if (trainingRestored || path == null || !Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (!in.readUTF().equals(actionName)) {
+                return null;
+            }
+            trainingRestored = true;
+            int completedSamples = in.readInt();
+            ParameteraAwareGenerator counts = ParameteraAwareGenerator.readCounts(in, actionClass);
+            System.out.println("参数 " + actionName + " 从检查点继续训练，已完成 " + completedSamples + " 轮样本。");
+            return new TrainingProgress(actionName, completedSamples, counts);
+        }
+    }
+
+    private static void writeCoverage(Path path, CoverageMap coverage) throws IOException {
+        long[] bits = coverage.copyVirginBits();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(COVERAGE_MAGIC);
+            out.writeInt(coverage.getMapSize());
+            out.writeInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private static void writeTraining(Path path, TrainingProgress progress) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeUTF(progress.actionName);
+            out.writeInt(progress.completedSamples);
+            progress.counts.writeCounts(out);
+        }
+    }
+
+    /**
+     * @return 最新的完整检查点；没有时返回 null
+     */
+    static Path findLatest(Path directory) throws IOException {
+        List<Path> checkpoints = listCheckpoints(directory);
+        return checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+    }
+
+    /**
+     * @return 完整的检查点，按时间戳升序；写了一半的临时目录不包括在内
+     */
+    private static List<Path> listCheckpoints(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(Files::isDirectory).filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && !name.endsWith(TMP_SUFFIX);
+            }).sorted(Comparator.comparingLong(Checkpointer::timestampOf)).collect(Collectors.toList());
+        }
+    }
+
+    private static long timestampOf(Path checkpoint) {
+        try {
+            return Long.parseLong(checkpoint.getFileName().toString().substring(PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void deleteOldCheckpoints() throws IOException {
+        List<Path> checkpoints = listCheckpoints(directory);
+        for (int i = 0; i < checkpoints.size() - NR_KEPT; i++) {
+            if (checkpoints.get(i).equals(resumeFrom)) {
+                // 恢复过程中仍可能读取该检查点
+                continue;
+            }
+            deleteRecursively(checkpoints.get(i));
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 停止定时任务并写出最后一个检查点。调用线程处于中断状态时也会写出（写文件的通道会被中断关闭，因此先暂时清除中断标记）。
+     */
+    @Override
+    public void close() {
+        boolean interrupted = Thread.interrupted();
+        ScheduledExecutorService s;
+        synchronized (this) {
+            s = scheduler;
+            scheduler = null;
+        }
+        try {
+            if (s != null) {
+                s.shutdown();
+                s.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            checkpointQuietly();
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
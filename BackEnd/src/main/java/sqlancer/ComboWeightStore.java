@@ -0,0 +1,494 @@
+package sqlancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleUnaryOperator;
+
+import sqlancer.BaseConfigurationGenerator.ConfigurationAction;
+
+/**
+ * 参数组合权重表，可被多个测试线程与 Web 线程并发访问。
+ *
+ * 每个参数组合被分配一个稠密的 id（0, 1, 2, ...），权重以 double 的位模式存放在 {@link AtomicLongArray} 中，读写都不加锁：
+ * 更新以 CAS 完成，扩容时把旧数组中已复制的位置标记为 {@link #MOVED}，写入方看到后改在新数组上重试。
+ * 组合按参数序号（见 {@link ActionRegistry}）索引：序号都小于 64 时键是一个 long 位图，否则是升序的 int[]，
+ * 查找 id 时不需要构造 HashSet，也不需要逐个计算参数的哈希值。
+ * Top-K 由两个 {@link IndexedHeap} 增量维护，以不可变的 {@link TopK} 整体发布（写时复制）；按权重抽样使用 {@link FenwickSampler}。
+ * 权重更新只把 id 放入待处理队列，堆与抽样树在抽样、读取 Top-K 时（或队列较长、topKLock 空闲时由写入方）批量更新，
+ * 写入方不等待 topKLock。
+ */
+public final class ComboWeightStore {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    // 扩容时写入旧数组中已复制的位置；不是规范的 NaN，存入的权重（doubleToLongBits）不会与它相同
+    private static final long MOVED = 0x7ff0_dead_beef_0001L;
+    // 待处理的 id 达到这个数时，写入方在 topKLock 空闲时顺便处理
+    private static final int MAX_PENDING = 64;
+
+    private final ActionRegistry actions = new ActionRegistry();
+    private final Map<ComboKey, Integer> ids = new ConcurrentHashMap<>();
+    // 分配新 id、扩容与清空时持有
+    private final Object internLock = new Object();
+    // 以下两个数组只在持有 internLock 时替换
+    private volatile Set<ConfigurationAction>[] combos;
+    private volatile AtomicLongArray weights;
+    private volatile int size;
+    // 权重已写入、尚未反映到两个堆与抽样树中的 id，可能重复
+    private final ConcurrentLinkedQueue<Integer> pendingIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nrPending = new AtomicInteger();
+    // 以下字段只在持有 topKLock 时访问：top 是权重最大的 topKCapacity 个组合（最小堆，堆顶最差），rest 是其余组合
+    // （最大堆，堆顶最好），exploitSampler 中只有 top 内的组合权重非零。处理待更新的 id 后只需比较并交换两个堆顶，
+    // 不需要扫描全部组合
+    private final ReentrantLock topKLock = new ReentrantLock();
+    private int topKCapacity;
+    private final IndexedHeap top = new IndexedHeap(false, INITIAL_CAPACITY);
+    private final IndexedHeap rest = new IndexedHeap(true, INITIAL_CAPACITY);
+    private final FenwickSampler exploitSampler = new FenwickSampler(INITIAL_CAPACITY);
+    // 已发布的只读视图；Top-K 变化后置为 null，下一次 getTopK() 时重建
+    private volatile TopK topK = TopK.EMPTY;
+
+    /**
+     * @param topKCapacity Top-K 中保留的组合数
+     */
+    public ComboWeightStore(int topKCapacity) {
+        combos = newComboArray(INITIAL_CAPACITY);
+        weights = new AtomicLongArray(INITIAL_CAPACITY);
+        this.topKCapacity = topKCapacity;
+    }
+
+    /**
+     * 加入参数组合并设置权重；组合已存在时只更新权重。
+     *
+     * @return 组合的 id
+     */
+    public int put(Collection<? extends ConfigurationAction> combo, double weight) {
+        ComboKey key = ComboKey.of(actions.sortedOrdinals(combo, true));
+        Integer existing = ids.get(key);
+        if (existing != null) {
+            setWeight(existing, weight);
+            return existing;
+        }
+        synchronized (internLock) {
+            existing = ids.get(key);
+            if (existing != null) {
+                setWeight(existing, weight);
+                return existing;
+            }
+            int id = size;
+            if (id == combos.length) {
+                grow();
+            }
+            combos[id] = Collections.unmodifiableSet(new HashSet<>(combo));
+            weights.set(id, Double.doubleToLongBits(weight));
+            size = id + 1;
+            onWeightChanged(id);
+            ids.put(key, id);
+            return id;
+        }
+    }
+
+    /**
+     * @return 组合的 id；组合不存在时返回 -1。参数的顺序与重复不影响结果
+     */
+    public int idOf(Collection<? extends ConfigurationAction> combo) {
+        int[] ordinals = actions.sortedOrdinals(combo, false);
+        if (ordinals == null) {
+            return -1;
+        }
+        Integer id = ids.get(ComboKey.of(ordinals));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * 组合中的参数已出现过的序号表。
+     */
+    public ActionRegistry getActionRegistry() {
+        return actions;
+    }
+
+    public Set<ConfigurationAction> comboAt(int id) {
+        checkId(id);
+        return combos[id];
+    }
+
+    public double getWeight(int id) {
+        checkId(id);
+        return weightOf(id);
+    }
+
+    public void setWeight(int id, double weight) {
+        checkId(id);
+        updateWeight(id, w -> weight);
+    }
+
+    /**
+     * 将权重乘以 factor。
+     *
+     * @return 更新后的权重
+     */
+    public double multiplyWeight(int id, double factor) {
+        checkId(id);
+        return updateWeight(id, w -> w * factor);
+    }
+
+    private double updateWeight(int id, DoubleUnaryOperator update) {
+        while (true) {
+            AtomicLongArray current = weights;
+            long bits = current.get(id);
+            if (bits == MOVED) {
+                // 正在扩容，等待新数组发布
+                Thread.onSpinWait();
+                continue;
+            }
+            double weight = update.applyAsDouble(Double.longBitsToDouble(bits));
+            if (current.compareAndSet(id, bits, Double.doubleToLongBits(weight))) {
+                onWeightChanged(id);
+                return weight;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空所有组合。与之并发的权重更新可能丢失。
+     */
+    public void clear() {
+        synchronized (internLock) {
+            topKLock.lock();
+            try {
+                ids.clear();
+                combos = newComboArray(INITIAL_CAPACITY);
+                weights = new AtomicLongArray(INITIAL_CAPACITY);
+                size = 0;
+                pendingIds.clear();
+                nrPending.set(0);
+                top.clear();
+                rest.clear();
+                exploitSampler.clear();
+                topK = TopK.EMPTY;
+            } finally {
+                topKLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 当前 Top-K 的只读视图。视图只在 Top-K 变化后第一次被读取时重建；没有待处理的权重更新时读取不加锁。
+     */
+    public TopK getTopK() {
+        TopK view = topK;
+        if (view != null && pendingIds.isEmpty()) {
+            return view;
+        }
+        topKLock.lock();
+        try {
+            applyPendingUpdates();
+            if (topK == null) {
+                topK = buildTopK();
+            }
+            return topK;
+        } finally {
+            topKLock.unlock();
+        }
+    }
+
+    public int getTopKCapacity() {
+        topKLock.lock();
+        try {
+            return topKCapacity;
+        } finally {
+            topKLock.unlock();
+        }
+    }
+
+    public void setTopKCapacity(int k) {
+        topKLock.lock();
+        try {
+            applyPendingUpdates();
+            topKCapacity = k;
+            if (rebalance()) {
+                topK = null;
+            }
+        } finally {
+            topKLock.unlock();
+        }
+    }
+
+    /**
+     * 按当前权重从 Top-K 中抽取一个组合，O(log n)，不分配内存。
+     *
+     * @param u [0, 1) 上的随机数
+     * @return 组合的 id；Top-K 为空或权重全为 0 时返回 -1
+     */
+    public int sampleTopK(double u) {
+        topKLock.lock();
+        try {
+            applyPendingUpdates();
+            return exploitSampler.sample(u);
+        } finally {
+            topKLock.unlock();
+        }
+    }
+
+    /**
+     * 权重写入后调用：记下 id，待处理的 id 较多且 topKLock 空闲时顺便处理，不等待锁。
+     */
+    private void onWeightChanged(int id) {
+        pendingIds.add(id);
+        if (nrPending.incrementAndGet() >= MAX_PENDING && topKLock.tryLock()) {
+            try {
+                applyPendingUpdates();
+            } finally {
+                topKLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 把待处理的 id 的当前权重写入两个堆与抽样树（调用方持有 topKLock）。
+     */
+    private void applyPendingUpdates() {
+        boolean changed = false;
+        Integer pending;
+        while ((pending = pendingIds.poll()) != null) {
+            nrPending.decrementAndGet();
+            int id = pending;
+            if (id >= size) {
+                // 清空之前的更新
+                continue;
+            }
+            double weight = weightOf(id);
+            if (top.contains(id)) {
+                top.update(id, weight);
+                exploitSampler.set(id, weight);
+                changed = true;
+            } else if (rest.contains(id)) {
+                rest.update(id, weight);
+            } else {
+                rest.add(id, weight);
+            }
+        }
+        if (rebalance() || changed) {
+            topK = null;
+        }
+    }
+
+    /**
+     * 使 top 恰好包含权重最大的 topKCapacity 个组合。
+     *
+     * @return Top-K 的成员是否发生变化
+     */
+    private boolean rebalance() {
+        boolean changed = false;
+        while (top.size() > topKCapacity) {
+            demote(top.poll());
+            changed = true;
+        }
+        while (top.size() < topKCapacity && !rest.isEmpty()) {
+            promote(rest.poll());
+            changed = true;
+        }
+        while (!rest.isEmpty() && !top.isEmpty()) {
+            int candidate = rest.peek();
+            int worst = top.peek();
+            // 最小堆的 before() 为 true 表示前者更差
+            if (!top.before(worst, top.keyOf(worst), candidate, rest.keyOf(candidate))) {
+                break;
+            }
+            rest.poll();
+            top.poll();
+            promote(candidate);
+            demote(worst);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private void promote(int id) {
+        double weight = weightOf(id);
+        top.add(id, weight);
+        exploitSampler.set(id, weight);
+    }
+
+    private void demote(int id) {
+        rest.add(id, weightOf(id));
+        exploitSampler.set(id, 0.0);
+    }
+
+    private TopK buildTopK() {
+        Integer[] members = new Integer[top.size()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = top.idAt(i);
+        }
+        // 按权重从大到小排列，权重相同时 id 小者在前
+        Arrays.sort(members, (a, b) -> top.before(a, top.keyOf(a), b, top.keyOf(b)) ? 1 : a.equals(b) ? 0 : -1);
+        int[] topIds = new int[members.length];
+        double[] topWeights = new double[members.length];
+        for (int i = 0; i < members.length; i++) {
+            topIds[i] = members[i];
+            topWeights[i] = top.keyOf(members[i]);
+        }
+        return new TopK(topIds, topWeights, combos);
+    }
+
+    private double weightOf(int id) {
+        while (true) {
+            long bits = weights.get(id);
+            if (bits != MOVED) {
+                return Double.longBitsToDouble(bits);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("combination id " + id + " out of range [0, " + size + ")");
+        }
+    }
+
+    /**
+     * 扩容（调用方持有 internLock）。逐个把旧数组中的权重换成 {@link #MOVED} 再复制，之后对旧数组的 CAS 都会失败。
+     */
+    private void grow() {
+        int capacity = combos.length * 2;
+        combos = Arrays.copyOf(combos, capacity);
+        AtomicLongArray old = weights;
+        AtomicLongArray newWeights = new AtomicLongArray(capacity);
+        for (int i = 0; i < size; i++) {
+            newWeights.set(i, old.getAndSet(i, MOVED));
+        }
+        weights = newWeights;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<ConfigurationAction>[] newComboArray(int capacity) {
+        return new Set[capacity];
+    }
+
+    /**
+     * 不可变的 Top-K 视图，按权重从大到小排列。
+     */
+    public static final class TopK {
+
+        static final TopK EMPTY = new TopK(new int[0], new double[0], newComboArray(0));
+
+        private final int[] ids;
+        private final double[] weights;
+        private final List<Set<ConfigurationAction>> combos;
+        private final BitSet members = new BitSet();
+        private final double weightSum;
+
+        TopK(int[] ids, double[] weights, Set<ConfigurationAction>[] allCombos) {
+            this.ids = ids;
+            this.weights = weights;
+            List<Set<ConfigurationAction>> topCombos = new ArrayList<>(ids.length);
+            double sum = 0.0;
+            for (int i = 0; i < ids.length; i++) {
+                members.set(ids[i]);
+                topCombos.add(allCombos[ids[i]]);
+                sum += weights[i];
+            }
+            this.combos = Collections.unmodifiableList(topCombos);
+            this.weightSum = sum;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public boolean isEmpty() {
+            return ids.length == 0;
+        }
+
+        public int idAt(int rank) {
+            return ids[rank];
+        }
+
+        /**
+         * @return 发布时该组合的权重
+         */
+        public double weightAt(int rank) {
+            return weights[rank];
+        }
+
+        public Set<ConfigurationAction> comboAt(int rank) {
+            return combos.get(rank);
+        }
+
+        public List<Set<ConfigurationAction>> getCombos() {
+            return combos;
+        }
+
+        public boolean contains(int id) {
+            return members.get(id);
+        }
+
+        public double getWeightSum() {
+            return weightSum;
+        }
+    }
+
+    /**
+     * 组合的键：序号都小于 64 时使用位图，否则使用升序的序号数组。
+     */
+    private static final class ComboKey {
+
+        private final long bits;
+        private final int[] ordinals;
+        private final int hash;
+
+        private ComboKey(long bits, int[] ordinals) {
+            this.bits = bits;
+            this.ordinals = ordinals;
+            this.hash = ordinals == null ? Long.hashCode(bits) : Arrays.hashCode(ordinals);
+        }
+
+        static ComboKey of(int[] sortedOrdinals) {
+            if (sortedOrdinals.length == 0 || sortedOrdinals[sortedOrdinals.length - 1] < Long.SIZE) {
+                long bits = 0;
+                for (int ordinal : sortedOrdinals) {
+                    bits |= 1L << ordinal;
+                }
+                return new ComboKey(bits, null);
+            }
+            return new ComboKey(0, sortedOrdinals);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ComboKey)) {
+                return false;
+            }
+            ComboKey that = (ComboKey) o;
+            return bits == that.bits && Arrays.equals(ordinals, that.ordinals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
@@ -38,6 +39,23 @@ public final class ComparatorHelper {
 
     public static List<String> getResultSetFirstColumnAsString(String queryString, ExpectedErrors errors,
             SQLGlobalState<?, ?> state) throws SQLException {
+        List<String> resultSet = new ArrayList<>();
+        readFirstColumn(queryString, errors, state, resultSet::add);
+        return resultSet;
+    }
+
+    /**
+     * 与 {@link #getResultSetFirstColumnAsString} 读取相同的值并折叠为摘要，只保存前 {@link MainOptions#getResultDigestBufferedRows()} 行。
+     */
+    public static ResultSetDigest getResultSetFirstColumnDigest(String queryString, ExpectedErrors errors,
+            SQLGlobalState<?, ?> state) throws SQLException {
+        ResultSetDigest digest = new ResultSetDigest(state.getOptions().getResultDigestBufferedRows());
+        readFirstColumn(queryString, errors, state, digest::add);
+        return digest;
+    }
+
+    private static void readFirstColumn(String queryString, ExpectedErrors errors, SQLGlobalState<?, ?> state,
+            Consumer<String> sink) throws SQLException {
         if (state.getOptions().logEachSelect()) {
             // TODO: refactor me
             state.getLogger().writeCurrent(queryString);
@@ -50,7 +68,6 @@ public final class ComparatorHelper {
         }
         boolean canonicalizeString = state.getOptions().canonicalizeSqlString();
         SQLQueryAdapter q = new SQLQueryAdapter(queryString, errors, true, canonicalizeString);
-        List<String> resultSet = new ArrayList<>();
         SQLancerResultSet result = null;
         try {
             result = q.executeAndGet(state);
@@ -58,12 +75,8 @@ public final class ComparatorHelper {
                 throw new IgnoreMeException();
             }
             while (result.next()) {
-                String resultTemp = result.getString(1);
-                if (resultTemp != null) {
-                    resultTemp = resultTemp.replaceAll("[\\.]0+$", ""); // Remove the trailing zeros as many DBMS treat
-                    // it as non-bugs
-                }
-                resultSet.add(resultTemp);
+                // Remove the trailing zeros as many DBMS treat it as non-bugs
+                sink.accept(removeTrailingZeros(result.getString(1)));
             }
         } catch (Exception e) {
             if (e instanceof IgnoreMeException) {
@@ -82,26 +95,31 @@ public final class ComparatorHelper {
                 result.close();
             }
         }
-        return resultSet;
+    }
+
+    /**
+     * 去掉小数点后全为 0 的部分（"1.00" 变为 "1"，"1.50" 不变），与 {@code value.replaceAll("[\\.]0+$", "")} 等价。
+     */
+    static String removeTrailingZeros(String value) {
+        if (value == null) {
+            return null;
+        }
+        int end = value.length();
+        int i = end;
+        while (i > 0 && value.charAt(i - 1) == '0') {
+            i--;
+        }
+        if (i == end || i == 0 || value.charAt(i - 1) != '.') {
+            return value;
+        }
+        return value.substring(0, i - 1);
     }
 
     public static void assumeResultSetsAreEqual(List<String> resultSet, List<String> secondResultSet,
             String originalQueryString, List<String> combinedString, SQLGlobalState<?, ?> state) {
         if (resultSet.size() != secondResultSet.size()) {
-            String queryFormatString = "-- %s;" + System.lineSeparator() + "-- cardinality: %d"
-                    + System.lineSeparator();
-            String firstQueryString = String.format(queryFormatString, originalQueryString, resultSet.size());
-            String combinedQueryString = String.join(";", combinedString);
-            String secondQueryString = String.format(queryFormatString, combinedQueryString, secondResultSet.size());
-            state.getState().getLocalState()
-                    .log(String.format("%s" + System.lineSeparator() + "%s", firstQueryString, secondQueryString));
-            String assertionMessage = String.format(
-                    "The size of the result sets mismatch (%d and %d)!" + System.lineSeparator()
-                            + "First query: \"%s\", whose cardinality is: %d" + System.lineSeparator()
-                            + "Second query:\"%s\", whose cardinality is: %d",
-                    resultSet.size(), secondResultSet.size(), originalQueryString, resultSet.size(),
-                    combinedQueryString, secondResultSet.size());
-            throw new AssertionError(assertionMessage);
+            throwCardinalityMismatch(resultSet.size(), secondResultSet.size(), originalQueryString, combinedString,
+                    state);
         }
 
         Set<String> firstHashSet = new HashSet<>(resultSet);
@@ -128,6 +146,58 @@ public final class ComparatorHelper {
         }
     }
 
+    private static void throwCardinalityMismatch(long firstSize, long secondSize, String originalQueryString,
+            List<String> combinedString, SQLGlobalState<?, ?> state) {
+        String queryFormatString = "-- %s;" + System.lineSeparator() + "-- cardinality: %d" + System.lineSeparator();
+        String firstQueryString = String.format(queryFormatString, originalQueryString, firstSize);
+        String combinedQueryString = String.join(";", combinedString);
+        String secondQueryString = String.format(queryFormatString, combinedQueryString, secondSize);
+        state.getState().getLocalState()
+                .log(String.format("%s" + System.lineSeparator() + "%s", firstQueryString, secondQueryString));
+        String assertionMessage = String.format(
+                "The size of the result sets mismatch (%d and %d)!" + System.lineSeparator()
+                        + "First query: \"%s\", whose cardinality is: %d" + System.lineSeparator()
+                        + "Second query:\"%s\", whose cardinality is: %d",
+                firstSize, secondSize, originalQueryString, firstSize, combinedQueryString, secondSize);
+        throw new AssertionError(assertionMessage);
+    }
+
+    /**
+     * 摘要版本的 {@link #assumeResultSetsAreEqual}：摘要相同时直接通过；行数不同时直接报告；
+     * 行数相同而摘要不同时用两个摘要在第一次执行时保存的行按原有规则比较并给出差异，不重新执行查询。
+     */
+    public static void assumeResultSetDigestsAreEqual(ResultSetDigest digest, ResultSetDigest secondDigest,
+            String originalQueryString, List<String> combinedString, SQLGlobalState<?, ?> state) {
+        if (digest.matches(secondDigest)) {
+            return;
+        }
+        if (digest.getCount() != secondDigest.getCount()) {
+            throwCardinalityMismatch(digest.getCount(), secondDigest.getCount(), originalQueryString, combinedString,
+                    state);
+        }
+        if (state.getOptions().validateResultSizeOnly()) {
+            return;
+        }
+        List<String> resultSet = digest.getRows();
+        List<String> secondResultSet = secondDigest.getRows();
+        if (resultSet != null && secondResultSet != null) {
+            // 原有规则按集合比较，重复次数不同不算差异，所以摘要不同并不一定是错误
+            assumeResultSetsAreEqual(resultSet, secondResultSet, originalQueryString, combinedString, state);
+            return;
+        }
+        // 行数超过缓冲区上限，只能按多重集报告差异：TLP 的各个分区合起来与原查询的结果作为多重集相等
+        String queryFormatString = "-- %s;" + System.lineSeparator() + "-- digest: %s" + System.lineSeparator();
+        String combinedQueryString = String.join(";", combinedString);
+        state.getState().getLocalState()
+                .log(String.format("%s" + System.lineSeparator() + "%s",
+                        String.format(queryFormatString, originalQueryString, digest),
+                        String.format(queryFormatString, combinedQueryString, secondDigest)));
+        String assertionMessage = String.format("The content of the result sets mismatch (%s and %s)!"
+                + System.lineSeparator() + "First query : \"%s\"" + System.lineSeparator() + "Second query: \"%s\"",
+                digest, secondDigest, originalQueryString, combinedQueryString);
+        throw new AssertionError(assertionMessage);
+    }
+
     public static void assumeResultSetsAreEqual(List<String> resultSet, List<String> secondResultSet,
             String originalQueryString, List<String> combinedString, SQLGlobalState<?, ?> state,
             UnaryOperator<String> canonicalizationRule) {
@@ -161,6 +231,27 @@ public final class ComparatorHelper {
         return secondResultSet;
     }
 
+    /**
+     * 摘要版本的 {@link #getCombinedResultSet}，执行的查询及 combinedString 的内容与之相同。
+     */
+    public static ResultSetDigest getCombinedResultSetDigest(String firstQueryString, String secondQueryString,
+            String thirdQueryString, List<String> combinedString, boolean asUnion, SQLGlobalState<?, ?> state,
+            ExpectedErrors errors) throws SQLException {
+        if (asUnion) {
+            String unionString = firstQueryString + " UNION ALL " + secondQueryString + " UNION ALL "
+                    + thirdQueryString;
+            combinedString.add(unionString);
+            return getResultSetFirstColumnDigest(unionString, errors, state);
+        }
+        ResultSetDigest digest = getResultSetFirstColumnDigest(firstQueryString, errors, state);
+        digest.addAll(getResultSetFirstColumnDigest(secondQueryString, errors, state));
+        digest.addAll(getResultSetFirstColumnDigest(thirdQueryString, errors, state));
+        combinedString.add(firstQueryString);
+        combinedString.add(secondQueryString);
+        combinedString.add(thirdQueryString);
+        return digest;
+    }
+
     public static List<String> getCombinedResultSetNoDuplicates(String firstQueryString, String secondQueryString,
             String thirdQueryString, List<String> combinedString, boolean asUnion, SQLGlobalState<?, ?> state,
             ExpectedErrors errors) throws SQLException {
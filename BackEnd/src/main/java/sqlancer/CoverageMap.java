@@ -0,0 +1,140 @@
+package sqlancer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * AFL 覆盖率位图的增量视图。
+ *
+ * 共享内存按 {@link LongBuffer} 每次读取 8 条边，与累计的 virgin 位图（AFL 风格）逐字比较得到新边，
+ * 命中边数随之增量维护，因此 {@link #getCoverageRate()} 是 O(1) 的。
+ * 第 w 个字的第 k 个字节（小端序）对应边 8 * w + k。
+ */
+public final class CoverageMap {
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+
+    private final int mapSize;
+    private final int nrFullWords;
+    private final ByteBuffer segment;
+    private final LongBuffer words;
+    // 最近一次 refresh() 读到的命中计数
+    private final long[] snapshot;
+    // 边曾被命中过，则对应字节为 0x01
+    private final long[] virgin;
+    private volatile int hitEdges;
+    private int newEdges;
+
+    public CoverageMap(ByteBuffer segment, int mapSize) {
+        if (segment.capacity() < mapSize) {
+            throw new IllegalArgumentException("segment is smaller than the coverage map: " + segment.capacity());
+        }
+        this.mapSize = mapSize;
+        this.nrFullWords = mapSize / Long.BYTES;
+        this.segment = segment.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.words = this.segment.asLongBuffer();
+        int nrWords = (mapSize + Long.BYTES - 1) / Long.BYTES;
+        this.snapshot = new long[nrWords];
+        this.virgin = new long[nrWords];
+    }
+
+    /**
+     * 重新读取共享内存并合并进 virgin 位图。
+     *
+     * @return 本次新发现的边数
+     */
+    public synchronized int refresh() {
+        words.get(0, snapshot, 0, nrFullWords);
+        if (nrFullWords < snapshot.length) {
+            long tail = 0;
+            for (int i = nrFullWords * Long.BYTES, shift = 0; i < mapSize; i++, shift += Byte.SIZE) {
+                tail |= (segment.get(i) & 0xFFL) << shift;
+            }
+            snapshot[nrFullWords] = tail;
+        }
+        int found = 0;
+        for (int w = 0; w < snapshot.length; w++) {
+            long word = snapshot[w];
+            if (word == 0) {
+                continue;
+            }
+            long hit = nonZeroBytes(word);
+            long fresh = hit & ~virgin[w];
+            if (fresh != 0) {
+                virgin[w] |= fresh;
+                found += Long.bitCount(fresh);
+            }
+        }
+        if (found != 0) {
+            newEdges += found;
+            hitEdges += found;
+        }
+        return found;
+    }
+
+    /**
+     * 返回自上次调用以来发现的新边数，并将其清零。
+     */
+    public synchronized int drainNewEdges() {
+        int result = newEdges;
+        newEdges = 0;
+        return result;
+    }
+
+    /**
+     * 复制累计的 virgin 位图，供检查点写出。
+     */
+    public synchronized long[] copyVirginBits() {
+        return virgin.clone();
+    }
+
+    /**
+     * 用检查点中的 virgin 位图替换当前位图；其中的边以后不再计为新边。
+     */
+    public synchronized void restoreVirginBits(long[] bits) {
+        if (bits.length != virgin.length) {
+            throw new IllegalArgumentException("expected " + virgin.length + " words, got " + bits.length);
+        }
+        System.arraycopy(bits, 0, virgin, 0, virgin.length);
+        int edges = 0;
+        for (long word : virgin) {
+            edges += Long.bitCount(word);
+        }
+        hitEdges = edges;
+        newEdges = 0;
+    }
+
+    public int getHitEdges() {
+        return hitEdges;
+    }
+
+    public double getCoverageRate() {
+        return (double) hitEdges / mapSize;
+    }
+
+    public int getMapSize() {
+        return mapSize;
+    }
+
+    /**
+     * 最近一次 {@link #refresh()} 的命中计数，每个 long 打包 8 条边。调用方不得修改。
+     */
+    public long[] getSnapshot() {
+        return snapshot;
+    }
+
+    public int getHitCount(int edge) {
+        return (int) (snapshot[edge >>> 3] >>> ((edge & 7) << 3)) & 0xFF;
+    }
+
+    /**
+     * 对 word 中每个非零字节，在该字节的最低位置 1，其余位清零。
+     */
+    static long nonZeroBytes(long word) {
+        long m = word | (word >>> 4);
+        m |= m >>> 2;
+        m |= m >>> 1;
+        return m & LOW_BITS;
+    }
+}
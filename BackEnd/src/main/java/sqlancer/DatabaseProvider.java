@@ -48,6 +48,55 @@ public interface DatabaseProvider<G extends GlobalState<O, ?, C>, O extends DBMS
 
     C createDatabase(G globalState) throws Exception;
 
+    /**
+     * Saves the content of the database that the global state is currently connected to, so that
+     * {@link #restoreSnapshot} can recreate it without replaying the statements that produced it. Used by the reducers.
+     *
+     * @param globalState
+     *            the state whose connection should be saved.
+     *
+     * @return the snapshot, or null if the DBMS or the current database content does not support snapshots.
+     *
+     * @throws Exception
+     *             if saving the database fails.
+     */
+    default DatabaseSnapshot createSnapshot(G globalState) throws Exception {
+        return null;
+    }
+
+    /**
+     * Creates the database like {@link #createDatabase} and fills it with the content of a snapshot returned by
+     * {@link #createSnapshot}. Session settings are not part of the snapshot. Providers that support snapshots must
+     * override both methods; with the default implementation, the caller creates the database with
+     * {@link #createDatabase} and replays all statements instead.
+     *
+     * @param globalState
+     *            the state for which the database is created.
+     * @param snapshot
+     *            a snapshot created by this provider.
+     *
+     * @return the connection to the restored database, or null if the DBMS does not support restoring snapshots.
+     *
+     * @throws Exception
+     *             if creating or restoring the database fails.
+     */
+    default C restoreSnapshot(G globalState, DatabaseSnapshot snapshot) throws Exception {
+        return null;
+    }
+
+    /**
+     * Drops the database of the global state, e.g., a temporary database that the reducers created to test candidates
+     * in parallel. The default implementation does nothing.
+     *
+     * @param globalState
+     *            the state whose database should be dropped; its connection may already be closed.
+     *
+     * @throws Exception
+     *             if dropping the database fails.
+     */
+    default void dropDatabase(G globalState) throws Exception {
+    }
+
     /**
      * The DBMS name is used to name the log directory and command to test the respective DBMS.
      *
@@ -0,0 +1,10 @@
+package sqlancer;
+
+/**
+ * 由 {@link DatabaseProvider#createSnapshot} 保存的数据库内容；关闭时释放其占用的文件或数据库。
+ */
+public interface DatabaseSnapshot extends AutoCloseable {
+
+    @Override
+    void close() throws Exception;
+}
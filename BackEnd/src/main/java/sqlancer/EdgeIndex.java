@@ -0,0 +1,103 @@
+package sqlancer;
+
+import java.util.Arrays;
+
+/**
+ * 将覆盖率位图中的边号映射为稠密的槽位号（0, 1, 2, ...），只为曾被命中的边分配槽位。
+ * 开放寻址 + 线性探测的 int → int 哈希表，不装箱。非线程安全。
+ */
+public final class EdgeIndex {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] slots;
+    private int[] edges;
+    private int size;
+
+    public EdgeIndex(int expectedEdges) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedEdges * 2 - 1)) << 1;
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        slots = new int[capacity];
+        edges = new int[Math.max(16, expectedEdges)];
+    }
+
+    /**
+     * @return 边对应的槽位；边从未被加入时返回 -1
+     */
+    public int slotOf(int edge) {
+        int mask = keys.length - 1;
+        for (int i = mix(edge) & mask;; i = (i + 1) & mask) {
+            int key = keys[i];
+            if (key == edge) {
+                return slots[i];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return 边对应的槽位；边第一次出现时分配下一个槽位
+     */
+    public int getOrAdd(int edge) {
+        if (edge < 0) {
+            throw new IllegalArgumentException("edge must not be negative: " + edge);
+        }
+        int mask = keys.length - 1;
+        int i = mix(edge) & mask;
+        while (true) {
+            int key = keys[i];
+            if (key == edge) {
+                return slots[i];
+            }
+            if (key == EMPTY) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        int slot = size++;
+        keys[i] = edge;
+        slots[i] = slot;
+        if (slot == edges.length) {
+            edges = Arrays.copyOf(edges, edges.length * 2);
+        }
+        edges[slot] = edge;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return slot;
+    }
+
+    public int edgeAt(int slot) {
+        return edges[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        int[] newKeys = new int[keys.length * 2];
+        Arrays.fill(newKeys, EMPTY);
+        int[] newSlots = new int[newKeys.length];
+        int mask = newKeys.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int i = mix(edges[slot]) & mask;
+            while (newKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            newKeys[i] = edges[slot];
+            newSlots[i] = slot;
+        }
+        keys = newKeys;
+        slots = newSlots;
+    }
+
+    static int mix(int x) {
+        int h = x * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
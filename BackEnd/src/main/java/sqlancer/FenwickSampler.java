@@ -0,0 +1,138 @@
+package sqlancer;
+
+import java.util.Arrays;
+
+/**
+ * 按权重抽取下标的 Fenwick 树（树状数组）：单点修改权重与按权重抽样都是 O(log n)，抽样不分配内存。
+ * 非线程安全。
+ */
+public final class FenwickSampler {
+
+    private double[] tree;
+    private double[] values;
+    // tree.length 以下最大的 2 的幂，抽样时二分下降的起点
+    private int topBit;
+
+    public FenwickSampler(int capacity) {
+        values = new double[Math.max(1, capacity)];
+        tree = new double[values.length + 1];
+        topBit = Integer.highestOneBit(values.length);
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public double get(int index) {
+        return values[index];
+    }
+
+    /**
+     * 将下标 index 的权重设为 weight（负数按 0 处理），必要时扩容。
+     */
+    public void set(int index, double weight) {
+        if (index >= values.length) {
+            ensureCapacity(index + 1);
+        }
+        double w = weight > 0 ? weight : 0.0;
+        double delta = w - values[index];
+        if (delta == 0.0) {
+            return;
+        }
+        values[index] = w;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    public double total() {
+        return prefixSum(values.length);
+    }
+
+    /**
+     * 按权重抽取一个下标。
+     *
+     * @param u [0, 1) 上的随机数
+     * @return 被抽中的下标；所有权重均为 0 时返回 -1
+     */
+    public int sample(double u) {
+        double total = total();
+        if (total <= 0.0) {
+            return -1;
+        }
+        int index = find(u * total);
+        if (index < values.length && values[index] > 0.0) {
+            return index;
+        }
+        // 浮点误差让 index 落在了权重为 0 的位置上：改取 index 之前最后一个权重为正的下标
+        index = find(Math.max(0.0, prefixSum(index) * (1 - 1e-9)));
+        if (index < values.length && values[index] > 0.0) {
+            return index;
+        }
+        for (int i = values.length - 1; i >= 0; i--) {
+            if (values[i] > 0.0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 前缀和不超过 target 的最长前缀长度，即累积权重越过 target 的那个下标
+     */
+    private int find(double target) {
+        int pos = 0;
+        for (int step = topBit; step != 0; step >>>= 1) {
+            int next = pos + step;
+            if (next < tree.length && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * @return values[0, length) 之和
+     */
+    private double prefixSum(int length) {
+        double sum = 0.0;
+        for (int i = length; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 清零所有权重，容量不变。
+     */
+    public void clear() {
+        Arrays.fill(values, 0.0);
+        Arrays.fill(tree, 0.0);
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity <= values.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, values.length * 2);
+        values = Arrays.copyOf(values, newCapacity);
+        tree = new double[newCapacity + 1];
+        topBit = Integer.highestOneBit(newCapacity);
+        rebuild();
+    }
+
+    /**
+     * O(n) 重建树，同时消除多次单点修改累积的浮点误差。
+     */
+    public void rebuild() {
+        Arrays.fill(tree, 0.0);
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
@@ -11,7 +11,8 @@ public class GeneralConfigurationGenerator {
         if (dbmsOptionsClass.equals(MySQLOptions.class)) {
             // 确保 getOptions() 返回的类型是 MySQLOptions
             // 这通常是安全的，因为 globalState 是与数据库类型对应的
-            return MySQLSetGenerator.getInstance(globalState.getRandomly(),  globalState.getOptions());
+            // 权重属于 --campaign 指定的 campaign，每个 campaign 缓存自己的生成器（见 Campaign#getConfigurationGenerator）
+            return new MySQLSetGenerator(globalState.getRandomly(),  globalState.getOptions());
         }
         // else if (dbmsOptionsClass.equals(PostgresOptions.class)) {
         //     return PostgresConfigurationGenerator.getInstance(globalState.getRandomly(), (PostgresOptions) globalState.getOptions());
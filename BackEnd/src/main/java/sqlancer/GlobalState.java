@@ -4,8 +4,11 @@ import sqlancer.common.query.Query;
 import sqlancer.common.query.SQLancerResultSet;
 import sqlancer.common.schema.AbstractSchema;
 import sqlancer.common.schema.AbstractTable;
+import sqlancer.common.schema.RowCountTracker;
+import sqlancer.common.schema.SchemaDelta;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public abstract class GlobalState<O extends DBMSSpecificOptions<?>, S extends AbstractSchema<?, ?>, C extends SQLancerDBConnection> {
 
@@ -19,6 +22,20 @@ public abstract class GlobalState<O extends DBMSSpecificOptions<?>, S extends Ab
     private Main.QueryManager<C> manager;
     private String databaseName;
     private BaseConfigurationGenerator configurationGenerator;
+    // 配置测试：每个工作线程独立的特性概率、是否允许 GLOBAL 作用域的 SET、当前参数组合已执行的测试用例数
+    private double[] featureProbabilities;
+    private boolean globalConfigurationAllowed = true;
+    private int nrConfigurationTestCases;
+    // 训练时发布进度用，未启用检查点时为 null
+    private Checkpointer checkpointer;
+    // 上次与系统目录核对之后增量应用的 schema 改动数
+    private int nrUnverifiedSchemaDeltas;
+    // 按表名记录的行数，不随 schema 的重新读取而清除
+    private final RowCountTracker rowCountTracker = new RowCountTracker();
+    // 本状态执行的语句计入的计数，由 DBMSExecutor 按 DBMS、oracle、campaign 和工作线程设置
+    private MetricsRegistry.Counters metrics = MetricsRegistry.getInstance().getUntagged();
+    // 所属的 campaign：参数权重、覆盖率来源等
+    private Campaign campaign = Campaign.getDefault();
 
     public void setConnection(C con) {
         this.databaseConnection = con;
@@ -85,6 +102,34 @@ public abstract class GlobalState<O extends DBMSSpecificOptions<?>, S extends Ab
         this.databaseName = databaseName;
     }
 
+    public RowCountTracker getRowCountTracker() {
+        return rowCountTracker;
+    }
+
+    public MetricsRegistry.Counters getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricsRegistry.Counters metrics) {
+        this.metrics = metrics;
+        rowCountTracker.setMetrics(metrics);
+    }
+
+    /**
+     * 由 {@link Main.QueryManager} 在每条语句执行后调用，根据语句的影响行数更新 {@link #getRowCountTracker()}。
+     */
+    void trackRowCount(Query<?> q, boolean success) {
+        if (getOptions().trackRowCounts()) {
+            rowCountTracker.afterStatement(q.getQueryString(), success ? q.getUpdateCount() : -1, success,
+                    this::isBaseTable);
+        }
+    }
+
+    private boolean isBaseTable(String name) {
+        return schema != null && schema.getDatabaseTables().stream()
+                .anyMatch(t -> !t.isView() && t.getName().equalsIgnoreCase(name));
+    }
+
     private ExecutionTimer executePrologue(Query<?> q) throws Exception {
         boolean logExecutionTime = getOptions().logExecutionTime();
         ExecutionTimer timer = null;
@@ -113,6 +158,30 @@ public abstract class GlobalState<O extends DBMSSpecificOptions<?>, S extends Ab
         return success;
     }
 
+    /**
+     * 批量执行 queries（见 {@link Main.QueryManager#executeBatch}），日志与逐条调用 {@link #executeStatement} 相同。
+     * 记录执行时间时无法区分各条语句的耗时，此时逐条执行。
+     *
+     * @return 每条语句是否执行成功
+     */
+    public boolean[] executeStatements(List<? extends Query<C>> queries) throws Exception {
+        if (getOptions().logExecutionTime()) {
+            boolean[] success = new boolean[queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                success[i] = executeStatement(queries.get(i));
+            }
+            return success;
+        }
+        for (Query<C> q : queries) {
+            executePrologue(q);
+        }
+        boolean[] success = manager.executeBatch(queries);
+        for (int i = 0; i < queries.size(); i++) {
+            executeEpilogue(queries.get(i), success[i], null);
+        }
+        return success;
+    }
+
     public SQLancerResultSet executeStatementAndGet(Query<C> q, String... fills) throws Exception {
         ExecutionTimer timer = executePrologue(q);
         SQLancerResultSet result = manager.executeAndGet(q, fills);
@@ -151,6 +220,53 @@ public abstract class GlobalState<O extends DBMSSpecificOptions<?>, S extends Ab
         }
     }
 
+    /**
+     * 语句 q 执行之后更新 schema：q 给出了 schema 改动且 DBMS 支持时增量应用到当前快照上（失败的语句不改变 schema），否则重新读取。
+     * 开启 --verify-schema-every 时，每应用若干条改动与系统目录核对一次，不一致时打印警告并改用读取到的 schema。
+     */
+    public void updateSchema(Query<?> q, boolean success) throws Exception {
+        List<SchemaDelta> deltas = q.getSchemaDeltas();
+        if (deltas == null || schema == null || !getOptions().useIncrementalSchema()) {
+            updateSchema();
+            return;
+        }
+        if (!success) {
+            return;
+        }
+        S updated = schema;
+        for (SchemaDelta delta : deltas) {
+            updated = applySchemaDelta(updated, delta);
+            if (updated == null) {
+                updateSchema();
+                return;
+            }
+        }
+        setSchema(updated);
+        for (AbstractTable<?, ?, ?> table : schema.getDatabaseTables()) {
+            table.recomputeCount();
+        }
+        int verifyEvery = getOptions().getVerifySchemaEvery();
+        if (verifyEvery > 0 && (nrUnverifiedSchemaDeltas += deltas.size()) >= verifyEvery) {
+            nrUnverifiedSchemaDeltas = 0;
+            String expected = schema.getStructureDescription();
+            updateSchema();
+            String actual = schema.getStructureDescription();
+            if (!expected.equals(actual)) {
+                System.err.println("警告: 增量更新的 schema 与系统目录不一致（最近的语句: " + q.getLogString() + "）"
+                        + System.lineSeparator() + "增量: " + expected + System.lineSeparator() + "目录: " + actual);
+            }
+        }
+    }
+
+    /**
+     * 将一条 schema 改动应用到快照上，返回新的快照，不修改原快照。
+     *
+     * @return 新的快照；不支持该种改动时返回 null，此时重新读取 schema
+     */
+    protected S applySchemaDelta(S schema, SchemaDelta delta) {
+        return null;
+    }
+
     public void clearSchema() throws Exception {
         schema.getDatabaseTables().clear();
     }
@@ -165,4 +281,52 @@ public abstract class GlobalState<O extends DBMSSpecificOptions<?>, S extends Ab
     public void setConfigurationGenerator(BaseConfigurationGenerator configGenerator) {
         configurationGenerator = configGenerator;
     }
+
+    public Campaign getCampaign() {
+        return campaign;
+    }
+
+    public void setCampaign(Campaign campaign) {
+        this.campaign = campaign;
+    }
+
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    public void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    public double[] getFeatureProbabilities() {
+        return featureProbabilities;
+    }
+
+    public void setFeatureProbabilities(double[] featureProbabilities) {
+        this.featureProbabilities = featureProbabilities;
+    }
+
+    public boolean isGlobalConfigurationAllowed() {
+        return globalConfigurationAllowed;
+    }
+
+    /**
+     * 多个工作线程共享同一个 DBMS 实例时，只有一个线程可以执行 GLOBAL 作用域的 SET，其余线程只使用 SESSION 作用域。
+     * 这只避免了线程之间互相覆盖 GLOBAL 设置，其余线程仍运行在该线程设置的 GLOBAL 值下。
+     */
+    public void setGlobalConfigurationAllowed(boolean globalConfigurationAllowed) {
+        this.globalConfigurationAllowed = globalConfigurationAllowed;
+    }
+
+    public int getNrConfigurationTestCases() {
+        return nrConfigurationTestCases;
+    }
+
+    public void incrementNrConfigurationTestCases() {
+        nrConfigurationTestCases++;
+    }
+
+    public void resetNrConfigurationTestCases() {
+        nrConfigurationTestCases = 0;
+    }
 }
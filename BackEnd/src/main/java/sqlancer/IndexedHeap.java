@@ -0,0 +1,174 @@
+package sqlancer;
+
+import java.util.Arrays;
+
+/**
+ * 以非负整数 id 为元素、double 为键的索引二叉堆，支持按 id 修改键与删除，均为 O(log n)。
+ * 键相同时按 id 排序（id 小者视为更大），因此堆顶是确定的。非线程安全。
+ */
+public final class IndexedHeap {
+
+    private final boolean maxHeap;
+    private int[] heap;
+    // pos[id]：id 在 heap 中的位置，不在堆中时为 -1
+    private int[] pos;
+    private double[] keys;
+    private int size;
+
+    /**
+     * @param maxHeap 为 true 时堆顶是键最大的元素，否则是键最小的元素
+     */
+    public IndexedHeap(boolean maxHeap, int capacity) {
+        this.maxHeap = maxHeap;
+        int c = Math.max(1, capacity);
+        heap = new int[c];
+        pos = new int[c];
+        Arrays.fill(pos, -1);
+        keys = new double[c];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int id) {
+        return id < pos.length && pos[id] != -1;
+    }
+
+    public double keyOf(int id) {
+        return keys[id];
+    }
+
+    /**
+     * @return 堆数组中第 i 个位置的 id，用于遍历堆中元素（顺序不确定）
+     */
+    public int idAt(int i) {
+        return heap[i];
+    }
+
+    public int peek() {
+        if (size == 0) {
+            throw new IllegalStateException("heap is empty");
+        }
+        return heap[0];
+    }
+
+    public void add(int id, double key) {
+        if (contains(id)) {
+            throw new IllegalArgumentException("id already in heap: " + id);
+        }
+        ensureIdCapacity(id + 1);
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        keys[id] = key;
+        heap[size] = id;
+        pos[id] = size;
+        siftUp(size++);
+    }
+
+    public int poll() {
+        int top = peek();
+        remove(top);
+        return top;
+    }
+
+    public void update(int id, double key) {
+        int i = pos[id];
+        double old = keys[id];
+        keys[id] = key;
+        if (key == old) {
+            return;
+        }
+        siftUp(i);
+        siftDown(pos[id]);
+    }
+
+    public void remove(int id) {
+        int i = pos[id];
+        int last = heap[--size];
+        pos[id] = -1;
+        if (i == size) {
+            return;
+        }
+        heap[i] = last;
+        pos[last] = i;
+        siftUp(i);
+        siftDown(pos[last]);
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return a 是否应排在 b 之前（更靠近堆顶）
+     */
+    public boolean before(int a, double keyA, int b, double keyB) {
+        int cmp = Double.compare(keyA, keyB);
+        if (cmp == 0) {
+            // 键相同：最大堆中 id 小者在前，最小堆中 id 大者在前
+            return maxHeap ? a < b : a > b;
+        }
+        return maxHeap ? cmp > 0 : cmp < 0;
+    }
+
+    private boolean before(int a, int b) {
+        return before(a, keys[a], b, keys[b]);
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(id, heap[parent])) {
+                break;
+            }
+            move(heap[parent], i);
+            i = parent;
+        }
+        move(id, i);
+    }
+
+    private void siftDown(int i) {
+        int id = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], id)) {
+                break;
+            }
+            move(heap[child], i);
+            i = child;
+        }
+        move(id, i);
+    }
+
+    private void move(int id, int i) {
+        heap[i] = id;
+        pos[id] = i;
+    }
+
+    private void ensureIdCapacity(int capacity) {
+        if (capacity <= pos.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, pos.length * 2);
+        int oldLength = pos.length;
+        pos = Arrays.copyOf(pos, newCapacity);
+        Arrays.fill(pos, oldLength, newCapacity, -1);
+        keys = Arrays.copyOf(keys, newCapacity);
+    }
+}
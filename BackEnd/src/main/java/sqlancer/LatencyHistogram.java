@@ -0,0 +1,125 @@
+package sqlancer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定内存的延迟直方图（HdrHistogram 式的对数-线性分桶），以微秒为单位记录。
+ *
+ * 小于 32 微秒的值各占一个桶；更大的值按二进制位数分段，每段再均分为 16 个桶，因此桶宽不超过值的 1/16，报告的分位数取桶的中点，相对误差不超过
+ * 约 3%。超过 {@link #MAX_VALUE_MICROS} 的值计入最后一个桶。记录只做一次原子加法，可被多个线程同时记录；直方图之间可以合并。
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 小于 LINEAR_LIMIT 的值各占一个桶
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int LINEAR_BITS = SUB_BUCKET_BITS + 1;
+    public static final long MAX_VALUE_MICROS = (1L << 38) - 1;
+    private static final int NR_BUCKETS = bucketIndex(MAX_VALUE_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NR_BUCKETS);
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE_MICROS);
+        counts.incrementAndGet(bucketIndex(value));
+        totalMicros.addAndGet(value);
+        long max = maxMicros.get();
+        while (value > max && !maxMicros.compareAndSet(max, value)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * 将 other 的记录加到本直方图中。
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < NR_BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        totalMicros.addAndGet(other.totalMicros.get());
+        long otherMax = other.maxMicros.get();
+        long max = maxMicros.get();
+        while (otherMax > max && !maxMicros.compareAndSet(max, otherMax)) {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < NR_BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @param percentile
+     *            0 到 100
+     * @return 不小于 percentile% 的记录的最小值（桶的中点，不超过最大值），没有记录时为 0
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[NR_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NR_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < NR_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(midpoint(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        int shift = bits - LINEAR_BITS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowerBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        return sub << shift;
+    }
+
+    private static long midpoint(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        return lowerBound(index) + (1L << shift) / 2;
+    }
+}
@@ -0,0 +1,181 @@
+package sqlancer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 (维度, 名称, 工作线程) 保存 {@link LatencyHistogram}。工作线程只记录到自己的直方图，读取时按名称合并各工作线程的直方图。
+ *
+ * 直方图个数不超过 {@link #MAX_HISTOGRAMS}，超出后新的名称记录到该维度的 {@link #OTHER} 中，内存占用有上限。
+ */
+public final class LatencyRegistry {
+
+    public enum Dimension {
+        // 生成语句的动作，如 MySQLProvider.Action.INSERT
+        ACTION,
+        // oracle 的阶段，如 TLP_WHERE/check
+        ORACLE,
+        // 配置测试中的参数组合
+        COMBO
+    }
+
+    public static final String OTHER = "(other)";
+    static final int MAX_HISTOGRAMS = 4096;
+
+    private static final LatencyRegistry INSTANCE = new LatencyRegistry();
+
+    private final Map<Key, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<Dimension, LatencyHistogram> overflow = new EnumMap<>(Dimension.class);
+
+    LatencyRegistry() {
+        for (Dimension dimension : Dimension.values()) {
+            overflow.put(dimension, new LatencyHistogram());
+        }
+    }
+
+    public static LatencyRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return 名称在该工作线程上的直方图；相同的参数返回同一个对象
+     */
+    public LatencyHistogram get(Dimension dimension, String name, String worker) {
+        Key key = new Key(dimension, name, worker);
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (histograms.size() >= MAX_HISTOGRAMS) {
+            return overflow.get(dimension);
+        }
+        return histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    public void record(Dimension dimension, String name, String worker, long nanos) {
+        get(dimension, name, worker).record(nanos);
+    }
+
+    /**
+     * @return 该维度下每个名称合并各工作线程后的统计，按总耗时降序排列
+     */
+    public List<Summary> summarize(Dimension dimension) {
+        Map<String, LatencyHistogram> merged = new LinkedHashMap<>();
+        for (Map.Entry<Key, LatencyHistogram> e : histograms.entrySet()) {
+            if (e.getKey().dimension == dimension) {
+                merged.computeIfAbsent(e.getKey().name, n -> new LatencyHistogram()).add(e.getValue());
+            }
+        }
+        if (overflow.get(dimension).getCount() != 0) {
+            merged.computeIfAbsent(OTHER, n -> new LatencyHistogram()).add(overflow.get(dimension));
+        }
+        List<Summary> summaries = new ArrayList<>();
+        for (Map.Entry<String, LatencyHistogram> e : merged.entrySet()) {
+            summaries.add(new Summary(e.getKey(), e.getValue()));
+        }
+        summaries.sort(Comparator.comparingLong(Summary::getTotalMicros).reversed());
+        return summaries;
+    }
+
+    /**
+     * @return 所有维度的统计，每个名称一行
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        for (Dimension dimension : Dimension.values()) {
+            List<Summary> summaries = summarize(dimension);
+            if (summaries.isEmpty()) {
+                continue;
+            }
+            sb.append(dimension).append(" latencies (us)\n");
+            for (Summary s : summaries) {
+                sb.append(String.format("%-60s count=%d p50=%d p99=%d p999=%d max=%d total=%dms%n", s.getName(),
+                        s.getCount(), s.getP50(), s.getP99(), s.getP999(), s.getMax(), s.getTotalMicros() / 1000));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 一个名称的延迟统计，单位为微秒。
+     */
+    public static final class Summary {
+        private final String name;
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+        private final long totalMicros;
+
+        Summary(String name, LatencyHistogram histogram) {
+            this.name = name;
+            this.count = histogram.getCount();
+            this.p50 = histogram.getValueAtPercentile(50);
+            this.p99 = histogram.getValueAtPercentile(99);
+            this.p999 = histogram.getValueAtPercentile(99.9);
+            this.max = histogram.getMaxMicros();
+            this.totalMicros = histogram.getTotalMicros();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+    }
+
+    private static final class Key {
+        private final Dimension dimension;
+        private final String name;
+        private final String worker;
+
+        Key(Dimension dimension, String name, String worker) {
+            this.dimension = dimension;
+            this.name = name;
+            this.worker = worker;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return dimension == other.dimension && name.equals(other.name) && Objects.equals(worker, other.worker);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dimension, name, worker);
+        }
+    }
+}
@@ -19,7 +19,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.JCommander.Builder;
@@ -28,9 +29,12 @@ import sqlancer.citus.CitusProvider;
 import sqlancer.clickhouse.ClickHouseProvider;
 import sqlancer.cnosdb.CnosDBProvider;
 import sqlancer.cockroachdb.CockroachDBProvider;
+import sqlancer.common.log.AsyncFileWriter;
 import sqlancer.common.log.Loggable;
 import sqlancer.common.query.Query;
+import sqlancer.common.query.SQLQueryAdapter;
 import sqlancer.common.query.SQLancerResultSet;
+import sqlancer.common.visitor.RenderContext;
 import sqlancer.databend.DatabendProvider;
 import sqlancer.doris.DorisProvider;
 import sqlancer.duckdb.DuckDBProvider;
@@ -51,20 +55,31 @@ import sqlancer.yugabyte.ysql.YSQLProvider;
 
 import static java.lang.Thread.activeCount;
 import static java.lang.Thread.sleep;
-import static sqlancer.BaseConfigurationGenerator.currentGeneratedActions;
 
 public final class Main {
 
     public static final File LOG_DIRECTORY = new File("logs");
-    public static volatile AtomicLong nrQueries = new AtomicLong();
-    public static volatile AtomicLong nrDatabases = new AtomicLong();
-    public static volatile AtomicLong nrSuccessfulActions = new AtomicLong();
-    public static volatile AtomicLong nrUnsuccessfulActions = new AtomicLong();
-    public static volatile AtomicLong threadsShutdown = new AtomicLong();
-    public static volatile AtomicLong throughout = new AtomicLong();
-    public static volatile AtomicLong bugs = new AtomicLong();
     static boolean progressMonitorStarted;
-    static BaseConfigurationGenerator configGenerator=null;
+    static boolean latencySummaryHookAdded;
+    // 各 campaign 的遥测发布任务共用的线程，第一次使用时创建
+    private static ScheduledExecutorService telemetryScheduler;
+
+    /**
+     * 创建 campaign 的检查点并开始定时写出，目录见 {@link Campaign#getCheckpointDirectory(MainOptions, String)}。
+     *
+     * @return 检查点；目录无法访问时返回 null
+     */
+    private static Checkpointer startCheckpointer(Campaign campaign, MainOptions options, String dbmsName) {
+        try {
+            Checkpointer cp = new Checkpointer(campaign, campaign.getCheckpointDirectory(options, dbmsName),
+                    options.getCheckpointIntervalSeconds(), options.resumeFromCheckpoint());
+            cp.start();
+            return cp;
+        } catch (IOException e) {
+            System.err.println("无法读取检查点目录，本次运行不写检查点: " + e.getMessage());
+            return null;
+        }
+    }
     static {
         System.setProperty(org.slf4j.simple.SimpleLogger.DEFAULT_LOG_LEVEL_KEY, "ERROR");
         if (!LOG_DIRECTORY.exists()) {
@@ -82,14 +97,17 @@ public final class Main {
         private File queryPlanFile;
         private File reduceFile;
         private FileWriter logFileWriter;
-        public FileWriter currentFileWriter;
-        private FileWriter queryPlanFileWriter;
+        public Writer currentFileWriter;
+        private Writer queryPlanFileWriter;
         private FileWriter reduceFileWriter;
         private Path reproduceFilePath;
 
-        private static final List<String> INITIALIZED_PROVIDER_NAMES = new ArrayList<>();
+        // 已清空过的日志目录，每个 campaign 的每个 DBMS 一个
+        private static final List<String> INITIALIZED_LOG_DIRECTORIES = new ArrayList<>();
         private final boolean logEachSelect;
         private final boolean logQueryPlan;
+        // -cur.log 与查询计划日志由后台线程写出
+        private final boolean asyncLog;
 
         private final boolean useReducer;
         private final DatabaseProvider<?, ?, ?> databaseProvider;
@@ -114,16 +132,17 @@ public final class Main {
         }
 
         public StateLogger(String databaseName, DatabaseProvider<?, ?, ?> provider, MainOptions options) {
-            File dir = new File(LOG_DIRECTORY, provider.getDBMSName());
+            File dir = new File(Campaign.of(options).getLogDirectory(), provider.getDBMSName());
             if (dir.exists() && !dir.isDirectory()) {
                 throw new AssertionError(dir);
             }
-            ensureExistsAndIsEmpty(dir, provider);
+            ensureExistsAndIsEmpty(dir);
             loggerFile = new File(dir, databaseName + ".log");
             logEachSelect = options.logEachSelect();
             if (logEachSelect) {
                 curFile = new File(dir, databaseName + "-cur.log");
             }
+            asyncLog = options.asyncLog();
             logQueryPlan = options.logQueryPlan();
             if (logQueryPlan) {
                 queryPlanFile = new File(dir, databaseName + "-plan.log");
@@ -146,11 +165,11 @@ public final class Main {
             this.databaseProvider = provider;
         }
 
-        private void ensureExistsAndIsEmpty(File dir, DatabaseProvider<?, ?, ?> provider) {
-            if (INITIALIZED_PROVIDER_NAMES.contains(provider.getDBMSName())) {
+        private void ensureExistsAndIsEmpty(File dir) {
+            if (INITIALIZED_LOG_DIRECTORIES.contains(dir.getPath())) {
                 return;
             }
-            synchronized (INITIALIZED_PROVIDER_NAMES) {
+            synchronized (INITIALIZED_LOG_DIRECTORIES) {
                 if (!dir.exists()) {
                     try {
                         Files.createDirectories(dir.toPath());
@@ -165,7 +184,7 @@ public final class Main {
                         file.delete();
                     }
                 }
-                INITIALIZED_PROVIDER_NAMES.add(provider.getDBMSName());
+                INITIALIZED_LOG_DIRECTORIES.add(dir.getPath());
             }
         }
 
@@ -180,13 +199,13 @@ public final class Main {
             return logFileWriter;
         }
 
-        public FileWriter getCurrentFileWriter() {
+        public Writer getCurrentFileWriter() {
             if (!logEachSelect) {
                 throw new UnsupportedOperationException();
             }
             if (currentFileWriter == null) {
                 try {
-                    currentFileWriter = new FileWriter(curFile, false);
+                    currentFileWriter = asyncLog ? new AsyncFileWriter(curFile, false) : new FileWriter(curFile, false);
                 } catch (IOException e) {
                     throw new AssertionError(e);
                 }
@@ -194,13 +213,14 @@ public final class Main {
             return currentFileWriter;
         }
 
-        public FileWriter getQueryPlanFileWriter() {
+        public Writer getQueryPlanFileWriter() {
             if (!logQueryPlan) {
                 throw new UnsupportedOperationException();
             }
             if (queryPlanFileWriter == null) {
                 try {
-                    queryPlanFileWriter = new FileWriter(queryPlanFile, true);
+                    queryPlanFileWriter = asyncLog ? new AsyncFileWriter(queryPlanFile, true)
+                            : new FileWriter(queryPlanFile, true);
                 } catch (IOException e) {
                     throw new AssertionError(e);
                 }
@@ -315,6 +335,10 @@ public final class Main {
             Loggable stackTrace = getStackTrace(reduce);
             FileWriter logFileWriter2 = getLogFileWriter();
             try {
+                // 记录 bug 之前先把 -cur.log 写完整
+                if (currentFileWriter instanceof AsyncFileWriter) {
+                    ((AsyncFileWriter) currentFileWriter).sync();
+                }
                 logFileWriter2.write(stackTrace.getLogString());
                 printState(logFileWriter2, state);
             } catch (IOException e) {
@@ -328,11 +352,32 @@ public final class Main {
             }
         }
 
+        /**
+         * 关闭已打开的全部日志文件。之后再写日志会重新打开文件。
+         */
+        public void close() {
+            logFileWriter = closeQuietly(logFileWriter);
+            currentFileWriter = closeQuietly(currentFileWriter);
+            queryPlanFileWriter = closeQuietly(queryPlanFileWriter);
+            reduceFileWriter = closeQuietly(reduceFileWriter);
+        }
+
+        private static <W extends Writer> W closeQuietly(W writer) {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return null;
+        }
+
         private Loggable getStackTrace(Throwable e1) {
             return databaseProvider.getLoggableFactory().convertStacktraceToLoggable(e1);
         }
 
-        private void printState(FileWriter writer, StateToReproduce state) {
+        private void printState(Writer writer, StateToReproduce state) {
             StringBuilder sb = new StringBuilder();
 
             sb.append(databaseProvider.getLoggableFactory()
@@ -365,38 +410,76 @@ public final class Main {
 
         private final GlobalState<?, ?, C> globalState;
 
-        QueryManager(GlobalState<?, ?, C> globalState) {
+        public QueryManager(GlobalState<?, ?, C> globalState) {
             this.globalState = globalState;
         }
 
         public boolean execute(Query<C> q, String... fills) throws Exception {
             boolean success;
             success = q.execute(globalState, fills);
-            Main.nrSuccessfulActions.addAndGet(1);
+            globalState.trackRowCount(q, success);
+            countAction(success);
             if (globalState.getOptions().loggerPrintFailed() || success) {
                 globalState.getState().logStatement(q);
             }
             return success;
         }
 
+        /**
+         * 批量执行 queries；连接不是 {@link SQLConnection} 或语句不能批量执行时逐条执行。
+         */
+        @SuppressWarnings("unchecked")
+        public boolean[] executeBatch(List<? extends Query<C>> queries) throws Exception {
+            boolean[] success;
+            if (globalState.getConnection() instanceof SQLConnection && queries.stream()
+                    .allMatch(q -> q instanceof SQLQueryAdapter && ((SQLQueryAdapter) q).canBeBatched())) {
+                success = SQLQueryAdapter.executeBatch((GlobalState<?, ?, SQLConnection>) globalState,
+                        (List<SQLQueryAdapter>) (List<?>) queries);
+            } else {
+                success = new boolean[queries.size()];
+                for (int i = 0; i < queries.size(); i++) {
+                    success[i] = queries.get(i).execute(globalState);
+                }
+            }
+            for (int i = 0; i < queries.size(); i++) {
+                globalState.trackRowCount(queries.get(i), success[i]);
+                countAction(success[i]);
+                if (globalState.getOptions().loggerPrintFailed() || success[i]) {
+                    globalState.getState().logStatement(queries.get(i));
+                }
+            }
+            return success;
+        }
+
         public SQLancerResultSet executeAndGet(Query<C> q, String... fills) throws Exception {
             globalState.getState().logStatement(q);
             SQLancerResultSet result;
             result = q.executeAndGet(globalState, fills);
-            Main.nrSuccessfulActions.addAndGet(1);
+            // 返回结果集的语句没有影响行数
+            globalState.trackRowCount(q, result != null);
+            countAction(result != null);
             return result;
         }
 
+        // 每条语句只在这里计数一次，SQLQueryAdapter 不再计数
+        private void countAction(boolean success) {
+            globalState.getMetrics().increment(success ? MetricsRegistry.Counter.SUCCESSFUL_ACTIONS
+                    : MetricsRegistry.Counter.UNSUCCESSFUL_ACTIONS);
+        }
+
         public void incrementSelectQueryCount() {
-            Main.nrQueries.addAndGet(1);
+            globalState.getMetrics().increment(MetricsRegistry.Counter.QUERIES);
         }
 
+        /**
+         * @return 本工作线程（全局状态的标签）执行的查询数
+         */
         public Long getSelectQueryCount() {
-            return Main.nrQueries.get();
+            return globalState.getMetrics().get(MetricsRegistry.Counter.QUERIES);
         }
 
         public void incrementCreateDatabase() {
-            Main.nrDatabases.addAndGet(1);
+            globalState.getMetrics().increment(MetricsRegistry.Counter.DATABASES);
         }
 
     }
@@ -425,11 +508,31 @@ public final class Main {
         }
 
         private G createGlobalState() {
+            G state;
             try {
-                return provider.getGlobalStateClass().getDeclaredConstructor().newInstance();
+                state = provider.getGlobalStateClass().getDeclaredConstructor().newInstance();
             } catch (Exception e) {
                 throw new AssertionError(e);
             }
+            state.setMetrics(getMetrics());
+            state.setCampaign(getCampaign());
+            // 在工作线程上调用，括号的写法对本线程之后转换的所有语句生效
+            RenderContext.current().setMinimalParentheses(options.minimalParentheses());
+            return state;
+        }
+
+        public Campaign getCampaign() {
+            return Campaign.of(options);
+        }
+
+        /**
+         * @return 本执行器的计数，以 DBMS、oracle、campaign 和数据库名（每个工作线程一个）为标签
+         */
+        public MetricsRegistry.Counters getMetrics() {
+            String oracle = command.getTestOracleFactory().stream().map(Object::toString)
+                    .collect(Collectors.joining("+"));
+            return MetricsRegistry.getInstance().getCounters(provider.getDBMSName(), oracle, options.getCampaign(),
+                    databaseName);
         }
 
         public O getCommand() {
@@ -458,13 +561,27 @@ public final class Main {
 
             BaseConfigurationGenerator configGenerator = GeneralConfigurationGenerator
                     .createGenerator(state.getDbmsSpecificOptions().getClass(),state);
-            if(configGenerator.loadParameterFeatureProbabilitiesFromFile(configGenerator.getDatabaseType())) {
+            Checkpointer cp = state.getCampaign().getCheckpointer();
+            int nrRestored = cp == null ? 0 : cp.restoreFeatureProbabilities(configGenerator);
+            if (nrRestored == configGenerator.getAllActions().length) {
+                System.out.println("Successfully restored parameter weights from checkpoint.");
+                return;
+            }
+            if (nrRestored == 0 && configGenerator.loadParameterFeatureProbabilitiesFromFile(configGenerator.getDatabaseType())) {
                 System.out.println("Successfully loaded parameter weights from file.");
                 return;
             }
+            if (cp != null) {
+                cp.restoreCoverage();
+            }
             state.setConfigurationGenerator(configGenerator);
+            state.setCheckpointer(cp);
 
             for (BaseConfigurationGenerator.ConfigurationAction action :configGenerator.getAllActions()) {
+                if (state.getCampaign().getParameterFeatureProbabilities().containsKey(action)) {
+                    // 从检查点恢复时跳过已训练完成的参数
+                    continue;
+                }
                 try (C con = provider.createDatabase(state)) {
                     QueryManager<C> manager = new QueryManager<>(state);
                     state.setManager(manager);
@@ -484,6 +601,20 @@ public final class Main {
 
         //Tang:
         public void runConfigurationTesting() throws Exception {
+            runConfigurationTesting(true);
+        }
+
+        /**
+         * 配置测试主循环。多个工作线程并发执行时，每个线程使用各自的数据库与会话级 SET。
+         * <p>
+         * 权重偏差：所有工作线程共享同一个 DBMS 实例，允许 GLOBAL 作用域的线程执行的 SET GLOBAL 在被下一次覆盖之前对其他线程的
+         * 新会话同样生效，但其他线程在这段时间内得到的新覆盖只计入它们自己的参数组合（见 {@link AFLMonitor#updateComWeight}）。
+         * 因此 SESSION 作用域组合的权重中混有 0 号线程当时的 GLOBAL 设置带来的覆盖，线程越多、GLOBAL 参数越活跃，偏差越大。
+         * 需要无偏的权重时以单线程运行，或令所有线程都只使用 SESSION 作用域。
+         *
+         * @param globalConfigurationAllowed 是否允许执行 GLOBAL 作用域的 SET；为 false 时只测试 SESSION 作用域可用的参数组合
+         */
+        public void runConfigurationTesting(boolean globalConfigurationAllowed) throws Exception {
             G state = createGlobalState();
             stateToRepro = provider.getStateToReproduce(databaseName);
             stateToRepro.seedValue = r.getSeed();
@@ -494,22 +625,17 @@ public final class Main {
             state.setMainOptions(options);
             state.setDbmsSpecificOptions(command);
             state.setStateLogger(logger);
+            state.setGlobalConfigurationAllowed(globalConfigurationAllowed);
 
-            if (configGenerator==null){
-                configGenerator = GeneralConfigurationGenerator
-                        .createGenerator(state.getDbmsSpecificOptions().getClass(), state);
-                configGenerator.loadWeightsFromFile(configGenerator.getDatabaseType());
-                configGenerator.loadParameterFeatureProbabilitiesFromFile(configGenerator.getDatabaseType());
-            }
-
+            BaseConfigurationGenerator configGenerator = state.getCampaign().getConfigurationGenerator(state);
             state.setConfigurationGenerator(configGenerator);
+            // 不使用覆盖率的 campaign 为 null，参数组合的权重保持不变
+            AFLMonitor coverage = state.getCampaign().getCoverage();
             int testCount=0;
-            while (testCount<1000000) {
-                if(testCount%1000==0) {
-                    configGenerator.topKSnapshot(1000);
-                }
-                configGenerator.generateActions();
-                AFLMonitor.testcaseNum =0;
+            while (testCount<1000000 && !Thread.currentThread().isInterrupted()) {
+                List<BaseConfigurationGenerator.ConfigurationAction> actions = configGenerator
+                        .generateActions(globalConfigurationAllowed);
+                state.resetNrConfigurationTestCases();
                 for (int i = 0; i < BaseConfigurationGenerator.TRAINING_SAMPLES; i++) {
                     state.getState().setStatements(new ArrayList<>());
                     try (C con = provider.createDatabase(state)) {
@@ -518,7 +644,9 @@ public final class Main {
                         } catch (Exception e) {
 
                         }
-                        AFLMonitor.getInstance().refreshBuffer();
+                        if (coverage != null) {
+                            coverage.refreshBuffer();
+                        }
                         QueryManager<C> manager = new QueryManager<>(state);
                         state.setManager(manager);
                         state.setConnection(con);
@@ -526,10 +654,12 @@ public final class Main {
                             logger.writeCurrent(state.getState());
                         }
                         //AFLMonitor.getInstance().refreshBuffer();
-                        provider.generateDatabaseWithConfigurationTest(state, currentGeneratedActions);
+                        provider.generateDatabaseWithConfigurationTest(state, actions);
                     }
                 }
-                AFLMonitor.getInstance().updateComWeight(currentGeneratedActions);
+                if (coverage != null) {
+                    coverage.updateComWeight(actions, state.getNrConfigurationTestCases());
+                }
                 testCount++;
             }
             try {
@@ -704,8 +834,20 @@ public final class Main {
         }
         ExecutorService execService = Executors.newFixedThreadPool(options.getNumberConcurrentThreads());
         DBMSExecutorFactory<?, ?, ?> executorFactory = nameToProvider.get(jc.getParsedCommand());
+        Campaign campaign;
+        try {
+            campaign = Campaign.of(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return options.getErrorExitCode();
+        }
+        campaign.configureCoverage(AFLMonitor.getDBMSCommand(jc.getParsedCommand(), options));
 
         Randomly.initialize(options);
+        startTelemetryPublisher(campaign, options);
+        if (options.printLatencySummary()) {
+            addLatencySummaryHook();
+        }
         if (options.printProgressInformation()) {
             startProgressMonitor();
             if (options.printProgressSummary()) {
@@ -721,19 +863,25 @@ public final class Main {
                         }
                         //Tang:close AFLMonitor
                         try {
-                            AFLMonitor.getInstance().close();
+                            campaign.closeCoverage();
                             sleep(2000);
                         } catch (InterruptedException e) {
                             throw new RuntimeException(e);
                         }
+                        MetricsRegistry.Snapshot metrics = MetricsRegistry.getInstance().snapshot();
                         System.out.println("Overall execution statistics");
                         System.out.println("============================");
-                        System.out.println(formatInteger(nrQueries.get()) + " queries");
-                        System.out.println(formatInteger(nrDatabases.get()) + " databases");
-                        System.out.println(
-                                formatInteger(nrSuccessfulActions.get()) + " successfully-executed statements");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.QUERIES)) + " queries");
                         System.out.println(
-                                formatInteger(nrUnsuccessfulActions.get()) + " unsuccessfully-executed statements");
+                                formatInteger(metrics.get(MetricsRegistry.Counter.DATABASES)) + " databases");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.SUCCESSFUL_ACTIONS))
+                                + " successfully-executed statements");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.UNSUCCESSFUL_ACTIONS))
+                                + " unsuccessfully-executed statements");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.ROW_COUNT_HITS))
+                                + " row counts answered without COUNT(*)");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.ROW_COUNT_QUERIES))
+                                + " row counts queried with COUNT(*)");
                     }
 
                     private String formatInteger(long intValue) {
@@ -752,7 +900,7 @@ public final class Main {
 
         if (options.performConnectionTest()) {
             try {
-                AFLMonitor.getInstance();
+                campaign.getCoverage();
                 executorFactory.getDBMSExecutor(options.getDatabasePrefix() + "connectiontest", new Randomly())
                         .testConnection();
             } catch (Exception e) {
@@ -764,10 +912,12 @@ public final class Main {
         }
         final AtomicBoolean someOneFails = new AtomicBoolean(false);
 
+        campaign.begin(jc.getParsedCommand(), options.getTotalNumberTries());
+        campaign.setCheckpointer(startCheckpointer(campaign, options, jc.getParsedCommand()));
         //Tang: 1.SQL优先级训练
         DBMSExecutor<?, ?, ?> executor = executorFactory.getDBMSExecutor(options.getDatabasePrefix() + 0, new Randomly(System.currentTimeMillis()));
         try {
-            BaseConfigurationGenerator.isTrainingPhase=true;
+            campaign.setTrainingPhase(true);
             executor.runConfigurationTraining();
 
         } catch (IgnoreMeException e) {
@@ -779,7 +929,7 @@ public final class Main {
             executor.getLogger().logException(reduce, executor.getStateToReproduce());
 
         } finally {
-            BaseConfigurationGenerator.isTrainingPhase=false;
+            campaign.setTrainingPhase(false);
             try {
                 if (options.logEachSelect()) {
                     if (executor.getLogger().currentFileWriter != null) {
@@ -826,8 +976,7 @@ public final class Main {
                             }
                         }
                     } finally {
-                        threadsShutdown.addAndGet(1);
-                        if (threadsShutdown.get() == options.getTotalNumberTries()) {
+                        if (campaign.getThreadsShutdown().incrementAndGet() == options.getTotalNumberTries()) {
                             execService.shutdown();
                         }
                     }
@@ -874,6 +1023,8 @@ public final class Main {
             }
         } catch (InterruptedException e) {
             e.printStackTrace();
+        } finally {
+            campaign.closeCheckpointer();
         }
 
         return someOneFails.get() ? options.getErrorExitCode() : 0;
@@ -900,8 +1051,20 @@ public final class Main {
         }
         ExecutorService execService = Executors.newFixedThreadPool(options.getNumberConcurrentThreads());
         DBMSExecutorFactory<?, ?, ?> executorFactory = nameToProvider.get(jc.getParsedCommand());
+        Campaign campaign;
+        try {
+            campaign = Campaign.of(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return options.getErrorExitCode();
+        }
+        campaign.configureCoverage(AFLMonitor.getDBMSCommand(jc.getParsedCommand(), options));
 
         Randomly.initialize(options);
+        startTelemetryPublisher(campaign, options);
+        if (options.printLatencySummary()) {
+            addLatencySummaryHook();
+        }
         if (options.printProgressInformation()) {
             startProgressMonitor();
             if (options.printProgressSummary()) {
@@ -917,19 +1080,25 @@ public final class Main {
                         }
                         //Tang:close AFLMonitor
                         try {
-                            AFLMonitor.getInstance().close();
+                            campaign.closeCoverage();
                             sleep(2000);
                         } catch (InterruptedException e) {
                             throw new RuntimeException(e);
                         }
+                        MetricsRegistry.Snapshot metrics = MetricsRegistry.getInstance().snapshot();
                         System.out.println("Overall execution statistics");
                         System.out.println("============================");
-                        System.out.println(formatInteger(nrQueries.get()) + " queries");
-                        System.out.println(formatInteger(nrDatabases.get()) + " databases");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.QUERIES)) + " queries");
                         System.out.println(
-                                formatInteger(nrSuccessfulActions.get()) + " successfully-executed statements");
-                        System.out.println(
-                                formatInteger(nrUnsuccessfulActions.get()) + " unsuccessfully-executed statements");
+                                formatInteger(metrics.get(MetricsRegistry.Counter.DATABASES)) + " databases");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.SUCCESSFUL_ACTIONS))
+                                + " successfully-executed statements");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.UNSUCCESSFUL_ACTIONS))
+                                + " unsuccessfully-executed statements");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.ROW_COUNT_HITS))
+                                + " row counts answered without COUNT(*)");
+                        System.out.println(formatInteger(metrics.get(MetricsRegistry.Counter.ROW_COUNT_QUERIES))
+                                + " row counts queried with COUNT(*)");
                     }
 
                     private String formatInteger(long intValue) {
@@ -948,7 +1117,7 @@ public final class Main {
 
         if (options.performConnectionTest()) {
             try {
-                AFLMonitor.getInstance();
+                campaign.getCoverage();
                 executorFactory.getDBMSExecutor(options.getDatabasePrefix() + "connectiontest", new Randomly())
                         .testConnection();
             } catch (Exception e) {
@@ -960,87 +1129,96 @@ public final class Main {
         }
         final AtomicBoolean someOneFails = new AtomicBoolean(false);
 
-        //Tang:
-        for (; bugs.intValue() < options.getTotalNumberTries(); bugs.addAndGet(1)) {
-            int i = bugs.intValue();
+        if (options.resumeFromCheckpoint()) {
+            // 同一进程中再次启动时，丢弃内存中的权重，改为从检查点恢复
+            campaign.resetConfigurationGenerator();
+        }
+        campaign.setCheckpointer(startCheckpointer(campaign, options, jc.getParsedCommand()));
+
+        //Tang: 每个工作线程使用独立的数据库（databasePrefix + i）；GLOBAL 作用域的参数只由 0 号线程设置，其余线程只执行 SESSION 作用域的 SET。
+        // 0 号线程的 SET GLOBAL 同样作用于其他线程，由此带来的覆盖会计入其他线程的组合，见 DBMSExecutor.runConfigurationTesting(boolean)
+        final int nrWorkers = options.getNumberConcurrentThreads();
+        campaign.begin(jc.getParsedCommand(), nrWorkers);
+        for (int i = 0; i < nrWorkers; i++) {
+            final int workerId = i;
             final String databaseName = options.getDatabasePrefix() + i;
-            final long seed;
-            if (options.getRandomSeed() == -1) {
-                seed = System.currentTimeMillis() + i;
-            } else {
-                seed = options.getRandomSeed() + i;
-            }
-            Randomly r = new Randomly(seed);
-
+            execService.execute(new Runnable() {
 
-            DBMSExecutor<?, ?, ?> executor = executorFactory.getDBMSExecutor(databaseName, r);
-            try {
-                executor.runConfigurationTesting();
-            } catch (IgnoreMeException e) {
-                continue;
-            } catch (Throwable reduce) {
-                reduce.printStackTrace();
-                executor.getStateToReproduce().exception = reduce.getMessage();
-                executor.getLogger().logFileWriter = null;
-                executor.getLogger().logException(reduce, executor.getStateToReproduce());
-                if (options.serializeReproduceState()) {
-                    executor.getStateToReproduce().logStatement(reduce.getMessage()); // add the error statement
-                    executor.getStateToReproduce().serialize(executor.getLogger().getReproduceFilePath());
-                }
-                if(AFLMonitor.getInstance().isDBMSAlive()==false){
+                @Override
+                public void run() {
+                    Thread.currentThread().setName(databaseName);
                     try {
-                        executor.getLogger().getLogFileWriter().write("This is a crush! \n");
-                        executor.getLogger().getLogFileWriter().flush();
-                        AFLMonitor.getInstance().restartDBMS();
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                        runWorker();
+                    } finally {
+                        if (campaign.getThreadsShutdown().incrementAndGet() == nrWorkers) {
+                            execService.shutdown();
+                        }
                     }
                 }
-            } finally {
-                try {
-                    if (options.logEachSelect()) {
-                        if (executor.getLogger().currentFileWriter != null) {
-                            executor.getLogger().currentFileWriter.close();
+
+                private void runWorker() {
+                    MetricsRegistry.Counters metrics = executorFactory
+                            .getDBMSExecutor(databaseName, new Randomly(0)).getMetrics();
+                    // 只统计本 campaign 本次运行的轮数，其他 campaign 与此前的运行不影响本次运行何时结束
+                    for (long round = 0; campaign.getRunTotal(MetricsRegistry.Counter.BUGS) < options
+                            .getTotalNumberTries(); round++) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            System.out.println("线程 " + databaseName + " 收到中断信号，正在退出...");
+                            break;
                         }
-                        executor.getLogger().currentFileWriter = null;
+                        final long seed;
+                        if (options.getRandomSeed() == -1) {
+                            seed = System.currentTimeMillis() + workerId + round * nrWorkers;
+                        } else {
+                            seed = options.getRandomSeed() + workerId + round * nrWorkers;
+                        }
+                        runConfigurationTesting(new Randomly(seed));
+                        metrics.increment(MetricsRegistry.Counter.BUGS);
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
                 }
-            }
-
-
-        }
-
-
-        DBMSExecutor<?, ?, ?> executor = executorFactory.getDBMSExecutor(options.getDatabasePrefix() + 0, new Randomly(System.currentTimeMillis()));
-        try {
-            BaseConfigurationGenerator.isTrainingPhase=false;
-            executor.runConfigurationTesting();
-
-        } catch (IgnoreMeException e) {
-
-        } catch (Throwable reduce) {
-            reduce.printStackTrace();
-            executor.getStateToReproduce().exception = reduce.getMessage();
-            executor.getLogger().logFileWriter = null;
-            executor.getLogger().logException(reduce, executor.getStateToReproduce());
 
-        } finally {
-
-            try {
-                if (options.logEachSelect()) {
-                    if (executor.getLogger().currentFileWriter != null) {
-                        executor.getLogger().currentFileWriter.close();
+                private void runConfigurationTesting(Randomly r) {
+                    DBMSExecutor<?, ?, ?> executor = executorFactory.getDBMSExecutor(databaseName, r);
+                    try {
+                        executor.runConfigurationTesting(workerId == 0);
+                    } catch (IgnoreMeException e) {
+                        return;
+                    } catch (Throwable reduce) {
+                        reduce.printStackTrace();
+                        executor.getStateToReproduce().exception = reduce.getMessage();
+                        executor.getLogger().logFileWriter = null;
+                        executor.getLogger().logException(reduce, executor.getStateToReproduce());
+                        if (options.serializeReproduceState()) {
+                            executor.getStateToReproduce().logStatement(reduce.getMessage()); // add the error statement
+                            executor.getStateToReproduce().serialize(executor.getLogger().getReproduceFilePath());
+                        }
+                        // 只有使用覆盖率的 campaign 自己启动了 DBMS，才能判断是否崩溃并重启
+                        AFLMonitor monitor = campaign.getCoverage();
+                        if (monitor != null && !monitor.isDBMSAlive()) {
+                            try {
+                                executor.getLogger().getLogFileWriter().write("This is a crush! \n");
+                                executor.getLogger().getLogFileWriter().flush();
+                                monitor.restartDBMSIfDead();
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    } finally {
+                        try {
+                            if (options.logEachSelect()) {
+                                if (executor.getLogger().currentFileWriter != null) {
+                                    executor.getLogger().currentFileWriter.close();
+                                }
+                                executor.getLogger().currentFileWriter = null;
+                            }
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
                     }
-                    executor.getLogger().currentFileWriter = null;
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            });
         }
 
-
         try {
             if (options.getTimeoutSeconds() == -1) {
                 execService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
@@ -1048,7 +1226,12 @@ public final class Main {
                 execService.awaitTermination(options.getTimeoutSeconds(), TimeUnit.SECONDS);
             }
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            // 停止测试时中断调用线程，同时中断所有工作线程
+            execService.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            // 停止或结束时写出最后一个检查点
+            campaign.closeCheckpointer();
         }
 
         return someOneFails.get() ? options.getErrorExitCode() : 0;
@@ -1115,36 +1298,95 @@ public final class Main {
         final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
         scheduler.scheduleAtFixedRate(new Runnable() {
 
-            private long timeMillis = System.currentTimeMillis();
-            private long lastNrQueries;
-            private long lastNrDbs;
-
-            {
-                timeMillis = System.currentTimeMillis();
-            }
+            private MetricsRegistry.Snapshot previous = MetricsRegistry.getInstance().snapshot();
 
             @Override
             public void run() {
-                long elapsedTimeMillis = System.currentTimeMillis() - timeMillis;
-                long currentNrQueries = nrQueries.get();
-                long nrCurrentQueries = currentNrQueries - lastNrQueries;
-                throughout.set((long) (nrCurrentQueries / (elapsedTimeMillis / 1000d)));
-                long currentNrDbs = nrDatabases.get();
-                long nrCurrentDbs = currentNrDbs - lastNrDbs;
-                double throughputDbs = nrCurrentDbs / (elapsedTimeMillis / 1000d);
-                long successfulStatementsRatio = (long) (100.0 * nrSuccessfulActions.get()
-                        / (nrSuccessfulActions.get() + nrUnsuccessfulActions.get()));
+                MetricsRegistry registry = MetricsRegistry.getInstance();
+                registry.tick();
+                MetricsRegistry.Snapshot current = registry.snapshot();
+                long currentNrQueries = current.get(MetricsRegistry.Counter.QUERIES);
+                double throughputQueries = current.ratePerSecond(MetricsRegistry.Counter.QUERIES, previous);
+                double throughputDbs = current.ratePerSecond(MetricsRegistry.Counter.DATABASES, previous);
+                long nrSuccessfulActions = current.get(MetricsRegistry.Counter.SUCCESSFUL_ACTIONS);
+                long nrUnsuccessfulActions = current.get(MetricsRegistry.Counter.UNSUCCESSFUL_ACTIONS);
+                long successfulStatementsRatio = (long) (100.0 * nrSuccessfulActions
+                        / (nrSuccessfulActions + nrUnsuccessfulActions));
+                long nrThreadsShutdown = Campaign.getAll().stream().mapToLong(c -> c.getThreadsShutdown().get()).sum();
                 DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
                 Date date = new Date();
                 System.out.println(String.format(
                         "[%s] Executed %d queries (%d queries/s; %.2f/s dbs, successful statements: %2d%%). Threads shut down: %d.",
-                        dateFormat.format(date), currentNrQueries,  throughout.get(), throughputDbs,
-                        successfulStatementsRatio, threadsShutdown.get()));
-                timeMillis = System.currentTimeMillis();
-                lastNrQueries = currentNrQueries;
-                lastNrDbs = currentNrDbs;
+                        dateFormat.format(date), currentNrQueries, (long) throughputQueries, throughputDbs,
+                        successfulStatementsRatio, nrThreadsShutdown));
+                previous = current;
             }
         }, 5, 5, TimeUnit.SECONDS);
     }
 
+    private static synchronized void addLatencySummaryHook() {
+        if (latencySummaryHookAdded) {
+            return;
+        }
+        latencySummaryHookAdded = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("Latency summary");
+            System.out.println("===============");
+            System.out.print(LatencyRegistry.getInstance().format());
+        }));
+    }
+
+    /**
+     * 每隔 --telemetry-interval 毫秒向 campaign 的 {@link TelemetryChannel} 发布一个快照，推送方只读取快照，不再自行统计。
+     * 快照只包含本 campaign 本次运行的计数；同一 campaign 再次启动时替换上一次运行的发布任务。
+     */
+    private static synchronized void startTelemetryPublisher(Campaign campaign, MainOptions options) {
+        if (telemetryScheduler == null) {
+            telemetryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "sqlancer-telemetry");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        Predicate<MetricsRegistry.Tags> ofCampaign = campaign::owns;
+        campaign.setTelemetryPublisher(telemetryScheduler.scheduleAtFixedRate(new Runnable() {
+
+            private MetricsRegistry.Snapshot previous = MetricsRegistry.getInstance().snapshot();
+
+            @Override
+            public void run() {
+                // 不打印进度信息时没有进度监视器，由遥测调度器推进 getRecentRate 的窗口
+                MetricsRegistry.getInstance().tick();
+                MetricsRegistry.Snapshot current = MetricsRegistry.getInstance().snapshot();
+                List<TelemetrySnapshot.WorkerState> workers = new ArrayList<>();
+                for (String worker : current.getTags().stream().filter(ofCampaign).map(MetricsRegistry.Tags::getWorker)
+                        .filter(w -> !w.isEmpty()).distinct().sorted().collect(Collectors.toList())) {
+                    Predicate<MetricsRegistry.Tags> ofWorker = ofCampaign.and(tags -> tags.getWorker().equals(worker));
+                    workers.add(new TelemetrySnapshot.WorkerState(worker,
+                            campaign.getRunCount(current, MetricsRegistry.Counter.QUERIES, ofWorker),
+                            campaign.getRunCount(current, MetricsRegistry.Counter.DATABASES, ofWorker),
+                            current.ratePerSecond(MetricsRegistry.Counter.QUERIES, previous, ofWorker)));
+                }
+                String oracle = current.getTags().stream().filter(ofCampaign).map(MetricsRegistry.Tags::getOracle)
+                        .filter(o -> !o.isEmpty()).distinct().sorted().collect(Collectors.joining(","));
+                // 覆盖率由工作线程在刷新位图时增量维护，这里只读取命中边数，不扫描位图
+                double coverage = campaign.getCoverageRate();
+                List<String> combo = campaign.getCurrentGeneratedActions().stream()
+                        .map(BaseConfigurationGenerator.ConfigurationAction::getName).collect(Collectors.toList());
+                long now = System.currentTimeMillis();
+                long nrThreadsShutdown = campaign.getThreadsShutdown().get();
+                campaign.getTelemetry().publish(new TelemetrySnapshot(campaign.getId(), now,
+                        (now - campaign.getStartMillis()) / 1000, campaign.isRunning(), oracle,
+                        campaign.getRunCount(current, MetricsRegistry.Counter.QUERIES, ofCampaign),
+                        current.ratePerSecond(MetricsRegistry.Counter.QUERIES, previous, ofCampaign), coverage, combo,
+                        campaign.getRunCount(current, MetricsRegistry.Counter.BUGS, ofCampaign),
+                        campaign.getRunCount(current, MetricsRegistry.Counter.SUCCESSFUL_ACTIONS, ofCampaign),
+                        campaign.getRunCount(current, MetricsRegistry.Counter.UNSUCCESSFUL_ACTIONS, ofCampaign),
+                        nrThreadsShutdown,
+                        workers));
+                previous = current;
+            }
+        }, 0, options.getTelemetryIntervalMillis(), TimeUnit.MILLISECONDS));
+    }
+
 }
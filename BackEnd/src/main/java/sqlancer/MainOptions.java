@@ -45,9 +45,18 @@ public class MainOptions {
     @Parameter(names = "--log-each-select", description = "Logs every statement issued", arity = 1)
     private boolean logEachSelect = true; // NOPMD
 
+    @Parameter(names = "--async-log", description = "Write the -cur.log and query plan log from a background thread in batches (disable if the DBMS may crash the JVM, so that no logged statement is lost)", arity = 1)
+    private boolean asyncLog = true; // NOPMD
+
     @Parameter(names = "--log-execution-time", description = "Logs the execution time of each statement (requires --log-each-select to be enabled)", arity = 1)
     private boolean logExecutionTime = true; // NOPMD
 
+    @Parameter(names = "--latency-histograms", description = "Record latency histograms per generator action, oracle phase and configuration combo", arity = 1)
+    private boolean recordLatencies = true; // NOPMD
+
+    @Parameter(names = "--print-latency-summary", description = "Print the p50/p99/p999 latencies of each action, oracle phase and configuration combo on shutdown", arity = 1)
+    private boolean printLatencySummary; // NOPMD
+
     @Parameter(names = "--print-failed", description = "Logs failed insert, create and other statements without results", arity = 1)
     private boolean loggerPrintFailed = true; // NOPMD
 
@@ -78,6 +87,15 @@ public class MainOptions {
     @Parameter(names = "--port", description = "The port used to log into the DBMS")
     private int port = MainOptions.NO_SET_PORT; // NOPMD
 
+    @Parameter(names = "--use-coverage", description = "Start an AFL-instrumented mysqld and guide training by its coverage (MySQL campaigns only)", arity = 1)
+    private boolean useCoverage = true; // NOPMD
+
+    @Parameter(names = "--coverage-dbms-path", description = "Path of the AFL-instrumented mysqld started by a MySQL campaign")
+    private String coverageDBMSPath = AFLMonitor.DEFAULT_DBMS_PATH; // NOPMD
+
+    @Parameter(names = "--coverage-datadir", description = "Data directory of the instrumented mysqld (empty = the default of mysqld); campaigns that run at the same time need different directories and --port values")
+    private String coverageDataDirectory = ""; // NOPMD
+
     @Parameter(names = "--print-progress-information", description = "Whether to print progress information such as the number of databases generated or queries issued", arity = 1)
     private boolean printProgressInformation = true; // NOPMD
 
@@ -123,6 +141,12 @@ public class MainOptions {
     @Parameter(names = "--database-prefix", description = "The prefix used for each database created")
     private String databasePrefix = "database"; // NOPMD
 
+    @Parameter(names = "--campaign", description = "The name under which the execution counters of this run are reported")
+    private String campaign = "default"; // NOPMD
+
+    @Parameter(names = "--telemetry-interval", description = "Interval in milliseconds at which a telemetry snapshot is published for the web dashboard")
+    private long telemetryIntervalMillis = 1000; // NOPMD
+
     @Parameter(names = "--serialize-reproduce-state", description = "Serialize the state to reproduce")
     private boolean serializeReproduceState = false; // NOPMD
 
@@ -135,14 +159,20 @@ public class MainOptions {
     @Parameter(names = "--statement-reducer-max-steps", description = "EXPERIMENTAL Maximum steps the statement reducer will do")
     private long maxStatementReduceSteps = NO_REDUCE_LIMIT; // NOPMD
 
-    @Parameter(names = "--statement-reducer-max-time", description = "EXPERIMENTAL Maximum time duration (secs) the AST-based reducer will do")
-    private long maxASTReduceTime = NO_REDUCE_LIMIT; // NOPMD
+    @Parameter(names = "--statement-reducer-max-time", description = "EXPERIMENTAL Maximum time duration (secs) the statement reducer will do")
+    private long maxStatementReduceTime = NO_REDUCE_LIMIT; // NOPMD
 
     @Parameter(names = "--ast-reducer-max-steps", description = "EXPERIMENTAL Maximum steps the AST-based reducer will do")
     private long maxASTReduceSteps = NO_REDUCE_LIMIT; // NOPMD
 
-    @Parameter(names = "--ast-reducer-max-time", description = "EXPERIMENTAL Maximum time duration (secs) the statement reducer will do")
-    private long maxStatementReduceTime = NO_REDUCE_LIMIT; // NOPMD
+    @Parameter(names = "--ast-reducer-max-time", description = "EXPERIMENTAL Maximum time duration (secs) the AST-based reducer will do")
+    private long maxASTReduceTime = NO_REDUCE_LIMIT; // NOPMD
+
+    @Parameter(names = "--statement-reducer-threads", description = "EXPERIMENTAL Number of candidate statement lists the statement reducer tests concurrently, each on its own database <name>_r<i>")
+    private int statementReducerThreads = 1; // NOPMD
+
+    @Parameter(names = "--reducer-snapshots", description = "EXPERIMENTAL Number of database snapshots after statement prefixes that each reducer keeps, so that a candidate only replays the statements after the nearest snapshot (0 to always replay from an empty database)")
+    private int reducerSnapshots = 8; // NOPMD
 
     @Parameter(names = "--validate-result-size-only", description = "Should validate result size only and skip comparing content of the result set ", arity = 1)
     private boolean validateResultSizeOnly = false; // NOPMD
@@ -150,6 +180,39 @@ public class MainOptions {
     @Parameter(names = "--canonicalize-sql-strings", description = "Should canonicalize query string (add ';' at the end", arity = 1)
     private boolean canonicalizeSqlString = true; // NOPMD
 
+    @Parameter(names = "--compare-result-digests", description = "Compare TLP result sets by streaming multiset digests; the rows are only kept in a bounded buffer to report a mismatch", arity = 1)
+    private boolean compareResultDigests = true; // NOPMD
+
+    @Parameter(names = "--result-digest-buffered-rows", description = "Maximum number of rows kept next to each result set digest to report a mismatch without re-running the queries")
+    private int resultDigestBufferedRows = 10000; // NOPMD
+
+    @Parameter(names = "--minimal-parentheses", description = "Omit parentheses that operator precedence makes redundant when rendering SQL (currently MySQL operators, and atomic operands for the other DBMSs)", arity = 1)
+    private boolean minimalParentheses; // NOPMD
+
+    @Parameter(names = "--batch-statements", description = "Send runs of generated DML statements with JDBC batches when the DBMS enables batching", arity = 1)
+    private boolean batchStatements = true; // NOPMD
+
+    @Parameter(names = "--incremental-schema", description = "Apply the schema changes described by the generators instead of reading the whole catalog after each DDL statement", arity = 1)
+    private boolean useIncrementalSchema = true; // NOPMD
+
+    @Parameter(names = "--verify-schema-every", description = "Cross-check the incrementally maintained schema against the catalog after this many applied changes (0 = never)")
+    private int verifySchemaEvery = 0; // NOPMD
+
+    @Parameter(names = "--track-row-counts", description = "Maintain table row counts from the affected rows of executed statements instead of issuing SELECT COUNT(*) after each change", arity = 1)
+    private boolean trackRowCounts = true; // NOPMD
+
+    @Parameter(names = "--export-weights-as-text", description = "Also export trained weight files in the legacy text format next to the binary files", arity = 1)
+    private boolean exportWeightsAsText = false; // NOPMD
+
+    @Parameter(names = "--checkpoint-dir", description = "Directory in which checkpoints of the training state are stored (one subdirectory per DBMS)")
+    private String checkpointDirectory = "checkpoints"; // NOPMD
+
+    @Parameter(names = "--checkpoint-interval-seconds", description = "Seconds between two checkpoints of the training state (0 = only checkpoint when the run ends)")
+    private int checkpointIntervalSeconds = 300; // NOPMD
+
+    @Parameter(names = "--resume-from-checkpoint", description = "Restore combo weights, feature probabilities, training counts and coverage from the latest checkpoint", arity = 1)
+    private boolean resumeFromCheckpoint = false; // NOPMD
+
     public int getMaxExpressionDepth() {
         return maxExpressionDepth;
     }
@@ -166,6 +229,18 @@ public class MainOptions {
         return logEachSelect;
     }
 
+    public boolean asyncLog() {
+        return asyncLog;
+    }
+
+    public boolean recordLatencies() {
+        return recordLatencies;
+    }
+
+    public boolean printLatencySummary() {
+        return printLatencySummary;
+    }
+
     public boolean printAllStatements() {
         if (printSucceedingStatements && printStatements) {
             throw new AssertionError();
@@ -239,6 +314,18 @@ public class MainOptions {
         return port;
     }
 
+    public boolean useCoverage() {
+        return useCoverage;
+    }
+
+    public String getCoverageDBMSPath() {
+        return coverageDBMSPath;
+    }
+
+    public String getCoverageDataDirectory() {
+        return coverageDataDirectory;
+    }
+
     public boolean printProgressInformation() {
         return printProgressInformation;
     }
@@ -303,6 +390,14 @@ public class MainOptions {
         return databasePrefix;
     }
 
+    public String getCampaign() {
+        return campaign;
+    }
+
+    public long getTelemetryIntervalMillis() {
+        return telemetryIntervalMillis;
+    }
+
     public boolean performConnectionTest() {
         return useConnectionTest;
     }
@@ -327,6 +422,14 @@ public class MainOptions {
         return maxStatementReduceTime;
     }
 
+    public int getStatementReducerThreads() {
+        return statementReducerThreads;
+    }
+
+    public int getReducerSnapshots() {
+        return reducerSnapshots;
+    }
+
     public long getMaxASTReduceSteps() {
         return maxASTReduceSteps;
     }
@@ -343,4 +446,48 @@ public class MainOptions {
         return canonicalizeSqlString;
     }
 
+    public boolean compareResultDigests() {
+        return compareResultDigests;
+    }
+
+    public int getResultDigestBufferedRows() {
+        return resultDigestBufferedRows;
+    }
+
+    public boolean minimalParentheses() {
+        return minimalParentheses;
+    }
+
+    public boolean batchStatements() {
+        return batchStatements;
+    }
+
+    public boolean useIncrementalSchema() {
+        return useIncrementalSchema;
+    }
+
+    public int getVerifySchemaEvery() {
+        return verifySchemaEvery;
+    }
+
+    public boolean trackRowCounts() {
+        return trackRowCounts;
+    }
+
+    public boolean exportWeightsAsText() {
+        return exportWeightsAsText;
+    }
+
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public int getCheckpointIntervalSeconds() {
+        return checkpointIntervalSeconds;
+    }
+
+    public boolean resumeFromCheckpoint() {
+        return resumeFromCheckpoint;
+    }
+
 }
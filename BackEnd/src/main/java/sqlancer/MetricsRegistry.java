@@ -0,0 +1,251 @@
+package sqlancer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 执行计数的注册表。每个 (DBMS, oracle, campaign, worker) 标签组合对应一组 {@link LongAdder}，工作线程只更新自己的计数；
+ * 读取时通过 {@link #snapshot()} 汇总，读取不修改任何状态，多个客户端同时读取互不影响。
+ */
+public final class MetricsRegistry {
+
+    public enum Counter {
+        QUERIES, DATABASES, SUCCESSFUL_ACTIONS, UNSUCCESSFUL_ACTIONS, ROW_COUNT_HITS, ROW_COUNT_QUERIES, BUGS
+    }
+
+    // 两次 tick 之间的最短间隔，与进度监视器的周期相同
+    static final long DEFAULT_TICK_INTERVAL_MILLIS = 5000;
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<Tags, Counters> counters = new ConcurrentHashMap<>();
+    // 没有所属全局状态时（如单独使用的 RowCountTracker）使用的计数
+    private final Counters untagged;
+    // 最近两次 tick 的快照，用于计算最近一段时间的速率
+    private volatile Snapshot previousTick;
+    private volatile Snapshot lastTick;
+    private final long minTickIntervalNanos;
+
+    MetricsRegistry() {
+        this(DEFAULT_TICK_INTERVAL_MILLIS);
+    }
+
+    MetricsRegistry(long minTickIntervalMillis) {
+        minTickIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minTickIntervalMillis);
+        untagged = getCounters("", "", "", "");
+        lastTick = snapshot();
+        previousTick = lastTick;
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return 标签对应的计数；相同的标签返回同一个对象
+     */
+    public Counters getCounters(String dbms, String oracle, String campaign, String worker) {
+        return counters.computeIfAbsent(new Tags(dbms, oracle, campaign, worker), Counters::new);
+    }
+
+    public Counters getUntagged() {
+        return untagged;
+    }
+
+    /**
+     * @return 所有标签组合上 counter 的当前总和
+     */
+    public long getTotal(Counter counter) {
+        return getTotal(counter, tags -> true);
+    }
+
+    /**
+     * @return 满足 filter 的标签组合上 counter 的当前总和，例如只统计某个 campaign
+     */
+    public long getTotal(Counter counter, Predicate<Tags> filter) {
+        long total = 0;
+        for (Counters c : counters.values()) {
+            if (filter.test(c.tags)) {
+                total += c.get(counter);
+            }
+        }
+        return total;
+    }
+
+    public Snapshot snapshot() {
+        Map<Tags, long[]> values = new HashMap<>();
+        for (Counters c : counters.values()) {
+            long[] v = new long[Counter.values().length];
+            for (Counter counter : Counter.values()) {
+                v[counter.ordinal()] = c.get(counter);
+            }
+            values.put(c.tags, v);
+        }
+        return new Snapshot(System.nanoTime(), values);
+    }
+
+    /**
+     * 记录一个快照作为速率计算的区间端点，由遥测调度器与进度监视器定期调用。距上一次记录不到最短间隔时不记录，
+     * 因此速率窗口的长度不取决于有多少个调用方以及它们的周期。
+     *
+     * @return 是否记录了新的快照
+     */
+    public synchronized boolean tick() {
+        Snapshot now = snapshot();
+        if (now.nanoTime - lastTick.nanoTime < minTickIntervalNanos) {
+            return false;
+        }
+        previousTick = lastTick;
+        lastTick = now;
+        return true;
+    }
+
+    /**
+     * @return 最近两次 tick 之间 counter 每秒的增量；还没有 tick 过时为创建注册表以来的平均速率
+     */
+    public double getRecentRate(Counter counter) {
+        return getRecentRate(counter, tags -> true);
+    }
+
+    public double getRecentRate(Counter counter, Predicate<Tags> filter) {
+        Snapshot previous = previousTick;
+        Snapshot last = lastTick;
+        if (previous == last) {
+            return snapshot().ratePerSecond(counter, last, filter);
+        }
+        return last.ratePerSecond(counter, previous, filter);
+    }
+
+    public static final class Counters {
+        private final Tags tags;
+        private final LongAdder[] adders = new LongAdder[Counter.values().length];
+
+        private Counters(Tags tags) {
+            this.tags = tags;
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+        }
+
+        public void increment(Counter counter) {
+            adders[counter.ordinal()].increment();
+        }
+
+        public void add(Counter counter, long n) {
+            adders[counter.ordinal()].add(n);
+        }
+
+        public long get(Counter counter) {
+            return adders[counter.ordinal()].sum();
+        }
+
+        public Tags getTags() {
+            return tags;
+        }
+    }
+
+    public static final class Tags {
+        private final String dbms;
+        private final String oracle;
+        private final String campaign;
+        private final String worker;
+
+        public Tags(String dbms, String oracle, String campaign, String worker) {
+            this.dbms = dbms;
+            this.oracle = oracle;
+            this.campaign = campaign;
+            this.worker = worker;
+        }
+
+        public String getDbms() {
+            return dbms;
+        }
+
+        public String getOracle() {
+            return oracle;
+        }
+
+        public String getCampaign() {
+            return campaign;
+        }
+
+        public String getWorker() {
+            return worker;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Tags)) {
+                return false;
+            }
+            Tags other = (Tags) o;
+            return dbms.equals(other.dbms) && oracle.equals(other.oracle) && campaign.equals(other.campaign)
+                    && worker.equals(other.worker);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dbms, oracle, campaign, worker);
+        }
+
+        @Override
+        public String toString() {
+            return dbms + "/" + oracle + "/" + campaign + "/" + worker;
+        }
+    }
+
+    /**
+     * 某一时刻各标签组合的计数，不随之后的更新改变。
+     */
+    public static final class Snapshot {
+        private final long nanoTime;
+        private final Map<Tags, long[]> values;
+
+        private Snapshot(long nanoTime, Map<Tags, long[]> values) {
+            this.nanoTime = nanoTime;
+            this.values = values;
+        }
+
+        public long get(Counter counter) {
+            return get(counter, tags -> true);
+        }
+
+        /**
+         * @return 满足 filter 的标签组合上 counter 的总和，例如只统计某个 campaign
+         */
+        public long get(Counter counter, Predicate<Tags> filter) {
+            long total = 0;
+            for (Map.Entry<Tags, long[]> e : values.entrySet()) {
+                if (filter.test(e.getKey())) {
+                    total += e.getValue()[counter.ordinal()];
+                }
+            }
+            return total;
+        }
+
+        public Set<Tags> getTags() {
+            return values.keySet();
+        }
+
+        /**
+         * @return 从 earlier 到本快照之间 counter 每秒的增量
+         */
+        public double ratePerSecond(Counter counter, Snapshot earlier) {
+            return ratePerSecond(counter, earlier, tags -> true);
+        }
+
+        public double ratePerSecond(Counter counter, Snapshot earlier, Predicate<Tags> filter) {
+            double seconds = (nanoTime - earlier.nanoTime) / 1e9;
+            if (seconds <= 0) {
+                return 0;
+            }
+            return (get(counter, filter) - earlier.get(counter, filter)) / seconds;
+        }
+    }
+}
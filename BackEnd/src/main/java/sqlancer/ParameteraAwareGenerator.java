@@ -1,13 +1,18 @@
 package sqlancer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
 
 
-import static sqlancer.AFLMonitor.coverageBuf;
-import static sqlancer.BaseConfigurationGenerator.allParameterCombos;
-import static sqlancer.BaseConfigurationGenerator.parameterFeatureProbabilities;
 
 /**
  * Implements Parameter-Aware Test Case Synthesis.
@@ -19,6 +24,15 @@ public class ParameteraAwareGenerator {
     //    private final GeneralGlobalState globalState;
     // Temperature parameter α to enhance differentiation. α > 1.
     private static final double ALPHA = 1.5;
+    private static final double LN_2 = Math.log(2);
+    // xlnx(c) = c * ln(c) 的查找表，xlnx(0) = 0
+    private static final double[] X_LOG_X = new double[1 << 16];
+
+    static {
+        for (int c = 1; c < X_LOG_X.length; c++) {
+            X_LOG_X[c] = c * Math.log(c);
+        }
+    }
 
     // Data structures to hold counts for probability calculations.
     // In a real scenario, these would be populated by a coverage tracker.
@@ -26,16 +40,22 @@ public class ParameteraAwareGenerator {
     // Map<ParameterConfig, Map<GeneratorNode, Integer>>
 
     public static Set<ExpressionAction> featureSet = new java.util.HashSet<>();
+    private static final int INITIAL_EDGES = 1 << 12;
     private final ExpressionAction[] actions;
     private int testCounts = 0;
     private final int[] featureCounts;
-    //
-    private final int[] edgeCounts = new int[AFLMonitor.AFL_MAP_SIZE];
+    // 只为曾被命中的边分配槽位，以下按槽位存储的数组随 edgeIndex 增长
+    private final EdgeIndex edgeIndex = new EdgeIndex(INITIAL_EDGES);
+    private int[] edgeCounts = new int[INITIAL_EDGES];
     // Map<ParameterConfig, Map<GeneratorNode, Map<Edge, Integer>>>
     private final int[][] featureEdgeCounts;
     // Map<Edge, Integer>
-    private final long[] totalEdgeHitCounts = new long[AFLMonitor.AFL_MAP_SIZE];
-    public static double[] comActionProbabilities;
+    private long[] totalEdgeHitCounts = new long[INITIAL_EDGES];
+    // 由 chooseFeature() 填充，交给当前工作线程的 GlobalState 使用
+    private final double[] comActionProbabilities;
+    // 上次 getFeatureWeights() 的结果及其对应的样本数
+    private double[] cachedWeights;
+    private int cachedTestCounts = -1;
 
 //    // Map<ParameterConfig, Integer>
 //    private final Map<String, double[]> totalSamplesPerConfig = new HashMap<>();
@@ -45,18 +65,22 @@ public class ParameteraAwareGenerator {
      * @param actionClass 具体的 Action 枚举的 Class 对象，例如 MySQLExpressionGenerator.Actions.class
      */
     public ParameteraAwareGenerator(Class<? extends ExpressionAction> actionClass) {
-        this.actions = actionClass.getEnumConstants();
+        this(actionClass.getEnumConstants(), actionClass.getName());
+    }
+
+    private ParameteraAwareGenerator(ExpressionAction[] actions, String actionClassName) {
+        this.actions = actions;
         if (this.actions == null || this.actions.length == 0) {
-            throw new IllegalArgumentException("Action enum class cannot be empty: " + actionClass.getName());
+            throw new IllegalArgumentException("Action enum class cannot be empty: " + actionClassName);
         }
         int numActions = this.actions.length;
         this.featureCounts = new int[numActions];
-        this.featureEdgeCounts = new int[numActions][AFLMonitor.AFL_MAP_SIZE];
+        this.featureEdgeCounts = new int[numActions][INITIAL_EDGES];
         comActionProbabilities = new double[numActions];
     }
     /**
      * Calculates the novelty score for an edge.
-     * @param edge The edge identifier.
+     * @param edge The slot of the edge in {@link #edgeIndex}.
      * @return The novelty score.
      */
     private double getNovelty(int edge) {
@@ -69,80 +93,111 @@ public class ParameteraAwareGenerator {
     /**
      * Calculates the mutual information between a feature and an edge for a given parameter configuration.
      * MI(f, e | c) = Σ P(f, e | c) * log2( P(f, e | c) / (P(f | c) * P(e | c)) )
-     * @param feature The SQL feature (GeneratorNode).
-     * @param edge The edge identifier.
-     * @return The mutual information value.
+     *
+     * 展开后 N * ln2 * MI = Σ_cells xlnx(c) + xlnx(N) - [xlnx(F1) + xlnx(F0)] - [xlnx(E1) + xlnx(E0)]，
+     * 其中 xlnx(c) = c * ln(c)。小计数查表，不再为每个 (边, 特征) 计算四次 Math.log。
+     * 调用方保证 0 < F1 < N 且 0 < E1 < N，否则互信息为零。
+     *
+     * @param countF1 The number of samples containing the feature.
+     * @param countE1 The number of samples covering the edge.
+     * @param countF1E1 The number of samples containing the feature and covering the edge.
+     * @param edgeTerm xlnx(N) - xlnx(E1) - xlnx(E0)
+     * @param featureTerm xlnx(F1) + xlnx(F0)
+     * @return N * ln2 * MI
      */
-    private double calculateMutualInformation(int feature, int edge) {
-        // 从数组中获取计数
-        int countF1 = featureCounts[feature];
-        int countE1 = edgeCounts[edge];
-        int countF1E1 = featureEdgeCounts[feature][edge];
-
-
-
-        // 计算联合事件和边缘事件的计数
-        int countF0 = testCounts - countF1;
-        int countE0 = testCounts - countE1;
+    private double scaledMutualInformation(int countF1, int countE1, int countF1E1, double edgeTerm,
+            double featureTerm) {
         int countF1E0 = countF1 - countF1E1;
         int countF0E1 = countE1 - countF1E1;
-        int countF0E0 = countF0 - countF0E1;
-
-        // 如果总测试次数、特征计数或边计数为零，则互信息为零，提前返回
-        if (testCounts == 0 || countF1 == 0 || countE1 == 0||countE0==0||countF0==0) {
-            return 0.0;
-        }
-        double mi = 0.0;
-        // 根据互信息公式，逐项计算
-        // MI = Σ p(x,y) * log2( p(x,y) / (p(x)*p(y)) )
-        if (countF1E1 > 0) {
-            double pF1E1 = (double) countF1E1 / testCounts;
-            mi += pF1E1 * Math.log((double) (countF1E1 * testCounts) / (countF1 * countE1));
-        }
-        if (countF1E0 > 0) {
-            double pF1E0 = (double) countF1E0 / testCounts;
-            mi += pF1E0 * Math.log((double) (countF1E0 * testCounts)/ (countF1  * countE0 ));
-        }
-        if (countF0E1 > 0) {
-            double pF0E1 = (double) countF0E1 / testCounts;
-            mi += pF0E1 * Math.log((double) (countF0E1 * testCounts) / (countF0 * countE1));
+        int countF0E0 = testCounts - countF1 - countF0E1;
+        return xLogX(countF1E1) + xLogX(countF1E0) + xLogX(countF0E1) + xLogX(countF0E0) + edgeTerm - featureTerm;
+    }
 
-        }
-        if (countF0E0 > 0) {
-            double pF0E0 = (double) countF0E0 / testCounts;
-            mi += pF0E0 * Math.log((double) (countF0E0 * testCounts) / ( countF0  * countE0 ));
-        }
-        // 将对数底从自然对数e转换为2
-        return mi / Math.log(2);
+    static double xLogX(int count) {
+        return count < X_LOG_X.length ? X_LOG_X[count] : count * Math.log(count);
     }
 
     /**
      * Calculates the weights for all features under the current parameter configuration.
+     * 边区间被拆分到 ForkJoinPool 上并行计算；计数自上次调用后没有变化时直接返回缓存结果。
      * @return A map from GeneratorNode to its calculated weight.
      */
     private double[] getFeatureWeights() {
-        double[] weights = new double[featureCounts.length];
-
-        // 优化：交换内外循环，外层遍历边，内层遍历特征
-        for (int j = 0; j < edgeCounts.length; j++) {
-            // 优化：如果一个边从未被触发，它对任何特征的权重贡献都为0，跳过
-            if (edgeCounts[j] == 0) {
-                continue;
+        if (cachedWeights != null && cachedTestCounts == testCounts) {
+            return cachedWeights.clone();
+        }
+        double[] weights;
+        if (testCounts == 0 || edgeIndex.size() == 0) {
+            weights = new double[featureCounts.length];
+        } else {
+            double[] featureTerms = new double[featureCounts.length];
+            for (int i = 0; i < featureCounts.length; i++) {
+                featureTerms[i] = xLogX(featureCounts[i]) + xLogX(testCounts - featureCounts[i]);
             }
+            weights = ForkJoinPool.commonPool()
+                    .invoke(new FeatureWeightTask(featureTerms, 0, edgeIndex.size()));
+        }
+        cachedWeights = weights;
+        cachedTestCounts = testCounts;
+        return weights.clone();
+    }
 
-            // 优化：在内层循环外计算一次 novelty
-            // 修正：getNovelty应该使用边的索引j，而不是特征的索引i
-            double novelty = getNovelty(j);
+    /**
+     * 计算槽位区间 [from, to) 内的边对所有特征权重的贡献。
+     */
+    private final class FeatureWeightTask extends RecursiveTask<double[]> {
 
-            for (int i = 0; i < featureCounts.length; i++) {
-                double mi = calculateMutualInformation(i, j);
-                weights[i] += mi * novelty;
+        private static final long serialVersionUID = 1L;
+        private static final int EDGES_PER_TASK = 4096;
+
+        private final double[] featureTerms;
+        private final int from;
+        private final int to;
+
+        FeatureWeightTask(double[] featureTerms, int from, int to) {
+            this.featureTerms = featureTerms;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > EDGES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                FeatureWeightTask left = new FeatureWeightTask(featureTerms, from, mid);
+                left.fork();
+                double[] right = new FeatureWeightTask(featureTerms, mid, to).compute();
+                double[] weights = left.join();
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] += right[i];
+                }
+                return weights;
             }
+            double[] weights = new double[featureCounts.length];
+            double xLogN = xLogX(testCounts);
+            for (int j = from; j < to; j++) {
+                int countE1 = edgeCounts[j];
+                // 一个边从未被触发或每次都被触发时，它对任何特征的互信息都为0，跳过
+                if (countE1 == 0 || countE1 == testCounts) {
+                    continue;
+                }
+                double edgeTerm = xLogN - xLogX(countE1) - xLogX(testCounts - countE1);
+                // 在内层循环外计算一次 novelty，并把 1 / (N * ln2) 折进去
+                double scale = getNovelty(j) / (testCounts * LN_2);
+                for (int i = 0; i < featureCounts.length; i++) {
+                    int countF1 = featureCounts[i];
+                    if (countF1 == 0 || countF1 == testCounts) {
+                        continue;
+                    }
+                    double mi = scaledMutualInformation(countF1, countE1, featureEdgeCounts[i][j], edgeTerm,
+                            featureTerms[i]);
+                    weights[i] += mi * scale;
+                }
+            }
+            return weights;
         }
-        return weights;
     }
 
-
     /**
      * Calculates the generation probabilities for all features based on their weights.
      * @return A map from GeneratorNode to its generation probability.
@@ -174,32 +229,165 @@ public class ParameteraAwareGenerator {
         return probabilities;
     }
 
-    public void updateCounts() {
+    /**
+     * 用一次查询的覆盖率快照更新计数。
+     * @param snapshot 每个 long 打包 8 条边的命中计数（小端序），见 {@link CoverageMap#getSnapshot()}
+     */
+    public void updateCounts(long[] snapshot) {
         testCounts++;
 
-        // 将对 featureCounts 的更新移到循环外，因为它与 coverageBuf 的内容无关
+        // 将对 featureCounts 的更新移到循环外，因为它与覆盖率快照的内容无关
+        int[] features = new int[featureSet.size()];
+        int nrFeatures = 0;
         for (ExpressionAction feature : featureSet) {
             featureCounts[feature.ordinal()] += 1;
+            features[nrFeatures++] = feature.ordinal();
         }
 
-        // 只遍历一次 coverageBuf
-        for (int i = 0; i < AFLMonitor.AFL_MAP_SIZE; i++) {
-            // 仅在覆盖信息不为零时处理
-            if (coverageBuf[i] != 0) {
+        // 只访问非零的字，再在字内找出非零字节
+        for (int w = 0; w < snapshot.length; w++) {
+            long word = snapshot[w];
+            while (word != 0) {
+                int shift = Long.numberOfTrailingZeros(word) & ~7;
+                int hits = (int) (word >>> shift) & 0xFF;
+                word &= ~(0xFFL << shift);
+                int slot = slotOf((w << 3) + (shift >>> 3));
 
                 // 更新基本边计数
-                edgeCounts[i] += 1;
-                totalEdgeHitCounts[i] +=(coverageBuf[i]& 0xFF);
+                edgeCounts[slot] += 1;
+                totalEdgeHitCounts[slot] += hits;
 
                 // 一次性更新所有 feature 相关的边计数
-                for (ExpressionAction feature : featureSet) {
-                    featureEdgeCounts[feature.ordinal()][i] += 1;
+                for (int f = 0; f < nrFeatures; f++) {
+                    featureEdgeCounts[features[f]][slot] += 1;
                 }
             }
         }
     }
 
-    public void chooseFeature(List<BaseConfigurationGenerator.ConfigurationAction> configurationActions) {
+    /**
+     * 返回边的槽位，必要时分配新槽位并扩容按槽位存储的数组。
+     */
+    private int slotOf(int edge) {
+        int slot = edgeIndex.getOrAdd(edge);
+        if (slot == edgeCounts.length) {
+            int capacity = edgeCounts.length * 2;
+            edgeCounts = Arrays.copyOf(edgeCounts, capacity);
+            totalEdgeHitCounts = Arrays.copyOf(totalEdgeHitCounts, capacity);
+            for (int i = 0; i < featureEdgeCounts.length; i++) {
+                featureEdgeCounts[i] = Arrays.copyOf(featureEdgeCounts[i], capacity);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * @return 已统计的查询数
+     */
+    public int getTestCounts() {
+        return testCounts;
+    }
+
+    /**
+     * 复制当前的全部计数，供检查点线程在训练线程继续更新计数的同时写出。
+     */
+    public ParameteraAwareGenerator copy() {
+        ParameteraAwareGenerator copy = new ParameteraAwareGenerator(actions, actions[0].getClass().getName());
+        copy.restoreCounts(testCounts, featureCounts, edgeIndex.size(), edgeIndex::edgeAt, edgeCounts,
+                totalEdgeHitCounts, featureEdgeCounts);
+        return copy;
+    }
+
+    /**
+     * 写出全部计数：特性数、查询数、边数，按槽位顺序的 (边号, 边计数, 命中次数)，各特性的计数及其按槽位的边计数。
+     */
+    public void writeCounts(DataOutput out) throws IOException {
+        int nrEdges = edgeIndex.size();
+        out.writeInt(actions.length);
+        out.writeInt(testCounts);
+        out.writeInt(nrEdges);
+        for (int slot = 0; slot < nrEdges; slot++) {
+            out.writeInt(edgeIndex.edgeAt(slot));
+            out.writeInt(edgeCounts[slot]);
+            out.writeLong(totalEdgeHitCounts[slot]);
+        }
+        for (int i = 0; i < actions.length; i++) {
+            out.writeInt(featureCounts[i]);
+            for (int slot = 0; slot < nrEdges; slot++) {
+                out.writeInt(featureEdgeCounts[i][slot]);
+            }
+        }
+    }
+
+    /**
+     * 读取 {@link #writeCounts(DataOutput)} 写出的计数。
+     *
+     * @throws IOException 特性数与 actionClass 不一致或数据不完整时
+     */
+    public static ParameteraAwareGenerator readCounts(DataInput in, Class<? extends ExpressionAction> actionClass)
+            throws IOException {
+        ParameteraAwareGenerator generator = new ParameteraAwareGenerator(actionClass);
+        int nrActions = in.readInt();
+        if (nrActions != generator.actions.length) {
+            throw new IOException("counts were written for " + nrActions + " features, but " + actionClass.getName()
+                    + " has " + generator.actions.length);
+        }
+        int testCounts = in.readInt();
+        int nrEdges = in.readInt();
+        int[] edges = new int[nrEdges];
+        int[] edgeCounts = new int[nrEdges];
+        long[] totalEdgeHitCounts = new long[nrEdges];
+        for (int slot = 0; slot < nrEdges; slot++) {
+            edges[slot] = in.readInt();
+            edgeCounts[slot] = in.readInt();
+            totalEdgeHitCounts[slot] = in.readLong();
+        }
+        int[] featureCounts = new int[nrActions];
+        int[][] featureEdgeCounts = new int[nrActions][nrEdges];
+        for (int i = 0; i < nrActions; i++) {
+            featureCounts[i] = in.readInt();
+            for (int slot = 0; slot < nrEdges; slot++) {
+                featureEdgeCounts[i][slot] = in.readInt();
+            }
+        }
+        generator.restoreCounts(testCounts, featureCounts, nrEdges, slot -> edges[slot], edgeCounts,
+                totalEdgeHitCounts, featureEdgeCounts);
+        return generator;
+    }
+
+    /**
+     * 按槽位顺序重新登记边，使槽位号与原对象一致，再复制各计数。只用于新建的对象。
+     */
+    private void restoreCounts(int testCounts, int[] featureCounts, int nrEdges,
+            IntUnaryOperator edgeAt, int[] edgeCounts, long[] totalEdgeHitCounts,
+            int[][] featureEdgeCounts) {
+        this.testCounts = testCounts;
+        System.arraycopy(featureCounts, 0, this.featureCounts, 0, this.featureCounts.length);
+        for (int slot = 0; slot < nrEdges; slot++) {
+            slotOf(edgeAt.applyAsInt(slot));
+        }
+        System.arraycopy(edgeCounts, 0, this.edgeCounts, 0, nrEdges);
+        System.arraycopy(totalEdgeHitCounts, 0, this.totalEdgeHitCounts, 0, nrEdges);
+        for (int i = 0; i < this.featureEdgeCounts.length; i++) {
+            System.arraycopy(featureEdgeCounts[i], 0, this.featureEdgeCounts[i], 0, nrEdges);
+        }
+    }
+
+    /**
+     * @return 曾被命中过的不同边的数量
+     */
+    public int getNrObservedEdges() {
+        return edgeIndex.size();
+    }
+
+    /**
+     * 根据参数组合计算表达式特性的选择概率。
+     *
+     * @param parameterFeatureProbabilities 所属 campaign 的参数特性概率
+     * @return 各特性的概率，按 {@link ExpressionAction#ordinal()} 索引
+     */
+    public double[] chooseFeature(List<BaseConfigurationGenerator.ConfigurationAction> configurationActions,
+            Map<BaseConfigurationGenerator.ConfigurationAction, double[]> parameterFeatureProbabilities) {
 
         if (Randomly.getBooleanWithSmallProbability()) {
             // 随机选择特性
@@ -207,12 +395,13 @@ public class ParameteraAwareGenerator {
                 comActionProbabilities[i] = 1.0 / actions.length;
             }
         }else {
-            computeComProbabilities(configurationActions);
+            computeComProbabilities(configurationActions, parameterFeatureProbabilities);
         }
-
+        return comActionProbabilities;
     }
 
-    private void computeComProbabilities(List<BaseConfigurationGenerator.ConfigurationAction> configurationActions ) {
+    private void computeComProbabilities(List<BaseConfigurationGenerator.ConfigurationAction> configurationActions,
+            Map<BaseConfigurationGenerator.ConfigurationAction, double[]> parameterFeatureProbabilities) {
         double[] pro1 = parameterFeatureProbabilities.get(configurationActions.get(0));
         double[] pro2 = parameterFeatureProbabilities.get(configurationActions.get(1));
         for (int i = 0; i < actions.length; i++) {
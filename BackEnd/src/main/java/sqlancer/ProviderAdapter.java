@@ -10,7 +10,6 @@ import sqlancer.common.oracle.CompositeTestOracle;
 import sqlancer.common.oracle.TestOracle;
 import sqlancer.common.schema.AbstractSchema;
 
-import static sqlancer.BaseConfigurationGenerator.currentGeneratedActions;
 import static sqlancer.ParameteraAwareGenerator.featureSet;
 
 public abstract class ProviderAdapter<G extends GlobalState<O, ? extends AbstractSchema<G, ?>, C>, O extends DBMSSpecificOptions<? extends OracleFactory<G>>, C extends SQLancerDBConnection>
@@ -55,13 +54,21 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
         ParameteraAwareGenerator parameterAwareGenerator = new ParameteraAwareGenerator(getActionClass());
         List<? extends OracleFactory<G>> testOracleFactory = globalState.getDbmsSpecificOptions()
                 .getTestOracleFactory();
-        parameterAwareGenerator.chooseFeature(actions);
+        globalState.setFeatureProbabilities(parameterAwareGenerator.chooseFeature(actions,
+                globalState.getCampaign().getParameterFeatureProbabilities()));
+        String oracleName = getOracleName(testOracleFactory);
+        String combo = actions.stream().map(BaseConfigurationGenerator.ConfigurationAction::getName)
+                .collect(Collectors.joining("+"));
 
         try {
+            ExecutionTimer configureTimer = startTimer(globalState);
             generateConfiguration(globalState , actions.get(0));
             generateConfiguration(globalState , actions.get(1));
+            recordLatency(globalState, configureTimer, oracleName + "/configure", null);
+            ExecutionTimer generateTimer = startTimer(globalState);
             generateDatabase(globalState);
             checkViewsAreValid(globalState);
+            recordLatency(globalState, generateTimer, oracleName + "/generate", null);
                 globalState.getManager().incrementCreateDatabase();
                 TestOracle<G> testOracle = testOracleFactory.get(0).create(globalState);
                 long startTime = System.currentTimeMillis();
@@ -69,11 +76,12 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
                 while (System.currentTimeMillis() - startTime < durationMillis) {
                     try (OracleRunReproductionState localState = globalState.getState().createLocalState()) {
                         assert localState != null;
+                        ExecutionTimer timer = startTimer(globalState);
                         try {
                             globalState.getManager().incrementSelectQueryCount();
                             testOracle.check();
-                            AFLMonitor.testcaseNum++;
-                            Main.nrSuccessfulActions.addAndGet(1);
+                            globalState.incrementNrConfigurationTestCases();
+                            globalState.getMetrics().increment(MetricsRegistry.Counter.SUCCESSFUL_ACTIONS);
                         } catch (IgnoreMeException ignored) {
                         } catch (AssertionError e) {
                             Reproducer<G> reproducer = testOracle.getLastReproducer();
@@ -82,6 +90,9 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
                             }
                             //e.printStackTrace();
                             throw e;
+                        } finally {
+                            // 同一参数组合下的查询耗时，用于找出使 DBMS 明显变慢的组合
+                            recordLatency(globalState, timer, oracleName + "/check", combo);
                         }
                         localState.executedWithoutError();
                     }
@@ -103,40 +114,71 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
     public void generateDatabaseWithConfigurationTraining(G globalState, BaseConfigurationGenerator.ConfigurationAction action) throws Exception{
         //Tang: 生成配置参数并进行训练
         ParameteraAwareGenerator parameterAwareGenerator = new ParameteraAwareGenerator(getActionClass());
+        int firstSample = 0;
+        // 有检查点时，从上次未完成的训练继续，并在每轮样本结束后发布计数副本
+        Checkpointer checkpointer = globalState.getCheckpointer();
+        if (checkpointer != null) {
+            Checkpointer.TrainingProgress progress = checkpointer.takeTrainingProgress(action.getName(),
+                    getActionClass());
+            if (progress != null) {
+                parameterAwareGenerator = progress.getCounts();
+                firstSample = progress.getCompletedSamples();
+            }
+            checkpointer.publishTraining(action.getName(), firstSample, parameterAwareGenerator.copy());
+        }
         List<? extends OracleFactory<G>> testOracleFactory = globalState.getDbmsSpecificOptions()
                 .getTestOracleFactory();
+        String oracleName = getOracleName(testOracleFactory);
+        // 不使用覆盖率时不统计，特性概率保持均匀
+        AFLMonitor coverage = globalState.getCampaign().getCoverage();
         try {
-            for (int i = 0; i < BaseConfigurationGenerator.TRAINING_SAMPLES; i++) {
+            for (int i = firstSample; i < BaseConfigurationGenerator.TRAINING_SAMPLES; i++) {
                 generateConfiguration(globalState, action);
+                ExecutionTimer generateTimer = startTimer(globalState);
                 generateDatabase(globalState);
                 checkViewsAreValid(globalState);
+                recordLatency(globalState, generateTimer, oracleName + "/generate", null);
                 globalState.getManager().incrementCreateDatabase();
                 TestOracle<G> testOracle = testOracleFactory.get(0).create(globalState);
                 for (int j = 0; j <10000; j++) {
                     try (OracleRunReproductionState localState = globalState.getState().createLocalState()) {
                         assert localState != null;
+                        ExecutionTimer timer = startTimer(globalState);
                         try {
                             globalState.getManager().incrementSelectQueryCount();
                             featureSet.clear();
-                            AFLMonitor.getInstance().clearCoverage();
+                            if (coverage != null) {
+                                coverage.clearCoverage();
+                            }
                             testOracle.genSelect();
-                            AFLMonitor.getInstance().refreshBuffer();
-                            parameterAwareGenerator.updateCounts();
+                            if (coverage != null) {
+                                coverage.refreshBuffer();
+                                parameterAwareGenerator.updateCounts(coverage.getCoverage().getSnapshot());
+                            }
 
-                            Main.nrSuccessfulActions.addAndGet(1);
+                            globalState.getMetrics().increment(MetricsRegistry.Counter.SUCCESSFUL_ACTIONS);
                         } catch (IgnoreMeException ignored) {
                         } catch (AssertionError e) {
                             e.printStackTrace();
                             throw e;
+                        } finally {
+                            recordLatency(globalState, timer, oracleName + "/genSelect", action.getName());
                         }
                         localState.executedWithoutError();
                     }
                 }
+                if (checkpointer != null) {
+                    checkpointer.publishTraining(action.getName(), i + 1, parameterAwareGenerator.copy());
+                }
             }
             generateDefaultConfiguration(globalState, action);
+            if (checkpointer != null) {
+                checkpointer.finishTraining(action.getName());
+            }
         }finally {
             double[] featureProbabilities = parameterAwareGenerator.getFeatureProbabilities();
-            BaseConfigurationGenerator.parameterFeatureProbabilities.putIfAbsent(action, featureProbabilities.clone());
+            globalState.getCampaign().getParameterFeatureProbabilities().putIfAbsent(action,
+                    featureProbabilities.clone());
             globalState.setSchema(null);
             globalState.getConnection().close();
         }
@@ -147,15 +189,19 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
 
     @Override
     public Reproducer<G> generateAndTestDatabase(G globalState) throws Exception {
+        String oracleName = getOracleName(globalState.getDbmsSpecificOptions().getTestOracleFactory());
         try {
+            ExecutionTimer generateTimer = startTimer(globalState);
             generateDatabase(globalState);
             checkViewsAreValid(globalState);
+            recordLatency(globalState, generateTimer, oracleName + "/generate", null);
             globalState.getManager().incrementCreateDatabase();
 
             TestOracle<G> oracle = getTestOracle(globalState);
             for (int i = 0; i < globalState.getOptions().getNrQueries(); i++) {
                 try (OracleRunReproductionState localState = globalState.getState().createLocalState()) {
                     assert localState != null;
+                    ExecutionTimer timer = startTimer(globalState);
                     try {
                         oracle.check();
                         globalState.getManager().incrementSelectQueryCount();
@@ -166,6 +212,8 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
                             return reproducer;
                         }
                         throw e;
+                    } finally {
+                        recordLatency(globalState, timer, oracleName + "/check", null);
                     }
                     localState.executedWithoutError();
                 }
@@ -178,6 +226,33 @@ public abstract class ProviderAdapter<G extends GlobalState<O, ? extends Abstrac
 
     protected abstract void checkViewsAreValid(G globalState) throws SQLException;
 
+    private static String getOracleName(List<?> testOracleFactory) {
+        return testOracleFactory.stream().map(Object::toString).collect(Collectors.joining("+"));
+    }
+
+    /**
+     * @return 开始计时的计时器，未启用 --latency-histograms 时为 null
+     */
+    private static ExecutionTimer startTimer(GlobalState<?, ?, ?> globalState) {
+        return globalState.getOptions().recordLatencies() ? new ExecutionTimer().start() : null;
+    }
+
+    /**
+     * 将 timer 的耗时记录到 oracle 阶段的直方图，combo 不为 null 时同时记录到该参数组合的直方图。
+     */
+    private static void recordLatency(GlobalState<?, ?, ?> globalState, ExecutionTimer timer, String oraclePhase,
+            String combo) {
+        if (timer == null) {
+            return;
+        }
+        long nanos = timer.end().getElapsedNanos();
+        String worker = globalState.getDatabaseName();
+        LatencyRegistry.getInstance().record(LatencyRegistry.Dimension.ORACLE, oraclePhase, worker, nanos);
+        if (combo != null) {
+            LatencyRegistry.getInstance().record(LatencyRegistry.Dimension.COMBO, combo, worker, nanos);
+        }
+    }
+
     protected TestOracle<G> getTestOracle(G globalState) throws Exception {
         List<? extends OracleFactory<G>> testOracleFactory = globalState.getDbmsSpecificOptions()
                 .getTestOracleFactory();
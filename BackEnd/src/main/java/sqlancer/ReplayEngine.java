@@ -0,0 +1,247 @@
+package sqlancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sqlancer.common.query.Query;
+
+/**
+ * 归约时重放候选语句：在语句前缀之后保存数据库快照（见 {@link DatabaseProvider#createSnapshot}），测试候选时从前缀相同的最长快照恢复，
+ * 只执行其后的语句。
+ *
+ * 快照不一定与重放得到的数据库完全相同（例如 MySQL 以 CREATE TABLE ... LIKE 与 INSERT ... SELECT 复制的表不保留行的物理顺序与统计信息），
+ * 在快照上重现的 bug 应再以 {@link #replayFromScratch} 确认。
+ *
+ * 一个实例只由一个全局状态使用；进程退出时关闭仍未关闭的实例，释放快照。
+ */
+public class ReplayEngine<G extends GlobalState<O, ?, C>, O extends DBMSSpecificOptions<?>, C extends SQLancerDBConnection>
+        implements AutoCloseable {
+
+    // 只影响当前连接，恢复快照后需要重新执行
+    private static final Set<String> SESSION_KEYWORDS = Set.of("PRAGMA", "SET");
+    // 事务、附加的数据库等不属于快照的内容，之后的前缀不保存快照
+    private static final Set<String> UNSAFE_KEYWORDS = Set.of("BEGIN", "START", "SAVEPOINT", "RELEASE", "COMMIT",
+            "ROLLBACK", "END", "ATTACH", "DETACH", "LOCK", "UNLOCK", "USE");
+
+    // 保存了快照、尚未关闭的实例
+    private static final Set<ReplayEngine<?, ?, ?>> OPEN_ENGINES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> OPEN_ENGINES.forEach(ReplayEngine::close), "replay-engine-cleanup"));
+    }
+
+    private final DatabaseProvider<G, O, C> provider;
+    private final int maxSnapshots;
+    // 提供者不能恢复快照（restoreSnapshot 返回 null）时置为 false，之后不再保存快照
+    private boolean snapshotsSupported = true;
+    // 按使用时间排序，最近使用的在最后
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private long nrExecutedStatements;
+    private long nrSkippedStatements;
+    private boolean restoredLastReplay;
+
+    /**
+     * @param maxSnapshots 保留的快照个数，超出时关闭最久未使用的快照；0 表示每次都从空数据库重放
+     */
+    public ReplayEngine(DatabaseProvider<G, O, C> provider, int maxSnapshots) {
+        this.provider = provider;
+        this.maxSnapshots = maxSnapshots;
+    }
+
+    /**
+     * 为 state 建立与在空数据库上依次执行 statements 相同的数据库，并设置为 state 的连接；语句执行失败时忽略。
+     *
+     * 执行到下标 checkpointAt 的语句之前保存快照，之后以 statements[:checkpointAt] 开头的候选可从该处继续执行。调用方应传入下一个候选与本候选
+     * 开始不同的位置，例如 ddmin 去掉的分块的起点。
+     *
+     * @return state 的新连接，由调用方关闭
+     */
+    public synchronized C replay(G state, List<Query<C>> statements, int checkpointAt) throws Exception {
+        C con = null;
+        int start = 0;
+        restoredLastReplay = false;
+        Checkpoint from = findCheckpoint(statements);
+        if (from != null) {
+            try {
+                con = provider.restoreSnapshot(state, from.snapshot);
+                if (con == null) {
+                    snapshotsSupported = false;
+                    close();
+                } else {
+                    restoredLastReplay = true;
+                    start = from.prefix.size();
+                    checkpoints.remove(from);
+                    checkpoints.add(from);
+                }
+            } catch (Exception e) {
+                // 快照不可用时丢弃，从空数据库重放
+                checkpoints.remove(from);
+                closeQuietly(from);
+            }
+        }
+        if (con == null) {
+            con = provider.createDatabase(state);
+        }
+        state.setConnection(con);
+        for (int i = 0; i < start; i++) {
+            if (SESSION_KEYWORDS.contains(firstKeyword(statements.get(i)))) {
+                execute(state, statements.get(i));
+            }
+        }
+        nrSkippedStatements += start;
+        for (int i = start; i < statements.size(); i++) {
+            if (i == checkpointAt && i > start) {
+                checkpoint(state, statements, i);
+            }
+            execute(state, statements.get(i));
+        }
+        return con;
+    }
+
+    /**
+     * 不使用快照，在空数据库上依次执行 statements 并设置为 state 的连接；语句执行失败时忽略。
+     *
+     * @return state 的新连接，由调用方关闭
+     */
+    public C replayFromScratch(G state, List<Query<C>> statements) throws Exception {
+        C con = provider.createDatabase(state);
+        state.setConnection(con);
+        for (Query<C> statement : statements) {
+            execute(state, statement);
+        }
+        return con;
+    }
+
+    /**
+     * @return 最近一次 {@link #replay} 是否从快照恢复
+     */
+    public boolean restoredLastReplay() {
+        return restoredLastReplay;
+    }
+
+    public long getNrExecutedStatements() {
+        return nrExecutedStatements;
+    }
+
+    /**
+     * @return 因从快照恢复而未执行的语句个数
+     */
+    public long getNrSkippedStatements() {
+        return nrSkippedStatements;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Checkpoint c : checkpoints) {
+            closeQuietly(c);
+        }
+        checkpoints.clear();
+        OPEN_ENGINES.remove(this);
+    }
+
+    private void execute(G state, Query<C> statement) {
+        nrExecutedStatements++;
+        try {
+            statement.execute(state);
+        } catch (Throwable ignoredException) {
+            // ignore
+        }
+    }
+
+    private Checkpoint findCheckpoint(List<Query<C>> statements) {
+        Checkpoint best = null;
+        for (Checkpoint c : checkpoints) {
+            if ((best == null || c.prefix.size() > best.prefix.size()) && c.isPrefixOf(statements)) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private void checkpoint(G state, List<Query<C>> statements, int length) {
+        if (maxSnapshots <= 0 || !snapshotsSupported) {
+            return;
+        }
+        List<String> prefix = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            if (!isSnapshotSafe(statements.get(i))) {
+                return;
+            }
+            prefix.add(statements.get(i).getQueryString());
+        }
+        DatabaseSnapshot snapshot;
+        try {
+            snapshot = provider.createSnapshot(state);
+        } catch (Exception e) {
+            return;
+        }
+        if (snapshot == null) {
+            return;
+        }
+        if (checkpoints.size() >= maxSnapshots) {
+            closeQuietly(checkpoints.remove(0));
+        }
+        checkpoints.add(new Checkpoint(prefix, snapshot));
+        OPEN_ENGINES.add(this);
+    }
+
+    private static boolean isSnapshotSafe(Query<?> statement) {
+        String keyword = firstKeyword(statement);
+        if (UNSAFE_KEYWORDS.contains(keyword)) {
+            return false;
+        }
+        if ("CREATE".equals(keyword)) {
+            // 临时表不在快照中
+            String sql = statement.getQueryString().toUpperCase(Locale.ROOT);
+            return !sql.matches("(?s)CREATE\\s+(TEMP|TEMPORARY)\\b.*");
+        }
+        return true;
+    }
+
+    private static String firstKeyword(Query<?> statement) {
+        String sql = statement.getQueryString();
+        int begin = 0;
+        while (begin < sql.length() && !Character.isLetter(sql.charAt(begin))) {
+            begin++;
+        }
+        int end = begin;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        return sql.substring(begin, end).toUpperCase(Locale.ROOT);
+    }
+
+    private static void closeQuietly(Checkpoint c) {
+        try {
+            c.snapshot.close();
+        } catch (Exception e) {
+            // 数据库可能已不可用，忽略
+        }
+    }
+
+    private static final class Checkpoint {
+        private final List<String> prefix;
+        private final DatabaseSnapshot snapshot;
+
+        Checkpoint(List<String> prefix, DatabaseSnapshot snapshot) {
+            this.prefix = prefix;
+            this.snapshot = snapshot;
+        }
+
+        boolean isPrefixOf(List<? extends Query<?>> statements) {
+            if (prefix.size() > statements.size()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.size(); i++) {
+                if (!prefix.get(i).equals(statements.get(i).getQueryString())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package sqlancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 结果集的多重集摘要：行数加上 128 位与顺序无关的哈希。
+ *
+ * 每行的值先算出两个独立的 64 位哈希，再分别按模 2^64 累加，因此摘要只取决于各个值出现的次数，与行的顺序无关，
+ * 合并两个摘要等价于合并两个结果集。摘要相同的两个结果集以极高的概率作为多重集相等。
+ * 摘要同时把前若干行保存在有上限的缓冲区中，摘要不同时用这些行给出差异，不需要重新执行查询（查询的结果可能不确定）。
+ */
+public final class ResultSetDigest {
+
+    private static final long NULL_HASH1 = 0x9E3779B97F4A7C15L;
+    private static final long NULL_HASH2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final int maxRows;
+    private long count;
+    private long sum1;
+    private long sum2;
+    // 不保存各行或行数超过 maxRows 时为 null
+    private List<String> rows;
+
+    public ResultSetDigest() {
+        this(0);
+    }
+
+    /**
+     * @param maxRows 最多保存的行数；结果集的行数超过它时丢弃已保存的行，只保留摘要
+     */
+    public ResultSetDigest(int maxRows) {
+        this.maxRows = maxRows;
+        this.rows = maxRows > 0 ? new ArrayList<>() : null;
+    }
+
+    public void add(String value) {
+        long h1;
+        long h2;
+        if (value == null) {
+            h1 = NULL_HASH1;
+            h2 = NULL_HASH2;
+        } else {
+            // 两个种子与乘数不同的 FNV-1a 变体，再经过 fmix64 打散
+            h1 = 0xCBF29CE484222325L;
+            h2 = 0x84222325CBF29CE4L ^ value.length();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                h1 = (h1 ^ c) * 0x100000001B3L;
+                h2 = (h2 ^ c) * 0xFF51AFD7ED558CCDL;
+            }
+            h1 = mix(h1);
+            h2 = mix(h2 + 0x9E3779B97F4A7C15L);
+        }
+        count++;
+        sum1 += h1;
+        sum2 += h2;
+        if (rows != null) {
+            if (rows.size() < maxRows) {
+                rows.add(value);
+            } else {
+                rows = null;
+            }
+        }
+    }
+
+    public void addAll(ResultSetDigest other) {
+        count += other.count;
+        sum1 += other.sum1;
+        sum2 += other.sum2;
+        if (rows != null && other.count != 0) {
+            if (other.rows != null && rows.size() + other.rows.size() <= maxRows) {
+                rows.addAll(other.rows);
+            } else {
+                rows = null;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 保存的全部行；不保存各行或行数超过上限时返回 null
+     */
+    public List<String> getRows() {
+        return rows == null ? null : Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * @return 两个摘要对应的结果集是否作为多重集相等
+     */
+    public boolean matches(ResultSetDigest other) {
+        return count == other.count && sum1 == other.sum1 && sum2 == other.sum2;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows, %016x%016x", count, sum1, sum2);
+    }
+}
@@ -2,15 +2,48 @@ package sqlancer;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class SQLConnection implements SQLancerDBConnection {
 
     private final Connection connection;
+    private final StatementSettings settings;
+
+    // 空闲的 Statement；借出的 Statement 不在其中
+    private final ArrayDeque<Statement> idleStatements = new ArrayDeque<>();
+    // 空闲的 PreparedStatement，按 SQL 文本索引，按访问顺序淘汰
+    private final LinkedHashMap<String, PreparedStatement> idlePrepared = new LinkedHashMap<>(16, 0.75f, true);
+    // 借出的 PreparedStatement 对应的 SQL 文本，归还时放回缓存
+    private final Map<Statement, String> borrowedPrepared = new IdentityHashMap<>();
+    // 最近执行过的查询文本；同一文本第二次执行时才预编译
+    private final LinkedHashMap<String, Boolean> recentQueries;
+    // 驱动不支持批量执行或批量执行的结果无法回滚时置为 true，之后逐条执行
+    private boolean batchingDisabled;
 
     public SQLConnection(Connection connection) {
+        this(connection, StatementSettings.DEFAULT);
+    }
+
+    public SQLConnection(Connection connection, StatementSettings settings) {
         this.connection = connection;
+        this.settings = settings;
+        int nrRecent = settings.preparedStatementCacheSize * 4;
+        this.recentQueries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > nrRecent;
+            }
+        };
     }
 
     @Override
@@ -21,6 +54,16 @@ public class SQLConnection implements SQLancerDBConnection {
 
     @Override
     public void close() throws SQLException {
+        synchronized (this) {
+            for (Statement s : idleStatements) {
+                closeQuietly(s);
+            }
+            idleStatements.clear();
+            for (PreparedStatement s : idlePrepared.values()) {
+                closeQuietly(s);
+            }
+            idlePrepared.clear();
+        }
         connection.close();
     }
 
@@ -31,4 +74,215 @@ public class SQLConnection implements SQLancerDBConnection {
     public Statement createStatement() throws SQLException {
         return connection.createStatement();
     }
+
+    public StatementSettings getStatementSettings() {
+        return settings;
+    }
+
+    /**
+     * @return 一次 executeBatch 发送的 DML 语句个数上限；{@link #disableBatching()} 之后为 0
+     */
+    public int getBatchSize() {
+        return batchingDisabled ? 0 : settings.batchSize;
+    }
+
+    /**
+     * 本连接之后不再批量执行语句。
+     */
+    public void disableBatching() {
+        batchingDisabled = true;
+    }
+
+    public boolean getAutoCommit() throws SQLException {
+        return connection.getAutoCommit();
+    }
+
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        connection.setAutoCommit(autoCommit);
+    }
+
+    public void commit() throws SQLException {
+        connection.commit();
+    }
+
+    /**
+     * 从池中借出一个 Statement，用完后必须调用 {@link #releaseStatement} 归还，而不是关闭。
+     */
+    public synchronized Statement borrowStatement() throws SQLException {
+        Statement s;
+        while ((s = idleStatements.pollFirst()) != null) {
+            if (!s.isClosed()) {
+                return s;
+            }
+        }
+        if (settings.forwardOnlyReadOnly) {
+            s = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        } else {
+            s = connection.createStatement();
+        }
+        applyFetchSize(s);
+        return s;
+    }
+
+    /**
+     * 借出 sql 对应的 PreparedStatement，缓存中没有时新建；参数由调用方设置，归还时清除。
+     */
+    public synchronized PreparedStatement borrowPreparedStatement(String sql) throws SQLException {
+        PreparedStatement s = idlePrepared.remove(sql);
+        if (s == null || s.isClosed()) {
+            if (settings.forwardOnlyReadOnly) {
+                s = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            } else {
+                s = connection.prepareStatement(sql);
+            }
+            applyFetchSize(s);
+        }
+        borrowedPrepared.put(s, sql);
+        return s;
+    }
+
+    /**
+     * 借出执行查询 sql 用的 Statement：缓存开启且同一文本最近执行过时借出预编译的 PreparedStatement，否则借出普通 Statement。
+     * 两种情况都需要通过 {@link #releaseStatement} 归还。
+     */
+    public synchronized Statement borrowStatementForQuery(String sql) throws SQLException {
+        if (settings.preparedStatementCacheSize > 0
+                && (idlePrepared.containsKey(sql) || recentQueries.put(sql, Boolean.TRUE) != null)) {
+            return borrowPreparedStatement(sql);
+        }
+        return borrowStatement();
+    }
+
+    /**
+     * @return s 是否为预编译的 PreparedStatement（执行时不应再传入 SQL 文本）
+     */
+    public synchronized boolean isPrepared(Statement s) {
+        return borrowedPrepared.containsKey(s);
+    }
+
+    /**
+     * 归还借出的 Statement；其上的 ResultSet 应已关闭。池已满时直接关闭。
+     */
+    public synchronized void releaseStatement(Statement s) throws SQLException {
+        if (s.isClosed()) {
+            borrowedPrepared.remove(s);
+            return;
+        }
+        String sql = borrowedPrepared.remove(s);
+        if (sql != null) {
+            PreparedStatement prepared = (PreparedStatement) s;
+            prepared.clearParameters();
+            PreparedStatement previous = idlePrepared.put(sql, prepared);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+            if (idlePrepared.size() > settings.preparedStatementCacheSize) {
+                Iterator<PreparedStatement> eldest = idlePrepared.values().iterator();
+                closeQuietly(eldest.next());
+                eldest.remove();
+            }
+        } else if (idleStatements.size() < settings.statementPoolSize) {
+            s.clearWarnings();
+            idleStatements.addFirst(s);
+        } else {
+            s.close();
+        }
+    }
+
+    private void applyFetchSize(Statement s) throws SQLException {
+        if (settings.fetchSize != 0) {
+            s.setFetchSize(settings.fetchSize);
+        }
+    }
+
+    private static void closeQuietly(Statement s) {
+        try {
+            s.close();
+        } catch (SQLException e) {
+            // 连接可能已断开，忽略
+        }
+    }
+
+    /**
+     * 各 DBMS 可调整的 Statement 参数，在 Provider 创建连接时指定。
+     */
+    public static final class StatementSettings {
+
+        public static final StatementSettings DEFAULT = new StatementSettings(0, false, 4, 0, 0);
+
+        private final int fetchSize;
+        private final boolean forwardOnlyReadOnly;
+        private final int statementPoolSize;
+        private final int preparedStatementCacheSize;
+        private final int batchSize;
+
+        private StatementSettings(int fetchSize, boolean forwardOnlyReadOnly, int statementPoolSize,
+                int preparedStatementCacheSize, int batchSize) {
+            this.fetchSize = fetchSize;
+            this.forwardOnlyReadOnly = forwardOnlyReadOnly;
+            this.statementPoolSize = statementPoolSize;
+            this.preparedStatementCacheSize = preparedStatementCacheSize;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * @param fetchSize 传给 {@link Statement#setFetchSize}，0 表示使用驱动的默认值
+         */
+        public StatementSettings withFetchSize(int fetchSize) {
+            return new StatementSettings(fetchSize, forwardOnlyReadOnly, statementPoolSize,
+                    preparedStatementCacheSize, batchSize);
+        }
+
+        /**
+         * @param forwardOnlyReadOnly 是否显式以 TYPE_FORWARD_ONLY、CONCUR_READ_ONLY 创建 Statement（部分驱动不支持带这两个参数的重载）
+         */
+        public StatementSettings withForwardOnlyReadOnly(boolean forwardOnlyReadOnly) {
+            return new StatementSettings(fetchSize, forwardOnlyReadOnly, statementPoolSize,
+                    preparedStatementCacheSize, batchSize);
+        }
+
+        /**
+         * @param statementPoolSize 保留的空闲 Statement 个数，0 表示每次用完即关闭
+         */
+        public StatementSettings withStatementPoolSize(int statementPoolSize) {
+            return new StatementSettings(fetchSize, forwardOnlyReadOnly, statementPoolSize,
+                    preparedStatementCacheSize, batchSize);
+        }
+
+        /**
+         * @param preparedStatementCacheSize 缓存的 PreparedStatement 个数，0 表示不预编译重复执行的查询
+         */
+        public StatementSettings withPreparedStatementCacheSize(int preparedStatementCacheSize) {
+            return new StatementSettings(fetchSize, forwardOnlyReadOnly, statementPoolSize,
+                    preparedStatementCacheSize, batchSize);
+        }
+
+        /**
+         * @param batchSize 生成数据库时一次 executeBatch 发送的 DML 语句个数上限，0 或 1 表示逐条执行
+         */
+        public StatementSettings withBatchSize(int batchSize) {
+            return new StatementSettings(fetchSize, forwardOnlyReadOnly, statementPoolSize,
+                    preparedStatementCacheSize, batchSize);
+        }
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public boolean isForwardOnlyReadOnly() {
+            return forwardOnlyReadOnly;
+        }
+
+        public int getStatementPoolSize() {
+            return statementPoolSize;
+        }
+
+        public int getPreparedStatementCacheSize() {
+            return preparedStatementCacheSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+    }
 }
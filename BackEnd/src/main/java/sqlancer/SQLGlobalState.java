@@ -24,7 +24,7 @@ public abstract class SQLGlobalState<O extends DBMSSpecificOptions<?>, S extends
             getLogger().writeCurrent(" -- " + timer.end().asString());
         }
         if (q.couldAffectSchema()) {
-            updateSchema();
+            updateSchema(q, success);
         }
     }
 }
@@ -10,15 +10,12 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-
-import static sqlancer.BaseConfigurationGenerator.proParameterCombos;
+import java.util.stream.IntStream;
 
 @Service
 public class SqlancerRunner {
     private ExecutorService executorService = null;
     private Future<?> sqlancerTaskFuture = null;
-    private long timeMillis = System.currentTimeMillis();
-    private long lastNrQueries;
     /**
      * 启动 SQLancer 模糊测试
      * @param option 要测试的数据库名称，例如 "mysql"
@@ -66,34 +63,36 @@ public class SqlancerRunner {
     public java.util.Map<String, Object> getTestStatus() {
         java.util.Map<String, Object> status = new java.util.HashMap<>();
         status.put("task_status", sqlancerTaskFuture != null && !sqlancerTaskFuture.isDone());
-        status.put("coverage", AFLMonitor.getInstance().getCoverageRate());
+        // 覆盖率和各工作线程的状态取自引擎最近发布的遥测快照，查询状态不读取覆盖率位图（也不会因此启动 DBMS）
+        Campaign campaign = Campaign.getDefault();
+        TelemetrySnapshot telemetry = campaign.getTelemetry().getLatest();
+        status.put("coverage", telemetry == null ? 0.0 : telemetry.getCoverageRate());
+        if (telemetry != null) {
+            status.put("workers", telemetry.getWorkers());
+        }
 
-        long elapsedTimeMillis = System.currentTimeMillis() - timeMillis;
-        long currentNrQueries = Main.nrQueries.get();
-        long nrCurrentQueries = currentNrQueries - lastNrQueries;
-        status.put("execution_count", currentNrQueries);
-        status.put("current_param_combo",  BaseConfigurationGenerator.currentGeneratedActions);
-        status.put("throughput",  (nrCurrentQueries / (elapsedTimeMillis / 1000d)));
-        status.put("bug_count",  Main.bugs.get());
-        lastNrQueries = currentNrQueries;
-        timeMillis = System.currentTimeMillis();
+        // 读取不修改计数，多个客户端轮询时互不影响；吞吐量为进度监视器最近一个周期内的速率
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        MetricsRegistry.Snapshot metrics = registry.snapshot();
+        status.put("execution_count", metrics.get(MetricsRegistry.Counter.QUERIES, campaign::owns));
+        status.put("current_param_combo",  campaign.getCurrentGeneratedActions());
+        status.put("throughput",  registry.getRecentRate(MetricsRegistry.Counter.QUERIES, campaign::owns));
+        status.put("bug_count",  metrics.get(MetricsRegistry.Counter.BUGS, campaign::owns));
         return status;
     }
 
     public Map<String[], Double> getParamWeight(){
-        return proParameterCombos.entrySet().stream()
-                // 按权重 (Map.Entry.getValue()) 降序排序
-                .sorted(Map.Entry.<Set<BaseConfigurationGenerator.ConfigurationAction>, Double>comparingByValue().reversed())
-                // 只取前 20 个
-                .limit(20)
+        // 读取最近发布的 Top-K 视图，不需要与测试线程同步；视图已按权重降序排列
+        ComboWeightStore.TopK topK = Campaign.getDefault().getComboWeights().getTopK();
+        return IntStream.range(0, Math.min(20, topK.size())).boxed()
                 // 收集到新的 Map 中
                 .collect(Collectors.toMap(
                         // 将 Set<ConfigurationAction> 转换为 String[] 作为键
-                        entry -> entry.getKey().stream()
+                        rank -> topK.comboAt(rank).stream()
                                 .map(BaseConfigurationGenerator.ConfigurationAction::getName)
                                 .toArray(String[]::new),
-                        // 保留原始的权重作为值
-                        Map.Entry::getValue,
+                        // 保留发布时的权重作为值
+                        topK::weightAt,
                         // 合并函数（理论上不会出现键冲突）
                         (v1, v2) -> v1,
                         // 使用 LinkedHashMap 来保持排序后的顺序
@@ -1,9 +1,12 @@
 package sqlancer;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import sqlancer.common.query.Query;
+import sqlancer.common.query.SQLQueryAdapter;
 
 public class StatementExecutor<G extends GlobalState<?, ?, ?>, A extends AbstractAction<G>> {
 
@@ -11,6 +14,12 @@ public class StatementExecutor<G extends GlobalState<?, ?, ?>, A extends Abstrac
     private final A[] actions;
     private final ActionMapper<G, A> mapping;
     private final AfterQueryAction queryConsumer;
+    // 等待批量执行的 DML 语句及生成它们的动作
+    @SuppressWarnings("rawtypes")
+    private final List<Query> pendingQueries = new ArrayList<>();
+    private final List<A> pendingActions = new ArrayList<>();
+    // 各动作在本工作线程上的延迟直方图，未启用 --latency-histograms 时为 null
+    private final Map<A, LatencyHistogram> latencies;
 
     @FunctionalInterface
     public interface AfterQueryAction {
@@ -27,6 +36,28 @@ public class StatementExecutor<G extends GlobalState<?, ?, ?>, A extends Abstrac
         this.actions = actions.clone();
         this.mapping = mapping;
         this.queryConsumer = queryConsumer;
+        if (globalState.getOptions().recordLatencies()) {
+            latencies = new HashMap<>();
+            for (A action : this.actions) {
+                latencies.put(action, LatencyRegistry.getInstance().get(LatencyRegistry.Dimension.ACTION,
+                        getActionName(action), globalState.getDatabaseName()));
+            }
+        } else {
+            latencies = null;
+        }
+    }
+
+    /**
+     * @return 动作的名称，枚举常量为 MySQLProvider.Action.INSERT 的形式
+     */
+    static String getActionName(Object action) {
+        if (action instanceof Enum) {
+            Class<?> c = ((Enum<?>) action).getDeclaringClass();
+            String className = c.getEnclosingClass() == null ? c.getSimpleName()
+                    : c.getEnclosingClass().getSimpleName() + "." + c.getSimpleName();
+            return className + "." + ((Enum<?>) action).name();
+        }
+        return action.toString();
     }
 
     @SuppressWarnings("unchecked")
@@ -61,23 +92,111 @@ public class StatementExecutor<G extends GlobalState<?, ?, ?>, A extends Abstrac
             assert nrRemaining[i] > 0;
             nrRemaining[i]--;
             @SuppressWarnings("rawtypes")
-            Query query = null;
+            Query query;
             try {
-                boolean success;
-                int nrTries = 0;
-                do {
-                    query = nextAction.getQuery(globalState);
-                    success = globalState.executeStatement(query);
-                } while (nextAction.canBeRetried() && !success
-                        && nrTries++ < globalState.getOptions().getNrStatementRetryCount());
+                query = nextAction.getQuery(globalState);
             } catch (IgnoreMeException ignored) {
-
+                total--;
+                continue;
+            }
+            // 连接可能在执行中停止批量执行，每次重新读取
+            int batchSize = getBatchSize();
+            if (batchSize > 1 && query instanceof SQLQueryAdapter && ((SQLQueryAdapter) query).canBeBatched()) {
+                // DML 不改变 schema，后续语句的生成不依赖它的执行结果，可以延后执行
+                pendingQueries.add(query);
+                pendingActions.add(nextAction);
+                if (pendingQueries.size() >= batchSize) {
+                    flushPendingQueries();
+                }
+                total--;
+                continue;
             }
-            if (query != null && query.couldAffectSchema()) {
-                globalState.updateSchema();
-                queryConsumer.notify(query);
+            // 保持语句的执行顺序
+            flushPendingQueries();
+            try {
+                query = executeWithRetries(nextAction, query, execute(nextAction, query));
+            } catch (IgnoreMeException ignored) {
+
             }
+            afterQuery(query);
             total--;
         }
+        flushPendingQueries();
+    }
+
+    private int getBatchSize() {
+        if (!globalState.getOptions().batchStatements() || !(globalState.getConnection() instanceof SQLConnection)) {
+            return 0;
+        }
+        return ((SQLConnection) globalState.getConnection()).getBatchSize();
+    }
+
+    /**
+     * 批量执行等待中的语句。批量执行无法回滚时抛出的 {@link IgnoreMeException} 不在本类中忽略，由调用方放弃该数据库。
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void flushPendingQueries() throws Exception {
+        if (pendingQueries.isEmpty()) {
+            return;
+        }
+        ExecutionTimer timer = new ExecutionTimer().start();
+        boolean[] success = ((GlobalState) globalState).executeStatements(pendingQueries);
+        if (latencies != null) {
+            // 无法区分批量中各条语句的耗时，按平均值记录
+            long nanos = timer.end().getElapsedNanos() / pendingQueries.size();
+            for (A action : pendingActions) {
+                latencies.get(action).record(nanos);
+            }
+        }
+        for (int i = 0; i < success.length; i++) {
+            Query query = pendingQueries.get(i);
+            if (!success[i]) {
+                // 批量执行中失败的语句按逐条执行时的规则重试。重试在整批之后执行，并在执行时才写入日志，
+                // 日志中的顺序与数据库实际执行的顺序相同
+                try {
+                    query = executeWithRetries(pendingActions.get(i), query, false);
+                } catch (IgnoreMeException ignored) {
+                    continue;
+                }
+                afterQuery(query);
+            }
+        }
+        pendingQueries.clear();
+        pendingActions.clear();
+    }
+
+    /**
+     * 第一次执行的结果为 success；失败且动作允许重试时重新生成语句并执行。
+     *
+     * @return 最后执行的语句
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Query executeWithRetries(A action, Query query, boolean success) throws Exception {
+        int nrTries = 0;
+        while (action.canBeRetried() && !success && nrTries++ < globalState.getOptions().getNrStatementRetryCount()) {
+            query = action.getQuery(globalState);
+            success = execute(action, query);
+        }
+        return query;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private boolean execute(A action, Query query) throws Exception {
+        if (latencies == null) {
+            return globalState.executeStatement(query);
+        }
+        ExecutionTimer timer = new ExecutionTimer().start();
+        try {
+            return globalState.executeStatement(query);
+        } finally {
+            timer.endAndRecord(latencies.get(action));
+        }
+    }
+
+    private void afterQuery(Query<?> query) throws Exception {
+        // schema 已在 GlobalState#executeStatement 的收尾中更新过
+        if (query != null && query.couldAffectSchema()) {
+            queryConsumer.notify(query);
+        }
     }
 }
@@ -2,8 +2,22 @@ package sqlancer;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import sqlancer.common.query.Query;
 
@@ -21,6 +35,19 @@ public class StatementReducer<G extends GlobalState<O, ?, C>, O extends DBMSSpec
 
     Instant timeOfReductionBegins;
 
+    // 已测试过的候选（原始语句下标的集合）及其是否仍能触发 bug；粒度变化后常会重复出现同一候选
+    private final Map<BitSet, Boolean> testedCandidates = new ConcurrentHashMap<>();
+    // 已计入步数的候选；只计入按顺序取得结果的候选，步数与逐个测试时相同
+    private final Set<BitSet> countedCandidates = new HashSet<>();
+    // 空闲的全局状态，各自连接独立的数据库；同一时刻只由一个线程使用
+    private BlockingQueue<G> idleWorkers;
+    // 每个全局状态各自的快照，只由使用该全局状态的线程访问
+    private Map<G, ReplayEngine<G, O, C>> replayEngines;
+    // 每个全局状态各自的语句副本：执行语句会记录影响行数等状态，多个线程不能执行同一个 Query 对象
+    private Map<G, List<Query<C>>> workerStatements;
+    private int nrWorkers;
+    private ExecutorService executor;
+
     public StatementReducer(DatabaseProvider<G, O, C> provider) {
         this.provider = provider;
     }
@@ -39,15 +66,14 @@ public class StatementReducer<G extends GlobalState<O, ?, C>, O extends DBMSSpec
         maxReduceTime = state.getOptions().getMaxStatementReduceTime();
         maxReduceSteps = state.getOptions().getMaxStatementReduceSteps();
 
-        List<Query<C>> knownToReproduceBugStatements = new ArrayList<>();
+        List<Query<C>> originalStatements = new ArrayList<>();
         for (Query<?> stat : state.getState().getStatements()) {
-            knownToReproduceBugStatements.add((Query<C>) stat);
+            originalStatements.add((Query<C>) stat);
+        }
+        List<Integer> knownToReproduceBugStatements = new ArrayList<>();
+        for (int i = 0; i < originalStatements.size(); i++) {
+            knownToReproduceBugStatements.add(i);
         }
-
-        // System.out.println("Starting query:");
-        // Main.StateLogger logger = newGlobalState.getLogger();
-        // printQueries(knownToReproduceBugStatements);
-        // System.out.println();
 
         if (knownToReproduceBugStatements.size() <= 1) {
             return;
@@ -57,84 +83,247 @@ public class StatementReducer<G extends GlobalState<O, ?, C>, O extends DBMSSpec
         currentReduceSteps = 0;
         currentReduceTime = 0;
         partitionNum = 2;
+        testedCandidates.clear();
+        countedCandidates.clear();
 
-        while (knownToReproduceBugStatements.size() >= 2 && hasNotReachedLimit(currentReduceSteps, maxReduceSteps)
-                && hasNotReachedLimit(currentReduceTime, maxReduceTime)) {
-            observedChange = false;
+        nrWorkers = Math.max(state.getOptions().getStatementReducerThreads(), 1);
+        idleWorkers = new LinkedBlockingQueue<>();
+        if (nrWorkers == 1) {
+            idleWorkers.add(newGlobalState);
+        } else {
+            for (int i = 0; i < nrWorkers; i++) {
+                idleWorkers.add(createWorker(newGlobalState, i));
+            }
+            executor = Executors.newFixedThreadPool(nrWorkers);
+        }
+        replayEngines = new IdentityHashMap<>();
+        workerStatements = new IdentityHashMap<>();
+        for (G worker : idleWorkers) {
+            replayEngines.put(worker, new ReplayEngine<>(provider, state.getOptions().getReducerSnapshots()));
+            workerStatements.put(worker, nrWorkers == 1 ? originalStatements : copyStatements(originalStatements));
+        }
+        try {
+            while (knownToReproduceBugStatements.size() >= 2
+                    && hasNotReachedLimit(currentReduceSteps, maxReduceSteps)
+                    && hasNotReachedLimit(currentReduceTime, maxReduceTime)) {
+                observedChange = false;
 
-            knownToReproduceBugStatements = tryReduction(state, reproducer, newGlobalState,
-                    knownToReproduceBugStatements);
+                knownToReproduceBugStatements = tryReduction(reproducer, newGlobalState, originalStatements,
+                        knownToReproduceBugStatements);
 
-            if (!observedChange) {
-                if (partitionNum == knownToReproduceBugStatements.size()) {
-                    break;
+                if (!observedChange) {
+                    if (partitionNum == knownToReproduceBugStatements.size()) {
+                        break;
+                    }
+                    // increase the search granularity
+                    partitionNum = Math.min(partitionNum * 2, knownToReproduceBugStatements.size());
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+                // 正在执行的测试结束后才能删除它们的数据库
+                if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    System.err.println("statement reducer workers did not terminate");
                 }
-                // increase the search granularity
-                partitionNum = Math.min(partitionNum * 2, knownToReproduceBugStatements.size());
+                executor = null;
+            }
+            replayEngines.values().forEach(ReplayEngine::close);
+            if (nrWorkers > 1) {
+                replayEngines.keySet().forEach(this::dropWorker);
             }
         }
 
-        // System.out.println("Reduced query:");
-        // printQueries(knownToReproduceBugStatements);
-        newGlobalState.getState().setStatements(new ArrayList<>(knownToReproduceBugStatements));
+        newGlobalState.getState().setStatements(new ArrayList<>(select(originalStatements,
+                knownToReproduceBugStatements)));
         newGlobalState.getLogger().logReduced(newGlobalState.getState());
 
     }
 
-    private List<Query<C>> tryReduction(G state, // NOPMD
-            Reproducer<G> reproducer, G newGlobalState, List<Query<C>> knownToReproduceBugStatements) throws Exception {
+    /**
+     * 一轮 ddmin：依次尝试去掉每个分块。多个线程时各分块并发测试，但仍取下标最小的成功分块，结果与逐个测试相同。
+     */
+    private List<Integer> tryReduction(Reproducer<G> reproducer, G newGlobalState, // NOPMD
+            List<Query<C>> originalStatements, List<Integer> knownToReproduceBugStatements) throws Exception {
 
-        List<Query<C>> statements = knownToReproduceBugStatements;
+        List<Integer> statements = knownToReproduceBugStatements;
+        int subLength = statements.size() / partitionNum;
 
+        // 已提交、尚未取得结果的候选，按分块顺序排列
+        ArrayDeque<Candidate> pending = new ArrayDeque<>();
         int start = 0;
-        int subLength = statements.size() / partitionNum;
-        while (start < statements.size()) {
-            // newStatements = candidate[:start] + candidate[start+subLength:]
-            // in other word, remove [start, start+subLength) from candidates
-            try (C con2 = provider.createDatabase(newGlobalState)) {
-                newGlobalState.setConnection(con2);
-                List<Query<C>> candidateStatements = new ArrayList<>(statements);
-                int endPoint = Math.min(start + subLength, candidateStatements.size());
-                candidateStatements.subList(start, endPoint).clear();
-                newGlobalState.getState().setStatements(new ArrayList<>(candidateStatements));
-
-                for (Query<C> s : candidateStatements) {
-                    try {
-                        s.execute(newGlobalState);
-                    } catch (Throwable ignoredException) {
-                        // ignore
-                    }
+        while (start < statements.size() || !pending.isEmpty()) {
+            while (start < statements.size() && pending.size() < nrWorkers && !limitReached(pending)) {
+                // candidate = statements[:start] + statements[start+subLength:]
+                List<Integer> candidate = new ArrayList<>(statements);
+                candidate.subList(start, Math.min(start + subLength, candidate.size())).clear();
+                // 下一个候选与本候选从 start 开始不同
+                pending.add(submit(reproducer, originalStatements, candidate, start));
+                start = start + subLength;
+            }
+            if (pending.isEmpty()) {
+                break;
+            }
+            Candidate candidate = pending.poll();
+            boolean bugStillTriggers = candidate.result.get();
+            if (countedCandidates.add(candidate.key)) {
+                currentReduceSteps++;
+            }
+            currentReduceTime = Duration.between(timeOfReductionBegins, Instant.now()).getSeconds();
+            if (bugStillTriggers) {
+                // 之后的候选不再需要；正在执行的测试完成后把全局状态放回空闲队列
+                for (Candidate c : pending) {
+                    c.result.cancel(false);
                 }
-                try {
-                    if (reproducer.bugStillTriggers(newGlobalState)) {
-                        observedChange = true;
-                        statements = candidateStatements;
-                        partitionNum = Math.max(partitionNum - 1, 2);
-                        // reproducer.outputHook((SQLite3GlobalState) newGlobalState);
-                        newGlobalState.getLogger().logReduced(newGlobalState.getState());
-                        break;
+                observedChange = true;
+                partitionNum = Math.max(partitionNum - 1, 2);
+                newGlobalState.getState().setStatements(
+                        new ArrayList<>(select(originalStatements, candidate.statements)));
+                newGlobalState.getLogger().logReduced(newGlobalState.getState());
+                return candidate.statements;
+            }
+        }
+        return statements;
+    }
 
-                    }
-                } catch (Throwable ignoredException) {
+    /**
+     * 假设已提交的候选都被采用，是否已达到步数或时间限制；保证提前提交的候选不会多消耗步数。
+     */
+    private boolean limitReached(ArrayDeque<Candidate> pending) {
+        long steps = currentReduceSteps;
+        for (Candidate c : pending) {
+            if (!countedCandidates.contains(c.key)) {
+                steps++;
+            }
+        }
+        currentReduceTime = Duration.between(timeOfReductionBegins, Instant.now()).getSeconds();
+        return !hasNotReachedLimit(steps, maxReduceSteps) || !hasNotReachedLimit(currentReduceTime, maxReduceTime);
+    }
 
-                }
+    /**
+     * 测试 candidate 是否仍能触发 bug：已测试过时直接返回记录的结果，否则在空闲的全局状态上执行（单线程时在当前线程执行）。
+     */
+    private Candidate submit(Reproducer<G> reproducer, List<Query<C>> originalStatements, List<Integer> candidate,
+            int checkpointAt) throws InterruptedException {
+        BitSet key = new BitSet(originalStatements.size());
+        candidate.forEach(key::set);
+        Boolean known = testedCandidates.get(key);
+        if (known != null) {
+            return new Candidate(candidate, key, CompletableFuture.completedFuture(known));
+        }
+        if (executor == null) {
+            G worker = idleWorkers.take();
+            try {
+                boolean bugStillTriggers = test(reproducer, worker, select(workerStatements.get(worker), candidate),
+                        checkpointAt, key);
+                return new Candidate(candidate, key, CompletableFuture.completedFuture(bugStillTriggers));
+            } finally {
+                idleWorkers.add(worker);
+            }
+        }
+        return new Candidate(candidate, key, executor.submit(() -> {
+            G worker = idleWorkers.take();
+            try {
+                return test(reproducer, worker, select(workerStatements.get(worker), candidate), checkpointAt, key);
+            } finally {
+                idleWorkers.add(worker);
+            }
+        }));
+    }
+
+    /**
+     * 在快照上重现的候选再在空数据库上确认，因此采用（并写入日志）的语句序列都能从空数据库重现 bug。
+     */
+    private boolean test(Reproducer<G> reproducer, G worker, List<Query<C>> candidateStatements, int checkpointAt,
+            BitSet key) {
+        ReplayEngine<G, O, C> replayEngine = replayEngines.get(worker);
+        boolean bugStillTriggers = false;
+        try (C con2 = replayEngine.replay(worker, candidateStatements, checkpointAt)) {
+            bugStillTriggers = bugStillTriggers(reproducer, worker, candidateStatements);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (bugStillTriggers && replayEngine.restoredLastReplay()) {
+            bugStillTriggers = false;
+            try (C con3 = replayEngine.replayFromScratch(worker, candidateStatements)) {
+                bugStillTriggers = bugStillTriggers(reproducer, worker, candidateStatements);
             } catch (Exception e) {
                 e.printStackTrace();
             }
+        }
+        testedCandidates.put(key, bugStillTriggers);
+        return bugStillTriggers;
+    }
 
-            currentReduceSteps++;
-            Instant currentInstant = Instant.now();
+    private boolean bugStillTriggers(Reproducer<G> reproducer, G worker, List<Query<C>> candidateStatements) {
+        worker.getState().setStatements(new ArrayList<>(candidateStatements));
+        // 语句没有经过 QueryManager 执行
+        worker.getRowCountTracker().invalidateAll();
+        try {
+            return reproducer.bugStillTriggers(worker);
+        } catch (Throwable ignoredException) {
+            return false;
+        }
+    }
 
-            currentReduceTime = Duration.between(timeOfReductionBegins, currentInstant).getSeconds();
-            if (!hasNotReachedLimit(currentReduceSteps, maxReduceSteps)
-                    || !hasNotReachedLimit(currentReduceTime, maxReduceTime)) {
-                return statements;
-            }
-            start = start + subLength;
+    /**
+     * 创建第 i 个并行测试用的全局状态，使用独立的数据库 databaseName_ri。
+     */
+    private G createWorker(G newGlobalState, int i) throws Exception {
+        G worker = provider.getGlobalStateClass().getDeclaredConstructor().newInstance();
+        String databaseName = newGlobalState.getDatabaseName() + "_r" + i;
+        worker.setDatabaseName(databaseName);
+        worker.setState(provider.getStateToReproduce(databaseName));
+        worker.setRandomly(new Randomly(newGlobalState.getRandomly().getSeed()));
+        worker.setMainOptions(newGlobalState.getOptions());
+        worker.setDbmsSpecificOptions(newGlobalState.getDbmsSpecificOptions());
+        worker.setStateLogger(new Main.StateLogger(databaseName, provider, newGlobalState.getOptions()));
+        worker.setManager(new Main.QueryManager<>(worker));
+        worker.setMetrics(newGlobalState.getMetrics());
+        worker.setCampaign(newGlobalState.getCampaign());
+        return worker;
+    }
+
+    /**
+     * 删除并行测试用的数据库并关闭其日志文件。
+     */
+    private void dropWorker(G worker) {
+        try {
+            provider.dropDatabase(worker);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        worker.getLogger().close();
+    }
+
+    private static <C extends SQLancerDBConnection> List<Query<C>> copyStatements(List<Query<C>> statements) {
+        List<Query<C>> copies = new ArrayList<>(statements.size());
+        for (Query<C> statement : statements) {
+            copies.add(statement.copy());
+        }
+        return copies;
+    }
+
+    private List<Query<C>> select(List<Query<C>> originalStatements, List<Integer> indexes) {
+        List<Query<C>> statements = new ArrayList<>(indexes.size());
+        for (int i : indexes) {
+            statements.add(originalStatements.get(i));
         }
         return statements;
     }
 
+    private static final class Candidate {
+        private final List<Integer> statements;
+        private final BitSet key;
+        private final Future<Boolean> result;
+
+        Candidate(List<Integer> statements, BitSet key, Future<Boolean> result) {
+            this.statements = statements;
+            this.key = key;
+            this.result = result;
+        }
+    }
+
     @SuppressWarnings("unused")
     private void printQueries(List<Query<C>> statements) {
         System.out.println("===============================");
@@ -0,0 +1,48 @@
+package sqlancer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 测试引擎到推送方的遥测通道，容量为一个快照：推送方来不及取走时，新快照替换未取走的旧快照（合并），发布方从不阻塞，内存占用也不随积压增长。
+ *
+ * {@link #poll()} 由推送方取走待推送的快照；{@link #getLatest()} 返回最近发布的快照，供 HTTP 查询等只读访问。每个
+ * {@link Campaign} 一个通道。
+ */
+public final class TelemetryChannel {
+
+    private final AtomicReference<TelemetrySnapshot> pending = new AtomicReference<>();
+    private volatile TelemetrySnapshot latest;
+    private final AtomicLong nrCoalesced = new AtomicLong();
+
+    TelemetryChannel() {
+    }
+
+    public void publish(TelemetrySnapshot snapshot) {
+        latest = snapshot;
+        if (pending.getAndSet(snapshot) != null) {
+            nrCoalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return 上次调用之后发布的最新快照，没有新快照时为 null
+     */
+    public TelemetrySnapshot poll() {
+        return pending.getAndSet(null);
+    }
+
+    /**
+     * @return 最近发布的快照，尚未发布时为 null
+     */
+    public TelemetrySnapshot getLatest() {
+        return latest;
+    }
+
+    /**
+     * @return 未被取走就被替换的快照个数
+     */
+    public long getNrCoalesced() {
+        return nrCoalesced.get();
+    }
+}
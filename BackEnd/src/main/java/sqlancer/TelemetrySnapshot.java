@@ -0,0 +1,139 @@
+package sqlancer;
+
+import java.util.List;
+
+/**
+ * 某一时刻一个 campaign 的测试运行状态的不可变快照，由 {@link Main} 定期发布到该 campaign 的 {@link TelemetryChannel}。
+ * 读取快照不访问数据库，也不扫描覆盖率位图。
+ */
+public final class TelemetrySnapshot {
+
+    private final String campaign;
+    private final long timestampMillis;
+    private final long runTimeSeconds;
+    private final boolean running;
+    private final String oracle;
+    private final long queries;
+    private final double throughput;
+    private final double coverageRate;
+    private final List<String> currentCombo;
+    private final long bugs;
+    private final long successfulStatements;
+    private final long unsuccessfulStatements;
+    private final long threadsShutdown;
+    private final List<WorkerState> workers;
+
+    public TelemetrySnapshot(String campaign, long timestampMillis, long runTimeSeconds, boolean running,
+            String oracle, long queries, double throughput, double coverageRate, List<String> currentCombo, long bugs,
+            long successfulStatements, long unsuccessfulStatements, long threadsShutdown, List<WorkerState> workers) {
+        this.campaign = campaign;
+        this.timestampMillis = timestampMillis;
+        this.runTimeSeconds = runTimeSeconds;
+        this.running = running;
+        this.oracle = oracle;
+        this.queries = queries;
+        this.throughput = throughput;
+        this.coverageRate = coverageRate;
+        this.currentCombo = List.copyOf(currentCombo);
+        this.bugs = bugs;
+        this.successfulStatements = successfulStatements;
+        this.unsuccessfulStatements = unsuccessfulStatements;
+        this.threadsShutdown = threadsShutdown;
+        this.workers = List.copyOf(workers);
+    }
+
+    public String getCampaign() {
+        return campaign;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getRunTimeSeconds() {
+        return runTimeSeconds;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public String getOracle() {
+        return oracle;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return 与上一个快照之间每秒执行的查询数
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * @return 命中边数占覆盖率位图大小的比例（0 到 1）
+     */
+    public double getCoverageRate() {
+        return coverageRate;
+    }
+
+    public List<String> getCurrentCombo() {
+        return currentCombo;
+    }
+
+    public long getBugs() {
+        return bugs;
+    }
+
+    public long getSuccessfulStatements() {
+        return successfulStatements;
+    }
+
+    public long getUnsuccessfulStatements() {
+        return unsuccessfulStatements;
+    }
+
+    public long getThreadsShutdown() {
+        return threadsShutdown;
+    }
+
+    public List<WorkerState> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * 单个工作线程（数据库）的计数。
+     */
+    public static final class WorkerState {
+        private final String name;
+        private final long queries;
+        private final long databases;
+        private final double throughput;
+
+        public WorkerState(String name, long queries, long databases, double throughput) {
+            this.name = name;
+            this.queries = queries;
+            this.databases = databases;
+            this.throughput = throughput;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getQueries() {
+            return queries;
+        }
+
+        public long getDatabases() {
+            return databases;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package sqlancer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 训练结果（参数组合权重、参数特性概率）的二进制文件格式，读取时通过 {@link MappedByteBuffer} 映射，按记录延迟解码。
+ *
+ * <pre>
+ * 文件头   int magic "SQWF" | short version | short kind | int arity | int valueCount | int nrNames
+ * 名称字典 nrNames 个 (short 字节数, UTF-8 字节)
+ * 记录数   int nrRecords
+ * 记录     nrRecords 个 (arity 个 short 字典下标, 不足时补 -1 | valueCount 个 double)
+ * </pre>
+ *
+ * 参数组合权重文件的一条记录是一个组合（arity 为最大组合大小）及其权重；参数特性概率文件的一条记录是一个参数及其各特性的概率。
+ * 文本格式（{@code a,b:weight} 与 {@code a:p1,p2,...}）保留为导入/导出格式，见 {@link #convertText} 与 {@link #exportText}。
+ */
+public final class WeightFile {
+
+    public static final int MAGIC = 0x53515746;
+    public static final short VERSION = 1;
+    public static final short KIND_COMBO_WEIGHTS = 1;
+    public static final short KIND_FEATURE_PROBABILITIES = 2;
+
+    private static final short NO_NAME = -1;
+
+    private final short kind;
+    private final int arity;
+    private final int valueCount;
+    private final String[] names;
+    private final int nrRecords;
+    private final int recordSize;
+    private final ByteBuffer records;
+
+    private WeightFile(short kind, int arity, int valueCount, String[] names, ByteBuffer records, int nrRecords) {
+        this.kind = kind;
+        this.arity = arity;
+        this.valueCount = valueCount;
+        this.names = names;
+        this.records = records;
+        this.nrRecords = nrRecords;
+        this.recordSize = arity * Short.BYTES + valueCount * Double.BYTES;
+    }
+
+    /**
+     * 映射并校验文件；只解析文件头和名称字典，记录在访问时才解码。
+     */
+    public static WeightFile open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("not a weight file: " + path);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("unsupported weight file version " + version + ": " + path);
+            }
+            short kind = buffer.getShort();
+            int arity = buffer.getInt();
+            int valueCount = buffer.getInt();
+            String[] names = new String[buffer.getInt()];
+            for (int i = 0; i < names.length; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            int nrRecords = buffer.getInt();
+            ByteBuffer records = buffer.slice();
+            long expected = (long) nrRecords * (arity * Short.BYTES + valueCount * Double.BYTES);
+            if (records.remaining() < expected) {
+                throw new IOException("truncated weight file: " + path);
+            }
+            return new WeightFile(kind, arity, valueCount, names, records, nrRecords);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("truncated weight file: " + path, e);
+        }
+    }
+
+    public short getKind() {
+        return kind;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * 名称字典，记录中的下标指向这里。
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    public int getNrRecords() {
+        return nrRecords;
+    }
+
+    /**
+     * 将第 record 条记录的名称下标解码到 out 中。
+     *
+     * @return 有效下标的个数（组合大小）
+     */
+    public int getNameIndices(int record, int[] out) {
+        int offset = offsetOf(record);
+        int n = 0;
+        for (int i = 0; i < arity; i++) {
+            short index = records.getShort(offset + i * Short.BYTES);
+            if (index != NO_NAME) {
+                out[n++] = index;
+            }
+        }
+        return n;
+    }
+
+    public double getValue(int record, int i) {
+        return records.getDouble(offsetOf(record) + arity * Short.BYTES + i * Double.BYTES);
+    }
+
+    private int offsetOf(int record) {
+        if (record < 0 || record >= nrRecords) {
+            throw new IndexOutOfBoundsException("record " + record + " out of range [0, " + nrRecords + ")");
+        }
+        return record * recordSize;
+    }
+
+    /**
+     * 写出二进制文件：先写临时文件，完成后再原子替换，读者不会看到写了一半的文件。
+     */
+    public static void write(Path path, short kind, String[] names, List<int[]> nameIndices, List<double[]> values)
+            throws IOException {
+        if (nameIndices.size() != values.size()) {
+            throw new IllegalArgumentException(nameIndices.size() + " keys but " + values.size() + " values");
+        }
+        if (names.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("too many names: " + names.length);
+        }
+        int arity = 0;
+        for (int[] key : nameIndices) {
+            arity = Math.max(arity, key.length);
+        }
+        int valueCount = values.isEmpty() ? 0 : values.get(0).length;
+        // 临时文件名唯一，多个写入方同时写同一个文件时不会互相覆盖临时文件；与目标文件同目录，保证可以原子替换
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(MAGIC).putShort(VERSION).putShort(kind).putInt(arity).putInt(valueCount)
+                    .putInt(names.length);
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                buffer = ensureRemaining(channel, buffer, Short.BYTES + bytes.length);
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            buffer.putInt(nameIndices.size());
+            int recordSize = arity * Short.BYTES + valueCount * Double.BYTES;
+            for (int r = 0; r < nameIndices.size(); r++) {
+                int[] key = nameIndices.get(r);
+                double[] recordValues = values.get(r);
+                if (recordValues.length != valueCount) {
+                    throw new IllegalArgumentException("record " + r + " has " + recordValues.length
+                            + " values, expected " + valueCount);
+                }
+                buffer = ensureRemaining(channel, buffer, recordSize);
+                for (int i = 0; i < arity; i++) {
+                    buffer.putShort(i < key.length ? (short) key[i] : NO_NAME);
+                }
+                for (double value : recordValues) {
+                    buffer.putDouble(value);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // 替换前关闭，部分平台不允许移动仍被打开的文件
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return buffer.capacity() >= bytes ? buffer : ByteBuffer.allocate(bytes);
+    }
+
+    /**
+     * 将文本格式的权重文件转换为二进制格式，名称按首次出现的顺序编入字典。
+     *
+     * @param kind {@link #KIND_COMBO_WEIGHTS}（{@code a,b:weight}）或 {@link #KIND_FEATURE_PROBABILITIES}（{@code a:p1,p2,...}）
+     * @return 转换的记录数
+     */
+    public static int convertText(Path text, Path binary, short kind) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        List<int[]> keys = new ArrayList<>();
+        List<double[]> values = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(text, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (colon < 0 || colon != line.lastIndexOf(':')) {
+                    System.err.println("警告: 格式错误的行将被忽略: " + line);
+                    continue;
+                }
+                String[] keyNames = kind == KIND_COMBO_WEIGHTS ? line.substring(0, colon).split(",")
+                        : new String[] { line.substring(0, colon) };
+                String[] valueParts = kind == KIND_COMBO_WEIGHTS ? new String[] { line.substring(colon + 1) }
+                        : line.substring(colon + 1).split(",");
+                double[] recordValues = new double[valueParts.length];
+                try {
+                    for (int i = 0; i < valueParts.length; i++) {
+                        recordValues[i] = Double.parseDouble(valueParts[i].trim());
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("警告: 数值格式错误，该行将被忽略: " + line);
+                    continue;
+                }
+                if (!values.isEmpty() && values.get(0).length != recordValues.length) {
+                    System.err.println("警告: 数值个数与前面的行不一致，该行将被忽略: " + line);
+                    continue;
+                }
+                int[] key = new int[keyNames.length];
+                for (int i = 0; i < keyNames.length; i++) {
+                    key[i] = dictionary.computeIfAbsent(keyNames[i].trim(), name -> dictionary.size());
+                }
+                keys.add(key);
+                values.add(recordValues);
+            }
+        }
+        write(binary, kind, dictionary.keySet().toArray(new String[0]), keys, values);
+        return keys.size();
+    }
+
+    /**
+     * 将二进制文件导出为文本格式，与 {@link #convertText} 互逆。
+     */
+    public static void exportText(Path binary, Path text) throws IOException {
+        WeightFile file = open(binary);
+        int[] key = new int[Math.max(1, file.arity)];
+        try (BufferedWriter writer = Files.newBufferedWriter(text, StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder();
+            for (int r = 0; r < file.nrRecords; r++) {
+                sb.setLength(0);
+                int n = file.getNameIndices(r, key);
+                for (int i = 0; i < n; i++) {
+                    if (i != 0) {
+                        sb.append(',');
+                    }
+                    sb.append(file.names[key[i]]);
+                }
+                sb.append(':');
+                for (int i = 0; i < file.valueCount; i++) {
+                    if (i != 0) {
+                        sb.append(',');
+                    }
+                    sb.append(file.getValue(r, i));
+                }
+                writer.write(sb.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * 命令行转换工具：
+     * {@code WeightFile to-binary combo|feature <文本文件> <二进制文件>} 或 {@code WeightFile to-text <二进制文件> <文本文件>}。
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 4 && args[0].equals("to-binary")) {
+            short kind = args[1].equals("feature") ? KIND_FEATURE_PROBABILITIES : KIND_COMBO_WEIGHTS;
+            int n = convertText(Paths.get(args[2]), Paths.get(args[3]), kind);
+            System.out.println("已转换 " + n + " 条记录到 '" + args[3] + "'。");
+        } else if (args.length == 3 && args[0].equals("to-text")) {
+            exportText(Paths.get(args[1]), Paths.get(args[2]));
+            System.out.println("已导出到 '" + args[2] + "'。");
+        } else {
+            System.err.println("用法: WeightFile to-binary combo|feature <text> <binary>");
+            System.err.println("      WeightFile to-text <binary> <text>");
+            System.err.println("参数: " + Arrays.toString(args));
+        }
+    }
+}
@@ -204,6 +204,6 @@ public class ClickHouseToStringVisitor extends ToStringVisitor<ClickHouseExpress
     public static String asString(ClickHouseExpression expr) {
         ClickHouseToStringVisitor visitor = new ClickHouseToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 }
@@ -17,7 +17,7 @@ public class CnosDBGlobalState extends GlobalState<CnosDBOptions, CnosDBSchema,
             getLogger().writeCurrent(" -- " + timer.end().asString());
         }
         if (q.couldAffectSchema()) {
-            updateSchema();
+            updateSchema(q, success);
         }
     }
 
@@ -24,7 +24,7 @@ public interface CnosDBVisitor {
     static String asString(CnosDBExpression expr) {
         CnosDBToStringVisitor visitor = new CnosDBToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     void visit(CnosDBConstant constant);
@@ -354,7 +354,7 @@ public class CockroachDBProvider extends SQLProviderAdapter<CockroachDBGlobalSta
     @Override
     public boolean addRowsToAllTables(CockroachDBGlobalState globalState) throws Exception {
         List<CockroachDBTable> tablesNoRow = globalState.getSchema().getDatabaseTables().stream()
-                .filter(t -> t.getNrRows(globalState) == 0).collect(Collectors.toList());
+                .filter(t -> t.isEmpty(globalState)).collect(Collectors.toList());
         for (CockroachDBTable table : tablesNoRow) {
             SQLQueryAdapter queryAddRows = CockroachDBInsertGenerator.insert(globalState, table);
             globalState.executeStatement(queryAddRows);
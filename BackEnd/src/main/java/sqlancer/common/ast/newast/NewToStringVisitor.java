@@ -2,9 +2,13 @@ package sqlancer.common.ast.newast;
 
 import java.util.List;
 
+import sqlancer.common.visitor.RenderContext;
+
 public abstract class NewToStringVisitor<E> {
 
-    protected final StringBuilder sb = new StringBuilder();
+    private final RenderContext context = RenderContext.current();
+    // 从当前线程取得，调用 getAndRelease() 后还回
+    protected final StringBuilder sb = context.acquireBuffer();
 
     @SuppressWarnings("unchecked")
     public void visit(E expr) {
@@ -100,9 +104,9 @@ public abstract class NewToStringVisitor<E> {
     }
 
     public void visit(NewUnaryPostfixOperatorNode<E> opNode) {
-        sb.append("((");
-        visit(opNode.getExpr());
-        sb.append(") ");
+        sb.append("(");
+        visitOperand(opNode.getExpr());
+        sb.append(" ");
         sb.append(opNode.getOperatorRepresentation());
         sb.append(")");
     }
@@ -134,6 +138,16 @@ public abstract class NewToStringVisitor<E> {
     }
 
     public void visit(NewBinaryOperatorNode<E> opNode) {
+        if (context.isMinimalParentheses()) {
+            sb.append("(");
+            visitOperand(opNode.getLeft());
+            sb.append(" ");
+            sb.append(opNode.getOperatorRepresentation());
+            sb.append(" ");
+            visitOperand(opNode.getRight());
+            sb.append(")");
+            return;
+        }
         sb.append("(");
         sb.append("(");
 
@@ -161,10 +175,44 @@ public abstract class NewToStringVisitor<E> {
         sb.append(")");
     }
 
+    /**
+     * 转换运算符的操作数。默认总是加括号；省略括号时（见 {@link RenderContext#isMinimalParentheses()}）只给
+     * {@link #isAtomic} 为 false 的操作数加括号。
+     */
+    protected void visitOperand(E expr) {
+        if (context.isMinimalParentheses() && isAtomic(expr)) {
+            visit(expr);
+        } else {
+            sb.append("(");
+            visit(expr);
+            sb.append(")");
+        }
+    }
+
+    /**
+     * @return 作为运算符的操作数时是否不需要再加括号；默认为列、函数调用与自带外层括号的运算
+     */
+    protected boolean isAtomic(E expr) {
+        return expr instanceof ColumnReferenceNode<?, ?> || expr instanceof NewFunctionNode<?, ?>
+                || expr instanceof NewBinaryOperatorNode<?> || expr instanceof NewUnaryPrefixOperatorNode<?>
+                || expr instanceof NewUnaryPostfixOperatorNode<?> || expr instanceof NewBetweenOperatorNode<?>
+                || expr instanceof NewInOperatorNode<?> || expr instanceof NewCaseOperatorNode<?>
+                || expr instanceof NewTernaryNode<?>;
+    }
+
     public String get() {
         return sb.toString();
     }
 
+    /**
+     * 返回结果并把 StringBuilder 还给当前线程，之后不能再使用这个 visitor。
+     */
+    public String getAndRelease() {
+        String s = get();
+        context.releaseBuffer(sb);
+        return s;
+    }
+
     public abstract void visitSpecific(E expr);
 
 }
@@ -0,0 +1,208 @@
+package sqlancer.common.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步写入日志文件的 Writer：写入只把字符串放入本文件的环形缓冲区，由一个所有文件共用的后台线程成批编码并写入 {@link FileChannel}。
+ *
+ * {@link #flush()} 不等待写出，后台线程最多在 {@link #DRAIN_INTERVAL_MILLIS} 毫秒后写出；需要保证内容已在文件中时（如记录 bug 之前）调用
+ * {@link #sync()}。缓冲区满时由写入的线程自己写出。
+ */
+public final class AsyncFileWriter extends Writer {
+
+    public static final long DRAIN_INTERVAL_MILLIS = 2;
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 已打开、由后台线程定期写出的文件
+    private static final List<AsyncFileWriter> OPEN_WRITERS = new CopyOnWriteArrayList<>();
+
+    static {
+        Thread drainer = new Thread(AsyncFileWriter::drainLoop, "sqlancer-log-writer");
+        drainer.setDaemon(true);
+        drainer.start();
+        // 后台线程是守护线程，退出时写出剩余内容
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> OPEN_WRITERS.forEach(AsyncFileWriter::drain)));
+    }
+
+    // 环形缓冲区：[head, tail) 为待写出的字符串；tail 只在持有 lock 时修改，head 只在持有 drainLock 时修改
+    private final String[] slots = new String[CAPACITY];
+    private volatile long head;
+    private volatile long tail;
+
+    private final Object drainLock = new Object();
+    private final FileChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean closed;
+    private boolean channelClosed;
+    // 后台线程写出失败的原因，在下一次写入、flush 或 sync 时抛出
+    private volatile IOException failure;
+
+    public AsyncFileWriter(File file, boolean append) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        OPEN_WRITERS.add(this);
+    }
+
+    @Override
+    public void write(String str) throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            checkFailure();
+            long t = tail;
+            if (t - head >= CAPACITY) {
+                drain();
+                checkFailure();
+            }
+            slots[(int) t & MASK] = str;
+            tail = t + 1;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        write(str.substring(off, off + len));
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        write(new String(cbuf, off, len));
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        write(String.valueOf((char) c));
+    }
+
+    /**
+     * 不等待写出，只报告之前的写出失败。
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+    }
+
+    /**
+     * 在当前线程写出缓冲区中的全部内容，返回时之前写入的内容都已在文件中。
+     */
+    public void sync() throws IOException {
+        drain();
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            OPEN_WRITERS.remove(this);
+            synchronized (drainLock) {
+                try {
+                    drainLocked();
+                    encoder.encode(CharBuffer.allocate(0), buffer, true);
+                    encoder.flush(buffer);
+                    writeBuffer();
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    channelClosed = true;
+                    channel.close();
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * @return 是否写出了内容
+     */
+    private boolean drain() {
+        synchronized (drainLock) {
+            try {
+                return drainLocked();
+            } catch (IOException e) {
+                failure = e;
+                return true;
+            }
+        }
+    }
+
+    private boolean drainLocked() throws IOException {
+        if (channelClosed) {
+            return false;
+        }
+        long h = head;
+        long t = tail;
+        if (h == t) {
+            return false;
+        }
+        try {
+            for (; h < t; h++) {
+                int i = (int) h & MASK;
+                CharBuffer in = CharBuffer.wrap(slots[i]);
+                slots[i] = null;
+                while (encoder.encode(in, buffer, false).isOverflow()) {
+                    writeBuffer();
+                }
+            }
+            writeBuffer();
+        } finally {
+            // 写出失败时丢弃剩余内容，失败原因之后抛出
+            for (; h < t; h++) {
+                slots[(int) h & MASK] = null;
+            }
+            head = t;
+        }
+        return true;
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            boolean wrote = false;
+            for (AsyncFileWriter writer : OPEN_WRITERS) {
+                wrote |= writer.drain();
+            }
+            if (!wrote) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(DRAIN_INTERVAL_MILLIS));
+            }
+        }
+    }
+}
@@ -33,15 +33,17 @@ public class TLPWhereOracle<Z extends Select<J, E, T, C>, J extends Join<E, T, C
         final String thirdQueryString;
         final String originalQueryString;
         final List<String> resultSet;
+        final ResultSetDigest digest;
         final boolean orderBy;
 
         TLPWhereReproducer(String firstQueryString, String secondQueryString, String thirdQueryString,
-                String originalQueryString, List<String> resultSet, boolean orderBy) {
+                String originalQueryString, List<String> resultSet, ResultSetDigest digest, boolean orderBy) {
             this.firstQueryString = firstQueryString;
             this.secondQueryString = secondQueryString;
             this.thirdQueryString = thirdQueryString;
             this.originalQueryString = originalQueryString;
             this.resultSet = resultSet;
+            this.digest = digest;
             this.orderBy = orderBy;
         }
 
@@ -49,6 +51,13 @@ public class TLPWhereOracle<Z extends Select<J, E, T, C>, J extends Join<E, T, C
         public boolean bugStillTriggers(G globalState) {
             try {
                 List<String> combinedString1 = new ArrayList<>();
+                if (digest != null) {
+                    ResultSetDigest secondDigest1 = ComparatorHelper.getCombinedResultSetDigest(firstQueryString,
+                            secondQueryString, thirdQueryString, combinedString1, !orderBy, globalState, errors);
+                    ComparatorHelper.assumeResultSetDigestsAreEqual(digest, secondDigest1, originalQueryString,
+                            combinedString1, globalState);
+                    return false;
+                }
                 List<String> secondResultSet1 = ComparatorHelper.getCombinedResultSet(firstQueryString,
                         secondQueryString, thirdQueryString, combinedString1, !orderBy, globalState, errors);
                 ComparatorHelper.assumeResultSetsAreEqual(resultSet, secondResultSet1, originalQueryString,
@@ -96,7 +105,7 @@ public class TLPWhereOracle<Z extends Select<J, E, T, C>, J extends Join<E, T, C
         try (Statement stat = state.getConnection().createStatement()) {
             stat.executeQuery(optimizedQueryString);
         } catch (SQLException e) {
-            Main.nrUnsuccessfulActions.addAndGet(1);
+            state.getMetrics().increment(MetricsRegistry.Counter.UNSUCCESSFUL_ACTIONS);
             state.getLogger().writeCurrent(e.getMessage());
             throw new IgnoreMeException();
         }
@@ -120,8 +129,15 @@ public class TLPWhereOracle<Z extends Select<J, E, T, C>, J extends Join<E, T, C
 
         String originalQueryString = select.asString();
         generatedQueryString = originalQueryString;
-        List<String> firstResultSet = ComparatorHelper.getResultSetFirstColumnAsString(originalQueryString, errors,
-                state);
+        // 摘要模式下只在有上限的缓冲区中保存各行，摘要不同时用它们给出差异
+        boolean compareDigests = state.getOptions().compareResultDigests();
+        List<String> firstResultSet = null;
+        ResultSetDigest firstDigest = null;
+        if (compareDigests) {
+            firstDigest = ComparatorHelper.getResultSetFirstColumnDigest(originalQueryString, errors, state);
+        } else {
+            firstResultSet = ComparatorHelper.getResultSetFirstColumnAsString(originalQueryString, errors, state);
+        }
 
         boolean orderBy = Randomly.getBooleanWithSmallProbability();
         if (orderBy) {
@@ -138,14 +154,20 @@ public class TLPWhereOracle<Z extends Select<J, E, T, C>, J extends Join<E, T, C
         String thirdQueryString = select.asString();
 
         List<String> combinedString = new ArrayList<>();
-        List<String> secondResultSet = ComparatorHelper.getCombinedResultSet(firstQueryString, secondQueryString,
-                thirdQueryString, combinedString, !orderBy, state, errors);
-
-        ComparatorHelper.assumeResultSetsAreEqual(firstResultSet, secondResultSet, originalQueryString, combinedString,
-                state);
+        if (compareDigests) {
+            ResultSetDigest secondDigest = ComparatorHelper.getCombinedResultSetDigest(firstQueryString,
+                    secondQueryString, thirdQueryString, combinedString, !orderBy, state, errors);
+            ComparatorHelper.assumeResultSetDigestsAreEqual(firstDigest, secondDigest, originalQueryString,
+                    combinedString, state);
+        } else {
+            List<String> secondResultSet = ComparatorHelper.getCombinedResultSet(firstQueryString, secondQueryString,
+                    thirdQueryString, combinedString, !orderBy, state, errors);
+            ComparatorHelper.assumeResultSetsAreEqual(firstResultSet, secondResultSet, originalQueryString,
+                    combinedString, state);
+        }
 
         reproducer = new TLPWhereReproducer(firstQueryString, secondQueryString, thirdQueryString, originalQueryString,
-                firstResultSet, orderBy);
+                firstResultSet, firstDigest, orderBy);
     }
 
 
@@ -0,0 +1,247 @@
+package sqlancer.common.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * 由一组预期错误编译得到的不可变匹配器：子串用一个 Aho-Corasick 自动机一次扫描匹配，正则合并为一个交替的 Pattern，并缓存最近判断过的错误信息。
+ *
+ * 相同内容的 {@link ExpectedErrors} 共用同一个匹配器（见 {@link #of}），因此每次查询重新构造 ExpectedErrors 的提供者也只在第一次编译。
+ */
+final class ErrorMatcher {
+
+    private static final int MAX_CACHED_MATCHERS = 1024;
+    private static final int MEMO_SIZE = 256;
+    private static final Map<Key, ErrorMatcher> MATCHERS = new ConcurrentHashMap<>();
+
+    // Aho-Corasick 自动机：状态 s 的转移为 labels[s][i] -> targets[s][i]（labels[s] 有序），fail 为失败转移
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    // 到达该状态时已匹配到某个子串（含经失败转移可达的子串）
+    private final boolean[] accepting;
+    // 存在空串，任何错误信息都匹配
+    private final boolean matchesAll;
+    private final Pattern combinedRegex;
+    // 无法合并的正则（含反向引用或标志），逐个匹配
+    private final Pattern[] separateRegexes;
+    // 最近判断过的错误信息，按哈希值直接映射；并发写入时只会丢失条目
+    private final MemoEntry[] memo = new MemoEntry[MEMO_SIZE];
+
+    private ErrorMatcher(Collection<String> errors, Collection<Pattern> regexes) {
+        matchesAll = errors.contains("");
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(false);
+        for (String error : errors) {
+            int state = 0;
+            for (int i = 0; i < error.length(); i++) {
+                Integer next = trie.get(state).get(error.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(false);
+                    trie.get(state).put(error.charAt(i), next);
+                }
+                state = next;
+            }
+            terminal.set(state, true);
+        }
+        int nrStates = trie.size();
+        labels = new char[nrStates][];
+        targets = new int[nrStates][];
+        fail = new int[nrStates];
+        accepting = new boolean[nrStates];
+        for (int s = 0; s < nrStates; s++) {
+            Map<Character, Integer> edges = trie.get(s);
+            labels[s] = new char[edges.size()];
+            targets[s] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> e : edges.entrySet()) {
+                labels[s][i] = e.getKey();
+                targets[s][i++] = e.getValue();
+            }
+            accepting[s] = terminal.get(s);
+        }
+        // 按广度优先顺序计算失败转移，子状态的失败转移依赖于较浅的状态
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int i = 0; i < labels[s].length; i++) {
+                int child = targets[s][i];
+                int f = fail[s];
+                int next;
+                while ((next = transition(f, labels[s][i])) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next < 0 || next == child ? 0 : next;
+                accepting[child] |= accepting[fail[child]];
+                queue.add(child);
+            }
+        }
+
+        List<String> alternatives = new ArrayList<>();
+        List<Pattern> separate = new ArrayList<>();
+        for (Pattern p : regexes) {
+            if (p.flags() == 0 && !hasBackReference(p.pattern())) {
+                alternatives.add("(?:" + p.pattern() + ")");
+            } else {
+                separate.add(p);
+            }
+        }
+        Pattern combined = null;
+        if (alternatives.size() == 1) {
+            combined = Pattern.compile(alternatives.get(0));
+        } else if (!alternatives.isEmpty()) {
+            try {
+                combined = Pattern.compile(String.join("|", alternatives));
+            } catch (PatternSyntaxException e) {
+                // 例如重复的命名分组，退回到逐个匹配
+                for (Pattern p : regexes) {
+                    if (!separate.contains(p)) {
+                        separate.add(p);
+                    }
+                }
+            }
+        }
+        combinedRegex = combined;
+        separateRegexes = separate.toArray(new Pattern[0]);
+    }
+
+    /**
+     * @return 与 errors、regexes 对应的匹配器；内容相同的参数返回同一个实例
+     */
+    static ErrorMatcher of(Set<String> errors, Set<Pattern> regexes) {
+        // 查找时直接引用参数，只在插入时复制
+        Key key = new Key(errors, regexes.stream().map(ErrorMatcher::regexKey).collect(Collectors.toSet()));
+        ErrorMatcher matcher = MATCHERS.get(key);
+        if (matcher != null) {
+            return matcher;
+        }
+        if (MATCHERS.size() >= MAX_CACHED_MATCHERS) {
+            // 预期错误中含有动态内容时避免无限增长
+            MATCHERS.clear();
+        }
+        matcher = new ErrorMatcher(errors, regexes);
+        ErrorMatcher previous = MATCHERS.putIfAbsent(new Key(Set.copyOf(errors), key.regexes), matcher);
+        return previous == null ? matcher : previous;
+    }
+
+    boolean matches(String error) {
+        int slot = error.hashCode() & (MEMO_SIZE - 1);
+        MemoEntry entry = memo[slot];
+        if (entry != null && entry.error.equals(error)) {
+            return entry.expected;
+        }
+        boolean expected = matchesSubstring(error) || matchesRegex(error);
+        memo[slot] = new MemoEntry(error, expected);
+        return expected;
+    }
+
+    private boolean matchesSubstring(String error) {
+        if (matchesAll) {
+            return true;
+        }
+        int state = 0;
+        for (int i = 0; i < error.length(); i++) {
+            char c = error.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesRegex(String error) {
+        if (combinedRegex != null && combinedRegex.matcher(error).find()) {
+            return true;
+        }
+        for (Pattern p : separateRegexes) {
+            if (p.matcher(error).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int transition(int state, char c) {
+        int i = Arrays.binarySearch(labels[state], c);
+        return i < 0 ? -1 : targets[state][i];
+    }
+
+    private static String regexKey(Pattern p) {
+        return p.flags() + "/" + p.pattern();
+    }
+
+    // 合并后分组编号改变，含反向引用的正则不能合并
+    private static boolean hasBackReference(String regex) {
+        for (int i = 0; i + 1 < regex.length(); i++) {
+            if (regex.charAt(i) == '\\') {
+                char next = regex.charAt(i + 1);
+                if (next >= '1' && next <= '9' || next == 'k') {
+                    return true;
+                }
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private static final class MemoEntry {
+        private final String error;
+        private final boolean expected;
+
+        MemoEntry(String error, boolean expected) {
+            this.error = error;
+            this.expected = expected;
+        }
+    }
+
+    /**
+     * Pattern 没有按内容比较的 equals，以正则文本和标志比较。
+     */
+    private static final class Key {
+        private final Set<String> errors;
+        private final Set<String> regexes;
+        private final int hash;
+
+        Key(Set<String> errors, Set<String> regexes) {
+            this.errors = errors;
+            this.regexes = regexes;
+            this.hash = 31 * errors.hashCode() + regexes.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && errors.equals(other.errors) && regexes.equals(other.regexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
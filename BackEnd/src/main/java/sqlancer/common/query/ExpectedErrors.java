@@ -17,6 +17,8 @@ public class ExpectedErrors implements Serializable {
 
     private final Set<String> errors;
     private final Set<Pattern> regexes;
+    // compiled lazily and shared between instances with the same content; reset whenever an error is added
+    private transient volatile ErrorMatcher matcher;
 
     public ExpectedErrors() {
         this.errors = new HashSet<>();
@@ -33,6 +35,7 @@ public class ExpectedErrors implements Serializable {
             throw new IllegalArgumentException();
         }
         errors.add(error);
+        matcher = null;
         return this;
     }
 
@@ -41,6 +44,7 @@ public class ExpectedErrors implements Serializable {
             throw new IllegalArgumentException();
         }
         regexes.add(errorPattern);
+        matcher = null;
         return this;
     }
 
@@ -49,6 +53,7 @@ public class ExpectedErrors implements Serializable {
             throw new IllegalArgumentException();
         }
         regexes.add(Pattern.compile(errorPattern));
+        matcher = null;
         return this;
     }
 
@@ -57,6 +62,7 @@ public class ExpectedErrors implements Serializable {
             throw new IllegalArgumentException();
         }
         errors.addAll(list);
+        matcher = null;
         return this;
     }
 
@@ -65,6 +71,7 @@ public class ExpectedErrors implements Serializable {
             throw new IllegalArgumentException();
         }
         regexes.addAll(list);
+        matcher = null;
         return this;
     }
 
@@ -72,6 +79,7 @@ public class ExpectedErrors implements Serializable {
         for (String error : list) {
             regexes.add(Pattern.compile(error));
         }
+        matcher = null;
         return this;
     }
 
@@ -91,22 +99,19 @@ public class ExpectedErrors implements Serializable {
      *            the error message
      *
      * @return whether the error message contains any of the substrings specified as expected errors
+     *
+     * @see ErrorMatcher
      */
     public boolean errorIsExpected(String error) {
         if (error == null) {
             throw new IllegalArgumentException();
         }
-        for (String s : this.errors) {
-            if (error.contains(s)) {
-                return true;
-            }
-        }
-        for (Pattern p : this.regexes) {
-            if (p.matcher(error).find()) {
-                return true;
-            }
+        ErrorMatcher m = matcher;
+        if (m == null) {
+            m = ErrorMatcher.of(errors, regexes);
+            matcher = m;
         }
-        return false;
+        return m.matches(error);
     }
 
     public static class ExpectedErrorsBuilder {
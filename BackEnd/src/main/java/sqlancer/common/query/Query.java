@@ -1,10 +1,13 @@
 package sqlancer.common.query;
 
+import java.util.List;
+
 import sqlancer.GlobalState;
 import sqlancer.SQLancerDBConnection;
 import sqlancer.common.log.Loggable;
+import sqlancer.common.schema.SchemaDelta;
 
-public abstract class Query<C extends SQLancerDBConnection> implements Loggable {
+public abstract class Query<C extends SQLancerDBConnection> implements Loggable, Cloneable {
     private static final long serialVersionUID = 1L;
 
     /**
@@ -28,10 +31,43 @@ public abstract class Query<C extends SQLancerDBConnection> implements Loggable
      */
     public abstract boolean couldAffectSchema();
 
+    /**
+     * The structured changes a successful execution makes to the schema, if the generator knows them exactly.
+     *
+     * @return the changes in execution order, or null if the schema has to be read again from the catalog
+     */
+    public List<SchemaDelta> getSchemaDeltas() {
+        return null;
+    }
+
     public abstract <G extends GlobalState<?, ?, C>> boolean execute(G globalState, String... fills) throws Exception;
 
+    /**
+     * The number of rows the last successful {@link #execute} inserted, updated, or deleted, as reported by the driver.
+     *
+     * @return the affected row count, or a negative value if it is unknown
+     */
+    public long getUpdateCount() {
+        return -1;
+    }
+
     public abstract ExpectedErrors getExpectedErrors();
 
+    /**
+     * Creates a shallow copy that can be executed concurrently with this query. State recorded by an execution, such as
+     * {@link #getUpdateCount()}, is not shared between the copies.
+     *
+     * @return the copy
+     */
+    @SuppressWarnings("unchecked")
+    public Query<C> copy() {
+        try {
+            return (Query<C>) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public String toString() {
         return getQueryString();
@@ -1,21 +1,30 @@
 package sqlancer.common.query;
 
 import java.io.Serializable;
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 
 import sqlancer.GlobalState;
-import sqlancer.Main;
+import sqlancer.IgnoreMeException;
 import sqlancer.SQLConnection;
+import sqlancer.common.schema.SchemaDelta;
 
 public class SQLQueryAdapter extends Query<SQLConnection> implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final String[] BATCHABLE_KEYWORDS = { "INSERT ", "REPLACE ", "UPDATE ", "DELETE " };
 
     private final String query;
     private final ExpectedErrors expectedErrors;
     private final boolean couldAffectSchema;
+    // 生成器给出的 schema 改动，只在本进程内使用，不随语句序列化
+    private transient List<SchemaDelta> schemaDeltas;
+    // 最近一次成功执行的影响行数，未知时为 -1
+    private transient long updateCount = -1;
 
     public SQLQueryAdapter(String query) {
         this(query, new ExpectedErrors());
@@ -124,32 +133,148 @@ public class SQLQueryAdapter extends Query<SQLConnection> implements Serializabl
 
     protected <G extends GlobalState<?, ?, SQLConnection>> boolean internalExecute(SQLConnection connection,
             boolean reportException, String... fills) throws SQLException {
-        Statement s;
-        if (fills.length > 0) {
-            s = connection.prepareStatement(fills[0]);
-            for (int i = 1; i < fills.length; i++) {
-                ((PreparedStatement) s).setString(i, fills[i]);
-            }
-        } else {
-            s = connection.createStatement();
-        }
+        Statement s = borrowStatement(connection, false, fills);
+        updateCount = -1;
         try {
+            boolean hasResultSet;
             if (fills.length > 0) {
-                ((PreparedStatement) s).execute();
+                hasResultSet = ((PreparedStatement) s).execute();
             } else {
-                s.execute(query);
+                hasResultSet = s.execute(query);
+            }
+            if (!hasResultSet) {
+                updateCount = s.getUpdateCount();
             }
-            Main.nrSuccessfulActions.addAndGet(1);
             return true;
         } catch (Exception e) {
-            Main.nrUnsuccessfulActions.addAndGet(1);
             if (reportException) {
                 checkException(e);
             }
             return false;
         } finally {
-            s.close();
+            connection.releaseStatement(s);
+        }
+    }
+
+    /**
+     * 从连接的池中借出执行本查询用的 Statement。带 fills 时按 fills[0] 借出 PreparedStatement 并设置参数；
+     * 查询（isQuery）在连接开启了 PreparedStatement 缓存时，重复执行的文本也会借到预编译的 PreparedStatement。
+     */
+    private Statement borrowStatement(SQLConnection connection, boolean isQuery, String... fills)
+            throws SQLException {
+        if (fills.length == 0) {
+            return isQuery ? connection.borrowStatementForQuery(query) : connection.borrowStatement();
+        }
+        PreparedStatement s = connection.borrowPreparedStatement(fills[0]);
+        try {
+            for (int i = 1; i < fills.length; i++) {
+                s.setString(i, fills[i]);
+            }
+        } catch (SQLException e) {
+            connection.releaseStatement(s);
+            throw e;
+        }
+        return s;
+    }
+
+    /**
+     * @return 是否可以放入 JDBC 批量执行：不影响 schema 且不返回结果集的 DML 语句
+     */
+    public boolean canBeBatched() {
+        if (couldAffectSchema) {
+            return false;
+        }
+        int start = 0;
+        while (start < query.length() && Character.isWhitespace(query.charAt(start))) {
+            start++;
+        }
+        for (String keyword : BATCHABLE_KEYWORDS) {
+            if (query.regionMatches(true, start, keyword, 0, keyword.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 以一次 executeBatch 在一个事务中执行 queries（均应满足 {@link #canBeBatched()}）。全部语句成功时提交；有语句失败、
+     * 未执行或结果未知时回滚整批，再由 {@link #execute} 逐条执行，照常检查 {@link ExpectedErrors}，数据库的状态与逐条执行相同。
+     * 连接已在事务中或驱动不支持批量执行时，之后在该连接上不再批量执行。
+     *
+     * @return 每条语句是否执行成功
+     *
+     * @throws IgnoreMeException 回滚不完整（非事务表上的修改无法撤销）时，数据库的状态无法由日志复现，放弃该数据库
+     */
+    public static <G extends GlobalState<?, ?, SQLConnection>> boolean[] executeBatch(G globalState,
+            List<SQLQueryAdapter> queries) throws SQLException {
+        SQLConnection connection = globalState.getConnection();
+        if (!connection.getAutoCommit()) {
+            // 回滚会撤销这一批之前的语句
+            connection.disableBatching();
+            return executeOneByOne(globalState, queries);
+        }
+        Statement s = connection.borrowStatement();
+        connection.setAutoCommit(false);
+        try {
+            int[] updateCounts = null;
+            try {
+                for (SQLQueryAdapter q : queries) {
+                    s.addBatch(q.query);
+                }
+                updateCounts = s.executeBatch();
+            } catch (BatchUpdateException e) {
+                // 失败的语句在逐条执行时检查
+            } catch (SQLException e) {
+                connection.disableBatching();
+            }
+            if (isComplete(updateCounts, queries.size())) {
+                connection.commit();
+                boolean[] success = new boolean[queries.size()];
+                for (int i = 0; i < queries.size(); i++) {
+                    // SUCCESS_NO_INFO 为负数，即影响行数未知
+                    queries.get(i).updateCount = updateCounts[i];
+                    success[i] = true;
+                }
+                return success;
+            }
+            s.clearWarnings();
+            s.execute("ROLLBACK");
+            if (s.getWarnings() != null) {
+                // 例如 MySQL 的 "Some non-transactional changed tables couldn't be rolled back"
+                connection.disableBatching();
+                throw new IgnoreMeException();
+            }
+        } finally {
+            try {
+                s.clearBatch();
+                s.clearWarnings();
+            } finally {
+                connection.releaseStatement(s);
+                connection.setAutoCommit(true);
+            }
+        }
+        return executeOneByOne(globalState, queries);
+    }
+
+    private static boolean isComplete(int[] updateCounts, int nrQueries) {
+        if (updateCounts == null || updateCounts.length != nrQueries) {
+            return false;
+        }
+        for (int updateCount : updateCounts) {
+            if (updateCount == Statement.EXECUTE_FAILED) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    private static <G extends GlobalState<?, ?, SQLConnection>> boolean[] executeOneByOne(G globalState,
+            List<SQLQueryAdapter> queries) throws SQLException {
+        boolean[] success = new boolean[queries.size()];
+        for (int i = 0; i < queries.size(); i++) {
+            success[i] = queries.get(i).execute(globalState);
+        }
+        return success;
     }
 
     public void checkException(Exception e) throws AssertionError {
@@ -179,30 +304,22 @@ public class SQLQueryAdapter extends Query<SQLConnection> implements Serializabl
 
     protected <G extends GlobalState<?, ?, SQLConnection>> SQLancerResultSet internalExecuteAndGet(
             SQLConnection connection, boolean reportException, String... fills) throws SQLException {
-        Statement s;
-        if (fills.length > 0) {
-            s = connection.prepareStatement(fills[0]);
-            for (int i = 1; i < fills.length; i++) {
-                ((PreparedStatement) s).setString(i, fills[i]);
-            }
-        } else {
-            s = connection.createStatement();
-        }
+        Statement s = borrowStatement(connection, true, fills);
+        updateCount = -1;
         ResultSet result;
         try {
-            if (fills.length > 0) {
+            if (connection.isPrepared(s)) {
                 result = ((PreparedStatement) s).executeQuery();
             } else {
                 result = s.executeQuery(query);
             }
-            Main.nrSuccessfulActions.addAndGet(1);
             if (result == null) {
+                connection.releaseStatement(s);
                 return null;
             }
-            return new SQLancerResultSet(result);
+            return new SQLancerResultSet(result, connection);
         } catch (Exception e) {
-            s.close();
-            Main.nrUnsuccessfulActions.addAndGet(1);
+            connection.releaseStatement(s);
             if (reportException) {
                 checkException(e);
             }
@@ -210,11 +327,34 @@ public class SQLQueryAdapter extends Query<SQLConnection> implements Serializabl
         }
     }
 
+    @Override
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
     @Override
     public boolean couldAffectSchema() {
         return couldAffectSchema;
     }
 
+    /**
+     * 记录语句执行成功后对 schema 的改动，使其后的 schema 更新可以增量进行。只应用于 couldAffectSchema 为 true 的语句。
+     *
+     * @return this
+     */
+    public SQLQueryAdapter withSchemaDeltas(SchemaDelta... deltas) {
+        if (!couldAffectSchema) {
+            throw new AssertionError("schema deltas given for a statement that does not affect the schema: " + query);
+        }
+        this.schemaDeltas = Arrays.asList(deltas);
+        return this;
+    }
+
+    @Override
+    public List<SchemaDelta> getSchemaDeltas() {
+        return schemaDeltas;
+    }
+
     @Override
     public ExpectedErrors getExpectedErrors() {
         return expectedErrors;
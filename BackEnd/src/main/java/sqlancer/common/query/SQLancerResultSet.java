@@ -3,14 +3,24 @@ package sqlancer.common.query;
 import java.io.Closeable;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+
+import sqlancer.SQLConnection;
 
 public class SQLancerResultSet implements Closeable {
 
     ResultSet rs;
     private Runnable runnableEpilogue;
+    // 非 null 时 Statement 借自该连接的池，关闭时归还而不是关闭
+    private final SQLConnection owner;
 
     public SQLancerResultSet(ResultSet rs) {
+        this(rs, null);
+    }
+
+    public SQLancerResultSet(ResultSet rs, SQLConnection owner) {
         this.rs = rs;
+        this.owner = owner;
     }
 
     @Override
@@ -19,8 +29,14 @@ public class SQLancerResultSet implements Closeable {
             if (runnableEpilogue != null) {
                 runnableEpilogue.run();
             }
-            rs.getStatement().close();
-            rs.close();
+            Statement statement = rs.getStatement();
+            if (owner == null) {
+                statement.close();
+                rs.close();
+            } else {
+                rs.close();
+                owner.releaseStatement(statement);
+            }
         } catch (SQLException e) {
             throw new AssertionError(e);
         }
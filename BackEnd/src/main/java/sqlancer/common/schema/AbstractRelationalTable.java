@@ -16,22 +16,46 @@ public class AbstractRelationalTable<C extends AbstractTableColumn<?, ?>, I exte
 
     @Override
     public long getNrRows(G globalState) {
-        if (rowCount == NO_ROW_COUNT_AVAILABLE) {
-            SQLQueryAdapter q = new SQLQueryAdapter("SELECT COUNT(*) FROM " + name);
-            try (SQLancerResultSet query = q.executeAndGet(globalState)) {
-                if (query == null) {
-                    throw new IgnoreMeException();
-                }
-                query.next();
-                rowCount = query.getLong(1);
-                return rowCount;
-            } catch (Throwable t) {
-                // an exception might be expected, for example, when invalid view is created
-                throw new IgnoreMeException();
+        boolean tracked = isTracked(globalState);
+        if (tracked) {
+            long count = globalState.getRowCountTracker().getExactCount(name);
+            if (count != RowCountTracker.UNKNOWN) {
+                return count;
             }
-        } else {
+        } else if (rowCount != NO_ROW_COUNT_AVAILABLE) {
             return rowCount;
         }
+        SQLQueryAdapter q = new SQLQueryAdapter("SELECT COUNT(*) FROM " + name);
+        try (SQLancerResultSet query = q.executeAndGet(globalState)) {
+            if (query == null) {
+                throw new IgnoreMeException();
+            }
+            query.next();
+            rowCount = query.getLong(1);
+        } catch (Throwable t) {
+            // an exception might be expected, for example, when invalid view is created
+            throw new IgnoreMeException();
+        }
+        if (tracked) {
+            globalState.getRowCountTracker().setExactCount(name, rowCount);
+        }
+        return rowCount;
+    }
+
+    @Override
+    public boolean isEmpty(G globalState) {
+        if (isTracked(globalState)) {
+            Boolean empty = globalState.getRowCountTracker().isEmpty(name);
+            if (empty != null) {
+                return empty;
+            }
+        }
+        return getNrRows(globalState) == 0;
+    }
+
+    // 视图的行数随基本表变化，不由 RowCountTracker 记录
+    private boolean isTracked(G globalState) {
+        return !isView() && globalState.getOptions().trackRowCounts();
     }
 
 }
@@ -28,6 +28,13 @@ public class AbstractSchema<G extends GlobalState<?, ?, ?>, A extends AbstractTa
         return sb.toString();
     }
 
+    /**
+     * 与表的顺序无关的结构描述，用于核对增量更新的 schema 与系统目录是否一致。
+     */
+    public String getStructureDescription() {
+        return databaseTables.stream().map(Object::toString).sorted().collect(Collectors.joining("\n"));
+    }
+
     public A getRandomTable() {
         return Randomly.fromList(getDatabaseTables());
     }
@@ -144,7 +151,7 @@ public class AbstractSchema<G extends GlobalState<?, ?, ?>, A extends AbstractTa
     }
 
     public boolean containsTableWithZeroRows(G globalState) {
-        return databaseTables.stream().anyMatch(t -> t.getNrRows(globalState) == 0);
+        return databaseTables.stream().anyMatch(t -> t.isEmpty(globalState));
     }
 
 }
@@ -114,4 +114,8 @@ public abstract class AbstractTable<C extends AbstractTableColumn<?, ?>, I exten
     }
 
     public abstract long getNrRows(G globalState);
+
+    public boolean isEmpty(G globalState) {
+        return getNrRows(globalState) == 0;
+    }
 }
@@ -0,0 +1,406 @@
+package sqlancer.common.schema;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import sqlancer.MetricsRegistry;
+
+/**
+ * 按表名维护各表行数的上下界，由经 {@link sqlancer.Main.QueryManager} 执行的语句及其影响行数更新，使
+ * {@link AbstractRelationalTable#getNrRows} 只在行数未知时才执行 SELECT COUNT(*)。表名不随 schema 的重新读取而改变，因此行数在
+ * schema 更新后仍然有效。
+ *
+ * 无法判断影响的语句使相关的表（无法确定时为所有表）的行数变为未知。存在触发器、外键、表继承或分区时，修改语句可能影响其他表，之后的修改语句
+ * 使所有表的行数变为未知。不经过 QueryManager 执行修改语句的代码需调用 {@link #invalidateAll()}。
+ */
+public class RowCountTracker {
+
+    public static final long UNKNOWN = -1;
+
+    private static final Set<String> READ_ONLY_KEYWORDS = Set.of("SELECT", "SHOW", "EXPLAIN", "DESCRIBE", "DESC",
+            "ANALYZE", "CHECK", "CHECKSUM", "OPTIMIZE", "SET", "BEGIN", "START", "COMMIT", "SAVEPOINT", "RELEASE",
+            "VACUUM", "REINDEX");
+    // CREATE/DROP 之后不影响表行数的对象
+    private static final Set<String> ROW_NEUTRAL_OBJECTS = Set.of("INDEX", "UNIQUE", "VIEW", "SEQUENCE",
+            "STATISTICS");
+    private static final Set<String> ROW_MODIFYING_KEYWORDS = Set.of("INSERT", "REPLACE", "UPDATE", "DELETE",
+            "TRUNCATE");
+    private static final Set<String> MODIFIERS = Set.of("LOW_PRIORITY", "DELAYED", "HIGH_PRIORITY", "QUICK",
+            "IGNORE", "ONLY", "TEMPORARY", "TEMP", "UNLOGGED", "GLOBAL", "LOCAL");
+
+    private enum Effect {
+        // 不改变任何表的行数
+        NONE,
+        // 修改已有的行，不改变行数
+        UPDATE_ROWS,
+        // 插入的行数等于影响行数
+        INSERT_EXACT,
+        // 插入的行数不超过影响行数（冲突时改为更新）
+        INSERT_AT_MOST,
+        // 插入不超过影响行数的行，并可能删除任意多的行（冲突时替换）
+        INSERT_REPLACING,
+        DELETE,
+        // 新建的空表或清空的表
+        EMPTY,
+        // 目标表的行数变为未知
+        FORGET_TABLE,
+        // 所有表的行数变为未知
+        FORGET_ALL
+    }
+
+    // 表名（小写） -> {下界, 上界}
+    private final Map<String, long[]> bounds = new HashMap<>();
+    // 出现过触发器、外键等之后，修改语句可能影响目标表以外的表
+    private boolean hasSideEffects;
+    private long nrHits;
+    private long nrMisses;
+    private MetricsRegistry.Counters metrics = MetricsRegistry.getInstance().getUntagged();
+
+    /**
+     * @return 表的精确行数，未知时返回 {@link #UNKNOWN}；计入命中或未命中的统计
+     */
+    public long getExactCount(String tableName) {
+        long[] b = bounds.get(key(tableName));
+        if (b != null && b[0] == b[1]) {
+            nrHits++;
+            metrics.increment(MetricsRegistry.Counter.ROW_COUNT_HITS);
+            return b[0];
+        }
+        nrMisses++;
+        metrics.increment(MetricsRegistry.Counter.ROW_COUNT_QUERIES);
+        return UNKNOWN;
+    }
+
+    /**
+     * @return 表是否为空，只由已知的上下界无法判断时返回 null；能判断时计入命中的统计
+     */
+    public Boolean isEmpty(String tableName) {
+        long[] b = bounds.get(key(tableName));
+        if (b == null || b[0] == 0 && b[1] != 0) {
+            return null;
+        }
+        nrHits++;
+        metrics.increment(MetricsRegistry.Counter.ROW_COUNT_HITS);
+        return b[1] == 0;
+    }
+
+    public long getLowerBound(String tableName) {
+        long[] b = bounds.get(key(tableName));
+        return b == null ? UNKNOWN : b[0];
+    }
+
+    public long getUpperBound(String tableName) {
+        long[] b = bounds.get(key(tableName));
+        return b == null ? UNKNOWN : b[1];
+    }
+
+    /**
+     * 记录由 SELECT COUNT(*) 得到的行数。
+     */
+    public void setExactCount(String tableName, long count) {
+        bounds.put(key(tableName), new long[] { count, count });
+    }
+
+    public void invalidate(String tableName) {
+        bounds.remove(key(tableName));
+    }
+
+    public void invalidateAll() {
+        bounds.clear();
+    }
+
+    public long getNrHits() {
+        return nrHits;
+    }
+
+    public long getNrMisses() {
+        return nrMisses;
+    }
+
+    /**
+     * 设置命中与未命中计入的计数，默认计入 {@link MetricsRegistry#getUntagged()}。
+     */
+    public void setMetrics(MetricsRegistry.Counters metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 根据执行过的语句更新行数。
+     *
+     * @param sql
+     *            语句文本
+     * @param updateCount
+     *            驱动报告的影响行数，未知时为负数
+     * @param success
+     *            语句是否执行成功
+     * @param isBaseTable
+     *            判断名称是否为 schema 中的基本表（而非视图或未知的名称）
+     */
+    public void afterStatement(String sql, long updateCount, boolean success, Predicate<String> isBaseTable) {
+        List<String> tokens = tokenize(sql, 12);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        String first = tokens.get(0).toUpperCase(Locale.ROOT);
+        if (READ_ONLY_KEYWORDS.contains(first)) {
+            return;
+        }
+        int[] pos = { 1 };
+        Effect effect;
+        String table = null;
+        boolean failureForgetsAll = false;
+        switch (first) {
+        case "INSERT":
+        case "REPLACE":
+            String conflict = skipModifiers(tokens, pos);
+            accept(tokens, pos, "INTO");
+            table = readTableName(tokens, pos);
+            String upper = sql.toUpperCase(Locale.ROOT);
+            if (first.equals("REPLACE") || "REPLACE".equals(conflict)) {
+                effect = Effect.INSERT_REPLACING;
+            } else if (upper.contains("DUPLICATE KEY") || upper.contains("DO UPDATE")) {
+                effect = Effect.INSERT_AT_MOST;
+            } else {
+                effect = Effect.INSERT_EXACT;
+            }
+            failureForgetsAll = "ROLLBACK".equals(conflict);
+            break;
+        case "UPDATE":
+            conflict = skipModifiers(tokens, pos);
+            table = readTableName(tokens, pos);
+            effect = "REPLACE".equals(conflict) ? Effect.FORGET_TABLE : Effect.UPDATE_ROWS;
+            failureForgetsAll = "ROLLBACK".equals(conflict);
+            break;
+        case "DELETE":
+            skipModifiers(tokens, pos);
+            effect = accept(tokens, pos, "FROM") ? Effect.DELETE : Effect.FORGET_ALL;
+            skipModifiers(tokens, pos);
+            table = readTableName(tokens, pos);
+            break;
+        case "TRUNCATE":
+            accept(tokens, pos, "TABLE");
+            skipModifiers(tokens, pos);
+            table = readTableName(tokens, pos);
+            effect = sql.toUpperCase(Locale.ROOT).contains("CASCADE") ? Effect.FORGET_ALL : Effect.EMPTY;
+            break;
+        case "CREATE":
+        case "DROP":
+        case "ALTER":
+            String object = readObjectKind(tokens, pos);
+            if (ROW_NEUTRAL_OBJECTS.contains(object)) {
+                effect = Effect.NONE;
+            } else if (!object.equals("TABLE")) {
+                effect = Effect.FORGET_ALL;
+                if (success && (object.equals("TRIGGER") || object.equals("RULE"))) {
+                    hasSideEffects = true;
+                }
+            } else {
+                boolean conditional = accept(tokens, pos, "IF");
+                if (conditional) {
+                    accept(tokens, pos, "NOT");
+                    accept(tokens, pos, "EXISTS");
+                }
+                skipModifiers(tokens, pos);
+                table = readTableName(tokens, pos);
+                upper = sql.toUpperCase(Locale.ROOT);
+                if (success && (upper.contains("REFERENCES") || upper.contains("INHERITS")
+                        || upper.contains("PARTITION OF"))) {
+                    hasSideEffects = true;
+                }
+                if (first.equals("CREATE")) {
+                    boolean copiesRows = upper.contains("SELECT") || upper.contains("VALUES");
+                    effect = conditional || copiesRows ? Effect.FORGET_TABLE : Effect.EMPTY;
+                } else if (first.equals("DROP")) {
+                    effect = Effect.FORGET_TABLE;
+                } else {
+                    effect = upper.contains("RENAME") ? Effect.FORGET_ALL : Effect.FORGET_TABLE;
+                }
+            }
+            // 失败的 DDL 语句不改变数据
+            if (!success) {
+                return;
+            }
+            break;
+        default:
+            effect = Effect.FORGET_ALL;
+            break;
+        }
+        if (effect == Effect.NONE) {
+            return;
+        }
+        if (effect != Effect.UPDATE_ROWS && effect != Effect.FORGET_ALL && table == null) {
+            // 多表语句或无法识别表名
+            effect = Effect.FORGET_ALL;
+        }
+        if (ROW_MODIFYING_KEYWORDS.contains(first)
+                && (hasSideEffects || effect != Effect.UPDATE_ROWS && !isBaseTable.test(table))) {
+            // 修改视图时无法确定基本表；触发器等可能修改其他表
+            effect = Effect.FORGET_ALL;
+        }
+        if (!success) {
+            if (effect == Effect.FORGET_ALL || failureForgetsAll) {
+                bounds.clear();
+            } else if (effect != Effect.UPDATE_ROWS) {
+                // 部分存储引擎（如 MyISAM）中失败的多行语句可能已修改了部分行
+                bounds.remove(key(table));
+            }
+            return;
+        }
+        if (effect == Effect.FORGET_ALL) {
+            bounds.clear();
+            return;
+        }
+        if (effect == Effect.UPDATE_ROWS) {
+            return;
+        }
+        if (effect == Effect.EMPTY) {
+            bounds.put(key(table), new long[] { 0, 0 });
+            return;
+        }
+        long[] b = bounds.get(key(table));
+        if (b == null) {
+            return;
+        }
+        if (effect == Effect.FORGET_TABLE || updateCount < 0) {
+            bounds.remove(key(table));
+            return;
+        }
+        switch (effect) {
+        case INSERT_EXACT:
+            b[0] += updateCount;
+            b[1] += updateCount;
+            break;
+        case INSERT_AT_MOST:
+            b[1] += updateCount;
+            break;
+        case INSERT_REPLACING:
+            b[0] = 0;
+            b[1] += updateCount;
+            break;
+        case DELETE:
+            b[0] -= updateCount;
+            b[1] -= updateCount;
+            if (b[1] < 0) {
+                // 与记录的行数矛盾
+                bounds.remove(key(table));
+            } else if (b[0] < 0) {
+                b[0] = 0;
+            }
+            break;
+        default:
+            throw new AssertionError(effect);
+        }
+    }
+
+    private static String key(String tableName) {
+        return tableName.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 跳过 LOW_PRIORITY、IGNORE 等修饰词以及 SQLite 的 OR 子句。
+     *
+     * @return OR 子句中的冲突处理方式（大写），没有时为 null
+     */
+    private static String skipModifiers(List<String> tokens, int[] pos) {
+        String conflict = null;
+        while (pos[0] < tokens.size()) {
+            String token = tokens.get(pos[0]).toUpperCase(Locale.ROOT);
+            if (token.equals("OR") && pos[0] + 1 < tokens.size()) {
+                conflict = tokens.get(pos[0] + 1).toUpperCase(Locale.ROOT);
+                pos[0] += 2;
+            } else if (MODIFIERS.contains(token)) {
+                pos[0]++;
+            } else {
+                break;
+            }
+        }
+        return conflict;
+    }
+
+    private static boolean accept(List<String> tokens, int[] pos, String keyword) {
+        if (pos[0] < tokens.size() && tokens.get(pos[0]).equalsIgnoreCase(keyword)) {
+            pos[0]++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 读取 CREATE/DROP/ALTER 之后的对象种类，跳过 OR REPLACE、TEMPORARY 等。
+     */
+    private static String readObjectKind(List<String> tokens, int[] pos) {
+        if (accept(tokens, pos, "OR")) {
+            accept(tokens, pos, "REPLACE");
+        }
+        skipModifiers(tokens, pos);
+        accept(tokens, pos, "MATERIALIZED");
+        return pos[0] < tokens.size() ? tokens.get(pos[0]++).toUpperCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * 读取单个表名（去掉引号及库名前缀）。其后是逗号（多个表）或没有表名时返回 null。
+     */
+    private static String readTableName(List<String> tokens, int[] pos) {
+        if (pos[0] >= tokens.size() || !isName(tokens.get(pos[0]))) {
+            return null;
+        }
+        String name = tokens.get(pos[0]++);
+        while (pos[0] + 1 < tokens.size() && tokens.get(pos[0]).equals(".") && isName(tokens.get(pos[0] + 1))) {
+            name = tokens.get(pos[0] + 1);
+            pos[0] += 2;
+        }
+        if (pos[0] < tokens.size() && tokens.get(pos[0]).equals(",")) {
+            return null;
+        }
+        return unquote(name);
+    }
+
+    private static boolean isName(String token) {
+        char c = token.charAt(0);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '`' || c == '"' || c == '[';
+    }
+
+    private static String unquote(String name) {
+        char c = name.charAt(0);
+        if ((c == '`' || c == '"' || c == '[') && name.length() >= 2) {
+            return name.substring(1, name.length() - 1);
+        }
+        return name;
+    }
+
+    /**
+     * 将 sql 开头的部分切分为标识符（含带引号的标识符）和单个标点，最多 max 个。
+     */
+    static List<String> tokenize(String sql, int max) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        int n = sql.length();
+        while (i < n && tokens.size() < max) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            if (c == '`' || c == '"' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                i = sql.indexOf(close, i + 1);
+                i = i < 0 ? n : i + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_'
+                        || sql.charAt(i) == '$')) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+            tokens.add(sql.substring(start, i));
+        }
+        return tokens;
+    }
+}
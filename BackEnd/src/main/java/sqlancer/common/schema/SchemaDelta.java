@@ -0,0 +1,86 @@
+package sqlancer.common.schema;
+
+/**
+ * 一条 DDL 语句对 schema 的结构化改动，由生成语句的生成器给出（见 {@link sqlancer.common.query.Query#getSchemaDeltas()}）。
+ *
+ * 语句执行成功后，{@link sqlancer.GlobalState#updateSchema(sqlancer.common.query.Query, boolean)} 将改动依次应用到当前的 schema
+ * 快照上得到新的快照，而不是重新读取整个系统目录。各 DBMS 通过 {@link sqlancer.GlobalState#applySchemaDelta} 支持其中的部分种类，
+ * 不支持时退回到重新读取。
+ */
+public final class SchemaDelta {
+
+    public enum Kind {
+        ADD_TABLE, DROP_TABLE, ADD_COLUMN, DROP_COLUMN, ADD_INDEX, DROP_INDEX, ADD_VIEW, DROP_VIEW
+    }
+
+    private final Kind kind;
+    private final String tableName;
+    // 列名或索引名；表、视图级别的改动为 null
+    private final String name;
+    // 新增的表/视图（AbstractTable）、列（AbstractTableColumn）或索引（TableIndex）；删除时为 null
+    private final Object definition;
+
+    private SchemaDelta(Kind kind, String tableName, String name, Object definition) {
+        this.kind = kind;
+        this.tableName = tableName;
+        this.name = name;
+        this.definition = definition;
+    }
+
+    /**
+     * @param table 新表的完整定义，其中的列不应与其他快照共用
+     */
+    public static SchemaDelta addTable(AbstractTable<?, ?, ?> table) {
+        return new SchemaDelta(Kind.ADD_TABLE, table.getName(), null, table);
+    }
+
+    public static SchemaDelta dropTable(String tableName) {
+        return new SchemaDelta(Kind.DROP_TABLE, tableName, null, null);
+    }
+
+    public static SchemaDelta addColumn(String tableName, AbstractTableColumn<?, ?> column) {
+        return new SchemaDelta(Kind.ADD_COLUMN, tableName, column.getName(), column);
+    }
+
+    public static SchemaDelta dropColumn(String tableName, String columnName) {
+        return new SchemaDelta(Kind.DROP_COLUMN, tableName, columnName, null);
+    }
+
+    public static SchemaDelta addIndex(String tableName, TableIndex index) {
+        return new SchemaDelta(Kind.ADD_INDEX, tableName, index.getIndexName(), index);
+    }
+
+    public static SchemaDelta dropIndex(String tableName, String indexName) {
+        return new SchemaDelta(Kind.DROP_INDEX, tableName, indexName, null);
+    }
+
+    public static SchemaDelta addView(AbstractTable<?, ?, ?> view) {
+        return new SchemaDelta(Kind.ADD_VIEW, view.getName(), null, view);
+    }
+
+    public static SchemaDelta dropView(String viewName) {
+        return new SchemaDelta(Kind.DROP_VIEW, viewName, null, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getDefinition() {
+        return (T) definition;
+    }
+
+    @Override
+    public String toString() {
+        return name == null ? kind + " " + tableName : kind + " " + tableName + "." + name;
+    }
+}
@@ -0,0 +1,92 @@
+package sqlancer.common.visitor;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 每个工作线程转换 SQL 字符串时共用的状态：可重复使用的 StringBuilder、子树的字符串缓存，以及是否按运算符优先级省略括号。
+ *
+ * 嵌套的 visitor 各取一个 StringBuilder，用完后还回。子树的字符串以节点的同一性为键、按 visitor 类分开缓存，只用于创建后不再修改的节点；
+ * 缓存的节点数超过 {@link #MAX_CACHED_SUBTREES} 时整体清空，不会一直持有旧的 AST。
+ */
+public final class RenderContext {
+
+    static final int MAX_POOLED_BUFFERS = 8;
+    // 更大的 StringBuilder 不再放回，避免一次很长的语句一直占用内存
+    static final int MAX_POOLED_CAPACITY = 1 << 16;
+    static final int INITIAL_CAPACITY = 256;
+    static final int MAX_CACHED_SUBTREES = 4096;
+
+    private static final ThreadLocal<RenderContext> CURRENT = ThreadLocal.withInitial(RenderContext::new);
+
+    private final ArrayDeque<StringBuilder> buffers = new ArrayDeque<>();
+    private final Map<Class<?>, IdentityHashMap<Object, String>> subtrees = new HashMap<>();
+    private int nrCachedSubtrees;
+    private boolean minimalParentheses;
+
+    RenderContext() {
+    }
+
+    public static RenderContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param minimalParentheses
+     *            为 true 时按运算符优先级省略不影响语义的括号，为 false 时保持原有的保守输出
+     */
+    public void setMinimalParentheses(boolean minimalParentheses) {
+        if (this.minimalParentheses != minimalParentheses) {
+            // 缓存的字符串与括号的写法有关
+            clearSubtrees();
+            this.minimalParentheses = minimalParentheses;
+        }
+    }
+
+    public boolean isMinimalParentheses() {
+        return minimalParentheses;
+    }
+
+    public StringBuilder acquireBuffer() {
+        StringBuilder sb = buffers.pollLast();
+        if (sb == null) {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    public void releaseBuffer(StringBuilder sb) {
+        if (buffers.size() < MAX_POOLED_BUFFERS && sb.capacity() <= MAX_POOLED_CAPACITY) {
+            buffers.addLast(sb);
+        }
+    }
+
+    /**
+     * @return renderer 此前为 node 生成的字符串，没有时为 null
+     */
+    String getCachedText(Class<?> renderer, Object node) {
+        IdentityHashMap<Object, String> texts = subtrees.get(renderer);
+        return texts == null ? null : texts.get(node);
+    }
+
+    void cacheText(Class<?> renderer, Object node, String text) {
+        if (nrCachedSubtrees >= MAX_CACHED_SUBTREES) {
+            clearSubtrees();
+        }
+        if (subtrees.computeIfAbsent(renderer, r -> new IdentityHashMap<>()).put(node, text) == null) {
+            nrCachedSubtrees++;
+        }
+    }
+
+    public void clearSubtrees() {
+        subtrees.clear();
+        nrCachedSubtrees = 0;
+    }
+
+    int getNrCachedSubtrees() {
+        return nrCachedSubtrees;
+    }
+}
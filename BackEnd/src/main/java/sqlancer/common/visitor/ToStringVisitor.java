@@ -6,9 +6,25 @@ import sqlancer.common.visitor.UnaryOperation.OperatorKind;
 
 public abstract class ToStringVisitor<T> extends NodeVisitor<T> {
 
-    protected final StringBuilder sb = new StringBuilder();
+    private final RenderContext context = RenderContext.current();
+    // 从当前线程取得，调用 getAndRelease() 后还回
+    protected final StringBuilder sb = context.acquireBuffer();
+    // visitCached() 之下还要缓存的层数
+    private int cacheLevels;
+    // 当前缓存的子树在转换时是否取过随机数，见 markRandomizedRendering()
+    private boolean randomizedRendering;
 
     public void visit(BinaryOperation<T> op) {
+        if (context.isMinimalParentheses()) {
+            sb.append('(');
+            visitOperand(op.getLeft());
+            sb.append(' ');
+            sb.append(op.getOperatorRepresentation());
+            sb.append(' ');
+            visitOperand(op.getRight());
+            sb.append(')');
+            return;
+        }
         sb.append('(');
         sb.append('(');
         visit(op.getLeft());
@@ -28,11 +44,13 @@ public abstract class ToStringVisitor<T> extends NodeVisitor<T> {
             sb.append(op.getOperatorRepresentation());
             sb.append(' ');
         }
-        if (!op.omitBracketsWhenPrinting()) {
+        boolean operandBrackets = !op.omitBracketsWhenPrinting()
+                && !(context.isMinimalParentheses() && isAtomic(op.getExpression()));
+        if (operandBrackets) {
             sb.append('(');
         }
         visit(op.getExpression());
-        if (!op.omitBracketsWhenPrinting()) {
+        if (operandBrackets) {
             sb.append(')');
         }
         if (op.getOperatorKind() == OperatorKind.POSTFIX) {
@@ -47,6 +65,67 @@ public abstract class ToStringVisitor<T> extends NodeVisitor<T> {
     @SuppressWarnings("unchecked")
     public void visit(T expr) {
         assert expr != null;
+        if (cacheLevels > 0) {
+            visitCached(expr, cacheLevels - 1);
+        } else if (expr instanceof BinaryOperation<?>) {
+            visit((BinaryOperation<T>) expr);
+        } else if (expr instanceof UnaryOperation<?>) {
+            visit((UnaryOperation<T>) expr);
+        } else {
+            visitSpecific(expr);
+        }
+    }
+
+    /**
+     * 与 {@link #visit(Object)} 相同，但复用本线程此前为同一节点生成的字符串，并缓存 expr 及其下 levels 层子节点的字符串。
+     *
+     * 用于同一次检查中多次转换的子树，例如 TLP 的四条查询共有的列、FROM 与 JOIN，以及三个谓词变体共有的谓词。只缓存
+     * {@link #isCacheable} 为 true、且转换时没有取随机数（见 {@link #markRandomizedRendering()}）的节点，因此同一个随机种子生成的
+     * SQL 与不缓存时相同。
+     */
+    protected void visitCached(T expr, int levels) {
+        int outerLevels = cacheLevels;
+        if (!isCacheable(expr)) {
+            cacheLevels = levels;
+            try {
+                visitUncached(expr);
+            } finally {
+                cacheLevels = outerLevels;
+            }
+            return;
+        }
+        String text = context.getCachedText(getClass(), expr);
+        if (text != null) {
+            sb.append(text);
+            return;
+        }
+        int start = sb.length();
+        boolean outerRandomized = randomizedRendering;
+        cacheLevels = levels;
+        randomizedRendering = false;
+        boolean randomized = true;
+        try {
+            visitUncached(expr);
+            randomized = randomizedRendering;
+        } finally {
+            cacheLevels = outerLevels;
+            randomizedRendering = outerRandomized || randomized;
+        }
+        if (!randomized) {
+            context.cacheText(getClass(), expr, sb.substring(start));
+        }
+    }
+
+    /**
+     * 由转换时取随机数的节点调用（例如随机选择运算符的写法）。包含这种节点的子树不缓存：否则再次转换时会沿用第一次的写法，
+     * 并少取随机数，使同一个随机种子生成不同的 SQL。
+     */
+    protected void markRandomizedRendering() {
+        randomizedRendering = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void visitUncached(T expr) {
         if (expr instanceof BinaryOperation<?>) {
             visit((BinaryOperation<T>) expr);
         } else if (expr instanceof UnaryOperation<?>) {
@@ -56,6 +135,43 @@ public abstract class ToStringVisitor<T> extends NodeVisitor<T> {
         }
     }
 
+    /**
+     * @return expr 创建后不再修改、可以缓存其字符串时为 true；默认不缓存
+     */
+    protected boolean isCacheable(T expr) {
+        return false;
+    }
+
+    /**
+     * 省略括号时（见 {@link RenderContext#isMinimalParentheses()}），作为运算符的操作数时是否不需要再加括号。
+     *
+     * 默认只有自带外层括号的二元与一元运算；各 DBMS 可以加上列、常量与函数调用等。
+     */
+    protected boolean isAtomic(T expr) {
+        return expr instanceof BinaryOperation<?>
+                || expr instanceof UnaryOperation<?> && !((UnaryOperation<?>) expr).omitBracketsWhenPrinting();
+    }
+
+    /**
+     * @return 是否按运算符优先级省略括号
+     */
+    protected boolean isMinimalParentheses() {
+        return context.isMinimalParentheses();
+    }
+
+    /**
+     * 转换运算符的操作数，只在 {@link #isAtomic} 为 false 时加括号。
+     */
+    protected void visitOperand(T expr) {
+        if (isAtomic(expr)) {
+            visit(expr);
+        } else {
+            sb.append('(');
+            visit(expr);
+            sb.append(')');
+        }
+    }
+
     public abstract void visitSpecific(T expr);
 
     public void visit(List<T> expressions) {
@@ -71,4 +187,13 @@ public abstract class ToStringVisitor<T> extends NodeVisitor<T> {
         return sb.toString();
     }
 
+    /**
+     * 返回结果并把 StringBuilder 还给当前线程，之后不能再使用这个 visitor。
+     */
+    public String getAndRelease() {
+        String s = get();
+        context.releaseBuffer(sb);
+        return s;
+    }
+
 }
@@ -93,7 +93,7 @@ public class DatabendToStringVisitor extends NewToStringVisitor<DatabendExpressi
     public static String asString(DatabendExpression expr) {
         DatabendToStringVisitor visitor = new DatabendToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
 }
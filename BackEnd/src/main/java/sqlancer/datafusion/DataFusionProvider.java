@@ -72,6 +72,8 @@ public class DataFusionProvider extends SQLProviderAdapter<DataFusionGlobalState
                 globalState.dfLogger.appendToLog(DML, insertQuery.toString() + "\n");
             }
         }
+        // 以上语句没有经过 QueryManager，记录的行数已不可信
+        globalState.getRowCountTracker().invalidateAll();
 
         // TODO(datafusion) add `DataFUsionLogType.STATE` for this whole db state log
         if (globalState.getDbmsSpecificOptions().showDebugInfo) {
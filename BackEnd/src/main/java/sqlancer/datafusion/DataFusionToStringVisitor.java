@@ -13,13 +13,13 @@ public class DataFusionToStringVisitor extends NewToStringVisitor<DataFusionExpr
     public static String asString(DataFusionExpression expr) {
         DataFusionToStringVisitor visitor = new DataFusionToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     public static String asString(List<DataFusionExpression> exprs) {
         DataFusionToStringVisitor visitor = new DataFusionToStringVisitor();
         visitor.visit(exprs);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     @Override
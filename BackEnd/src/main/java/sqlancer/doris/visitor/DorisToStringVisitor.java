@@ -163,6 +163,6 @@ public class DorisToStringVisitor extends NewToStringVisitor<DorisExpression> {
     public static String asString(DorisExpression expr) {
         DorisToStringVisitor visitor = new DorisToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 }
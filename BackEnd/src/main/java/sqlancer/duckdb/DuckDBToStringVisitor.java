@@ -85,7 +85,7 @@ public class DuckDBToStringVisitor extends NewToStringVisitor<DuckDBExpression>
     public static String asString(DuckDBExpression expr) {
         DuckDBToStringVisitor visitor = new DuckDBToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
 }
@@ -88,7 +88,7 @@ public class H2ToStringVisitor extends NewToStringVisitor<H2Expression> {
     public static String asString(H2Expression expr) {
         H2ToStringVisitor visitor = new H2ToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
 }
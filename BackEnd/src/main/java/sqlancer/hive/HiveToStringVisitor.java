@@ -110,6 +110,6 @@ public class HiveToStringVisitor extends NewToStringVisitor<HiveExpression> {
     public static String asString(HiveExpression expr) {
         HiveToStringVisitor visitor = new HiveToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 }
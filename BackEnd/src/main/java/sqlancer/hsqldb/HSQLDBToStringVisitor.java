@@ -24,7 +24,7 @@ public class HSQLDBToStringVisitor extends NewToStringVisitor<HSQLDBExpression>
     public static String asString(HSQLDBExpression expr) {
         HSQLDBToStringVisitor visitor = new HSQLDBToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     private void visit(HSQLDBJoin join) {
@@ -106,7 +106,7 @@ public interface MaterializeVisitor {
     static String asString(MaterializeExpression expr) {
         MaterializeToStringVisitor visitor = new MaterializeToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     static String asExpectedValues(MaterializeExpression expr) {
@@ -121,7 +121,7 @@ public interface MaterializeVisitor {
                 type);
         MaterializeToStringVisitor visitor = new MaterializeToStringVisitor();
         visitor.visit(expression);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
 }
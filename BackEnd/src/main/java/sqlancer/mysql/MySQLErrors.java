@@ -8,6 +8,11 @@ import sqlancer.common.query.ExpectedErrors;
 
 public final class MySQLErrors {
 
+    // compiled once; the expected errors are rebuilt for every generated statement
+    // match: For input string: "00000000000000000000-0"
+    private static final Pattern INPUT_STRING_ERROR = Pattern.compile("For input string: \"0+-0\"");
+    private static final Pattern UNKNOWN_ORDER_COLUMN_ERROR = Pattern.compile("Unknown column '.*' in 'order clause'");
+
     private MySQLErrors() {
     }
 
@@ -28,11 +33,10 @@ public final class MySQLErrors {
         ArrayList<Pattern> errors = new ArrayList<>();
 
         if (MySQLBugs.bug114533) {
-            errors.add(Pattern.compile("For input string: \"0+-0\"")); // match: For input string:
-                                                                       // "00000000000000000000-0"
+            errors.add(INPUT_STRING_ERROR);
         }
 
-        errors.add(Pattern.compile("Unknown column '.*' in 'order clause'"));
+        errors.add(UNKNOWN_ORDER_COLUMN_ERROR);
 
         return errors;
     }
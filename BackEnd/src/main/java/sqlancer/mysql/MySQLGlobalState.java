@@ -4,6 +4,7 @@ package sqlancer.mysql;
 import java.sql.SQLException;
 
 import sqlancer.SQLGlobalState;
+import sqlancer.common.schema.SchemaDelta;
 
 public class MySQLGlobalState extends SQLGlobalState<MySQLOptions, MySQLSchema> {
 
@@ -12,6 +13,11 @@ public class MySQLGlobalState extends SQLGlobalState<MySQLOptions, MySQLSchema>
         return MySQLSchema.fromConnection(getConnection(), getDatabaseName());
     }
 
+    @Override
+    protected MySQLSchema applySchemaDelta(MySQLSchema schema, SchemaDelta delta) {
+        return schema.apply(delta);
+    }
+
     public boolean usesPQS() {
         return getDbmsSpecificOptions().oracles.stream().anyMatch(o -> o == MySQLOracleFactory.PQS);
     }
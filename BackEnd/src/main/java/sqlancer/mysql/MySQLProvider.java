@@ -2,10 +2,12 @@ package sqlancer.mysql;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.google.auto.service.AutoService;
@@ -30,6 +32,8 @@ import sqlancer.mysql.gen.tblmaintenance.MySQLRepair;
 @AutoService(DatabaseProvider.class)
 public class MySQLProvider extends SQLProviderAdapter<MySQLGlobalState, MySQLOptions> {
 
+    private static final AtomicInteger NR_SNAPSHOTS = new AtomicInteger();
+
     public MySQLProvider() {
         super(MySQLGlobalState.class, MySQLOptions.class);
     }
@@ -171,7 +175,10 @@ public class MySQLProvider extends SQLProviderAdapter<MySQLGlobalState, MySQLOpt
         boolean success;
         int nrTries = 0;
         do {
-            SQLQueryAdapter config = globalState.getConfigurationGenerator().generateConfigForParameter(action);
+            BaseConfigurationGenerator generator = globalState.getConfigurationGenerator();
+            SQLQueryAdapter config = generator.generateConfigForParameter(action,
+                    generator.chooseScope(action, globalState.isGlobalConfigurationAllowed()),
+                    globalState.getRandomly());
             success =  globalState.executeStatement( config);
             System.out.println(config.getQueryString());
         } while (!success && nrTries++ < 100);
@@ -182,7 +189,9 @@ public class MySQLProvider extends SQLProviderAdapter<MySQLGlobalState, MySQLOpt
         boolean success;
         int nrTries = 0;
         do {
-            SQLQueryAdapter config = globalState.getConfigurationGenerator().generateDefaultConfigForParameter(action);
+            BaseConfigurationGenerator generator = globalState.getConfigurationGenerator();
+            SQLQueryAdapter config = generator.generateDefaultConfigForParameter(action,
+                    generator.getDefaultScope(action, globalState.isGlobalConfigurationAllowed()));
             success =  globalState.executeStatement( config);
             System.out.println(config.getQueryString());
         } while (!success && nrTries++ < 100);
@@ -191,6 +200,26 @@ public class MySQLProvider extends SQLProviderAdapter<MySQLGlobalState, MySQLOpt
 
     @Override
     public SQLConnection createDatabase(MySQLGlobalState globalState) throws SQLException {
+        String databaseName = globalState.getDatabaseName();
+        globalState.getState().logStatement("DROP DATABASE IF EXISTS " + databaseName);
+        globalState.getState().logStatement("CREATE DATABASE " + databaseName);
+        globalState.getState().logStatement("USE " + databaseName);
+        Connection con = connect(globalState);
+        try (Statement s = con.createStatement()) {
+            s.execute("DROP DATABASE IF EXISTS " + databaseName);
+        }
+        try (Statement s = con.createStatement()) {
+            s.execute("CREATE DATABASE " + databaseName);
+        }
+        try (Statement s = con.createStatement()) {
+            s.execute("USE " + databaseName);
+        }
+        // Connector/J 默认在客户端预编译，缓存重复执行的查询（如 TLP 复现、重放）代价很小
+        return new SQLConnection(con, SQLConnection.StatementSettings.DEFAULT.withForwardOnlyReadOnly(true)
+                .withPreparedStatementCacheSize(32).withBatchSize(32));
+    }
+
+    private static Connection connect(MySQLGlobalState globalState) throws SQLException {
         String username = globalState.getOptions().getUserName();
         String password = globalState.getOptions().getPassword();
         String host = globalState.getOptions().getHost();
@@ -201,23 +230,99 @@ public class MySQLProvider extends SQLProviderAdapter<MySQLGlobalState, MySQLOpt
         if (port == MainOptions.NO_SET_PORT) {
             port = MySQLOptions.DEFAULT_PORT;
         }
-        String databaseName = globalState.getDatabaseName();
-        globalState.getState().logStatement("DROP DATABASE IF EXISTS " + databaseName);
-        globalState.getState().logStatement("CREATE DATABASE " + databaseName);
-        globalState.getState().logStatement("USE " + databaseName);
-        String url = String.format("jdbc:mysql://%s:%d?serverTimezone=UTC&useSSL=false&allowPublicKeyRetrieval=true",
+        // rewriteBatchedStatements：executeBatch 以多语句包发送，而不是逐条往返
+        String url = String.format(
+                "jdbc:mysql://%s:%d?serverTimezone=UTC&useSSL=false&allowPublicKeyRetrieval=true&rewriteBatchedStatements=true",
                 host, port);
-        Connection con = DriverManager.getConnection(url, username, password);
-        try (Statement s = con.createStatement()) {
-            s.execute("DROP DATABASE IF EXISTS " + databaseName);
+        return DriverManager.getConnection(url, username, password);
+    }
+
+    /**
+     * 把各表复制到数据库 databaseName_s<i> 中。CREATE TABLE ... LIKE 不复制视图、触发器、外键和自增计数器，含有这些内容或生成列时不保存快照。
+     */
+    @Override
+    public DatabaseSnapshot createSnapshot(MySQLGlobalState globalState) throws SQLException {
+        String databaseName = globalState.getDatabaseName();
+        String snapshotName = databaseName + "_s" + NR_SNAPSHOTS.getAndIncrement();
+        List<String> tables = new ArrayList<>();
+        try (Statement s = globalState.getConnection().createStatement()) {
+            String schema = "'" + databaseName + "'";
+            String unsupported = "SELECT (SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = " + schema
+                    + " AND TABLE_TYPE <> 'BASE TABLE')"
+                    + " + (SELECT COUNT(*) FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = " + schema + ")"
+                    + " + (SELECT COUNT(*) FROM information_schema.REFERENTIAL_CONSTRAINTS WHERE CONSTRAINT_SCHEMA = "
+                    + schema + ")"
+                    + " + (SELECT COUNT(*) FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = " + schema
+                    + " AND (EXTRA LIKE '%GENERATED%' OR EXTRA LIKE '%auto_increment%'))";
+            try (ResultSet rs = s.executeQuery(unsupported)) {
+                if (!rs.next() || rs.getLong(1) != 0) {
+                    return null;
+                }
+            }
+            try (ResultSet rs = s
+                    .executeQuery("SELECT TABLE_NAME FROM information_schema.TABLES WHERE TABLE_SCHEMA = " + schema)) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+            s.execute("DROP DATABASE IF EXISTS " + snapshotName);
+            s.execute("CREATE DATABASE " + snapshotName);
+            try {
+                copyTables(s, tables, databaseName, snapshotName);
+            } catch (SQLException e) {
+                s.execute("DROP DATABASE IF EXISTS " + snapshotName);
+                throw e;
+            }
         }
+        return new MySQLSnapshot(globalState, snapshotName, tables);
+    }
+
+    @Override
+    public SQLConnection restoreSnapshot(MySQLGlobalState globalState, DatabaseSnapshot snapshot)
+            throws SQLException {
+        MySQLSnapshot mySQLSnapshot = (MySQLSnapshot) snapshot;
+        SQLConnection con = createDatabase(globalState);
         try (Statement s = con.createStatement()) {
-            s.execute("CREATE DATABASE " + databaseName);
+            copyTables(s, mySQLSnapshot.tables, mySQLSnapshot.databaseName, globalState.getDatabaseName());
+        } catch (SQLException e) {
+            con.close();
+            throw e;
         }
-        try (Statement s = con.createStatement()) {
-            s.execute("USE " + databaseName);
+        return con;
+    }
+
+    @Override
+    public void dropDatabase(MySQLGlobalState globalState) throws SQLException {
+        try (Connection con = connect(globalState); Statement s = con.createStatement()) {
+            s.execute("DROP DATABASE IF EXISTS " + globalState.getDatabaseName());
+        }
+    }
+
+    private static void copyTables(Statement s, List<String> tables, String from, String to) throws SQLException {
+        for (String table : tables) {
+            s.execute(String.format("CREATE TABLE %s.%s LIKE %s.%s", to, table, from, table));
+            s.execute(String.format("INSERT INTO %s.%s SELECT * FROM %s.%s", to, table, from, table));
+        }
+    }
+
+    private static final class MySQLSnapshot implements DatabaseSnapshot {
+        private final MySQLGlobalState globalState;
+        private final String databaseName;
+        private final List<String> tables;
+
+        MySQLSnapshot(MySQLGlobalState globalState, String databaseName, List<String> tables) {
+            this.globalState = globalState;
+            this.databaseName = databaseName;
+            this.tables = tables;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            // 全局状态的连接此时可能已关闭
+            try (Connection con = connect(globalState); Statement s = con.createStatement()) {
+                s.execute("DROP DATABASE IF EXISTS " + databaseName);
+            }
         }
-        return new SQLConnection(con);
     }
 
     @Override
@@ -228,7 +333,7 @@ public class MySQLProvider extends SQLProviderAdapter<MySQLGlobalState, MySQLOpt
     @Override
     public boolean addRowsToAllTables(MySQLGlobalState globalState) throws Exception {
         List<MySQLTable> tablesNoRow = globalState.getSchema().getDatabaseTables().stream()
-                .filter(t -> t.getNrRows(globalState) == 0).collect(Collectors.toList());
+                .filter(t -> t.isEmpty(globalState)).collect(Collectors.toList());
         for (MySQLTable table : tablesNoRow) {
             SQLQueryAdapter queryAddRows = MySQLInsertGenerator.insertRow(globalState, table);
             globalState.executeStatement(queryAddRows);
@@ -8,6 +8,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import sqlancer.Randomly;
@@ -17,6 +19,7 @@ import sqlancer.common.schema.AbstractRowValue;
 import sqlancer.common.schema.AbstractSchema;
 import sqlancer.common.schema.AbstractTableColumn;
 import sqlancer.common.schema.AbstractTables;
+import sqlancer.common.schema.SchemaDelta;
 import sqlancer.common.schema.TableIndex;
 import sqlancer.mysql.MySQLSchema.MySQLTable;
 import sqlancer.mysql.MySQLSchema.MySQLTable.MySQLEngine;
@@ -80,6 +83,13 @@ public class MySQLSchema extends AbstractSchema<MySQLGlobalState, MySQLTable> {
             return isPrimaryKey;
         }
 
+        /**
+         * @return 不属于任何表的副本，供新的 schema 快照使用
+         */
+        public MySQLColumn copy() {
+            return new MySQLColumn(getName(), getType(), isPrimaryKey, precision);
+        }
+
     }
 
     public static class MySQLTables extends AbstractTables<MySQLTable, MySQLColumn> {
@@ -198,6 +208,32 @@ public class MySQLSchema extends AbstractSchema<MySQLGlobalState, MySQLTable> {
             return getColumns().stream().anyMatch(c -> c.isPrimaryKey());
         }
 
+        /**
+         * 以新的名称、列和索引创建表，列复制一份后属于新表。
+         */
+        public static MySQLTable create(String tableName, List<MySQLColumn> columns, List<MySQLIndex> indexes,
+                MySQLEngine engine) {
+            List<MySQLColumn> copies = columns.stream().map(MySQLColumn::copy).collect(Collectors.toList());
+            MySQLTable table = new MySQLTable(tableName, copies, new ArrayList<>(indexes), engine);
+            for (MySQLColumn c : copies) {
+                c.setTable(table);
+            }
+            return table;
+        }
+
+        /**
+         * 与表的顺序、索引的顺序及重复无关的结构描述。
+         */
+        public String getStructureDescription() {
+            String columns = getColumns().stream()
+                    .map(c -> c.getName() + " " + c.getType() + (c.isPrimaryKey() ? " PRIMARY" : "") + " "
+                            + c.getPrecision())
+                    .collect(Collectors.joining(", "));
+            TreeSet<String> indexNames = getIndexes().stream().map(TableIndex::getIndexName)
+                    .collect(Collectors.toCollection(TreeSet::new));
+            return getName() + " " + engine + " (" + columns + ") " + indexNames;
+        }
+
     }
 
     public static final class MySQLIndex extends TableIndex {
@@ -292,6 +328,63 @@ public class MySQLSchema extends AbstractSchema<MySQLGlobalState, MySQLTable> {
         super(databaseTables);
     }
 
+    @Override
+    public String getStructureDescription() {
+        return getDatabaseTables().stream().map(MySQLTable::getStructureDescription).sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    /**
+     * 将一条改动应用到本快照上，返回新的快照；本快照及其中的表不变。
+     *
+     * @return 新的快照；不支持的改动或与本快照不符（例如表不存在）时返回 null
+     */
+    public MySQLSchema apply(SchemaDelta delta) {
+        List<MySQLTable> tables = new ArrayList<>(getDatabaseTables());
+        MySQLTable table = getDatabaseTable(delta.getTableName());
+        switch (delta.getKind()) {
+        case ADD_TABLE:
+            if (table != null) {
+                return null;
+            }
+            tables.add(delta.getDefinition());
+            break;
+        case DROP_TABLE:
+            if (table == null) {
+                return null;
+            }
+            tables.remove(table);
+            break;
+        case ADD_COLUMN:
+            if (table == null) {
+                return null;
+            }
+            List<MySQLColumn> columns = new ArrayList<>(table.getColumns());
+            columns.add(delta.getDefinition());
+            tables.set(tables.indexOf(table),
+                    MySQLTable.create(table.getName(), columns, table.getIndexes(), table.getEngine()));
+            break;
+        case ADD_INDEX:
+        case DROP_INDEX:
+            if (table == null) {
+                return null;
+            }
+            List<MySQLIndex> indexes = new ArrayList<>(table.getIndexes());
+            if (delta.getKind() == SchemaDelta.Kind.ADD_INDEX) {
+                indexes.add(delta.getDefinition());
+            } else if (!indexes.removeIf(i -> i.getIndexName().equals(delta.getName()))) {
+                return null;
+            }
+            tables.set(tables.indexOf(table),
+                    MySQLTable.create(table.getName(), table.getColumns(), indexes, table.getEngine()));
+            break;
+        default:
+            // 删除列可能同时删除或改变索引；视图尚未纳入 MySQL 的 schema
+            return null;
+        }
+        return new MySQLSchema(tables);
+    }
+
     public MySQLTables getRandomTableNonEmptyTables() {
         return new MySQLTables(Randomly.nonEmptySubset(getDatabaseTables()));
     }
@@ -5,6 +5,7 @@ import java.util.stream.Collectors;
 
 import sqlancer.Randomly;
 import sqlancer.common.visitor.ToStringVisitor;
+import sqlancer.common.visitor.UnaryOperation;
 import sqlancer.mysql.ast.MySQLAggregate;
 import sqlancer.mysql.ast.MySQLAggregate.MySQLAggregateFunction;
 import sqlancer.mysql.ast.MySQLBetweenOperation;
@@ -28,9 +29,24 @@ import sqlancer.mysql.ast.MySQLStringExpression;
 import sqlancer.mysql.ast.MySQLTableReference;
 import sqlancer.mysql.ast.MySQLText;
 import sqlancer.mysql.ast.MySQLUnaryPostfixOperation;
+import sqlancer.mysql.ast.MySQLUnaryPrefixOperation;
 
 public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> implements MySQLVisitor {
 
+    // SELECT 各子句缓存到其下一层，使 TLP 的谓词变体复用谓词的字符串
+    private static final int CLAUSE_CACHE_LEVELS = 1;
+
+    // 运算符优先级，数值越大结合越紧，见 MySQL 手册的 Operator Precedence；未列出的表达式（NOT、BETWEEN、EXISTS 等）总是加括号
+    private static final int PRECEDENCE_LOWEST = 0;
+    private static final int PRECEDENCE_OR = 1;
+    private static final int PRECEDENCE_XOR = 2;
+    private static final int PRECEDENCE_AND = 3;
+    private static final int PRECEDENCE_COMPARISON = 4;
+    private static final int PRECEDENCE_BIT_OR = 5;
+    private static final int PRECEDENCE_BIT_AND = 6;
+    private static final int PRECEDENCE_BIT_XOR = 7;
+    private static final int PRECEDENCE_ATOMIC = 8;
+
     int ref;
 
     @Override
@@ -38,6 +54,76 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
         MySQLVisitor.super.visit(expr);
     }
 
+    @Override
+    public void visit(UnaryOperation<MySQLExpression> op) {
+        if (op instanceof MySQLUnaryPrefixOperation) {
+            // 运算符的写法（如 ! 与 NOT）在每次转换时随机选择
+            markRandomizedRendering();
+        }
+        super.visit(op);
+    }
+
+    @Override
+    protected boolean isCacheable(MySQLExpression expr) {
+        // SELECT、JOIN 与 IS 运算可以修改；常量与文本本身就保存着字符串
+        return !(expr instanceof MySQLSelect || expr instanceof MySQLJoin || expr instanceof MySQLUnaryPostfixOperation
+                || expr instanceof MySQLConstant || expr instanceof MySQLText || expr instanceof MySQLStringExpression
+                || expr instanceof MySQLTableReference);
+    }
+
+    @Override
+    protected boolean isAtomic(MySQLExpression expr) {
+        return super.isAtomic(expr) || expr instanceof MySQLConstant || expr instanceof MySQLColumnReference
+                || expr instanceof MySQLComputableFunction || expr instanceof MySQLCastOperation
+                || expr instanceof MySQLCaseOperator || expr instanceof MySQLAggregate;
+    }
+
+    private static int precedence(MySQLExpression expr) {
+        if (expr instanceof MySQLBinaryLogicalOperation) {
+            switch (((MySQLBinaryLogicalOperation) expr).getTextRepresentation()) {
+            case "OR":
+                return PRECEDENCE_OR;
+            case "XOR":
+                return PRECEDENCE_XOR;
+            case "AND":
+            case "&&":
+                return PRECEDENCE_AND;
+            default:
+                // || 的优先级取决于 PIPES_AS_CONCAT
+                return PRECEDENCE_LOWEST;
+            }
+        } else if (expr instanceof MySQLBinaryComparisonOperation || expr instanceof MySQLInOperation
+                || expr instanceof MySQLUnaryPostfixOperation) {
+            return PRECEDENCE_COMPARISON;
+        } else if (expr instanceof MySQLBinaryOperation) {
+            switch (((MySQLBinaryOperation) expr).getOp()) {
+            case OR:
+                return PRECEDENCE_BIT_OR;
+            case AND:
+                return PRECEDENCE_BIT_AND;
+            case XOR:
+                return PRECEDENCE_BIT_XOR;
+            default:
+                return PRECEDENCE_LOWEST;
+            }
+        } else {
+            return PRECEDENCE_LOWEST;
+        }
+    }
+
+    /**
+     * 转换优先级为 parentPrecedence 的运算符的操作数。默认总是加括号；省略括号时只给结合不比运算符更紧的操作数加括号。
+     */
+    private void visitOperand(MySQLExpression operand, int parentPrecedence) {
+        if (isMinimalParentheses() && (isAtomic(operand) || precedence(operand) > parentPrecedence)) {
+            visit(operand);
+        } else {
+            sb.append("(");
+            visit(operand);
+            sb.append(")");
+        }
+    }
+
     @Override
     public void visit(MySQLSelect s) {
         sb.append("SELECT ");
@@ -51,6 +137,7 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
             sb.append("DISTINCT ");
             break;
         case ALL:
+            markRandomizedRendering();
             sb.append(Randomly.fromOptions("ALL ", ""));
             break;
         case DISTINCTROW:
@@ -70,7 +157,7 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
                 if (i != 0) {
                     sb.append(", ");
                 }
-                visit(s.getFetchColumns().get(i));
+                visitCached(s.getFetchColumns().get(i), CLAUSE_CACHE_LEVELS);
                 // MySQL does not allow duplicate column names
                 sb.append(" AS ");
                 sb.append("ref");
@@ -82,16 +169,16 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
             if (i != 0) {
                 sb.append(", ");
             }
-            visit(s.getFromList().get(i));
+            visitCached(s.getFromList().get(i), CLAUSE_CACHE_LEVELS);
         }
         for (MySQLExpression j : s.getJoinList()) {
-            visit(j);
+            visitCached(j, CLAUSE_CACHE_LEVELS);
         }
 
         if (s.getWhereClause() != null) {
             MySQLExpression whereClause = s.getWhereClause();
             sb.append(" WHERE ");
-            visit(whereClause);
+            visitCached(whereClause, CLAUSE_CACHE_LEVELS);
         }
         if (s.getGroupByExpressions() != null && !s.getGroupByExpressions().isEmpty()) {
             sb.append(" ");
@@ -101,7 +188,7 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
                 if (i != 0) {
                     sb.append(", ");
                 }
-                visit(groupBys.get(i));
+                visitCached(groupBys.get(i), CLAUSE_CACHE_LEVELS);
             }
         }
         if (!s.getOrderByClauses().isEmpty()) {
@@ -111,7 +198,7 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
                 if (i != 0) {
                     sb.append(", ");
                 }
-                visit(s.getOrderByClauses().get(i));
+                visitCached(s.getOrderByClauses().get(i), CLAUSE_CACHE_LEVELS);
             }
         }
         if (s.getLimitClause() != null) {
@@ -142,9 +229,7 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
 
     @Override
     public void visit(MySQLUnaryPostfixOperation op) {
-        sb.append("(");
-        visit(op.getExpression());
-        sb.append(")");
+        visitOperand(op.getExpression(), PRECEDENCE_COMPARISON);
         sb.append(" IS ");
         if (op.isNegated()) {
             sb.append("NOT ");
@@ -154,6 +239,7 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
             sb.append("FALSE");
             break;
         case IS_NULL:
+            markRandomizedRendering();
             if (Randomly.getBoolean()) {
                 sb.append("UNKNOWN");
             } else {
@@ -183,26 +269,22 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
 
     @Override
     public void visit(MySQLBinaryLogicalOperation op) {
-        sb.append("(");
-        visit(op.getLeft());
-        sb.append(")");
+        // 在 PIPES_AS_CONCAT 下 || 是字符串连接，优先级高于比较与位运算
+        int precedence = "||".equals(op.getTextRepresentation()) ? PRECEDENCE_BIT_XOR : precedence(op);
+        visitOperand(op.getLeft(), precedence);
         sb.append(" ");
         sb.append(op.getTextRepresentation());
         sb.append(" ");
-        sb.append("(");
-        visit(op.getRight());
-        sb.append(")");
+        visitOperand(op.getRight(), precedence);
     }
 
     @Override
     public void visit(MySQLBinaryComparisonOperation op) {
-        sb.append("(");
-        visit(op.getLeft());
-        sb.append(") ");
+        visitOperand(op.getLeft(), PRECEDENCE_COMPARISON);
+        sb.append(" ");
         sb.append(op.getOp().getTextRepresentation());
-        sb.append(" (");
-        visit(op.getRight());
-        sb.append(")");
+        sb.append(" ");
+        visitOperand(op.getRight(), PRECEDENCE_COMPARISON);
     }
 
     @Override
@@ -216,9 +298,7 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
 
     @Override
     public void visit(MySQLInOperation op) {
-        sb.append("(");
-        visit(op.getExpr());
-        sb.append(")");
+        visitOperand(op.getExpr(), PRECEDENCE_COMPARISON);
         if (!op.isTrue()) {
             sb.append(" NOT");
         }
@@ -235,13 +315,12 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
 
     @Override
     public void visit(MySQLBinaryOperation op) {
-        sb.append("(");
-        visit(op.getLeft());
-        sb.append(") ");
+        int precedence = precedence(op);
+        visitOperand(op.getLeft(), precedence);
+        sb.append(" ");
         sb.append(op.getOp().getTextRepresentation());
-        sb.append(" (");
-        visit(op.getRight());
-        sb.append(")");
+        sb.append(" ");
+        visitOperand(op.getRight(), precedence);
     }
 
     @Override
@@ -265,13 +344,11 @@ public class MySQLToStringVisitor extends ToStringVisitor<MySQLExpression> imple
 
     @Override
     public void visit(MySQLBetweenOperation op) {
-        sb.append("(");
-        visit(op.getExpr());
-        sb.append(") BETWEEN (");
-        visit(op.getLeft());
-        sb.append(") AND (");
-        visit(op.getRight());
-        sb.append(")");
+        visitOperand(op.getExpr(), PRECEDENCE_COMPARISON);
+        sb.append(" BETWEEN ");
+        visitOperand(op.getLeft(), PRECEDENCE_COMPARISON);
+        sb.append(" AND ");
+        visitOperand(op.getRight(), PRECEDENCE_COMPARISON);
     }
 
     @Override
@@ -113,7 +113,7 @@ public interface MySQLVisitor {
     static String asString(MySQLExpression expr) {
         MySQLToStringVisitor visitor = new MySQLToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     static String asExpectedValues(MySQLExpression expr) {
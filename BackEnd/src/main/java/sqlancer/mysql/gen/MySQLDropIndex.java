@@ -4,6 +4,7 @@ import sqlancer.IgnoreMeException;
 import sqlancer.Randomly;
 import sqlancer.common.query.ExpectedErrors;
 import sqlancer.common.query.SQLQueryAdapter;
+import sqlancer.common.schema.SchemaDelta;
 import sqlancer.mysql.MySQLGlobalState;
 import sqlancer.mysql.MySQLSchema.MySQLTable;
 
@@ -31,7 +32,8 @@ public final class MySQLDropIndex {
         }
         StringBuilder sb = new StringBuilder();
         sb.append("DROP INDEX ");
-        sb.append(table.getRandomIndex().getIndexName());
+        String indexName = table.getRandomIndex().getIndexName();
+        sb.append(indexName);
         sb.append(" ON ");
         sb.append(table.getName());
         if (Randomly.getBoolean()) {
@@ -42,10 +44,16 @@ public final class MySQLDropIndex {
             sb.append(" LOCK=");
             sb.append(Randomly.fromOptions("DEFAULT", "NONE", "SHARED", "EXCLUSIVE"));
         }
-        return new SQLQueryAdapter(sb.toString(),
+        SQLQueryAdapter query = new SQLQueryAdapter(sb.toString(),
                 ExpectedErrors.from("LOCK=NONE is not supported", "ALGORITHM=INPLACE is not supported",
                         "Data truncation", "Data truncated for functional index",
-                        "A primary key index cannot be invisible"));
+                        "A primary key index cannot be invisible"),
+                true);
+        if (indexName.equals("`PRIMARY`")) {
+            // 删除主键索引同时改变列的主键属性，交给重新读取
+            return query;
+        }
+        return query.withSchemaDeltas(SchemaDelta.dropIndex(table.getName(), indexName));
     }
 
 }
@@ -72,17 +72,21 @@ public class MySQLExpressionGenerator extends UntypedExpressionGenerator<MySQLEx
 
     //Tang: add parameter-aware generation
     public  Actions selectAction(){
-        if(BaseConfigurationGenerator.isTrainingPhase){
+        if(state.getCampaign().isTrainingPhase()){
             Actions actions = Randomly.fromOptions(Actions.values());
             featureSet.add(actions);
             return actions;
         } else {
+            double[] probabilities = state.getFeatureProbabilities();
+            if (probabilities == null) {
+                return Randomly.fromOptions(Actions.values());
+            }
             double random = Randomly.getPercentage();
             double cumulativeProbability = 0.0;
 
             for(Actions action : Actions.values()) {
 
-                cumulativeProbability += ParameteraAwareGenerator.comActionProbabilities[action.ordinal()];
+                cumulativeProbability += probabilities[action.ordinal()];
 
                 if (random <= cumulativeProbability) {
                     return action;
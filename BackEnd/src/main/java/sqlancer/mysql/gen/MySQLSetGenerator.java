@@ -15,8 +15,6 @@ import sqlancer.mysql.MySQLGlobalState;
 
 public class MySQLSetGenerator extends BaseConfigurationGenerator {
 
-    private static volatile MySQLSetGenerator INSTANCE;
-
     private final StringBuilder sb = new StringBuilder();
 
     // currently, global options are only generated when a single thread is executed
@@ -46,15 +44,11 @@ public class MySQLSetGenerator extends BaseConfigurationGenerator {
 
 
     @Override
-    public SQLQueryAdapter generateConfigForParameter(ConfigurationAction action) {
+    public SQLQueryAdapter generateConfigForParameter(ConfigurationAction action, Scope scope, Randomly r) {
         StringBuilder sb = new StringBuilder();
         sb.append("SET ");
 
-        // 选择作用域
-        Scope[] scopes = action.getScopes();
-        Scope randomScope = Randomly.fromOptions(scopes);
-
-        switch (randomScope) {
+        switch (scope) {
             case GLOBAL:
                 sb.append("GLOBAL");
                 break;
@@ -62,7 +56,7 @@ public class MySQLSetGenerator extends BaseConfigurationGenerator {
                 sb.append("SESSION");
                 break;
             default:
-                throw new AssertionError(randomScope);
+                throw new AssertionError(scope);
         }
 
         sb.append(" ");
@@ -105,18 +99,18 @@ public class MySQLSetGenerator extends BaseConfigurationGenerator {
     }
 
     @Override
-    public SQLQueryAdapter generateDefaultConfigForParameter(ConfigurationAction action) {
+    public SQLQueryAdapter generateDefaultConfigForParameter(ConfigurationAction action, Scope scope) {
         if (action.getName()=="optimizer_switch") {
             return resetOptimizer();
         }
         StringBuilder sb = new StringBuilder();
         sb.append("SET ");
 
-        // 选择作用域
-        Scope[] scopes = action.getScopes();
-
-        if(scopes.length==2||scopes[0]==Scope.GLOBAL )sb.append("GLOBAL");
-        else sb.append("SESSION");
+        if (scope == Scope.GLOBAL) {
+            sb.append("GLOBAL");
+        } else {
+            sb.append("SESSION");
+        }
 
         sb.append(" ");
         sb.append(action.getName());
@@ -125,16 +119,6 @@ public class MySQLSetGenerator extends BaseConfigurationGenerator {
         return new SQLQueryAdapter(sb.toString());
     }
 
-    public static BaseConfigurationGenerator getInstance(Randomly r, MainOptions options) {
-        if (INSTANCE == null) {
-            synchronized (MySQLSetGenerator.class) {
-                if (INSTANCE == null) {
-                    INSTANCE = new MySQLSetGenerator(r, options);
-                }
-            }
-        }
-        return INSTANCE;
-    }
     public static SQLQueryAdapter resetOptimizer() {
         return new SQLQueryAdapter("SET optimizer_switch='default'");
     }
@@ -11,10 +11,14 @@ import sqlancer.Randomly;
 import sqlancer.common.DBMSCommon;
 import sqlancer.common.query.ExpectedErrors;
 import sqlancer.common.query.SQLQueryAdapter;
+import sqlancer.common.schema.SchemaDelta;
 import sqlancer.mysql.MySQLBugs;
 import sqlancer.mysql.MySQLGlobalState;
 import sqlancer.mysql.MySQLSchema;
+import sqlancer.mysql.MySQLSchema.MySQLColumn;
 import sqlancer.mysql.MySQLSchema.MySQLDataType;
+import sqlancer.mysql.MySQLSchema.MySQLIndex;
+import sqlancer.mysql.MySQLSchema.MySQLTable;
 import sqlancer.mysql.MySQLSchema.MySQLTable.MySQLEngine;
 
 public class MySQLTableGenerator {
@@ -27,6 +31,13 @@ public class MySQLTableGenerator {
     private MySQLEngine engine;
     private int keysSpecified;
     private final List<String> columns = new ArrayList<>();
+    // 与生成的语句对应的列和索引定义（与 information_schema 中读到的一致），用于增量更新 schema
+    private final List<MySQLColumn> columnDefinitions = new ArrayList<>();
+    private final List<MySQLIndex> indexDefinitions = new ArrayList<>();
+    private boolean ifNotExists;
+    // appendType 实际声明的类型（DOUBLE 也可能以 FLOAT 声明）及 information_schema 中的 NUMERIC_PRECISION
+    private MySQLDataType declaredType;
+    private long declaredPrecision;
     private final MySQLSchema schema;
     private final MySQLGlobalState globalState;
 
@@ -50,13 +61,16 @@ public class MySQLTableGenerator {
         sb.append(" TABLE");
         if (Randomly.getBoolean()) {
             sb.append(" IF NOT EXISTS");
+            ifNotExists = true;
         }
         sb.append(" ");
         sb.append(tableName);
         if (Randomly.getBoolean() && !schema.getDatabaseTables().isEmpty()) {
             sb.append(" LIKE ");
-            sb.append(schema.getRandomTable().getName());
-            return new SQLQueryAdapter(sb.toString(), true);
+            MySQLTable likeTable = schema.getRandomTable();
+            sb.append(likeTable.getName());
+            return withSchemaDelta(new SQLQueryAdapter(sb.toString(), true), likeTable.getColumns(),
+                    likeTable.getIndexes(), likeTable.getEngine());
         } else {
             sb.append("(");
             for (int i = 0; i < 1 + Randomly.smallNumber(); i++) {
@@ -78,14 +92,34 @@ public class MySQLTableGenerator {
                 errors.add("Too many keys specified; max 1 keys allowed");
                 errors.add("Table handler doesn't support NULL in given index");
                 addCommonErrors(errors);
-                return new SQLQueryAdapter(sb.toString(), errors, true);
+                return withSchemaDelta(new SQLQueryAdapter(sb.toString(), errors, true), columnDefinitions,
+                        indexDefinitions, engine);
             }
             addCommonErrors(errors);
-            return new SQLQueryAdapter(sb.toString(), errors, true);
+            return withSchemaDelta(new SQLQueryAdapter(sb.toString(), errors, true), columnDefinitions,
+                    indexDefinitions, engine);
         }
 
     }
 
+    private SQLQueryAdapter withSchemaDelta(SQLQueryAdapter query, List<MySQLColumn> tableColumns,
+            List<MySQLIndex> indexes, MySQLEngine tableEngine) {
+        if (ifNotExists && schema.getDatabaseTable(tableName) != null) {
+            // 表已存在时语句什么也不做，但快照可能已过时，交给重新读取
+            return query;
+        }
+        MySQLEngine actualEngine;
+        if (tableEngine == null) {
+            actualEngine = MySQLEngine.INNO_DB; // default_storage_engine
+        } else if (tableEngine == MySQLEngine.HEAP) {
+            actualEngine = MySQLEngine.MEMORY; // HEAP 是 MEMORY 的别名
+        } else {
+            actualEngine = tableEngine;
+        }
+        return query.withSchemaDeltas(
+                SchemaDelta.addTable(MySQLTable.create(tableName, tableColumns, indexes, actualEngine)));
+    }
+
     private void addCommonErrors(ExpectedErrors list) {
         list.add("The storage engine for the table doesn't support");
         list.add("doesn't have this option");
@@ -250,14 +284,17 @@ public class MySQLTableGenerator {
         String columnName = DBMSCommon.createColumnName(columnId);
         columns.add(columnName);
         sb.append(columnName);
-        appendColumnDefinition();
+        appendColumnDefinition(columnName);
     }
 
     private enum ColumnOptions {
         NULL_OR_NOT_NULL, UNIQUE, COMMENT, COLUMN_FORMAT, STORAGE, PRIMARY_KEY
     }
 
-    private void appendColumnOption(MySQLDataType type) {
+    /**
+     * @return 该列是否为主键
+     */
+    private boolean appendColumnOption(String columnName, MySQLDataType type) {
         boolean isTextType = type == MySQLDataType.VARCHAR;
         boolean isNull = false;
         boolean columnHasPrimaryKey = false;
@@ -288,6 +325,8 @@ public class MySQLTableGenerator {
             case UNIQUE:
                 sb.append("UNIQUE");
                 keysSpecified++;
+                // 列级 UNIQUE 索引以列名命名
+                indexDefinitions.add(MySQLIndex.create(columnName));
                 if (Randomly.getBoolean()) {
                     sb.append(" KEY");
                 }
@@ -310,30 +349,37 @@ public class MySQLTableGenerator {
                     sb.append("PRIMARY KEY");
                     setPrimaryKey = true;
                     columnHasPrimaryKey = true;
+                    indexDefinitions.add(MySQLIndex.create("PRIMARY"));
                 }
                 break;
             default:
                 throw new AssertionError();
             }
         }
+        return columnHasPrimaryKey;
     }
 
-    private void appendColumnDefinition() {
+    private void appendColumnDefinition(String columnName) {
         sb.append(" ");
         MySQLDataType randomType = MySQLDataType.getRandom(globalState);
         appendType(randomType);
         sb.append(" ");
-        appendColumnOption(randomType);
+        boolean isPrimaryKey = appendColumnOption(columnName, randomType);
+        columnDefinitions.add(new MySQLColumn(columnName, declaredType, isPrimaryKey, (int) declaredPrecision));
     }
 
     private void appendType(MySQLDataType randomType) {
+        declaredType = randomType;
+        declaredPrecision = 0;
+        String intType = null;
         switch (randomType) {
         case DECIMAL:
             sb.append("DECIMAL");
-            optionallyAddPrecisionAndScale(sb);
+            declaredPrecision = optionallyAddPrecisionAndScale(sb, 10);
             break;
         case INT:
-            sb.append(Randomly.fromOptions("TINYINT", "SMALLINT", "MEDIUMINT", "INT", "BIGINT"));
+            intType = Randomly.fromOptions("TINYINT", "SMALLINT", "MEDIUMINT", "INT", "BIGINT");
+            sb.append(intType);
             if (Randomly.getBoolean()) {
                 sb.append("(");
                 sb.append(Randomly.getNotCachedInteger(0, 255)); // Display width out of range for column 'c0' (max =
@@ -346,26 +392,59 @@ public class MySQLTableGenerator {
             break;
         case FLOAT:
             sb.append("FLOAT");
-            optionallyAddPrecisionAndScale(sb);
+            declaredPrecision = optionallyAddPrecisionAndScale(sb, 12);
             break;
         case DOUBLE:
-            sb.append(Randomly.fromOptions("DOUBLE", "FLOAT"));
-            optionallyAddPrecisionAndScale(sb);
+            String doubleType = Randomly.fromOptions("DOUBLE", "FLOAT");
+            sb.append(doubleType);
+            if (doubleType.equals("FLOAT")) {
+                declaredType = MySQLDataType.FLOAT;
+            }
+            declaredPrecision = optionallyAddPrecisionAndScale(sb, doubleType.equals("FLOAT") ? 12 : 22);
             break;
         default:
             throw new AssertionError();
         }
+        boolean unsigned = false;
         if (randomType.isNumeric()) {
             if (Randomly.getBoolean() && randomType != MySQLDataType.INT && !MySQLBugs.bug99127) {
                 sb.append(" UNSIGNED");
             }
             if (!globalState.usesPQS() && Randomly.getBoolean()) {
                 sb.append(" ZEROFILL");
+                unsigned = true; // ZEROFILL 隐含 UNSIGNED
             }
         }
+        if (intType != null) {
+            declaredPrecision = getIntegerPrecision(intType, unsigned);
+        }
+    }
+
+    private static long getIntegerPrecision(String intType, boolean unsigned) {
+        switch (intType) {
+        case "TINYINT":
+            return 3;
+        case "SMALLINT":
+            return 5;
+        case "MEDIUMINT":
+            return unsigned ? 8 : 7;
+        case "INT":
+            return 10;
+        case "BIGINT":
+            return unsigned ? 20 : 19;
+        default:
+            throw new AssertionError(intType);
+        }
     }
 
     public static void optionallyAddPrecisionAndScale(StringBuilder sb) {
+        optionallyAddPrecisionAndScale(sb, 0);
+    }
+
+    /**
+     * @return 声明的精度 M；未声明时返回 defaultPrecision
+     */
+    private static long optionallyAddPrecisionAndScale(StringBuilder sb, long defaultPrecision) {
         if (Randomly.getBoolean() && !MySQLBugs.bug99183) {
             sb.append("(");
             // The maximum number of digits (M) for DECIMAL is 65
@@ -378,7 +457,9 @@ public class MySQLTableGenerator {
             long n = Math.min(nCandidate, m);
             sb.append(n);
             sb.append(")");
+            return m;
         }
+        return defaultPrecision;
     }
 
 }
@@ -5,12 +5,14 @@ import java.util.List;
 import sqlancer.Randomly;
 import sqlancer.common.query.ExpectedErrors;
 import sqlancer.common.query.SQLQueryAdapter;
+import sqlancer.common.schema.SchemaDelta;
 import sqlancer.mysql.MySQLBugs;
 import sqlancer.mysql.MySQLErrors;
 import sqlancer.mysql.MySQLGlobalState;
 import sqlancer.mysql.MySQLSchema;
 import sqlancer.mysql.MySQLSchema.MySQLColumn;
 import sqlancer.mysql.MySQLSchema.MySQLDataType;
+import sqlancer.mysql.MySQLSchema.MySQLIndex;
 import sqlancer.mysql.MySQLSchema.MySQLTable;
 import sqlancer.mysql.MySQLSchema.MySQLTable.MySQLEngine;
 import sqlancer.mysql.MySQLVisitor;
@@ -47,7 +49,8 @@ public class MySQLIndexGenerator {
             errors.add("Duplicate entry");
         }
         sb.append("INDEX ");
-        sb.append(globalState.getSchema().getFreeIndexName());
+        String indexName = globalState.getSchema().getFreeIndexName();
+        sb.append(indexName);
         indexType();
         sb.append(" ON ");
         MySQLTable table = schema.getRandomTable();
@@ -120,7 +123,8 @@ public class MySQLIndexGenerator {
         errors.add("Data truncated for functional index");
         errors.add("used in key specification without a key length");
         errors.add("Row size too large"); // seems to happen together with MIN_ROWS in the table declaration
-        return new SQLQueryAdapter(string, errors, true);
+        return new SQLQueryAdapter(string, errors, true)
+                .withSchemaDeltas(SchemaDelta.addIndex(table.getName(), MySQLIndex.create(indexName)));
     }
 
     private void algorithmOption() {
@@ -98,7 +98,7 @@ public interface OceanBaseVisitor {
     static String asString(OceanBaseExpression expr) {
         OceanBaseToStringVisitor visitor = new OceanBaseToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     static String asExpectedValues(OceanBaseExpression expr) {
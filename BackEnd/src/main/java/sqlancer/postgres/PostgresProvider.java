@@ -428,7 +428,7 @@ public class PostgresProvider extends SQLProviderAdapter<PostgresGlobalState, Po
     @Override
     protected boolean addRowsToAllTables(PostgresGlobalState globalState) throws Exception {
         List<PostgresSchema.PostgresTable> tablesNoRow = globalState.getSchema().getDatabaseTables().stream()
-                .filter(t -> t.getNrRows(globalState) == 0).collect(Collectors.toList());
+                .filter(t -> t.isEmpty(globalState)).collect(Collectors.toList());
         for (PostgresSchema.PostgresTable table : tablesNoRow) {
             SQLQueryAdapter queryAddRows = PostgresInsertGenerator.insertRows(globalState, table);
             globalState.executeStatement(queryAddRows);
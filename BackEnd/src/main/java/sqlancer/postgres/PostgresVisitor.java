@@ -126,7 +126,7 @@ public interface PostgresVisitor {
     static String asString(PostgresExpression expr) {
         PostgresToStringVisitor visitor = new PostgresToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     static String asExpectedValues(PostgresExpression expr) {
@@ -140,7 +140,7 @@ public interface PostgresVisitor {
         PostgresExpression expression = PostgresExpressionGenerator.generateExpression(globalState, columns, type);
         PostgresToStringVisitor visitor = new PostgresToStringVisitor();
         visitor.visit(expression);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
 }
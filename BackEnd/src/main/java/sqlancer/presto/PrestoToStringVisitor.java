@@ -16,7 +16,7 @@ public class PrestoToStringVisitor extends NewToStringVisitor<PrestoExpression>
     public static String asString(PrestoExpression expr) {
         PrestoToStringVisitor visitor = new PrestoToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     @Override
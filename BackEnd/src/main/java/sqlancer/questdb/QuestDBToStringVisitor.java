@@ -61,6 +61,6 @@ public class QuestDBToStringVisitor extends NewToStringVisitor<QuestDBExpression
     public static String asString(QuestDBExpression expr) {
         QuestDBToStringVisitor visitor = new QuestDBToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 }
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,6 +14,7 @@ import com.google.auto.service.AutoService;
 
 import sqlancer.AbstractAction;
 import sqlancer.DatabaseProvider;
+import sqlancer.DatabaseSnapshot;
 import sqlancer.IgnoreMeException;
 import sqlancer.Randomly;
 import sqlancer.SQLConnection;
@@ -285,11 +287,7 @@ public class SQLite3Provider extends SQLProviderAdapter<SQLite3GlobalState, SQLi
 
     @Override
     public SQLConnection createDatabase(SQLite3GlobalState globalState) throws SQLException {
-        File dir = new File("." + File.separator + "databases");
-        if (!dir.exists()) {
-            dir.mkdir();
-        }
-        File dataBase = new File(dir, globalState.getDatabaseName() + ".db");
+        File dataBase = new File(getDatabaseDirectory(), globalState.getDatabaseName() + ".db");
         if (dataBase.exists() && ((SQLite3GlobalState) globalState).getDbmsSpecificOptions().deleteIfExists) {
             dataBase.delete();
         }
@@ -297,6 +295,54 @@ public class SQLite3Provider extends SQLProviderAdapter<SQLite3GlobalState, SQLi
         return new SQLConnection(DriverManager.getConnection(url));
     }
 
+    @Override
+    public DatabaseSnapshot createSnapshot(SQLite3GlobalState globalState) throws SQLException, IOException {
+        // sqlite-jdbc 的 backup 命令通过在线备份 API 复制整个 main 数据库，不需要结束连接
+        File file = File.createTempFile(globalState.getDatabaseName() + "-snapshot", ".db", getDatabaseDirectory());
+        try (Statement s = globalState.getConnection().createStatement()) {
+            s.executeUpdate(String.format("backup to \"%s\"", file.getAbsolutePath()));
+        } catch (SQLException e) {
+            file.delete();
+            throw e;
+        }
+        return new SQLite3Snapshot(file);
+    }
+
+    @Override
+    public SQLConnection restoreSnapshot(SQLite3GlobalState globalState, DatabaseSnapshot snapshot)
+            throws SQLException {
+        File file = ((SQLite3Snapshot) snapshot).file;
+        SQLConnection con = createDatabase(globalState);
+        try (Statement s = con.createStatement()) {
+            s.executeUpdate(String.format("restore from \"%s\"", file.getAbsolutePath()));
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+        return con;
+    }
+
+    private static File getDatabaseDirectory() {
+        File dir = new File("." + File.separator + "databases");
+        if (!dir.exists()) {
+            dir.mkdir();
+        }
+        return dir;
+    }
+
+    private static final class SQLite3Snapshot implements DatabaseSnapshot {
+        private final File file;
+
+        SQLite3Snapshot(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void close() {
+            file.delete();
+        }
+    }
+
     @Override
     public String getDBMSName() {
         return "sqlite3";
@@ -348,7 +394,7 @@ public class SQLite3Provider extends SQLProviderAdapter<SQLite3GlobalState, SQLi
     @Override
     protected boolean addRowsToAllTables(SQLite3GlobalState globalState) throws Exception {
         List<SQLite3Table> tablesNoRow = globalState.getSchema().getDatabaseTables().stream()
-                .filter(t -> t.getNrRows(globalState) == 0).collect(Collectors.toList());
+                .filter(t -> t.isEmpty(globalState)).collect(Collectors.toList());
         for (SQLite3Table table : tablesNoRow) {
             SQLQueryAdapter queryAddRows = SQLite3InsertGenerator.insertRow(globalState, table);
             globalState.executeStatement(queryAddRows);
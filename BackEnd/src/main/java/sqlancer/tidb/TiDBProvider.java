@@ -252,7 +252,7 @@ public class TiDBProvider extends SQLProviderAdapter<TiDBGlobalState, TiDBOption
     @Override
     public boolean addRowsToAllTables(TiDBGlobalState globalState) throws Exception {
         List<TiDBTable> tablesNoRow = globalState.getSchema().getDatabaseTables().stream()
-                .filter(t -> t.getNrRows(globalState) == 0).collect(Collectors.toList());
+                .filter(t -> t.isEmpty(globalState)).collect(Collectors.toList());
         for (TiDBTable table : tablesNoRow) {
             SQLQueryAdapter queryAddRows = TiDBInsertGenerator.getQuery(globalState, table);
             globalState.executeStatement(queryAddRows);
@@ -57,7 +57,7 @@ public class YCQLToStringVisitor extends NewToStringVisitor<YCQLExpression> {
     public static String asString(YCQLExpression expr) {
         YCQLToStringVisitor visitor = new YCQLToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
 }
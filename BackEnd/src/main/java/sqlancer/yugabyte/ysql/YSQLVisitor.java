@@ -29,7 +29,7 @@ public interface YSQLVisitor {
     static String asString(YSQLExpression expr) {
         YSQLToStringVisitor visitor = new YSQLToStringVisitor();
         visitor.visit(expr);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     static String asExpectedValues(YSQLExpression expr) {
@@ -42,7 +42,7 @@ public interface YSQLVisitor {
         YSQLExpression expression = YSQLExpressionGenerator.generateExpression(globalState, columns, type);
         YSQLToStringVisitor visitor = new YSQLToStringVisitor();
         visitor.visit(expression);
-        return visitor.get();
+        return visitor.getAndRelease();
     }
 
     void visit(YSQLConstant constant);
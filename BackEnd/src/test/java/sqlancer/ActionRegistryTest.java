@@ -0,0 +1,52 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.BaseConfigurationGenerator.ConfigurationAction;
+import sqlancer.BaseConfigurationGenerator.GenericAction;
+import sqlancer.BaseConfigurationGenerator.Scope;
+
+public class ActionRegistryTest {
+
+    private static GenericAction action(String name) {
+        return new GenericAction(name, r -> 1, Scope.SESSION);
+    }
+
+    @Test
+    public void testOrdinalsAndNameIndex() {
+        GenericAction a = action("a");
+        GenericAction b = action("b");
+        ActionRegistry registry = new ActionRegistry(a, b);
+        assertEquals(2, registry.size());
+        assertEquals(0, registry.ordinalOf(a));
+        assertEquals(1, registry.ordinalOf("b"));
+        assertSame(b, registry.getByName("b"));
+        assertSame(a, registry.get(0));
+        assertNull(registry.getByName("c"));
+        assertEquals(-1, registry.ordinalOf(action("c")));
+        // 同名的其他对象共用一个序号
+        assertEquals(1, registry.intern(action("b")));
+        assertEquals(2, registry.intern(action("c")));
+        assertArrayEquals(new int[] { 0, 2 }, registry.sortedOrdinals(List.of(action("c"), a, a), false));
+        assertNull(registry.sortedOrdinals(List.of(a, action("d")), false));
+    }
+
+    @Test
+    public void testGenericActionEquality() {
+        ConfigurationAction a = action("a");
+        assertTrue(a.equals(action("a")));
+        assertEquals(a.hashCode(), action("a").hashCode());
+        assertFalse(a.equals(action("b")));
+        assertFalse(a.equals("a"));
+        assertFalse(a.equals(null));
+    }
+}
@@ -0,0 +1,160 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.BaseConfigurationGenerator.ConfigurationAction;
+import sqlancer.BaseConfigurationGenerator.Scope;
+
+public class CampaignTest {
+
+    enum TestParameters implements ConfigurationAction {
+        P, Q;
+
+        @Override
+        public String getName() {
+            return name().toLowerCase();
+        }
+
+        @Override
+        public Object generateValue(Randomly r) {
+            return 1;
+        }
+
+        @Override
+        public Scope[] getScopes() {
+            return new Scope[] { Scope.SESSION };
+        }
+
+        @Override
+        public boolean canBeUsedInScope(Scope scope) {
+            return scope == Scope.SESSION;
+        }
+    }
+
+    @Test
+    public void testCampaignsDoNotShareState() {
+        Campaign mysql = Campaign.getOrCreate("campaign-test-mysql");
+        Campaign postgres = Campaign.getOrCreate("campaign-test-postgres");
+        assertSame(mysql, Campaign.get("campaign-test-mysql"));
+        assertSame(mysql, Campaign.of(options("campaign-test-mysql")));
+
+        mysql.getComboWeights().put(Set.of(TestParameters.P, TestParameters.Q), 2.0);
+        mysql.getParameterFeatureProbabilities().put(TestParameters.P, new double[] { 1 });
+        assertEquals(1, mysql.getComboWeights().size());
+        assertTrue(postgres.getComboWeights().isEmpty());
+        assertTrue(postgres.getParameterFeatureProbabilities().isEmpty());
+
+        // 日志与检查点目录按 campaign 分开，默认 campaign 保持原来的位置
+        assertNotEquals(mysql.getLogDirectory(), postgres.getLogDirectory());
+        assertEquals(Main.LOG_DIRECTORY, Campaign.getDefault().getLogDirectory());
+        assertEquals("checkpoints/campaign-test-mysql/mysql",
+                mysql.getCheckpointDirectory(new MainOptions(), "mysql").toString().replace('\\', '/'));
+        assertNull(mysql.getCoverageIfCreated());
+        assertEquals(0, mysql.getCoverageRate(), 0.0);
+    }
+
+    @Test
+    public void testCountersAreScopedToCampaign() {
+        Campaign first = Campaign.getOrCreate("campaign-test-first");
+        Campaign second = Campaign.getOrCreate("campaign-test-second");
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.getCounters("mysql", "TLP_WHERE", first.getId(), "database0").add(MetricsRegistry.Counter.BUGS, 3);
+        registry.getCounters("postgres", "TLP_WHERE", second.getId(), "database0")
+                .increment(MetricsRegistry.Counter.BUGS);
+        assertEquals(3, first.getTotal(MetricsRegistry.Counter.BUGS));
+        assertEquals(1, second.getTotal(MetricsRegistry.Counter.BUGS));
+
+        first.begin("mysql", 2);
+        assertTrue(first.isRunning());
+        first.getThreadsShutdown().addAndGet(2);
+        assertFalse(first.isRunning());
+        assertEquals("mysql", first.getDbmsName());
+    }
+
+    @Test
+    public void testRunCountsStartAtBegin() {
+        Campaign campaign = Campaign.getOrCreate("campaign-test-rerun");
+        MetricsRegistry.Counters counters = MetricsRegistry.getInstance().getCounters("mysql", "TLP_WHERE",
+                campaign.getId(), "database0");
+        campaign.begin("mysql", 1);
+        counters.add(MetricsRegistry.Counter.BUGS, 5);
+        assertEquals(5, campaign.getRunTotal(MetricsRegistry.Counter.BUGS));
+
+        // 再次启动同一 campaign 时，本次运行的轮数从 0 算起
+        campaign.begin("mysql", 1);
+        assertEquals(0, campaign.getRunTotal(MetricsRegistry.Counter.BUGS));
+        counters.add(MetricsRegistry.Counter.BUGS, 2);
+        assertEquals(2, campaign.getRunTotal(MetricsRegistry.Counter.BUGS));
+        assertEquals(7, campaign.getTotal(MetricsRegistry.Counter.BUGS));
+        assertEquals(2, campaign.getRunCount(MetricsRegistry.getInstance().snapshot(), MetricsRegistry.Counter.BUGS,
+                tags -> tags.getWorker().equals("database0")));
+    }
+
+    @Test
+    public void testOnlyMySQLCampaignsStartInstrumentedDBMS() {
+        assertNull(AFLMonitor.getDBMSCommand("postgres", new MainOptions()));
+        assertNull(AFLMonitor.getDBMSCommand("mysql", new MainOptions() {
+            @Override
+            public boolean useCoverage() {
+                return false;
+            }
+        }));
+        assertEquals(List.of(AFLMonitor.DEFAULT_DBMS_PATH), AFLMonitor.getDBMSCommand("mysql", new MainOptions()));
+
+        // 同时运行的第二个 MySQL campaign 使用自己的 mysqld、端口与数据目录
+        List<String> command = AFLMonitor.getDBMSCommand("mysql", new MainOptions() {
+            @Override
+            public int getPort() {
+                return 3307;
+            }
+
+            @Override
+            public String getCoverageDBMSPath() {
+                return "/opt/mysql2/bin/mysqld";
+            }
+
+            @Override
+            public String getCoverageDataDirectory() {
+                return "/var/lib/mysql2";
+            }
+        });
+        assertEquals("/opt/mysql2/bin/mysqld", command.get(0));
+        assertTrue(command.contains("--port=3307"));
+        assertTrue(command.contains("--socket=/tmp/mysqld-3307.sock"));
+        assertTrue(command.contains("--datadir=/var/lib/mysql2"));
+
+        // 不使用覆盖率的 campaign 不创建覆盖率来源，也就不启动 DBMS
+        Campaign postgres = Campaign.getOrCreate("campaign-test-no-coverage");
+        postgres.configureCoverage(null);
+        assertNull(postgres.getCoverage());
+        assertEquals(0, postgres.getCoverageRate(), 0.0);
+    }
+
+    @Test
+    public void testInvalidIdsAreRejected() {
+        assertFalse(Campaign.isValidId("../logs"));
+        assertFalse(Campaign.isValidId(""));
+        assertThrows(IllegalArgumentException.class, () -> Campaign.getOrCreate("a/b"));
+        assertNull(Campaign.get("campaign-test-missing"));
+    }
+
+    private static MainOptions options(String campaign) {
+        return new MainOptions() {
+            @Override
+            public String getCampaign() {
+                return campaign;
+            }
+        };
+    }
+}
@@ -0,0 +1,193 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import sqlancer.BaseConfigurationGenerator.ConfigurationAction;
+import sqlancer.BaseConfigurationGenerator.Scope;
+import sqlancer.common.query.SQLQueryAdapter;
+
+public class CheckpointerTest {
+
+    private static final int MAP_WORDS = (AFLMonitor.AFL_MAP_SIZE + 7) / 8;
+    // TestGenerator 使用默认的 --campaign
+    private final Campaign campaign = Campaign.getDefault();
+
+    @TempDir
+    Path dir;
+
+    enum TestActions implements ExpressionAction {
+        A, B, C, D
+    }
+
+    enum TestParameters implements ConfigurationAction {
+        P, Q, R;
+
+        @Override
+        public String getName() {
+            return name().toLowerCase();
+        }
+
+        @Override
+        public Object generateValue(Randomly r) {
+            return 1;
+        }
+
+        @Override
+        public Scope[] getScopes() {
+            return new Scope[] { Scope.SESSION };
+        }
+
+        @Override
+        public boolean canBeUsedInScope(Scope scope) {
+            return scope == Scope.SESSION;
+        }
+    }
+
+    private static final class TestGenerator extends BaseConfigurationGenerator {
+
+        TestGenerator() {
+            super(new Randomly(0), new MainOptions());
+        }
+
+        @Override
+        public ConfigurationAction[] getAllActions() {
+            return TestParameters.values();
+        }
+
+        @Override
+        protected String getDatabaseType() {
+            return "test";
+        }
+
+        @Override
+        protected String getActionName(Object action) {
+            return ((ConfigurationAction) action).getName();
+        }
+
+        @Override
+        public SQLQueryAdapter generateConfigForParameter(ConfigurationAction action, Scope scope, Randomly r) {
+            return null;
+        }
+
+        @Override
+        public SQLQueryAdapter generateDefaultConfigForParameter(ConfigurationAction action, Scope scope) {
+            return null;
+        }
+    }
+
+    @AfterEach
+    public void clearSharedState() {
+        campaign.getComboWeights().clear();
+        campaign.getParameterFeatureProbabilities().clear();
+        ParameteraAwareGenerator.featureSet.clear();
+    }
+
+    @Test
+    public void testTrainingCountsSurviveRestart() throws IOException {
+        Random r = new Random(5);
+        ParameteraAwareGenerator generator = new ParameteraAwareGenerator(TestActions.class);
+        for (int i = 0; i < 200; i++) {
+            update(generator, r);
+        }
+        Checkpointer checkpointer = new Checkpointer(campaign, dir, 0, false);
+        checkpointer.publishTraining("p", 3, generator.copy());
+        // 发布之后的更新不影响已发布的副本
+        updateMany(generator, new Random(99));
+        assertNotNull(checkpointer.checkpoint());
+
+        Checkpointer resumed = new Checkpointer(campaign, dir, 0, true);
+        assertNull(resumed.takeTrainingProgress("q", TestActions.class));
+        Checkpointer.TrainingProgress progress = resumed.takeTrainingProgress("p", TestActions.class);
+        assertNotNull(progress);
+        assertEquals(3, progress.getCompletedSamples());
+        ParameteraAwareGenerator restored = progress.getCounts();
+        assertEquals(200, restored.getTestCounts());
+        // 恢复的计数继续训练，应与未中断的训练结果相同
+        updateMany(restored, new Random(99));
+        assertEquals(generator.getNrObservedEdges(), restored.getNrObservedEdges());
+        assertArrayEquals(generator.getFeatureProbabilities(), restored.getFeatureProbabilities(), 0.0);
+        // 只能取出一次
+        assertNull(resumed.takeTrainingProgress("p", TestActions.class));
+    }
+
+    @Test
+    public void testWeightsRestoredWithoutInProgressParameter() throws IOException {
+        campaign.getComboWeights().put(Set.of(TestParameters.P, TestParameters.Q), 2.5);
+        campaign.getComboWeights().put(Set.of(TestParameters.Q, TestParameters.R), 0.5);
+        campaign.getParameterFeatureProbabilities().put(TestParameters.P, new double[] { 0.25, 0.75 });
+        campaign.getParameterFeatureProbabilities().put(TestParameters.R, new double[] { 0.5, 0.5 });
+        Checkpointer checkpointer = new Checkpointer(campaign, dir, 0, false);
+        // R 尚在训练，概率不应作为已完成的结果保存
+        checkpointer.publishTraining("r", 1, new ParameteraAwareGenerator(TestActions.class));
+        checkpointer.checkpoint();
+        clearSharedState();
+
+        Checkpointer resumed = new Checkpointer(campaign, dir, 0, true);
+        TestGenerator generator = new TestGenerator();
+        assertTrue(resumed.restoreComboWeights(generator));
+        assertEquals(2, campaign.getComboWeights().size());
+        int id = campaign.getComboWeights().idOf(Set.of(TestParameters.P, TestParameters.Q));
+        assertEquals(2.5, campaign.getComboWeights().getWeight(id), 0.0);
+        assertEquals(1, resumed.restoreFeatureProbabilities(generator));
+        assertArrayEquals(new double[] { 0.25, 0.75 },
+                campaign.getParameterFeatureProbabilities().get(TestParameters.P), 0.0);
+        assertFalse(campaign.getParameterFeatureProbabilities().containsKey(TestParameters.R));
+    }
+
+    @Test
+    public void testOnlyCompleteRecentCheckpointsAreKept() throws IOException {
+        campaign.getComboWeights().put(Set.of(TestParameters.P, TestParameters.Q), 1.0);
+        Checkpointer checkpointer = new Checkpointer(campaign, dir, 0, false);
+        Path first = checkpointer.checkpoint();
+        Path second = checkpointer.checkpoint();
+        Path third = checkpointer.checkpoint();
+        assertFalse(Files.exists(first));
+        assertTrue(Files.exists(second));
+        assertTrue(Files.exists(third));
+        // 写了一半的临时目录不会被当作检查点
+        Files.createDirectories(dir.resolve("checkpoint-" + Long.MAX_VALUE + ".tmp"));
+        assertEquals(third, Checkpointer.findLatest(dir));
+        try (Stream<Path> paths = Files.list(dir)) {
+            assertEquals(3, paths.count());
+        }
+        assertNull(Checkpointer.findLatest(dir.resolve("missing")));
+    }
+
+    private static void updateMany(ParameteraAwareGenerator generator, Random r) {
+        for (int sample = 0; sample < 20; sample++) {
+            update(generator, r);
+        }
+    }
+
+    private static void update(ParameteraAwareGenerator generator, Random r) {
+        ParameteraAwareGenerator.featureSet.clear();
+        for (TestActions action : TestActions.values()) {
+            if (r.nextBoolean()) {
+                ParameteraAwareGenerator.featureSet.add(action);
+            }
+        }
+        long[] snapshot = new long[MAP_WORDS];
+        for (int i = 0; i < 300; i++) {
+            // 边集中在前 4096 条，使计数有重叠
+            int edge = r.nextInt(4096);
+            snapshot[edge >>> 3] |= (long) (1 + r.nextInt(127)) << ((edge & 7) << 3);
+        }
+        generator.updateCounts(snapshot);
+    }
+}
@@ -0,0 +1,316 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.BaseConfigurationGenerator.ConfigurationAction;
+import sqlancer.BaseConfigurationGenerator.Scope;
+
+public class ComboWeightStoreTest {
+
+    private static final int TOP_K = 5;
+
+    enum TestAction implements ConfigurationAction {
+        A, B, C, D, E, F, G, H;
+
+        @Override
+        public String getName() {
+            return name().toLowerCase();
+        }
+
+        @Override
+        public Object generateValue(Randomly r) {
+            return 1;
+        }
+
+        @Override
+        public Scope[] getScopes() {
+            return new Scope[] { Scope.SESSION };
+        }
+
+        @Override
+        public boolean canBeUsedInScope(Scope scope) {
+            return scope == Scope.SESSION;
+        }
+    }
+
+    private static List<Set<ConfigurationAction>> allPairs() {
+        List<Set<ConfigurationAction>> pairs = new ArrayList<>();
+        TestAction[] actions = TestAction.values();
+        for (int i = 0; i < actions.length; i++) {
+            for (int j = i + 1; j < actions.length; j++) {
+                pairs.add(new HashSet<>(List.of(actions[i], actions[j])));
+            }
+        }
+        return pairs;
+    }
+
+    @Test
+    public void testPutInternsCombos() {
+        ComboWeightStore store = new ComboWeightStore(TOP_K);
+        List<Set<ConfigurationAction>> pairs = allPairs();
+        for (int i = 0; i < pairs.size(); i++) {
+            assertEquals(i, store.put(pairs.get(i), i));
+        }
+        assertEquals(pairs.size(), store.size());
+        // 已存在的组合只更新权重，id 不变
+        assertEquals(3, store.put(new HashSet<>(pairs.get(3)), 42.0));
+        assertEquals(42.0, store.getWeight(3), 0.0);
+        assertEquals(pairs.get(3), store.comboAt(3));
+        assertEquals(-1, store.idOf(Set.of(TestAction.A)));
+    }
+
+    @Test
+    public void testIdOfIgnoresOrderAndDuplicates() {
+        ComboWeightStore store = new ComboWeightStore(TOP_K);
+        int small = store.put(Set.of(TestAction.A, TestAction.B), 1.0);
+        assertEquals(small, store.idOf(List.of(TestAction.B, TestAction.A)));
+        assertEquals(small, store.idOf(List.of(TestAction.A, TestAction.B, TestAction.A)));
+        // 序号超过 63 时改用 int[] 键
+        for (int i = 0; i < 70; i++) {
+            store.put(Set.of(new IndexedAction(i)), 1.0);
+        }
+        int large = store.put(List.of(new IndexedAction(69), TestAction.C), 2.0);
+        assertEquals(large, store.idOf(List.of(TestAction.C, new IndexedAction(69))));
+        assertEquals(-1, store.idOf(List.of(TestAction.C, new IndexedAction(68))));
+        assertEquals(-1, store.idOf(List.of(TestAction.C, new IndexedAction(1000))));
+        assertEquals(Set.of(TestAction.C, new IndexedAction(69)), store.comboAt(large));
+    }
+
+    @Test
+    public void testConcurrentMultiplyIsNotLost() throws InterruptedException {
+        ComboWeightStore store = new ComboWeightStore(TOP_K);
+        // 恰好填满两倍初始容量，下一次 put 会在并发更新的同时扩容
+        int nrCombos = 2048;
+        for (int i = 0; i < nrCombos; i++) {
+            store.put(Set.of(TestAction.values()[i % 8], new IndexedAction(i)), 1.0);
+        }
+        int nrThreads = 8;
+        int nrUpdates = 700;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nrThreads; t++) {
+            final int offset = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < nrUpdates; i++) {
+                    store.multiplyWeight((offset + i) % 7, 2.0);
+                    if (offset == 0 && i % 50 == 0) {
+                        store.put(Set.of(new IndexedAction(nrCombos + i)), 1.0);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double total = 0;
+        for (int id = 0; id < 7; id++) {
+            total += Math.log(store.getWeight(id)) / Math.log(2);
+        }
+        assertEquals(nrThreads * nrUpdates, total, 1e-6);
+    }
+
+    @Test
+    public void testTopKIsSortedAndCopyOnWrite() {
+        ComboWeightStore store = new ComboWeightStore(TOP_K);
+        List<Set<ConfigurationAction>> pairs = allPairs();
+        for (int i = 0; i < pairs.size(); i++) {
+            store.put(pairs.get(i), i);
+        }
+        ComboWeightStore.TopK topK = store.getTopK();
+        assertEquals(TOP_K, topK.size());
+        for (int rank = 0; rank < topK.size(); rank++) {
+            assertEquals(pairs.size() - 1 - rank, topK.weightAt(rank), 0.0);
+            assertEquals(store.comboAt(topK.idAt(rank)), topK.comboAt(rank));
+            assertTrue(topK.contains(topK.idAt(rank)));
+        }
+        assertEquals(27.0 + 26 + 25 + 24 + 23, topK.getWeightSum(), 0.0);
+
+        int low = store.idOf(pairs.get(0));
+        store.setWeight(low, 100.0);
+        // 已发布的视图不受后续更新影响
+        assertFalse(topK.contains(low));
+        assertEquals(27.0 + 26 + 25 + 24 + 23, topK.getWeightSum(), 0.0);
+        ComboWeightStore.TopK updated = store.getTopK();
+        assertEquals(low, updated.idAt(0));
+        assertEquals(100.0, updated.weightAt(0), 0.0);
+        assertSame(updated, store.getTopK());
+    }
+
+    @Test
+    public void testSampleTopKFollowsWeightUpdates() {
+        ComboWeightStore store = new ComboWeightStore(4);
+        List<Set<ConfigurationAction>> pairs = allPairs();
+        for (int i = 0; i < pairs.size(); i++) {
+            store.put(pairs.get(i), 1.0);
+        }
+        ComboWeightStore.TopK topK = store.getTopK();
+        assertEquals(4, topK.size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(topK.contains(store.sampleTopK(i / 100.0)));
+        }
+        // Top-K 内的权重更新立即反映到抽样中
+        int favourite = topK.idAt(2);
+        store.multiplyWeight(favourite, 1e6);
+        assertEquals(favourite, store.sampleTopK(0.001));
+        assertEquals(favourite, store.sampleTopK(0.999));
+        // Top-K 外的组合权重超过 Top-K 中最小者时立即被换入
+        int outsider = 0;
+        while (topK.contains(outsider)) {
+            outsider++;
+        }
+        store.setWeight(outsider, 1e12);
+        assertTrue(store.getTopK().contains(outsider));
+        assertEquals(outsider, store.getTopK().idAt(0));
+        assertEquals(outsider, store.sampleTopK(0.5));
+    }
+
+    @Test
+    public void testTopKMatchesFullSortUnderRandomUpdates() {
+        Random r = new Random(3);
+        ComboWeightStore store = new ComboWeightStore(50);
+        int nrCombos = 3000;
+        for (int i = 0; i < nrCombos; i++) {
+            store.put(Set.of(new IndexedAction(i)), r.nextInt(100));
+        }
+        for (int round = 0; round < 3000; round++) {
+            int id = r.nextInt(nrCombos);
+            switch (r.nextInt(3)) {
+            case 0:
+                store.multiplyWeight(id, 1 + r.nextDouble());
+                break;
+            case 1:
+                store.setWeight(id, r.nextInt(200));
+                break;
+            default:
+                // 缩小权重，可能把组合挤出 Top-K
+                store.multiplyWeight(id, r.nextDouble());
+                break;
+            }
+            if (round == 1000) {
+                store.setTopKCapacity(20);
+            } else if (round == 2000) {
+                store.setTopKCapacity(80);
+            }
+            if (round % 100 == 0) {
+                assertTopKMatchesFullSort(store);
+            }
+        }
+        assertTopKMatchesFullSort(store);
+    }
+
+    @Test
+    public void testTopKMatchesFullSortAfterConcurrentUpdates() throws InterruptedException {
+        ComboWeightStore store = new ComboWeightStore(20);
+        int nrCombos = 500;
+        for (int i = 0; i < nrCombos; i++) {
+            store.put(Set.of(new IndexedAction(i)), 1.0);
+        }
+        int nrThreads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nrThreads; t++) {
+            final Random r = new Random(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < 5000; i++) {
+                    store.multiplyWeight(r.nextInt(nrCombos), 0.5 + r.nextDouble());
+                    if (i % 100 == 0) {
+                        // 读取方与写入方并发处理待更新的 id
+                        store.sampleTopK(r.nextDouble());
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTopKMatchesFullSort(store);
+    }
+
+    private static void assertTopKMatchesFullSort(ComboWeightStore store) {
+        Integer[] ids = new Integer[store.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, (a, b) -> {
+            int cmp = Double.compare(store.getWeight(b), store.getWeight(a));
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        ComboWeightStore.TopK topK = store.getTopK();
+        assertEquals(Math.min(store.getTopKCapacity(), ids.length), topK.size());
+        double weightSum = 0;
+        for (int rank = 0; rank < topK.size(); rank++) {
+            assertEquals((int) ids[rank], topK.idAt(rank));
+            assertEquals(store.getWeight(ids[rank]), topK.weightAt(rank), 0.0);
+            weightSum += topK.weightAt(rank);
+        }
+        assertEquals(weightSum, topK.getWeightSum(), 1e-9);
+    }
+
+    private static final class IndexedAction implements ConfigurationAction {
+
+        private final int index;
+
+        IndexedAction(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getName() {
+            return "action" + index;
+        }
+
+        @Override
+        public Object generateValue(Randomly r) {
+            return index;
+        }
+
+        @Override
+        public Scope[] getScopes() {
+            return new Scope[] { Scope.SESSION };
+        }
+
+        @Override
+        public boolean canBeUsedInScope(Scope scope) {
+            return scope == Scope.SESSION;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof IndexedAction && ((IndexedAction) o).index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.mysql.gen.MySQLExpressionGenerator;
+
+public class EdgeIndexTest {
+
+    // 与 ParameteraAwareGenerator.INITIAL_EDGES 相同
+    private static final int INITIAL_EDGES = 1 << 12;
+
+    @Test
+    public void testCollidingEdges() {
+        // 初始容量为 32，找出散列到同一个桶的边，全部走线性探测
+        EdgeIndex index = new EdgeIndex(16);
+        List<Integer> colliding = new ArrayList<>();
+        for (int edge = 0; colliding.size() < 12; edge++) {
+            if ((EdgeIndex.mix(edge) & 31) == 5) {
+                colliding.add(edge);
+            }
+        }
+        for (int i = 0; i < colliding.size(); i++) {
+            assertEquals(i, index.getOrAdd(colliding.get(i)));
+        }
+        for (int i = 0; i < colliding.size(); i++) {
+            assertEquals(i, index.slotOf(colliding.get(i)));
+            assertEquals(i, index.getOrAdd(colliding.get(i)));
+            assertEquals((int) colliding.get(i), index.edgeAt(i));
+        }
+        assertEquals(colliding.size(), index.size());
+    }
+
+    @Test
+    public void testGrowsPastInitialEdges() {
+        EdgeIndex index = new EdgeIndex(INITIAL_EDGES);
+        int nrEdges = INITIAL_EDGES * 3;
+        for (int i = 0; i < nrEdges; i++) {
+            // 步长 7 使边号不连续
+            assertEquals(i, index.getOrAdd(i * 7));
+        }
+        assertEquals(nrEdges, index.size());
+        for (int i = 0; i < nrEdges; i++) {
+            assertEquals(i, index.slotOf(i * 7));
+            assertEquals(i * 7, index.edgeAt(i));
+        }
+    }
+
+    @Test
+    public void testGeneratorGrowsPastInitialEdges() {
+        ParameteraAwareGenerator generator = new ParameteraAwareGenerator(MySQLExpressionGenerator.Actions.class);
+        long[] snapshot = new long[(AFLMonitor.AFL_MAP_SIZE + 7) / 8];
+        int nrEdges = INITIAL_EDGES * 2 + 1;
+        for (int edge = 0; edge < nrEdges; edge++) {
+            snapshot[edge >>> 3] |= 1L << ((edge & 7) << 3);
+        }
+        generator.updateCounts(snapshot);
+        generator.updateCounts(snapshot);
+        assertEquals(nrEdges, generator.getNrObservedEdges());
+        assertEquals(2, generator.getTestCounts());
+    }
+
+    @Test
+    public void testMissingEdges() {
+        EdgeIndex index = new EdgeIndex(16);
+        assertEquals(-1, index.slotOf(0));
+        for (int edge = 0; edge < 100; edge += 2) {
+            index.getOrAdd(edge);
+        }
+        for (int edge = 1; edge < 100; edge += 2) {
+            assertEquals(-1, index.slotOf(edge));
+        }
+        assertEquals(-1, index.slotOf(AFLMonitor.AFL_MAP_SIZE));
+        // 查找不会分配槽位
+        assertEquals(50, index.size());
+    }
+
+    @Test
+    public void testNegativeEdgeIsRejected() {
+        EdgeIndex index = new EdgeIndex(16);
+        assertThrows(IllegalArgumentException.class, () -> index.getOrAdd(-1));
+        assertEquals(0, index.size());
+    }
+
+}
@@ -0,0 +1,66 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class FenwickSamplerTest {
+
+    @Test
+    public void testSampleMatchesLinearScan() {
+        Random r = new Random(7);
+        FenwickSampler sampler = new FenwickSampler(3);
+        double[] weights = new double[1000];
+        for (int i = 0; i < weights.length; i++) {
+            // 大部分下标权重为 0，与只有 Top-K 非零的用法一致
+            weights[i] = r.nextInt(5) == 0 ? r.nextDouble() * 10 : 0.0;
+            sampler.set(i, weights[i]);
+        }
+        for (int round = 0; round < 2000; round++) {
+            int index = r.nextInt(weights.length);
+            weights[index] = r.nextBoolean() ? 0.0 : r.nextDouble() * 10;
+            sampler.set(index, weights[index]);
+            double u = r.nextDouble();
+            assertEquals(linearSample(weights, u), sampler.sample(u));
+        }
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        assertEquals(total, sampler.total(), 1e-9);
+    }
+
+    @Test
+    public void testZeroWeights() {
+        FenwickSampler sampler = new FenwickSampler(16);
+        assertEquals(-1, sampler.sample(0.5));
+        sampler.set(9, 2.0);
+        assertEquals(9, sampler.sample(0.0));
+        assertEquals(9, sampler.sample(0.999999));
+        sampler.set(9, 0.0);
+        assertEquals(-1, sampler.sample(0.5));
+    }
+
+    private static int linearSample(double[] weights, double u) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double target = u * total;
+        double cumulative = 0;
+        int last = -1;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] == 0) {
+                continue;
+            }
+            cumulative += weights[i];
+            last = i;
+            if (target < cumulative) {
+                return i;
+            }
+        }
+        return last;
+    }
+}
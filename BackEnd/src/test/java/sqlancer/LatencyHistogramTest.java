@@ -0,0 +1,63 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverAllValues() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.lowerBound(index) <= value);
+            assertTrue(value < LatencyHistogram.lowerBound(index + 1));
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10000; micros++) {
+            histogram.recordMicros(micros);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMaxMicros());
+        assertWithin(5000, histogram.getValueAtPercentile(50));
+        assertWithin(9900, histogram.getValueAtPercentile(99));
+        assertWithin(9990, histogram.getValueAtPercentile(99.9));
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testMergeAcrossWorkers() {
+        LatencyRegistry registry = new LatencyRegistry();
+        registry.record(LatencyRegistry.Dimension.ACTION, "MySQLProvider.Action.INSERT", "database0", 1_000_000);
+        registry.record(LatencyRegistry.Dimension.ACTION, "MySQLProvider.Action.INSERT", "database1", 3_000_000);
+        registry.record(LatencyRegistry.Dimension.ACTION, "MySQLProvider.Action.SET_VARIABLE", "database0", 10_000);
+        registry.record(LatencyRegistry.Dimension.COMBO, "sort_buffer_size+join_buffer_size", "database0", 5_000);
+
+        List<LatencyRegistry.Summary> summaries = registry.summarize(LatencyRegistry.Dimension.ACTION);
+        assertEquals(2, summaries.size());
+        // 按总耗时降序
+        LatencyRegistry.Summary insert = summaries.get(0);
+        assertEquals("MySQLProvider.Action.INSERT", insert.getName());
+        assertEquals(2, insert.getCount());
+        assertEquals(4000, insert.getTotalMicros());
+        assertEquals(3000, insert.getMax());
+        assertEquals(1, registry.summarize(LatencyRegistry.Dimension.COMBO).size());
+        assertEquals(0, registry.summarize(LatencyRegistry.Dimension.ORACLE).size());
+    }
+
+    @Test
+    public void testActionNames() {
+        assertEquals("MetricsRegistry.Counter.QUERIES", StatementExecutor.getActionName(MetricsRegistry.Counter.QUERIES));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.04, expected + " vs " + actual);
+    }
+}
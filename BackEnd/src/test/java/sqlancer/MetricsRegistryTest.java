@@ -0,0 +1,89 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            MetricsRegistry.Counters counters = registry.getCounters("sqlite3", "WHERE", "default", "database" + i);
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    counters.increment(MetricsRegistry.Counter.QUERIES);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(40000, registry.getTotal(MetricsRegistry.Counter.QUERIES));
+        assertEquals(40000, registry.snapshot().get(MetricsRegistry.Counter.QUERIES));
+        assertSame(registry.getCounters("sqlite3", "WHERE", "default", "database0"),
+                registry.getCounters("sqlite3", "WHERE", "default", "database0"));
+    }
+
+    @Test
+    public void testSnapshotFilterAndRate() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.getCounters("mysql", "TLP", "a", "database0").add(MetricsRegistry.Counter.QUERIES, 5);
+        registry.getCounters("mysql", "TLP", "b", "database0").add(MetricsRegistry.Counter.QUERIES, 7);
+        MetricsRegistry.Snapshot earlier = registry.snapshot();
+        registry.getCounters("mysql", "TLP", "a", "database1").add(MetricsRegistry.Counter.QUERIES, 3);
+        Thread.sleep(10);
+        MetricsRegistry.Snapshot later = registry.snapshot();
+
+        assertEquals(12, earlier.get(MetricsRegistry.Counter.QUERIES));
+        assertEquals(8, later.get(MetricsRegistry.Counter.QUERIES, tags -> tags.getCampaign().equals("a")));
+        // 快照之后的更新不影响快照
+        assertEquals(5, earlier.get(MetricsRegistry.Counter.QUERIES, tags -> tags.getCampaign().equals("a")));
+        assertTrue(later.ratePerSecond(MetricsRegistry.Counter.QUERIES, earlier) > 0);
+        assertEquals(0.0, later.ratePerSecond(MetricsRegistry.Counter.QUERIES, earlier,
+                tags -> tags.getCampaign().equals("b")));
+    }
+
+    @Test
+    public void testReadsDoNotChangeRecentRate() {
+        MetricsRegistry registry = new MetricsRegistry(0);
+        MetricsRegistry.Counters counters = registry.getCounters("mysql", "TLP", "default", "database0");
+        counters.add(MetricsRegistry.Counter.QUERIES, 100);
+        registry.tick();
+        counters.add(MetricsRegistry.Counter.QUERIES, 50);
+        registry.tick();
+        double rate = registry.getRecentRate(MetricsRegistry.Counter.QUERIES);
+        assertTrue(rate > 0);
+        // 两次 tick 之间的速率不因读取或之后的更新而改变
+        counters.add(MetricsRegistry.Counter.QUERIES, 1000);
+        assertEquals(rate, registry.getRecentRate(MetricsRegistry.Counter.QUERIES));
+        assertEquals(rate, registry.getRecentRate(MetricsRegistry.Counter.QUERIES));
+    }
+
+    @Test
+    public void testTicksWithinIntervalAreIgnored() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry(50);
+        MetricsRegistry.Counters counters = registry.getCounters("mysql", "TLP", "default", "database0");
+        counters.add(MetricsRegistry.Counter.QUERIES, 100);
+        assertFalse(registry.tick());
+        Thread.sleep(60);
+        assertTrue(registry.tick());
+        double rate = registry.getRecentRate(MetricsRegistry.Counter.QUERIES);
+        assertTrue(rate > 0);
+        // 多个调度器紧接着调用 tick 不会把窗口缩短为 0
+        counters.add(MetricsRegistry.Counter.QUERIES, 1000);
+        assertFalse(registry.tick());
+        assertEquals(rate, registry.getRecentRate(MetricsRegistry.Counter.QUERIES));
+    }
+}
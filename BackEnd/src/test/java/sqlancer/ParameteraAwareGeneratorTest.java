@@ -0,0 +1,206 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 回归测试：稀疏计数 + 查表/并行的互信息计算，应与原先逐对调用 Math.log 的实现给出相同的特性概率。
+ */
+public class ParameteraAwareGeneratorTest {
+
+    private static final double TOLERANCE = 1e-9;
+    private static final int MAP_WORDS = (AFLMonitor.AFL_MAP_SIZE + 7) / 8;
+
+    enum TestActions implements ExpressionAction {
+        A, B, C, D, E, F, G
+    }
+
+    @Test
+    public void testProbabilitiesMatchPairwiseImplementation() {
+        Random r = new Random(42);
+        int nrActions = TestActions.values().length;
+        // 部分边只在某些特性出现时被命中，使互信息不为零
+        int[] hotEdges = new int[20000];
+        for (int i = 0; i < hotEdges.length; i++) {
+            hotEdges[i] = r.nextInt(AFLMonitor.AFL_MAP_SIZE);
+        }
+        ParameteraAwareGenerator generator = new ParameteraAwareGenerator(TestActions.class);
+        ReferenceCounts reference = new ReferenceCounts(nrActions, AFLMonitor.AFL_MAP_SIZE);
+        try {
+            for (int sample = 0; sample < 300; sample++) {
+                ParameteraAwareGenerator.featureSet.clear();
+                for (TestActions action : TestActions.values()) {
+                    if (r.nextInt(3) == 0) {
+                        ParameteraAwareGenerator.featureSet.add(action);
+                    }
+                }
+                long[] snapshot = new long[MAP_WORDS];
+                for (int i = 0; i < hotEdges.length; i++) {
+                    int feature = i % (nrActions + 1);
+                    boolean featurePresent = feature < nrActions
+                            && ParameteraAwareGenerator.featureSet.contains(TestActions.values()[feature]);
+                    if (r.nextInt(featurePresent ? 2 : 8) == 0) {
+                        int edge = hotEdges[i];
+                        int hits = 1 + r.nextInt(255);
+                        snapshot[edge >>> 3] &= ~(0xFFL << ((edge & 7) << 3));
+                        snapshot[edge >>> 3] |= (long) hits << ((edge & 7) << 3);
+                    }
+                }
+                generator.updateCounts(snapshot);
+                reference.update(snapshot);
+            }
+            double[] expected = reference.getFeatureProbabilities();
+            double[] actual = generator.getFeatureProbabilities();
+            assertArrayEquals(expected, actual, TOLERANCE);
+            // 计数未变化时返回缓存结果
+            assertArrayEquals(actual, generator.getFeatureProbabilities(), 0.0);
+        } finally {
+            ParameteraAwareGenerator.featureSet.clear();
+        }
+    }
+
+    @Test
+    public void testSparseAndDenseSnapshotsAgree() {
+        // 小位图上交替使用几乎全空与全部字节非零（含 0xFF）的快照，与逐字节的稠密实现对比
+        Random r = new Random(7);
+        int mapSize = 64;
+        ParameteraAwareGenerator generator = new ParameteraAwareGenerator(TestActions.class);
+        ReferenceCounts reference = new ReferenceCounts(TestActions.values().length, mapSize);
+        try {
+            for (int sample = 0; sample < 200; sample++) {
+                ParameteraAwareGenerator.featureSet.clear();
+                for (TestActions action : TestActions.values()) {
+                    if (r.nextBoolean()) {
+                        ParameteraAwareGenerator.featureSet.add(action);
+                    }
+                }
+                long[] snapshot = new long[mapSize / 8];
+                if (sample % 2 == 0) {
+                    int edge = r.nextInt(mapSize);
+                    snapshot[edge >>> 3] |= (long) (1 + r.nextInt(255)) << ((edge & 7) << 3);
+                } else {
+                    for (int edge = 0; edge < mapSize; edge++) {
+                        int hits = sample % 3 == 0 ? 0xFF : 1 + r.nextInt(255);
+                        snapshot[edge >>> 3] |= (long) hits << ((edge & 7) << 3);
+                    }
+                }
+                generator.updateCounts(snapshot);
+                reference.update(snapshot);
+            }
+            assertEquals(mapSize, generator.getNrObservedEdges());
+            assertArrayEquals(reference.getFeatureProbabilities(), generator.getFeatureProbabilities(), TOLERANCE);
+        } finally {
+            ParameteraAwareGenerator.featureSet.clear();
+        }
+    }
+
+    @Test
+    public void testUniformWithoutSamples() {
+        double[] probabilities = new ParameteraAwareGenerator(TestActions.class).getFeatureProbabilities();
+        for (double probability : probabilities) {
+            assertEquals(1.0 / TestActions.values().length, probability, 0.0);
+        }
+    }
+
+    @Test
+    public void testXLogXTableMatchesMathLog() {
+        for (int c : new int[] { 1, 2, 3, 1000, 65535, 65536, 1000000 }) {
+            assertEquals(c * Math.log(c), ParameteraAwareGenerator.xLogX(c), 1e-9 * c);
+        }
+        assertEquals(0.0, ParameteraAwareGenerator.xLogX(0), 0.0);
+    }
+
+    /**
+     * 原先的稠密实现：按边号存储计数，对每个 (边, 特性) 逐项计算互信息。
+     */
+    private static final class ReferenceCounts {
+
+        private final int[] featureCounts;
+        private final int[] edgeCounts;
+        private final int[][] featureEdgeCounts;
+        private final long[] totalEdgeHitCounts;
+        private int testCounts;
+
+        ReferenceCounts(int nrActions, int mapSize) {
+            featureCounts = new int[nrActions];
+            edgeCounts = new int[mapSize];
+            featureEdgeCounts = new int[nrActions][mapSize];
+            totalEdgeHitCounts = new long[mapSize];
+        }
+
+        void update(long[] snapshot) {
+            testCounts++;
+            for (ExpressionAction feature : ParameteraAwareGenerator.featureSet) {
+                featureCounts[feature.ordinal()]++;
+            }
+            for (int i = 0; i < edgeCounts.length; i++) {
+                int hits = (int) (snapshot[i >>> 3] >>> ((i & 7) << 3)) & 0xFF;
+                if (hits != 0) {
+                    edgeCounts[i]++;
+                    totalEdgeHitCounts[i] += hits;
+                    for (ExpressionAction feature : ParameteraAwareGenerator.featureSet) {
+                        featureEdgeCounts[feature.ordinal()][i]++;
+                    }
+                }
+            }
+        }
+
+        double calculateMutualInformation(int feature, int edge) {
+            int countF1 = featureCounts[feature];
+            int countE1 = edgeCounts[edge];
+            int countF1E1 = featureEdgeCounts[feature][edge];
+            int countF0 = testCounts - countF1;
+            int countE0 = testCounts - countE1;
+            int countF1E0 = countF1 - countF1E1;
+            int countF0E1 = countE1 - countF1E1;
+            int countF0E0 = countF0 - countF0E1;
+            if (testCounts == 0 || countF1 == 0 || countE1 == 0 || countE0 == 0 || countF0 == 0) {
+                return 0.0;
+            }
+            double mi = 0.0;
+            if (countF1E1 > 0) {
+                mi += (double) countF1E1 / testCounts
+                        * Math.log((double) countF1E1 * testCounts / ((double) countF1 * countE1));
+            }
+            if (countF1E0 > 0) {
+                mi += (double) countF1E0 / testCounts
+                        * Math.log((double) countF1E0 * testCounts / ((double) countF1 * countE0));
+            }
+            if (countF0E1 > 0) {
+                mi += (double) countF0E1 / testCounts
+                        * Math.log((double) countF0E1 * testCounts / ((double) countF0 * countE1));
+            }
+            if (countF0E0 > 0) {
+                mi += (double) countF0E0 / testCounts
+                        * Math.log((double) countF0E0 * testCounts / ((double) countF0 * countE0));
+            }
+            return mi / Math.log(2);
+        }
+
+        double[] getFeatureProbabilities() {
+            double[] weights = new double[featureCounts.length];
+            for (int j = 0; j < edgeCounts.length; j++) {
+                if (edgeCounts[j] == 0) {
+                    continue;
+                }
+                double novelty = 1.0 / Math.sqrt(1.0 + totalEdgeHitCounts[j]);
+                for (int i = 0; i < featureCounts.length; i++) {
+                    weights[i] += calculateMutualInformation(i, j) * novelty;
+                }
+            }
+            double totalWeightPowered = 0.0;
+            for (double weight : weights) {
+                totalWeightPowered += Math.pow(Math.max(0, weight), 1.5);
+            }
+            double[] probabilities = new double[weights.length];
+            for (int i = 0; i < weights.length; i++) {
+                probabilities[i] = totalWeightPowered == 0 ? 1.0 / weights.length : weights[i] / totalWeightPowered;
+            }
+            return probabilities;
+        }
+    }
+}
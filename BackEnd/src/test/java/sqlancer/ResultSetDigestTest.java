@@ -0,0 +1,109 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.mysql.MySQLGlobalState;
+import sqlancer.mysql.MySQLProvider;
+
+public class ResultSetDigestTest {
+
+    @Test
+    public void testDigestIgnoresOrderButCountsDuplicates() {
+        ResultSetDigest first = digest("1", null, "abc", "1");
+        ResultSetDigest second = digest("abc", "1", "1", null);
+        assertTrue(first.matches(second));
+        assertEquals(4, first.getCount());
+        // 行数相同、集合相同，但重复次数不同
+        assertFalse(first.matches(digest("1", null, "abc", "abc")));
+        assertFalse(digest("a").matches(digest("b")));
+        assertFalse(digest((String) null).matches(digest("null")));
+        assertFalse(digest("").matches(digest((String) null)));
+
+        // 分区摘要合并后与整体摘要相同
+        ResultSetDigest combined = digest("abc");
+        combined.addAll(digest("1", "1"));
+        combined.addAll(digest((String) null));
+        assertTrue(first.matches(combined));
+    }
+
+    @Test
+    public void testDigestKeepsBoundedRows() {
+        ResultSetDigest digest = new ResultSetDigest(3);
+        digest.add("a");
+        digest.add(null);
+        assertEquals(Arrays.asList("a", null), digest.getRows());
+        ResultSetDigest partition = new ResultSetDigest(3);
+        partition.add("b");
+        digest.addAll(partition);
+        digest.addAll(new ResultSetDigest(3));
+        assertEquals(Arrays.asList("a", null, "b"), digest.getRows());
+        // 超过上限后只保留摘要
+        digest.add("c");
+        assertNull(digest.getRows());
+        assertEquals(4, digest.getCount());
+        assertNull(digest("a").getRows());
+    }
+
+    @Test
+    public void testMismatchIsReportedFromFirstRunRows() {
+        // 状态没有连接：比较时若重新执行查询会失败
+        MySQLGlobalState state = createState();
+        List<String> combined = List.of("SELECT c0 FROM t0 WHERE p", "SELECT c0 FROM t0 WHERE NOT p",
+                "SELECT c0 FROM t0 WHERE p IS NULL");
+        AssertionError error = assertThrows(AssertionError.class,
+                () -> ComparatorHelper.assumeResultSetDigestsAreEqual(bufferedDigest("1", "2"),
+                        bufferedDigest("1", "3"), "SELECT c0 FROM t0", combined, state));
+        assertTrue(error.getMessage().contains("[3]"), error.getMessage());
+        // 只有重复次数不同时按原有规则不算差异
+        ComparatorHelper.assumeResultSetDigestsAreEqual(bufferedDigest("1", "1", "2"), bufferedDigest("1", "2", "2"),
+                "SELECT c0 FROM t0", combined, state);
+        // 行数超过缓冲区上限时按摘要报告
+        ResultSetDigest first = new ResultSetDigest(1);
+        first.add("1");
+        first.add("1");
+        ResultSetDigest second = new ResultSetDigest(1);
+        second.add("1");
+        second.add("2");
+        assertThrows(AssertionError.class, () -> ComparatorHelper.assumeResultSetDigestsAreEqual(first, second,
+                "SELECT c0 FROM t0", combined, state));
+    }
+
+    private static MySQLGlobalState createState() {
+        MySQLGlobalState state = new MySQLGlobalState();
+        state.setMainOptions(new MainOptions());
+        StateToReproduce stateToRepro = new StateToReproduce("database0", new MySQLProvider());
+        stateToRepro.createLocalState();
+        state.setState(stateToRepro);
+        return state;
+    }
+
+    private static ResultSetDigest bufferedDigest(String... values) {
+        ResultSetDigest digest = new ResultSetDigest(values.length);
+        Arrays.stream(values).forEach(digest::add);
+        return digest;
+    }
+
+    @Test
+    public void testRemoveTrailingZerosMatchesRegex() {
+        for (String value : List.of("1.00", "1.50", "100", "0", "0.0", "-0.000", ".0", "1.0.00", "1.", "", "abc.0",
+                "12.3400", "1e10")) {
+            assertEquals(value.replaceAll("[\\.]0+$", ""), ComparatorHelper.removeTrailingZeros(value), value);
+        }
+        assertEquals(null, ComparatorHelper.removeTrailingZeros(null));
+    }
+
+    private static ResultSetDigest digest(String... values) {
+        ResultSetDigest digest = new ResultSetDigest();
+        Arrays.stream(values).forEach(digest::add);
+        return digest;
+    }
+}
@@ -0,0 +1,103 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class SQLConnectionTest {
+
+    // 记录创建与关闭的 Statement 的假连接
+    private final List<String> prepared = new ArrayList<>();
+    private final Set<Object> closed = new HashSet<>();
+    private int nrCreated;
+
+    @Test
+    public void testStatementsAreReused() throws SQLException {
+        SQLConnection connection = new SQLConnection(fakeConnection(),
+                SQLConnection.StatementSettings.DEFAULT.withStatementPoolSize(1));
+        Statement first = connection.borrowStatement();
+        Statement second = connection.borrowStatement();
+        assertNotSame(first, second);
+        connection.releaseStatement(first);
+        // 池已满，second 被关闭
+        connection.releaseStatement(second);
+        assertTrue(closed.contains(second));
+        assertSame(first, connection.borrowStatement());
+        assertEquals(2, nrCreated);
+        assertFalse(connection.isPrepared(first));
+    }
+
+    @Test
+    public void testRepeatedQueriesArePreparedAndEvicted() throws SQLException {
+        SQLConnection connection = new SQLConnection(fakeConnection(),
+                SQLConnection.StatementSettings.DEFAULT.withPreparedStatementCacheSize(1));
+        Statement s = connection.borrowStatementForQuery("SELECT 1;");
+        assertFalse(connection.isPrepared(s));
+        connection.releaseStatement(s);
+        // 第二次执行同一文本时预编译，之后复用
+        PreparedStatement p = (PreparedStatement) connection.borrowStatementForQuery("SELECT 1;");
+        assertTrue(connection.isPrepared(p));
+        connection.releaseStatement(p);
+        assertSame(p, connection.borrowStatementForQuery("SELECT 1;"));
+        connection.releaseStatement(p);
+        assertEquals(List.of("SELECT 1;"), prepared);
+
+        // 缓存只保留一个，新的文本淘汰旧的
+        PreparedStatement other = connection.borrowPreparedStatement("SELECT ?;");
+        connection.releaseStatement(other);
+        assertTrue(closed.contains(p));
+        assertFalse(closed.contains(other));
+        connection.close();
+        assertTrue(closed.contains(other));
+    }
+
+    private Connection fakeConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "createStatement":
+                        nrCreated++;
+                        return fakeStatement(Statement.class);
+                    case "prepareStatement":
+                        nrCreated++;
+                        prepared.add((String) args[0]);
+                        return fakeStatement(PreparedStatement.class);
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    private Object fakeStatement(Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "close":
+                        closed.add(proxy);
+                        return null;
+                    case "isClosed":
+                        return closed.contains(proxy);
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,135 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.SQLConnection.StatementSettings;
+import sqlancer.common.query.ExpectedErrors;
+import sqlancer.common.query.Query;
+import sqlancer.common.query.SQLQueryAdapter;
+import sqlancer.common.schema.AbstractSchema;
+
+public class StatementExecutorTest {
+
+    private static final String FAILING = "INSERT 2;";
+
+    // 在数据库中生效（或尝试执行）的语句的顺序，回滚的语句不计入
+    private final List<String> executed = new ArrayList<>();
+    private final List<String> batched = new ArrayList<>();
+    private final List<String> uncommitted = new ArrayList<>();
+    private boolean autoCommit = true;
+    private int nrGenerated;
+
+    @Test
+    public void testLogOrderMatchesExecutionOrder() throws Exception {
+        TestGlobalState state = new TestGlobalState();
+        state.setMainOptions(new MainOptions() {
+            @Override
+            public boolean logEachSelect() {
+                return false;
+            }
+
+            @Override
+            public boolean logExecutionTime() {
+                return false;
+            }
+
+            @Override
+            public boolean recordLatencies() {
+                return false;
+            }
+        });
+        state.setRandomly(new Randomly(0));
+        state.setState(new StateToReproduce("db", null));
+        state.setConnection(new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(4)));
+        state.setManager(new Main.QueryManager<>(state));
+
+        AbstractAction<TestGlobalState> insert = g -> new SQLQueryAdapter("INSERT " + nrGenerated++,
+                ExpectedErrors.from("Duplicate entry"));
+        @SuppressWarnings("unchecked")
+        AbstractAction<TestGlobalState>[] actions = new AbstractAction[] { insert };
+        new StatementExecutor<>(state, actions, (g, a) -> 6, q -> {
+        }).executeStatements();
+
+        // INSERT 2 使第一批回滚后逐条执行，重试时生成的 INSERT 4 在这一批之后执行，日志中的位置相同
+        assertEquals(List.of("INSERT 0;", "INSERT 1;", "INSERT 2;", "INSERT 3;", "INSERT 4;", "INSERT 5;",
+                "INSERT 6;"), executed);
+        assertEquals(executed,
+                state.getState().getStatements().stream().map(Query::getLogString).collect(Collectors.toList()));
+    }
+
+    private static final class TestGlobalState
+            extends SQLGlobalState<DBMSSpecificOptions<?>, AbstractSchema<?, ?>> {
+
+        @Override
+        protected AbstractSchema<?, ?> readSchema() {
+            return null;
+        }
+    }
+
+    private Connection fakeConnection() {
+        Statement statement = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "addBatch":
+                        batched.add((String) args[0]);
+                        return null;
+                    case "executeBatch":
+                        // 与 Connector/J 的 continueBatchOnError 相同：失败后继续执行其余语句
+                        uncommitted.addAll(batched);
+                        int[] counts = batched.stream()
+                                .mapToInt(q -> q.equals(FAILING) ? Statement.EXECUTE_FAILED : 1).toArray();
+                        boolean failed = batched.contains(FAILING);
+                        batched.clear();
+                        if (failed) {
+                            throw new BatchUpdateException("Duplicate entry '2'", counts);
+                        }
+                        return counts;
+                    case "execute":
+                        if (args[0].equals("ROLLBACK")) {
+                            uncommitted.clear();
+                            return false;
+                        }
+                        executed.add((String) args[0]);
+                        if (args[0].equals(FAILING)) {
+                            throw new SQLException("Duplicate entry '2'");
+                        }
+                        return false;
+                    case "getUpdateCount":
+                        return 1;
+                    case "isClosed":
+                        return false;
+                    default:
+                        return null;
+                    }
+                });
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "createStatement":
+                        return statement;
+                    case "getAutoCommit":
+                        return autoCommit;
+                    case "setAutoCommit":
+                        autoCommit = (Boolean) args[0];
+                        return null;
+                    case "commit":
+                        executed.addAll(uncommitted);
+                        uncommitted.clear();
+                        return null;
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
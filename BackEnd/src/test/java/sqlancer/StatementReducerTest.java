@@ -0,0 +1,356 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.common.log.LoggableFactory;
+import sqlancer.common.query.ExpectedErrors;
+import sqlancer.common.query.Query;
+import sqlancer.common.schema.AbstractSchema;
+
+public class StatementReducerTest {
+
+    // 同时执行过这些语句时“触发 bug”
+    private static final Set<Integer> BUG_STATEMENTS = Set.of(3, 7, 12, 13);
+
+    @Test
+    public void testParallelReductionMatchesSerial() throws Exception {
+        TestProvider serial = new TestProvider();
+        assertEquals(List.of(3, 7, 12, 13), reduce(serial, 1, MainOptions.NO_REDUCE_LIMIT));
+        assertEquals(Set.of("db"), serial.databaseNames);
+
+        TestProvider parallel = new TestProvider();
+        assertEquals(List.of(3, 7, 12, 13), reduce(parallel, 4, MainOptions.NO_REDUCE_LIMIT));
+        assertTrue(Set.of("db_r0", "db_r1", "db_r2", "db_r3").containsAll(parallel.databaseNames));
+        // 重复出现的候选不再测试；并行时可能多测试一些最终被放弃的候选
+        assertTrue(serial.nrTests.get() <= parallel.nrTests.get());
+    }
+
+    @Test
+    public void testWorkersUseOwnStatementsAndAreDropped() throws Exception {
+        TestProvider provider = new TestProvider();
+        assertEquals(List.of(3, 7, 12, 13), reduce(provider, 4, MainOptions.NO_REDUCE_LIMIT));
+        // 同一个 Query 对象只由一个线程的数据库执行
+        for (Set<String> databases : provider.executedBy.values()) {
+            assertEquals(1, databases.size(), databases.toString());
+        }
+        assertEquals(Set.of("db_r0", "db_r1", "db_r2", "db_r3"), provider.droppedDatabases);
+
+        TestProvider serial = new TestProvider();
+        reduce(serial, 1, MainOptions.NO_REDUCE_LIMIT);
+        assertEquals(Set.of(), serial.droppedDatabases);
+    }
+
+    @Test
+    public void testStepLimitGivesSameResult() throws Exception {
+        for (long maxSteps : new long[] { 1, 3, 7, 20 }) {
+            List<Integer> serial = reduce(new TestProvider(), 1, maxSteps);
+            TestProvider provider = new TestProvider();
+            assertEquals(serial, reduce(provider, 3, maxSteps));
+            assertTrue(serial.containsAll(BUG_STATEMENTS));
+        }
+    }
+
+    @Test
+    public void testSnapshotsOnlyReplaySuffix() throws Exception {
+        TestProvider withoutSnapshots = new TestProvider();
+        assertEquals(List.of(3, 7, 12, 13), reduce(withoutSnapshots, 1, MainOptions.NO_REDUCE_LIMIT, 0));
+        TestProvider withSnapshots = new TestProvider();
+        assertEquals(List.of(3, 7, 12, 13), reduce(withSnapshots, 1, MainOptions.NO_REDUCE_LIMIT, 8));
+        // 在快照上重现的候选再在空数据库上重放一次
+        assertEquals(withoutSnapshots.nrTests.get(), withSnapshots.nrTests.get() - withSnapshots.nrVerified.get());
+        assertTrue(withSnapshots.nrSnapshots.get() > 0);
+        assertTrue(withSnapshots.nrExecuted.get() < withoutSnapshots.nrExecuted.get());
+        // 所有快照都已释放
+        assertEquals(0, withSnapshots.nrOpenSnapshots.get());
+        assertEquals(List.of(3, 7, 12, 13), reduce(new TestProvider(), 4, MainOptions.NO_REDUCE_LIMIT, 2));
+    }
+
+    @Test
+    public void testOnlyCandidatesReproducingFromScratchAreAccepted() throws Exception {
+        TestProvider provider = new TestProvider();
+        provider.snapshotsDiffer = true;
+        assertEquals(List.of(3, 7, 12, 13), reduce(provider, 1, MainOptions.NO_REDUCE_LIMIT, 8));
+        assertTrue(provider.nrVerified.get() > 0);
+        assertEquals(List.of(3, 7, 12, 13), reduce(new TestProvider() {
+            {
+                snapshotsDiffer = true;
+            }
+        }, 4, MainOptions.NO_REDUCE_LIMIT, 8));
+    }
+
+    @Test
+    public void testProviderWithoutRestoreReplaysFully() throws Exception {
+        TestProvider provider = new TestProvider();
+        provider.canRestore = false;
+        assertEquals(List.of(3, 7, 12, 13), reduce(provider, 1, MainOptions.NO_REDUCE_LIMIT, 8));
+        // 第一次恢复失败后不再保存快照，已保存的快照都已释放
+        assertEquals(1, provider.nrSnapshots.get());
+        assertEquals(0, provider.nrOpenSnapshots.get());
+    }
+
+    private static List<Integer> reduce(TestProvider provider, int nrThreads, long maxSteps) throws Exception {
+        return reduce(provider, nrThreads, maxSteps, 8);
+    }
+
+    private static List<Integer> reduce(TestProvider provider, int nrThreads, long maxSteps, int nrSnapshots)
+            throws Exception {
+        MainOptions options = new MainOptions() {
+            @Override
+            public boolean useReducer() {
+                return true;
+            }
+
+            @Override
+            public int getStatementReducerThreads() {
+                return nrThreads;
+            }
+
+            @Override
+            public long getMaxStatementReduceSteps() {
+                return maxSteps;
+            }
+
+            @Override
+            public int getReducerSnapshots() {
+                return nrSnapshots;
+            }
+        };
+        List<Query<?>> statements = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            statements.add(new TestQuery(i));
+        }
+        TestState state = newState(provider, options);
+        state.getState().setStatements(statements);
+        TestState newGlobalState = newState(provider, options);
+        new StatementReducer<>(provider).reduce(state,
+                s -> provider.bugStillTriggers(s.getConnection()), newGlobalState);
+        return newGlobalState.getState().getStatements().stream().map(q -> ((TestQuery) q).id)
+                .collect(Collectors.toList());
+    }
+
+    private static TestState newState(TestProvider provider, MainOptions options) {
+        TestState state = new TestState();
+        state.setDatabaseName("db");
+        state.setState(provider.getStateToReproduce("db"));
+        state.setRandomly(new Randomly(0));
+        state.setMainOptions(options);
+        state.setStateLogger(new Main.StateLogger("db", provider, options));
+        return state;
+    }
+
+    public static class TestConnection implements SQLancerDBConnection {
+        private final String databaseName;
+        private final Set<Integer> executed;
+        private final AtomicInteger nrExecuted;
+        // 各个 Query 对象由哪些数据库执行过
+        private final Map<Query<?>, Set<String>> executedBy;
+        // 由快照恢复
+        private boolean restored;
+
+        TestConnection(String databaseName, Set<Integer> executed, AtomicInteger nrExecuted,
+                Map<Query<?>, Set<String>> executedBy) {
+            this.databaseName = databaseName;
+            this.executed = executed;
+            this.nrExecuted = nrExecuted;
+            this.executedBy = executedBy;
+        }
+
+        @Override
+        public String getDatabaseVersion() {
+            return "";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static class TestState extends GlobalState<DBMSSpecificOptions<?>, AbstractSchema<?, ?>, TestConnection> {
+
+        @Override
+        protected void executeEpilogue(Query<?> q, boolean success, ExecutionTimer timer) {
+        }
+
+        @Override
+        protected AbstractSchema<?, ?> readSchema() {
+            return null;
+        }
+    }
+
+    private static final class TestQuery extends Query<TestConnection> {
+        private static final long serialVersionUID = 1L;
+        private final int id;
+
+        TestQuery(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getLogString() {
+            return getQueryString();
+        }
+
+        @Override
+        public String getQueryString() {
+            return "S" + id + ";";
+        }
+
+        @Override
+        public String getUnterminatedQueryString() {
+            return "S" + id;
+        }
+
+        @Override
+        public boolean couldAffectSchema() {
+            return false;
+        }
+
+        @Override
+        public <G extends GlobalState<?, ?, TestConnection>> boolean execute(G globalState, String... fills) {
+            TestConnection con = globalState.getConnection();
+            con.executed.add(id);
+            con.nrExecuted.incrementAndGet();
+            synchronized (con.executedBy) {
+                con.executedBy.computeIfAbsent(this, q -> new HashSet<>()).add(con.databaseName);
+            }
+            return true;
+        }
+
+        @Override
+        public ExpectedErrors getExpectedErrors() {
+            return new ExpectedErrors();
+        }
+    }
+
+    private static final class TestSnapshot implements DatabaseSnapshot {
+        private final Set<Integer> executed;
+        private final AtomicInteger nrOpenSnapshots;
+
+        TestSnapshot(Set<Integer> executed, AtomicInteger nrOpenSnapshots) {
+            this.executed = executed;
+            this.nrOpenSnapshots = nrOpenSnapshots;
+        }
+
+        @Override
+        public void close() {
+            nrOpenSnapshots.decrementAndGet();
+        }
+    }
+
+    private static class TestProvider
+            implements DatabaseProvider<TestState, DBMSSpecificOptions<?>, TestConnection> {
+        private final Set<String> databaseNames = ConcurrentHashMap.newKeySet();
+        private final Set<String> droppedDatabases = ConcurrentHashMap.newKeySet();
+        private final Map<Query<?>, Set<String>> executedBy = new IdentityHashMap<>();
+        private final AtomicInteger nrTests = new AtomicInteger();
+        private final AtomicInteger nrExecuted = new AtomicInteger();
+        private final AtomicInteger nrSnapshots = new AtomicInteger();
+        private final AtomicInteger nrOpenSnapshots = new AtomicInteger();
+        // 在快照上重现后又在空数据库上重放的次数
+        private final AtomicInteger nrVerified = new AtomicInteger();
+        // 为 false 时只实现 createSnapshot，restoreSnapshot 使用默认实现
+        boolean canRestore = true;
+        // 为 true 时，由快照恢复的数据库只要执行过 S3 就“触发 bug”，与在空数据库上重放的结果不同
+        boolean snapshotsDiffer;
+
+        boolean bugStillTriggers(TestConnection con) {
+            boolean triggers = con.executed.containsAll(BUG_STATEMENTS)
+                    || snapshotsDiffer && con.restored && con.executed.contains(3);
+            if (triggers && con.restored) {
+                nrVerified.incrementAndGet();
+            }
+            return triggers;
+        }
+
+        @Override
+        public TestConnection createDatabase(TestState globalState) {
+            databaseNames.add(globalState.getDatabaseName());
+            nrTests.incrementAndGet();
+            return new TestConnection(globalState.getDatabaseName(), new HashSet<>(), nrExecuted, executedBy);
+        }
+
+        @Override
+        public void dropDatabase(TestState globalState) {
+            droppedDatabases.add(globalState.getDatabaseName());
+        }
+
+        @Override
+        public DatabaseSnapshot createSnapshot(TestState globalState) {
+            Set<Integer> executed = new HashSet<>(globalState.getConnection().executed);
+            nrSnapshots.incrementAndGet();
+            nrOpenSnapshots.incrementAndGet();
+            return new TestSnapshot(executed, nrOpenSnapshots);
+        }
+
+        @Override
+        public TestConnection restoreSnapshot(TestState globalState, DatabaseSnapshot snapshot) throws Exception {
+            if (!canRestore) {
+                return DatabaseProvider.super.restoreSnapshot(globalState, snapshot);
+            }
+            TestConnection con = createDatabase(globalState);
+            con.restored = true;
+            con.executed.addAll(((TestSnapshot) snapshot).executed);
+            return con;
+        }
+
+        @Override
+        public StateToReproduce getStateToReproduce(String databaseName) {
+            return new StateToReproduce(databaseName, this);
+        }
+
+        @Override
+        public Class<TestState> getGlobalStateClass() {
+            return TestState.class;
+        }
+
+        @Override
+        public String getDBMSName() {
+            return "reducer-test";
+        }
+
+        @Override
+        public LoggableFactory getLoggableFactory() {
+            return new sqlancer.common.log.SQLLoggableFactory();
+        }
+
+        @Override
+        public Class<DBMSSpecificOptions<?>> getOptionClass() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Reproducer<TestState> generateAndTestDatabase(TestState globalState) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void generateAndTestDatabaseWithQueryPlanGuidance(TestState globalState) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void generateDatabaseWithConfigurationTraining(TestState globalState,
+                BaseConfigurationGenerator.ConfigurationAction action) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Reproducer<TestState> generateDatabaseWithConfigurationTest(TestState globalState,
+                List<BaseConfigurationGenerator.ConfigurationAction> actions) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
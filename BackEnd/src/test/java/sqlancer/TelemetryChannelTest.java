@@ -0,0 +1,48 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TelemetryChannelTest {
+
+    @Test
+    public void testCoalescesUnconsumedSnapshots() {
+        TelemetryChannel channel = new TelemetryChannel();
+        assertNull(channel.poll());
+        assertNull(channel.getLatest());
+
+        TelemetrySnapshot first = snapshot(1);
+        TelemetrySnapshot second = snapshot(2);
+        TelemetrySnapshot third = snapshot(3);
+        channel.publish(first);
+        channel.publish(second);
+        channel.publish(third);
+        // 推送方只取到最新的快照
+        assertSame(third, channel.poll());
+        assertNull(channel.poll());
+        assertEquals(2, channel.getNrCoalesced());
+        // 只读访问不取走快照
+        assertSame(third, channel.getLatest());
+        assertSame(third, channel.getLatest());
+    }
+
+    @Test
+    public void testSnapshotIsImmutable() {
+        List<String> combo = new ArrayList<>(List.of("sort_buffer_size"));
+        TelemetrySnapshot snapshot = new TelemetrySnapshot("default", 0, 0, true, "TLP_WHERE", 0, 0, 0, combo, 0, 0, 0,
+                0, List.of());
+        combo.add("join_buffer_size");
+        assertEquals(List.of("sort_buffer_size"), snapshot.getCurrentCombo());
+    }
+
+    private static TelemetrySnapshot snapshot(long queries) {
+        return new TelemetrySnapshot("default", queries, queries, true, "TLP_WHERE", queries, 0, 0, List.of(), 0, 0,
+                0, 0, List.of(new TelemetrySnapshot.WorkerState("database0", queries, 1, 0)));
+    }
+}
@@ -0,0 +1,150 @@
+package sqlancer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WeightFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testComboWeightsTextRoundTrip() throws IOException {
+        Path text = dir.resolve("mysql_config_weights.txt");
+        Files.write(text, List.of("# comment", "a,b:1.5", "", "c:2.0", "b,c,d:0.25", "broken line", "a:x"),
+                StandardCharsets.UTF_8);
+        Path binary = dir.resolve("mysql_config_weights.bin");
+        assertEquals(3, WeightFile.convertText(text, binary, WeightFile.KIND_COMBO_WEIGHTS));
+
+        WeightFile file = WeightFile.open(binary);
+        assertEquals(WeightFile.KIND_COMBO_WEIGHTS, file.getKind());
+        assertArrayEquals(new String[] { "a", "b", "c", "d" }, file.getNames());
+        assertEquals(3, file.getArity());
+        assertEquals(3, file.getNrRecords());
+        int[] key = new int[file.getArity()];
+        assertEquals(2, file.getNameIndices(0, key));
+        assertEquals(0, key[0]);
+        assertEquals(1, key[1]);
+        assertEquals(1.5, file.getValue(0, 0), 0.0);
+        assertEquals(1, file.getNameIndices(1, key));
+        assertEquals(2, key[0]);
+        assertEquals(3, file.getNameIndices(2, key));
+        assertEquals(0.25, file.getValue(2, 0), 0.0);
+
+        Path exported = dir.resolve("exported.txt");
+        WeightFile.exportText(binary, exported);
+        assertEquals(List.of("a,b:1.5", "c:2.0", "b,c,d:0.25"), Files.readAllLines(exported, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFeatureProbabilitiesRoundTrip() throws IOException {
+        Path binary = dir.resolve("mysql_feature_weights.bin");
+        WeightFile.write(binary, WeightFile.KIND_FEATURE_PROBABILITIES, new String[] { "x", "y" },
+                List.of(new int[] { 1 }, new int[] { 0 }), List.of(new double[] { 0.1, 0.9 }, new double[] { 0.5, 0.5 }));
+        WeightFile file = WeightFile.open(binary);
+        assertEquals(2, file.getValueCount());
+        Path text = dir.resolve("mysql_feature_weights.txt");
+        WeightFile.exportText(binary, text);
+        assertEquals(List.of("y:0.1,0.9", "x:0.5,0.5"), Files.readAllLines(text, StandardCharsets.UTF_8));
+        // 文本格式转换回二进制后内容不变
+        Path again = dir.resolve("again.bin");
+        assertEquals(2, WeightFile.convertText(text, again, WeightFile.KIND_FEATURE_PROBABILITIES));
+        WeightFile reloaded = WeightFile.open(again);
+        assertEquals(0.9, reloaded.getValue(0, 1), 0.0);
+        assertEquals(0.5, reloaded.getValue(1, 0), 0.0);
+    }
+
+    @Test
+    public void testRegeneratedTextIsConvertedAgain() throws IOException {
+        String prefix = dir.resolve("mysql").toString();
+        Path text = dir.resolve("mysql_config_weights.txt");
+        Path binary = dir.resolve("mysql_config_weights.bin");
+        assertNull(BaseConfigurationGenerator.resolveWeightFile(prefix, "_config_weights",
+                WeightFile.KIND_COMBO_WEIGHTS));
+
+        Files.write(text, List.of("a,b:1.5"), StandardCharsets.UTF_8);
+        assertEquals(binary, BaseConfigurationGenerator.resolveWeightFile(prefix, "_config_weights",
+                WeightFile.KIND_COMBO_WEIGHTS));
+        assertEquals(1, WeightFile.open(binary).getNrRecords());
+
+        // .bin 不比 .txt 旧时直接使用
+        Files.write(text, List.of("a,b:1.5", "c:2.0"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(text, Files.getLastModifiedTime(binary));
+        BaseConfigurationGenerator.resolveWeightFile(prefix, "_config_weights", WeightFile.KIND_COMBO_WEIGHTS);
+        assertEquals(1, WeightFile.open(binary).getNrRecords());
+
+        // 外部重新生成的 .txt 比 .bin 新
+        Files.setLastModifiedTime(text,
+                FileTime.fromMillis(Files.getLastModifiedTime(binary).toMillis() + 1000));
+        BaseConfigurationGenerator.resolveWeightFile(prefix, "_config_weights", WeightFile.KIND_COMBO_WEIGHTS);
+        assertEquals(2, WeightFile.open(binary).getNrRecords());
+    }
+
+    @Test
+    public void testConcurrentWritersDoNotShareTemporaryFile() throws Exception {
+        Path binary = dir.resolve("mysql_config_weights.bin");
+        int nrWriters = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < nrWriters; t++) {
+            final double value = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 20; i++) {
+                        WeightFile.write(binary, WeightFile.KIND_COMBO_WEIGHTS, new String[] { "a", "b" },
+                                List.of(new int[] { 0, 1 }), List.of(new double[] { value }));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), failures);
+        // 最后一次替换的内容完整，且没有遗留临时文件
+        WeightFile file = WeightFile.open(binary);
+        assertEquals(1, file.getNrRecords());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(binary), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testRejectsForeignAndTruncatedFiles() throws IOException {
+        Path foreign = dir.resolve("foreign.bin");
+        Files.write(foreign, "a,b:1.0\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> WeightFile.open(foreign));
+
+        Path binary = dir.resolve("weights.bin");
+        WeightFile.write(binary, WeightFile.KIND_COMBO_WEIGHTS, new String[] { "a" }, List.of(new int[] { 0 }),
+                List.of(new double[] { 1.0 }));
+        byte[] bytes = Files.readAllBytes(binary);
+        Path truncated = dir.resolve("truncated.bin");
+        Files.write(truncated, java.util.Arrays.copyOf(bytes, bytes.length - 4));
+        assertThrows(IOException.class, () -> WeightFile.open(truncated));
+    }
+}
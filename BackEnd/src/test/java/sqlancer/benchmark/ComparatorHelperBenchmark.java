@@ -0,0 +1,91 @@
+package sqlancer.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sqlancer.ComparatorHelper;
+import sqlancer.MainOptions;
+import sqlancer.ResultSetDigest;
+import sqlancer.mysql.MySQLGlobalState;
+
+/**
+ * TLP/NoREC 比较两个相等的结果集（第二个为第一个打乱顺序后的结果）：按集合比较各行，与先折叠为 {@link ResultSetDigest} 再比较摘要。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ComparatorHelperBenchmark {
+
+    /** 结果集的行数。 */
+    @Param({ "100", "10000" })
+    public int rows;
+
+    private MySQLGlobalState state;
+    private List<String> resultSet;
+    private List<String> secondResultSet;
+    private final List<String> combinedString = List.of("SELECT c0 FROM t0 WHERE p", "SELECT c0 FROM t0 WHERE NOT p",
+            "SELECT c0 FROM t0 WHERE p IS NULL");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        state = new MySQLGlobalState();
+        state.setMainOptions(new MainOptions());
+        Random r = new Random(0);
+        resultSet = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            // 有重复值和 NULL，与实际的第一列相近
+            int v = r.nextInt(rows);
+            resultSet.add(v % 17 == 0 ? null : Integer.toString(v));
+        }
+        secondResultSet = new ArrayList<>(resultSet);
+        Collections.shuffle(secondResultSet, r);
+    }
+
+    @Benchmark
+    public List<String> assumeResultSetsAreEqual() {
+        ComparatorHelper.assumeResultSetsAreEqual(resultSet, secondResultSet, "SELECT c0 FROM t0", combinedString,
+                state);
+        return resultSet;
+    }
+
+    @Benchmark
+    public ResultSetDigest assumeResultSetDigestsAreEqual() throws SQLException {
+        ResultSetDigest digest = new ResultSetDigest();
+        for (String value : resultSet) {
+            digest.add(value);
+        }
+        ResultSetDigest secondDigest = new ResultSetDigest();
+        for (String value : secondResultSet) {
+            secondDigest.add(value);
+        }
+        ComparatorHelper.assumeResultSetDigestsAreEqual(digest, secondDigest, "SELECT c0 FROM t0", combinedString,
+                state);
+        return digest;
+    }
+
+    @Benchmark
+    public boolean isEqualDouble() {
+        return ComparatorHelper.isEqualDouble("3.1415926", "3.14159");
+    }
+
+}
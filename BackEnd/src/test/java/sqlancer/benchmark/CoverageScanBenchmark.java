@@ -0,0 +1,92 @@
+package sqlancer.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sqlancer.AFLMonitor;
+import sqlancer.CoverageMap;
+
+/**
+ * 对比 AFLMonitor 原有的逐字节扫描（clone + read + 逐字节比较）与 {@link CoverageMap} 的按字增量扫描。
+ * 共享内存用同样大小的 direct buffer 模拟。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CoverageScanBenchmark {
+
+    /** 被命中的边占整张位图的比例。 */
+    @Param({ "0.001", "0.01", "0.1" })
+    public double density;
+
+    private ByteBuffer segment;
+    private byte[] coverageBuf;
+    private CoverageMap coverage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        segment = ByteBuffer.allocateDirect(AFLMonitor.AFL_MAP_SIZE);
+        Random r = new Random(0);
+        int nrHits = (int) (AFLMonitor.AFL_MAP_SIZE * density);
+        for (int i = 0; i < nrHits; i++) {
+            segment.put(r.nextInt(AFLMonitor.AFL_MAP_SIZE), (byte) (1 + r.nextInt(255)));
+        }
+        coverageBuf = new byte[AFLMonitor.AFL_MAP_SIZE];
+        coverage = new CoverageMap(segment, AFLMonitor.AFL_MAP_SIZE);
+        coverage.refresh();
+    }
+
+    @Benchmark
+    public int legacyUpdateComWeightScan() {
+        byte[] oldCoverageBuf = coverageBuf.clone();
+        segment.get(0, coverageBuf, 0, AFLMonitor.AFL_MAP_SIZE);
+        int newEdges = 0;
+        for (int i = 0; i < AFLMonitor.AFL_MAP_SIZE; i++) {
+            if (oldCoverageBuf[i] == 0 && coverageBuf[i] != 0) {
+                newEdges++;
+            }
+        }
+        return newEdges;
+    }
+
+    @Benchmark
+    public int legacyCoverageRateScan() {
+        segment.get(0, coverageBuf, 0, AFLMonitor.AFL_MAP_SIZE);
+        int hitEdges = 0;
+        for (int i = 0; i < AFLMonitor.AFL_MAP_SIZE; i++) {
+            if ((coverageBuf[i] & 0xFF) > 0) {
+                hitEdges++;
+            }
+        }
+        return hitEdges;
+    }
+
+    @Benchmark
+    public int wordParallelRefresh() {
+        coverage.refresh();
+        return coverage.drainNewEdges();
+    }
+
+    @Benchmark
+    public double incrementalCoverageRate() {
+        return coverage.getCoverageRate();
+    }
+
+}
@@ -0,0 +1,59 @@
+package sqlancer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sqlancer.common.query.ExpectedErrors;
+import sqlancer.mysql.MySQLErrors;
+
+/**
+ * 用 MySQL 表达式与 INSERT/UPDATE 的预期错误检查 DBMS 返回的错误信息：命中子串、命中正则和不命中（需要检查全部模式）三种情况。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExpectedErrorsBenchmark {
+
+    private ExpectedErrors errors;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        errors = new ExpectedErrors();
+        MySQLErrors.addExpressionErrors(errors);
+        MySQLErrors.addInsertUpdateErrors(errors);
+        // 第一次调用时构建匹配器，不计入测量
+        errors.errorIsExpected("");
+    }
+
+    @Benchmark
+    public boolean substringMatch() {
+        return errors
+                .errorIsExpected("Data truncation: Truncated incorrect DOUBLE value: 'abc' for column 'c0' at row 1");
+    }
+
+    @Benchmark
+    public boolean regexMatch() {
+        return errors.errorIsExpected("Unknown column 'c3' in 'order clause'");
+    }
+
+    @Benchmark
+    public boolean noMatch() {
+        return errors.errorIsExpected(
+                "Lost connection to MySQL server during query: the server closed the connection unexpectedly");
+    }
+
+}
@@ -0,0 +1,145 @@
+package sqlancer.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sqlancer.IgnoreMeException;
+import sqlancer.MainOptions;
+import sqlancer.Randomly;
+import sqlancer.duckdb.DuckDBOptions;
+import sqlancer.duckdb.DuckDBProvider.DuckDBGlobalState;
+import sqlancer.duckdb.DuckDBSchema.DuckDBColumn;
+import sqlancer.duckdb.DuckDBSchema.DuckDBCompositeDataType;
+import sqlancer.duckdb.DuckDBSchema.DuckDBDataType;
+import sqlancer.duckdb.DuckDBSchema.DuckDBTable;
+import sqlancer.duckdb.DuckDBToStringVisitor;
+import sqlancer.duckdb.ast.DuckDBExpression;
+import sqlancer.duckdb.gen.DuckDBExpressionGenerator;
+import sqlancer.mysql.MySQLGlobalState;
+import sqlancer.mysql.MySQLOptions;
+import sqlancer.mysql.MySQLSchema.MySQLColumn;
+import sqlancer.mysql.MySQLSchema.MySQLDataType;
+import sqlancer.mysql.MySQLSchema.MySQLIndex;
+import sqlancer.mysql.MySQLSchema.MySQLTable;
+import sqlancer.mysql.MySQLSchema.MySQLTable.MySQLEngine;
+import sqlancer.mysql.MySQLVisitor;
+import sqlancer.mysql.ast.MySQLExpression;
+import sqlancer.mysql.gen.MySQLExpressionGenerator;
+
+/**
+ * 表达式的生成与转换为 SQL 字符串：MySQL 使用 {@link sqlancer.common.visitor.ToStringVisitor}，DuckDB 使用
+ * {@link sqlancer.common.ast.newast.NewToStringVisitor}。表结构是手工构造的，不需要连接数据库；转换为字符串的基准使用预先生成的一组表达式。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExpressionGenerationBenchmark {
+
+    private static final int NR_EXPRESSIONS = 256;
+
+    /** --max-expression-depth */
+    @Param({ "3", "5" })
+    public int depth;
+
+    private MySQLExpressionGenerator mysqlGenerator;
+    private DuckDBExpressionGenerator duckdbGenerator;
+    private final MySQLExpression[] mysqlExpressions = new MySQLExpression[NR_EXPRESSIONS];
+    private final DuckDBExpression[] duckdbExpressions = new DuckDBExpression[NR_EXPRESSIONS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MainOptions options = new MainOptions() {
+            @Override
+            public int getMaxExpressionDepth() {
+                return depth;
+            }
+        };
+
+        MySQLGlobalState mysqlState = new MySQLGlobalState();
+        mysqlState.setMainOptions(options);
+        mysqlState.setDbmsSpecificOptions(new MySQLOptions());
+        mysqlState.setRandomly(new Randomly(0));
+        MySQLTable t0 = MySQLTable.create("t0",
+                List.of(new MySQLColumn("c0", MySQLDataType.INT, true, 10),
+                        new MySQLColumn("c1", MySQLDataType.VARCHAR, false, 0),
+                        new MySQLColumn("c2", MySQLDataType.DOUBLE, false, 0)),
+                List.of(MySQLIndex.create("PRIMARY")), MySQLEngine.INNO_DB);
+        mysqlGenerator = new MySQLExpressionGenerator(mysqlState).setColumns(t0.getColumns());
+
+        DuckDBGlobalState duckdbState = new DuckDBGlobalState();
+        duckdbState.setMainOptions(options);
+        duckdbState.setDbmsSpecificOptions(new DuckDBOptions());
+        duckdbState.setRandomly(new Randomly(0));
+        List<DuckDBColumn> columns = List.of(
+                new DuckDBColumn("c0", new DuckDBCompositeDataType(DuckDBDataType.INT, 4), true, false),
+                new DuckDBColumn("c1", new DuckDBCompositeDataType(DuckDBDataType.VARCHAR, 0), false, true),
+                new DuckDBColumn("c2", new DuckDBCompositeDataType(DuckDBDataType.FLOAT, 8), false, true));
+        DuckDBTable t1 = new DuckDBTable("t1", columns, false);
+        for (DuckDBColumn c : columns) {
+            c.setTable(t1);
+        }
+        duckdbGenerator = new DuckDBExpressionGenerator(duckdbState).setColumns(columns);
+
+        for (int i = 0; i < NR_EXPRESSIONS;) {
+            mysqlExpressions[i] = mysqlGenerate();
+            if (mysqlExpressions[i] != null) {
+                i++;
+            }
+        }
+        for (int i = 0; i < NR_EXPRESSIONS;) {
+            duckdbExpressions[i] = duckdbGenerate();
+            if (duckdbExpressions[i] != null) {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return 生成的表达式；生成时放弃（如随机的浮点常量不是有限值）时为 null，与测试时一样计为一次生成
+     */
+    @Benchmark
+    public MySQLExpression mysqlGenerate() {
+        try {
+            return mysqlGenerator.generateExpression();
+        } catch (IgnoreMeException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public String mysqlToString() {
+        return MySQLVisitor.asString(mysqlExpressions[next++ & (NR_EXPRESSIONS - 1)]);
+    }
+
+    @Benchmark
+    public DuckDBExpression duckdbGenerate() {
+        try {
+            return duckdbGenerator.generateExpression();
+        } catch (IgnoreMeException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public String duckdbToString() {
+        return DuckDBToStringVisitor.asString(duckdbExpressions[next++ & (NR_EXPRESSIONS - 1)]);
+    }
+
+}
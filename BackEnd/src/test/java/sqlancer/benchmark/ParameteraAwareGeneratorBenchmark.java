@@ -0,0 +1,89 @@
+package sqlancer.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sqlancer.AFLMonitor;
+import sqlancer.ParameteraAwareGenerator;
+import sqlancer.mysql.gen.MySQLExpressionGenerator;
+
+/**
+ * 训练阶段每条查询之后的 {@link ParameteraAwareGenerator#updateCounts(long[])}，以及更新后重新计算特性概率的开销。
+ * 覆盖率快照是合成的：每个快照从一组固定的边中随机命中一部分，使边的槽位在预热后不再增长，与长时间运行时的情况相同。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParameteraAwareGeneratorBenchmark {
+
+    private static final int MAP_WORDS = (AFLMonitor.AFL_MAP_SIZE + 7) / 8;
+    private static final int NR_SNAPSHOTS = 64;
+
+    /** 每个快照中被命中的边占整张位图的比例。 */
+    @Param({ "0.001", "0.01" })
+    public double density;
+
+    private ParameteraAwareGenerator generator;
+    private long[][] snapshots;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random r = new Random(0);
+        int[] hotEdges = new int[(int) (AFLMonitor.AFL_MAP_SIZE * density * 2)];
+        for (int i = 0; i < hotEdges.length; i++) {
+            hotEdges[i] = r.nextInt(AFLMonitor.AFL_MAP_SIZE);
+        }
+        snapshots = new long[NR_SNAPSHOTS][MAP_WORDS];
+        for (long[] snapshot : snapshots) {
+            for (int edge : hotEdges) {
+                if (r.nextBoolean()) {
+                    snapshot[edge >>> 3] |= (long) (1 + r.nextInt(255)) << ((edge & 7) << 3);
+                }
+            }
+        }
+        ParameteraAwareGenerator.featureSet.clear();
+        ParameteraAwareGenerator.featureSet.add(MySQLExpressionGenerator.Actions.CAST);
+        ParameteraAwareGenerator.featureSet.add(MySQLExpressionGenerator.Actions.IN_OPERATION);
+        ParameteraAwareGenerator.featureSet.add(MySQLExpressionGenerator.Actions.CASE_OPERATOR);
+        generator = new ParameteraAwareGenerator(MySQLExpressionGenerator.Actions.class);
+        for (long[] snapshot : snapshots) {
+            generator.updateCounts(snapshot);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ParameteraAwareGenerator.featureSet.clear();
+    }
+
+    @Benchmark
+    public int updateCounts() {
+        generator.updateCounts(snapshots[next++ & (NR_SNAPSHOTS - 1)]);
+        return generator.getTestCounts();
+    }
+
+    @Benchmark
+    public double[] updateCountsAndProbabilities() {
+        generator.updateCounts(snapshots[next++ & (NR_SNAPSHOTS - 1)]);
+        return generator.getFeatureProbabilities();
+    }
+
+}
@@ -0,0 +1,52 @@
+package sqlancer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sqlancer.Randomly;
+
+/**
+ * 生成常量时最常用的 {@link Randomly#getString()} 与 {@link Randomly#getInteger()}，包括从已生成值的缓存中取值的情况。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RandomlyBenchmark {
+
+    private Randomly r;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        r = new Randomly(0);
+    }
+
+    @Benchmark
+    public String getString() {
+        return r.getString();
+    }
+
+    @Benchmark
+    public long getInteger() {
+        return r.getInteger();
+    }
+
+    @Benchmark
+    public double getDouble() {
+        return r.getDouble();
+    }
+
+}
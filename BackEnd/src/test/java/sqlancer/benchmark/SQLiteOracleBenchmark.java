@@ -0,0 +1,94 @@
+package sqlancer.benchmark;
+
+import java.sql.DriverManager;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sqlancer.Campaign;
+import sqlancer.IgnoreMeException;
+import sqlancer.Main;
+import sqlancer.MainOptions;
+import sqlancer.MetricsRegistry;
+import sqlancer.Randomly;
+import sqlancer.SQLConnection;
+import sqlancer.common.oracle.TestOracle;
+import sqlancer.sqlite3.SQLite3GlobalState;
+import sqlancer.sqlite3.SQLite3OracleFactory;
+import sqlancer.sqlite3.SQLite3Options;
+import sqlancer.sqlite3.SQLite3Provider;
+
+/**
+ * 端到端的 oracle 吞吐量（每秒检查次数）：在 SQLite 内存数据库上生成一个随机数据库，然后反复执行同一个 oracle 的 check()。
+ * 包括表达式生成、转换为字符串、JDBC 执行与结果比较，不包括日志文件的写出。因预期错误而放弃的检查同样计为一次。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SQLiteOracleBenchmark {
+
+    private static final String DATABASE_NAME = "benchmark";
+
+    /** {@link SQLite3OracleFactory} 的名称。 */
+    @Param({ "NoREC", "WHERE" })
+    public String oracle;
+
+    private SQLConnection con;
+    private TestOracle<SQLite3GlobalState> testOracle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SQLite3Provider provider = new SQLite3Provider();
+        MainOptions options = new MainOptions() {
+            @Override
+            public boolean logEachSelect() {
+                return false;
+            }
+        };
+        SQLite3GlobalState state = new SQLite3GlobalState();
+        state.setState(provider.getStateToReproduce(DATABASE_NAME));
+        state.setRandomly(new Randomly(0));
+        state.setDatabaseName(DATABASE_NAME);
+        state.setMainOptions(options);
+        state.setDbmsSpecificOptions(new SQLite3Options());
+        state.setMetrics(MetricsRegistry.getInstance().getCounters("sqlite3", oracle, Campaign.DEFAULT_ID,
+                DATABASE_NAME));
+        con = new SQLConnection(DriverManager.getConnection("jdbc:sqlite::memory:"));
+        state.setConnection(con);
+        state.setStateLogger(new Main.StateLogger(DATABASE_NAME, provider, options));
+        state.setManager(new Main.QueryManager<>(state));
+        provider.generateDatabase(state);
+        testOracle = SQLite3OracleFactory.valueOf(oracle).create(state);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        con.close();
+    }
+
+    @Benchmark
+    public boolean check() throws Exception {
+        try {
+            testOracle.check();
+            return true;
+        } catch (IgnoreMeException e) {
+            return false;
+        }
+    }
+
+}
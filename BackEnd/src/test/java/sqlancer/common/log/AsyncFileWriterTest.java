@@ -0,0 +1,75 @@
+package sqlancer.common.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AsyncFileWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSyncWritesEverythingInOrder() throws Exception {
+        // 多个线程各写一个文件，写入量超过环形缓冲区容量
+        List<Thread> threads = new ArrayList<>();
+        List<AsyncFileWriter> writers = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            AsyncFileWriter writer = new AsyncFileWriter(dir.resolve(t + "-cur.log").toFile(), false);
+            writers.add(writer);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                sb.append("SELECT ").append(i).append(" -- ").append(t == 0 ? "中😀" : "x").append(";\n");
+            }
+            expected.add(sb.toString());
+            String content = sb.toString();
+            threads.add(new Thread(() -> {
+                try {
+                    for (String line : content.split("(?<=\n)")) {
+                        writer.write(line);
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+            t.join();
+        }
+        for (int t = 0; t < 4; t++) {
+            writers.get(t).sync();
+            Path file = dir.resolve(t + "-cur.log");
+            assertEquals(expected.get(t), Files.readString(file, StandardCharsets.UTF_8));
+            writers.get(t).close();
+        }
+    }
+
+    @Test
+    public void testTruncateAppendAndClose() throws Exception {
+        File file = dir.resolve("plan.log").toFile();
+        Files.writeString(file.toPath(), "old\n");
+        try (AsyncFileWriter writer = new AsyncFileWriter(file, true)) {
+            writer.append("a\n");
+            writer.write(new char[] { 'x', 'b', '\n' }, 1, 2);
+        }
+        assertEquals("old\na\nb\n", Files.readString(file.toPath()));
+        AsyncFileWriter writer = new AsyncFileWriter(file, false);
+        writer.write('c');
+        writer.close();
+        assertEquals("c", Files.readString(file.toPath()));
+        assertThrows(IOException.class, () -> writer.write("d"));
+    }
+}
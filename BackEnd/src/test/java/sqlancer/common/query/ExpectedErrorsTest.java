@@ -0,0 +1,48 @@
+package sqlancer.common.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+public class ExpectedErrorsTest {
+
+    @Test
+    public void testMatchesLikeSubstringAndRegexScan() {
+        // 子串互为前后缀，检验失败转移
+        List<String> substrings = List.of("abab", "bab", "bc", "caa", "aaab");
+        List<Pattern> regexes = List.of(Pattern.compile("c(a|b)\\1c"), Pattern.compile("^ba+$"),
+                Pattern.compile("CB", Pattern.CASE_INSENSITIVE), Pattern.compile("a{4}"));
+        ExpectedErrors errors = new ExpectedErrors(substrings, regexes);
+        Random r = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = r.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + r.nextInt(3)));
+            }
+            String message = sb.toString();
+            boolean expected = substrings.stream().anyMatch(message::contains)
+                    || regexes.stream().anyMatch(p -> p.matcher(message).find());
+            assertEquals(expected, errors.errorIsExpected(message), message);
+        }
+    }
+
+    @Test
+    public void testMatcherIsRecompiledAfterAdding() {
+        ExpectedErrors errors = ExpectedErrors.from("Duplicate entry");
+        assertTrue(errors.errorIsExpected("Duplicate entry '1' for key 'PRIMARY'"));
+        assertFalse(errors.errorIsExpected("Data truncated for column 'c0'"));
+        errors.add("Data truncated");
+        assertTrue(errors.errorIsExpected("Data truncated for column 'c0'"));
+        errors.addRegexString("Unknown column '.*' in 'order clause'");
+        assertTrue(errors.errorIsExpected("Unknown column 'c1' in 'order clause'"));
+        assertTrue(new ExpectedErrors().add("").errorIsExpected("anything"));
+        assertFalse(new ExpectedErrors().errorIsExpected("anything"));
+    }
+}
@@ -0,0 +1,200 @@
+package sqlancer.common.query;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.DBMSSpecificOptions;
+import sqlancer.IgnoreMeException;
+import sqlancer.SQLConnection;
+import sqlancer.SQLConnection.StatementSettings;
+import sqlancer.SQLGlobalState;
+import sqlancer.common.schema.AbstractSchema;
+
+public class SQLQueryAdapterTest {
+
+    private final List<String> batched = new ArrayList<>();
+    private final List<String> executed = new ArrayList<>();
+    // 提交与回滚
+    private final List<String> transactions = new ArrayList<>();
+    private SQLException addBatchFailure;
+    private SQLException batchFailure;
+    private int[] batchCounts;
+    private String failure = "Duplicate entry 'b'";
+    private SQLWarning rollbackWarning;
+    private SQLWarning warning;
+    private boolean autoCommit = true;
+
+    @Test
+    public void testCanBeBatched() {
+        assertTrue(new SQLQueryAdapter("INSERT INTO t0 VALUES (1)").canBeBatched());
+        assertTrue(new SQLQueryAdapter("  update t0 SET c0 = 1").canBeBatched());
+        assertFalse(new SQLQueryAdapter("ANALYZE TABLE t0").canBeBatched());
+        assertFalse(new SQLQueryAdapter("SELECT * FROM t0").canBeBatched());
+        assertFalse(new SQLQueryAdapter("DELETE FROM t0", new ExpectedErrors(), true).canBeBatched());
+    }
+
+    @Test
+    public void testSuccessfulBatchIsCommitted() throws SQLException {
+        batchCounts = new int[] { 1, 1, 1 };
+        SQLConnection connection = new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(32));
+        assertArrayEquals(new boolean[] { true, true, true }, executeBatch(connection));
+        assertEquals(List.of("INSERT a;", "INSERT b;", "INSERT c;"), batched);
+        assertEquals(List.of("COMMIT"), transactions);
+        assertEquals(List.of(), executed);
+        assertTrue(autoCommit);
+    }
+
+    @Test
+    public void testFailedBatchIsRolledBackAndExecutedOneByOne() throws SQLException {
+        batchFailure = new BatchUpdateException("Duplicate entry 'b'", new int[] { 1, Statement.EXECUTE_FAILED });
+        SQLConnection connection = new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(32));
+        assertArrayEquals(new boolean[] { true, false, true }, executeBatch(connection));
+        // 驱动在第二条语句处停止：整批回滚后逐条执行，第二条的错误照常检查
+        assertEquals(List.of("ROLLBACK"), transactions);
+        assertEquals(List.of("INSERT a;", "INSERT b;", "INSERT c;"), executed);
+        assertTrue(autoCommit);
+        assertEquals(32, connection.getBatchSize());
+    }
+
+    @Test
+    public void testUnexpectedErrorInBatchIsReported() {
+        batchFailure = new BatchUpdateException("Unknown column 'c9'",
+                new int[] { 1, Statement.EXECUTE_FAILED, 1 });
+        failure = "Unknown column 'c9'";
+        SQLConnection connection = new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(32));
+        AssertionError error = assertThrows(AssertionError.class, () -> executeBatch(connection));
+        assertEquals("INSERT b;", error.getMessage());
+        assertTrue(autoCommit);
+    }
+
+    @Test
+    public void testUnsupportedBatchFallsBackToSingleStatements() throws SQLException {
+        addBatchFailure = new SQLFeatureNotSupportedException();
+        SQLConnection connection = new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(32));
+        assertArrayEquals(new boolean[] { true, false, true }, executeBatch(connection));
+        assertEquals(List.of("INSERT a;", "INSERT b;", "INSERT c;"), executed);
+        assertEquals(0, connection.getBatchSize());
+    }
+
+    @Test
+    public void testStatementsWithUnknownOutcomeAreRolledBack() throws SQLException {
+        batchFailure = new SQLException("Communications link failure");
+        SQLConnection connection = new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(32));
+        assertArrayEquals(new boolean[] { true, false, true }, executeBatch(connection));
+        assertEquals(List.of("ROLLBACK"), transactions);
+        assertEquals(List.of("INSERT a;", "INSERT b;", "INSERT c;"), executed);
+        assertEquals(0, connection.getBatchSize());
+    }
+
+    @Test
+    public void testIncompleteRollbackDiscardsDatabase() {
+        batchFailure = new BatchUpdateException("Duplicate entry 'b'", new int[] { 1, Statement.EXECUTE_FAILED });
+        rollbackWarning = new SQLWarning("Some non-transactional changed tables couldn't be rolled back");
+        SQLConnection connection = new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(32));
+        assertThrows(IgnoreMeException.class, () -> executeBatch(connection));
+        assertEquals(List.of(), executed);
+        assertEquals(0, connection.getBatchSize());
+        assertTrue(autoCommit);
+    }
+
+    @Test
+    public void testNoBatchInsideTransaction() throws SQLException {
+        autoCommit = false;
+        SQLConnection connection = new SQLConnection(fakeConnection(), StatementSettings.DEFAULT.withBatchSize(32));
+        assertArrayEquals(new boolean[] { true, false, true }, executeBatch(connection));
+        assertEquals(List.of(), batched);
+        assertEquals(List.of(), transactions);
+        assertEquals(0, connection.getBatchSize());
+    }
+
+    private static boolean[] executeBatch(SQLConnection connection) throws SQLException {
+        ExpectedErrors errors = ExpectedErrors.from("Duplicate entry");
+        List<SQLQueryAdapter> queries = List.of(new SQLQueryAdapter("INSERT a", errors),
+                new SQLQueryAdapter("INSERT b", errors), new SQLQueryAdapter("INSERT c", errors));
+        TestGlobalState state = new TestGlobalState();
+        state.setConnection(connection);
+        return SQLQueryAdapter.executeBatch(state, queries);
+    }
+
+    private static final class TestGlobalState
+            extends SQLGlobalState<DBMSSpecificOptions<?>, AbstractSchema<?, ?>> {
+
+        @Override
+        protected AbstractSchema<?, ?> readSchema() {
+            return null;
+        }
+    }
+
+    private Connection fakeConnection() {
+        Statement statement = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "addBatch":
+                        if (addBatchFailure != null) {
+                            throw addBatchFailure;
+                        }
+                        batched.add((String) args[0]);
+                        return null;
+                    case "executeBatch":
+                        if (batchFailure != null) {
+                            throw batchFailure;
+                        }
+                        return batchCounts;
+                    case "execute":
+                        if (args[0].equals("ROLLBACK")) {
+                            transactions.add("ROLLBACK");
+                            warning = rollbackWarning;
+                            return false;
+                        }
+                        executed.add((String) args[0]);
+                        if (args[0].equals("INSERT b;")) {
+                            throw new SQLException(failure);
+                        }
+                        return false;
+                    case "getWarnings":
+                        return warning;
+                    case "clearWarnings":
+                        warning = null;
+                        return null;
+                    case "getUpdateCount":
+                        return 1;
+                    case "isClosed":
+                        return false;
+                    default:
+                        return null;
+                    }
+                });
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "createStatement":
+                        return statement;
+                    case "getAutoCommit":
+                        return autoCommit;
+                    case "setAutoCommit":
+                        autoCommit = (Boolean) args[0];
+                        return null;
+                    case "commit":
+                        transactions.add("COMMIT");
+                        return null;
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
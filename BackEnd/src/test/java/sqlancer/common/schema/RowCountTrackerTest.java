@@ -0,0 +1,78 @@
+package sqlancer.common.schema;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+public class RowCountTrackerTest {
+
+    private final Predicate<String> baseTables = Set.of("t0", "t1")::contains;
+
+    @Test
+    public void testCountsFollowAffectedRows() {
+        RowCountTracker tracker = new RowCountTracker();
+        tracker.afterStatement("CREATE TABLE t0(c0 INT PRIMARY KEY);", 0, true, baseTables);
+        assertEquals(0, tracker.getExactCount("t0"));
+        tracker.afterStatement("INSERT IGNORE INTO t0(c0) VALUES (1), (2), (2);", 2, true, baseTables);
+        tracker.afterStatement("UPDATE t0 SET c0 = 3 WHERE c0 = 2;", 1, true, baseTables);
+        tracker.afterStatement("DELETE LOW_PRIORITY FROM `t0` WHERE c0 = 1;", 1, true, baseTables);
+        assertEquals(1, tracker.getExactCount("t0"));
+
+        // 冲突时改为更新：只知道上界，但足以判断非空
+        tracker.afterStatement("INSERT INTO t0 VALUES (3) ON DUPLICATE KEY UPDATE c0 = 4;", 2, true, baseTables);
+        assertEquals(RowCountTracker.UNKNOWN, tracker.getExactCount("t0"));
+        assertEquals(1, tracker.getLowerBound("t0"));
+        assertEquals(3, tracker.getUpperBound("t0"));
+        assertFalse(tracker.isEmpty("t0"));
+        tracker.afterStatement("REPLACE INTO t0 VALUES (4);", 2, true, baseTables);
+        assertNull(tracker.isEmpty("t0"));
+
+        tracker.afterStatement("TRUNCATE TABLE t0;", 0, true, baseTables);
+        assertTrue(tracker.isEmpty("t0"));
+        assertEquals(4, tracker.getNrHits());
+        assertEquals(1, tracker.getNrMisses());
+    }
+
+    @Test
+    public void testUnknownEffectsForgetCounts() {
+        RowCountTracker tracker = new RowCountTracker();
+        tracker.setExactCount("t0", 5);
+        tracker.setExactCount("t1", 7);
+        tracker.afterStatement("SELECT * FROM t0;", -1, true, baseTables);
+        tracker.afterStatement("CREATE INDEX i0 ON t0(c0);", 0, true, baseTables);
+        // 失败的 DDL 不改变数据；失败的插入可能已插入部分行
+        tracker.afterStatement("ALTER TABLE t1 ADD COLUMN c1 INT;", -1, false, baseTables);
+        tracker.afterStatement("INSERT INTO t0 VALUES (1), (1);", -1, false, baseTables);
+        assertEquals(RowCountTracker.UNKNOWN, tracker.getLowerBound("t0"));
+        assertEquals(7, tracker.getLowerBound("t1"));
+
+        // 修改视图时不知道基本表
+        tracker.setExactCount("t0", 5);
+        tracker.afterStatement("INSERT INTO v0 VALUES (1);", 1, true, baseTables);
+        assertEquals(RowCountTracker.UNKNOWN, tracker.getLowerBound("t0"));
+        assertEquals(RowCountTracker.UNKNOWN, tracker.getLowerBound("t1"));
+
+        // 创建触发器之后，任何修改语句都使所有行数变为未知
+        tracker.setExactCount("t0", 5);
+        tracker.setExactCount("t1", 7);
+        tracker.afterStatement("CREATE TRIGGER tr0 AFTER INSERT ON t0 FOR EACH ROW DELETE FROM t1;", 0, true,
+                baseTables);
+        tracker.setExactCount("t0", 5);
+        tracker.setExactCount("t1", 7);
+        tracker.afterStatement("INSERT INTO t0 VALUES (1);", 1, true, baseTables);
+        assertEquals(RowCountTracker.UNKNOWN, tracker.getLowerBound("t1"));
+
+        tracker.setExactCount("t1", 7);
+        tracker.afterStatement("DELETE t0, t1 FROM t0, t1;", 3, true, baseTables);
+        assertEquals(RowCountTracker.UNKNOWN, tracker.getLowerBound("t1"));
+        tracker.setExactCount("t1", 7);
+        tracker.afterStatement("DROP TABLE IF EXISTS t1;", 0, true, baseTables);
+        assertEquals(RowCountTracker.UNKNOWN, tracker.getLowerBound("t1"));
+    }
+}
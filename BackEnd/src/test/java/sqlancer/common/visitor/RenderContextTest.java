@@ -0,0 +1,53 @@
+package sqlancer.common.visitor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class RenderContextTest {
+
+    @Test
+    public void testBuffersAreReused() {
+        RenderContext context = new RenderContext();
+        StringBuilder outer = context.acquireBuffer();
+        StringBuilder nested = context.acquireBuffer();
+        assertNotSame(outer, nested);
+        nested.append("c0");
+        context.releaseBuffer(nested);
+        StringBuilder reused = context.acquireBuffer();
+        assertSame(nested, reused);
+        assertEquals(0, reused.length());
+
+        // 过大的 StringBuilder 不放回
+        StringBuilder large = new StringBuilder(RenderContext.MAX_POOLED_CAPACITY + 1);
+        context.releaseBuffer(large);
+        assertNotSame(large, context.acquireBuffer());
+    }
+
+    @Test
+    public void testSubtreeCache() {
+        RenderContext context = new RenderContext();
+        Object node = new Object();
+        context.cacheText(String.class, node, "c0");
+        assertEquals("c0", context.getCachedText(String.class, node));
+        // 按 visitor 类与节点的同一性区分
+        assertNull(context.getCachedText(Integer.class, node));
+        assertNull(context.getCachedText(String.class, new Object()));
+
+        for (int i = 1; i < RenderContext.MAX_CACHED_SUBTREES; i++) {
+            context.cacheText(String.class, new Object(), "c" + i);
+        }
+        assertEquals(RenderContext.MAX_CACHED_SUBTREES, context.getNrCachedSubtrees());
+        context.cacheText(String.class, new Object(), "c");
+        assertEquals(1, context.getNrCachedSubtrees());
+        assertNull(context.getCachedText(String.class, node));
+
+        context.cacheText(String.class, node, "c0");
+        context.setMinimalParentheses(true);
+        assertNull(context.getCachedText(String.class, node));
+    }
+
+}
@@ -0,0 +1,66 @@
+package sqlancer.mysql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.common.query.SQLQueryAdapter;
+import sqlancer.common.schema.SchemaDelta;
+import sqlancer.mysql.MySQLSchema.MySQLColumn;
+import sqlancer.mysql.MySQLSchema.MySQLDataType;
+import sqlancer.mysql.MySQLSchema.MySQLIndex;
+import sqlancer.mysql.MySQLSchema.MySQLTable;
+import sqlancer.mysql.MySQLSchema.MySQLTable.MySQLEngine;
+
+public class MySQLSchemaTest {
+
+    @Test
+    public void testDeltasProduceNewSnapshots() {
+        MySQLTable t0 = MySQLTable.create("t0", List.of(new MySQLColumn("c0", MySQLDataType.INT, true, 10)),
+                List.of(MySQLIndex.create("PRIMARY")), MySQLEngine.INNO_DB);
+        MySQLSchema schema = new MySQLSchema(List.of(t0));
+        String before = schema.getStructureDescription();
+
+        MySQLSchema withIndex = schema.apply(SchemaDelta.addIndex("t0", MySQLIndex.create("i0")));
+        assertEquals(List.of("`PRIMARY`", "i0"),
+                withIndex.getDatabaseTable("t0").getIndexes().stream().map(MySQLIndex::getIndexName).toList());
+        // 原快照及其中的表不变，新表的列属于新表
+        assertEquals(before, schema.getStructureDescription());
+        assertEquals(1, t0.getIndexes().size());
+        assertSame(withIndex.getDatabaseTable("t0"), withIndex.getDatabaseTable("t0").getColumns().get(0).getTable());
+
+        MySQLTable t1 = MySQLTable.create("t1", List.of(new MySQLColumn("c0", MySQLDataType.VARCHAR, false, 0)),
+                List.of(), MySQLEngine.MY_ISAM);
+        MySQLSchema withTable = withIndex.apply(SchemaDelta.addTable(t1))
+                .apply(SchemaDelta.dropIndex("t0", "i0"));
+        assertEquals(2, withTable.getDatabaseTables().size());
+        // 描述与表的顺序无关
+        MySQLSchema reordered = new MySQLSchema(List.of(t1, t0));
+        assertEquals(reordered.getStructureDescription(), withTable.getStructureDescription());
+        assertNotEquals(before, withTable.getStructureDescription());
+
+        // 与快照不符或不支持的改动交给重新读取
+        assertNull(schema.apply(SchemaDelta.addTable(t0)));
+        assertNull(schema.apply(SchemaDelta.dropIndex("t0", "i9")));
+        assertNull(schema.apply(SchemaDelta.addIndex("t9", MySQLIndex.create("i0"))));
+        assertNull(schema.apply(SchemaDelta.dropColumn("t0", "c0")));
+        assertEquals(List.of("t1"), withTable.apply(SchemaDelta.dropTable("t0")).getDatabaseTables().stream()
+                .map(MySQLTable::getName).toList());
+    }
+
+    @Test
+    public void testDeltasOnlyForSchemaChangingStatements() {
+        assertThrows(AssertionError.class, () -> new SQLQueryAdapter("DROP INDEX i0 ON t0", false)
+                .withSchemaDeltas(SchemaDelta.dropIndex("t0", "i0")));
+        SQLQueryAdapter q = new SQLQueryAdapter("DROP INDEX i0 ON t0", true)
+                .withSchemaDeltas(SchemaDelta.dropIndex("t0", "i0"));
+        assertEquals(SchemaDelta.Kind.DROP_INDEX, q.getSchemaDeltas().get(0).getKind());
+        assertNull(new SQLQueryAdapter("CREATE TABLE t0(c0 INT)", true).getSchemaDeltas());
+    }
+}
@@ -0,0 +1,152 @@
+package sqlancer.mysql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import sqlancer.Randomly;
+import sqlancer.common.visitor.RenderContext;
+import sqlancer.mysql.MySQLSchema.MySQLColumn;
+import sqlancer.mysql.MySQLSchema.MySQLDataType;
+import sqlancer.mysql.MySQLSchema.MySQLIndex;
+import sqlancer.mysql.MySQLSchema.MySQLTable;
+import sqlancer.mysql.MySQLSchema.MySQLTable.MySQLEngine;
+import sqlancer.mysql.ast.MySQLBinaryComparisonOperation;
+import sqlancer.mysql.ast.MySQLBinaryComparisonOperation.BinaryComparisonOperator;
+import sqlancer.mysql.ast.MySQLBinaryLogicalOperation;
+import sqlancer.mysql.ast.MySQLBinaryLogicalOperation.MySQLBinaryLogicalOperator;
+import sqlancer.mysql.ast.MySQLBinaryOperation;
+import sqlancer.mysql.ast.MySQLBinaryOperation.MySQLBinaryOperator;
+import sqlancer.mysql.ast.MySQLColumnReference;
+import sqlancer.mysql.ast.MySQLConstant;
+import sqlancer.mysql.ast.MySQLExpression;
+import sqlancer.mysql.ast.MySQLSelect;
+import sqlancer.mysql.ast.MySQLSelect.SelectType;
+import sqlancer.mysql.ast.MySQLTableReference;
+import sqlancer.mysql.ast.MySQLUnaryPostfixOperation;
+import sqlancer.mysql.ast.MySQLUnaryPostfixOperation.UnaryPostfixOperator;
+import sqlancer.mysql.ast.MySQLUnaryPrefixOperation;
+import sqlancer.mysql.ast.MySQLUnaryPrefixOperation.MySQLUnaryPrefixOperator;
+
+public class MySQLToStringVisitorTest {
+
+    private static final MySQLTable T0 = MySQLTable.create("t0",
+            List.of(new MySQLColumn("c0", MySQLDataType.INT, true, 10),
+                    new MySQLColumn("c1", MySQLDataType.INT, false, 10)),
+            List.of(MySQLIndex.create("PRIMARY")), MySQLEngine.INNO_DB);
+
+    private static MySQLExpression column(int i) {
+        return MySQLColumnReference.create(T0.getColumns().get(i), null);
+    }
+
+    private static MySQLExpression constant(int value) {
+        return MySQLConstant.createIntConstant(value);
+    }
+
+    private static MySQLBinaryLogicalOperation conjunction() {
+        return new MySQLBinaryLogicalOperation(
+                new MySQLBinaryComparisonOperation(column(0), constant(1), BinaryComparisonOperator.EQUALS),
+                new MySQLBinaryComparisonOperation(column(1), constant(2), BinaryComparisonOperator.LESS),
+                MySQLBinaryLogicalOperator.AND);
+    }
+
+    @Test
+    public void testConservativeParenthesesByDefault() {
+        MySQLBinaryLogicalOperation and = conjunction();
+        assertEquals("((t0.c0) = (1)) " + and.getTextRepresentation() + " ((t0.c1) < (2))",
+                MySQLVisitor.asString(and));
+        assertEquals("(t0.c0) & (1)",
+                MySQLVisitor.asString(new MySQLBinaryOperation(column(0), constant(1), MySQLBinaryOperator.AND)));
+    }
+
+    @Test
+    public void testMinimalParentheses() {
+        RenderContext.current().setMinimalParentheses(true);
+        try {
+            MySQLBinaryLogicalOperation and = conjunction();
+            assertEquals("t0.c0 = 1 " + and.getTextRepresentation() + " t0.c1 < 2", MySQLVisitor.asString(and));
+            // & 的优先级高于比较，反过来则需要括号
+            assertEquals("t0.c0 & 1 = 0", MySQLVisitor.asString(new MySQLBinaryComparisonOperation(
+                    new MySQLBinaryOperation(column(0), constant(1), MySQLBinaryOperator.AND), constant(0),
+                    BinaryComparisonOperator.EQUALS)));
+            assertEquals("(t0.c0 = 1) = 0", MySQLVisitor.asString(new MySQLBinaryComparisonOperation(
+                    new MySQLBinaryComparisonOperation(column(0), constant(1), BinaryComparisonOperator.EQUALS),
+                    constant(0), BinaryComparisonOperator.EQUALS)));
+        } finally {
+            RenderContext.current().setMinimalParentheses(false);
+        }
+    }
+
+    @Test
+    public void testSelectReusesCachedPredicate() {
+        MySQLExpression predicate = conjunction();
+        MySQLSelect select = select();
+        String predicateText = MySQLVisitor.asString(predicate);
+
+        RenderContext.current().clearSubtrees();
+        try {
+            for (MySQLExpression where : tlpVariants(predicate)) {
+                select.setWhereClause(where);
+                String text = MySQLVisitor.asString(select);
+                assertTrue(text.startsWith("SELECT DISTINCT t0.c0 AS ref0 FROM t0 WHERE "), text);
+                assertTrue(text.contains(predicateText), text);
+            }
+        } finally {
+            RenderContext.current().clearSubtrees();
+        }
+    }
+
+    @Test
+    public void testCachingKeepsOutputOfRandomSeed() {
+        // NOT 的写法（! 或 NOT）与 IS NULL 的写法在转换时随机选择，缓存不能改变同一个种子生成的 SQL
+        MySQLExpression predicate = new MySQLBinaryLogicalOperation(
+                new MySQLUnaryPrefixOperation(
+                        new MySQLBinaryComparisonOperation(column(0), constant(1), BinaryComparisonOperator.EQUALS),
+                        MySQLUnaryPrefixOperator.NOT),
+                new MySQLBinaryComparisonOperation(column(1), constant(2), BinaryComparisonOperator.LESS),
+                MySQLBinaryLogicalOperator.AND);
+        MySQLSelect select = select();
+        assertEquals(render(select, predicate, false), render(select, predicate, true));
+    }
+
+    private static List<String> render(MySQLSelect select, MySQLExpression predicate, boolean cached) {
+        new Randomly(0);
+        List<String> texts = new ArrayList<>();
+        RenderContext.current().clearSubtrees();
+        try {
+            for (int i = 0; i < 8; i++) {
+                for (MySQLExpression where : tlpVariants(predicate)) {
+                    if (!cached) {
+                        RenderContext.current().clearSubtrees();
+                    }
+                    select.setWhereClause(where);
+                    texts.add(MySQLVisitor.asString(select));
+                }
+            }
+        } finally {
+            RenderContext.current().clearSubtrees();
+        }
+        return texts;
+    }
+
+    private static MySQLSelect select() {
+        MySQLSelect select = new MySQLSelect();
+        select.setSelectType(SelectType.DISTINCT);
+        select.setFetchColumns(List.of(column(0)));
+        select.setFromList(List.of(new MySQLTableReference(T0)));
+        return select;
+    }
+
+    /**
+     * @return 与 TLP 相同，同一个谓词依次以 p、NOT p 与 p IS NULL 出现
+     */
+    private static List<MySQLExpression> tlpVariants(MySQLExpression predicate) {
+        return List.of(predicate, new MySQLUnaryPrefixOperation(predicate, MySQLUnaryPrefixOperator.NOT),
+                new MySQLUnaryPostfixOperation(predicate, UnaryPostfixOperator.IS_NULL, false));
+    }
+
+}